@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -40,24 +41,38 @@ import org.rowan.linalgtoolkit.Vector2D;
 import org.rowan.linalgtoolkit.shapes2d.Polygon2D;
 import org.rowan.pathfinder.networking.client.ClientTcpConnectionHandler;
 import org.rowan.pathfinder.networking.server.EventMessage;
+import org.rowan.pathfinder.parser.DatasetReader;
+import org.rowan.pathfinder.parser.DatasetWriter;
 import org.rowan.pathfinder.parser.EventParser;
-import org.rowan.pathfinder.parser.OSMParser;
 import org.rowan.pathfinder.parser.PFParseLogException;
 import org.rowan.pathfinder.parser.RoadParser;
+import org.rowan.pathfinder.parser.RoadSink;
 import org.rowan.pathfinder.parser.SpeedLimitParser;
 import org.rowan.pathfinder.parser.TerrainParser;
 import org.rowan.pathfinder.parser.UnderpassParser;
 import org.rowan.pathfinder.parser.VehicleParser;
 import org.rowan.pathfinder.parser.XMLParser;
 import org.rowan.pathfinder.parser.XMLSubParser;
+import org.rowan.pathfinder.pathfinder.CompactGraph;
+import org.rowan.pathfinder.pathfinder.ContractionHierarchy;
+import org.rowan.pathfinder.pathfinder.DijkstraSearch;
 import org.rowan.pathfinder.pathfinder.Event;
+import org.rowan.pathfinder.pathfinder.GraphSnapshot;
+import org.rowan.pathfinder.pathfinder.GreatCircleHeuristic;
+import org.rowan.pathfinder.pathfinder.Heuristic;
+import org.rowan.pathfinder.pathfinder.Landmarks;
+import org.rowan.pathfinder.pathfinder.LifelongPlanningAStar;
 import org.rowan.pathfinder.pathfinder.Logic2D;
 import org.rowan.pathfinder.pathfinder.Path;
 import org.rowan.pathfinder.pathfinder.Pathfinder;
+import org.rowan.pathfinder.pathfinder.QueryContext;
 import org.rowan.pathfinder.pathfinder.RoadSegment;
+import org.rowan.pathfinder.pathfinder.RouteCache;
 import org.rowan.pathfinder.pathfinder.SpeedLimit;
 import org.rowan.pathfinder.pathfinder.Terrain;
+import org.rowan.pathfinder.pathfinder.TerrainAdjacency;
 import org.rowan.pathfinder.pathfinder.TerrainType;
+import org.rowan.pathfinder.pathfinder.TileStore;
 import org.rowan.pathfinder.pathfinder.Transformer;
 import org.rowan.pathfinder.pathfinder.Traversable;
 import org.rowan.pathfinder.pathfinder.Underpass;
@@ -106,13 +121,60 @@ public class Director {
     private JFrame frame;
     private MainGUI gui;
     private ClientTcpConnectionHandler serverUplink;
+    /** Contraction hierarchy over the loaded roads, built on first use */
+    private ContractionHierarchy roadHierarchy;
+    /** The cost generation of the Transformer roadHierarchy was customized for */
+    private long hierarchyCostGeneration = -1;
+    /** The tiles roads are loaded from as requests need them, null if all
+     * roads are loaded */
+    private TileStore tileStore;
+    /** The columns and rows of the tiles in tileRoads, while tileStore is used */
+    private int[] tileRange;
+    /** The roads of the tiles last searched, null if none have been loaded */
+    private Set<RoadSegment> tileRoads;
+    /** Whether the last tiled search stopped at MAX_TILE_RINGS before it
+     * could tell its paths were the cheapest */
+    private boolean tileLimitReached;
+    private final Pathfinder pathfinder = new Pathfinder(Pathfinder.SearchMode.BIDIRECTIONAL_ASTAR);
+    /** The request the current transform was made for, null if the next
+     * request has to transform again */
+    private List<Object> transformedRequest;
+    /** The start and end traversables of the current transform */
+    private List<Traversable> transformedEnds;
+    /** The compiled network of the current transform */
+    private CompactGraph transformedGraph;
+    /** The traversables of the current transform, which the Transformer holds
+     * until something else is transformed */
+    private Set<Traversable> transformedTraversables;
+    /** Paths found on the current transform */
+    private final RouteCache routeCache = new RouteCache();
+    /** Events received since the last request, attached before the next one */
+    private final List<Event> pendingEvents = Collections.synchronizedList(new ArrayList<Event>());
+    /** Whether the decay of every event must be recalculated before the next request */
+    private volatile boolean pendingDecay = false;
+    /** The paths on the path layer, null if none have been found */
+    private volatile List<Path> drawnPaths;
+    /** The cost of each drawn path when it was drawn */
+    private double[] drawnCosts;
+    /** Keeps the optimal drawn path up to date as events arrive */
+    private LifelongPlanningAStar replanner;
+    /** The cost per kilometer the replanner's heuristic was made with */
+    private double replannerCostPerKm;
+    /** The landmarks the replanner's heuristic was made with, or null */
+    private Landmarks replannerLandmarks;
     public static volatile int decay1Years = 0;
     public static volatile int decay1Months = 0;
     public static volatile int decay1Days = 0;
     public static volatile int decay2Years = 0;
     public static volatile int decay2Months = 0;
     public static volatile int decay2Days = 0;
-    private static final List<String> LOG_NOTHING_PARSED = Arrays.asList(new String[]{"There was no correct data to parse!"});
+    static final List<String> LOG_NOTHING_PARSED = Arrays.asList(new String[]{"There was no correct data to parse!"});
+    /** The size of the road tiles saved by saveTiles(), in degrees */
+    private static final double TILE_SIZE = .05;
+    /** The number of road tiles kept loaded */
+    private static final int RESIDENT_TILES = 128;
+    /** The most rings of tiles searched around the start and end */
+    private static final int MAX_TILE_RINGS = 4;
     private String databaseTable = MainGUI.DEFAULT_EVENTTABLE_NAME;
     private List<Event> receivedEventQueue;
     private boolean shouldShowAlert = true;
@@ -720,13 +782,21 @@ public class Director {
      * @param shouldOverwrite True if data should be overwritten, false otherwise
      */
     public void loadRoads(File f, Map<String, Double> speedLimitMap, boolean shouldOverwrite) {
-        RoadParser parser = new RoadParser(speedLimitMap);
+        final Set<RoadSegment> parsedRoads = new HashSet<RoadSegment>();
         String msg = "";
         String msgTitle = "";
         int msgType = JOptionPane.INFORMATION_MESSAGE;
         try {
-            List<String> log = OSMParser.parse(parser, new FileReader(f));
-            if (parser.extractRoads().isEmpty()) {
+            // only the nodes the roads use are kept, and large files are
+            // split and parsed on every processor
+            List<String> log = RoadParser.parseParallel(f, speedLimitMap, new RoadSink() {
+
+                @Override
+                public void addRoad(RoadSegment road) {
+                    parsedRoads.add(road);
+                }
+            });
+            if (parsedRoads.isEmpty()) {
                 throw new PFParseLogException(LOG_NOTHING_PARSED);
             }
             if (log.isEmpty()) {
@@ -742,10 +812,16 @@ public class Director {
                 msgType = JOptionPane.WARNING_MESSAGE;
             }
             if (shouldOverwrite || roads == null) {
-                roads = parser.extractRoads();
+                roads = parsedRoads;
             } else {
-                roads.addAll(parser.extractRoads());
+                roads.addAll(parsedRoads);
             }
+            roadHierarchy = null;
+            tileStore = null;
+            tileRoads = null;
+            // networks built over the old roads can't be used again
+            Transformer.clearCache();
+            transformedRequest = null;
         } catch (PFParseLogException ex) {
             msgTitle = "Error";
             msg = "An error occured during the parsing process. Nothing was parsed.\n"
@@ -772,6 +848,163 @@ public class Director {
         }
     }
 
+    /**
+     * Loads the roads stored in a graph snapshot into the director, which is
+     * much faster than parsing the OSM file they came from.
+     * @param f A snapshot file written by saveSnapshot().
+     * @param shouldOverwrite True if data should be overwritten, false otherwise
+     */
+    public void loadSnapshot(File f, boolean shouldOverwrite) {
+        String msg = "";
+        String msgTitle = "";
+        int msgType = JOptionPane.INFORMATION_MESSAGE;
+        try {
+            Set<RoadSegment> snapshotRoads = GraphSnapshot.open(f).extractRoads();
+            if (snapshotRoads.isEmpty()) {
+                throw new IOException(LOG_NOTHING_PARSED.get(0));
+            }
+            if (shouldOverwrite || roads == null) {
+                roads = snapshotRoads;
+            } else {
+                roads.addAll(snapshotRoads);
+            }
+            roadHierarchy = null;
+            tileStore = null;
+            tileRoads = null;
+            // networks built over the old roads can't be used again
+            Transformer.clearCache();
+            transformedRequest = null;
+            msgTitle = "Success";
+            msg = "Loaded " + snapshotRoads.size() + " road segments from the snapshot.";
+        } catch (IOException ex) {
+            msgTitle = "Error";
+            msg = "The snapshot could not be loaded. Nothing was loaded.\n"
+                    + "Error: " + ex.getMessage();
+            msgType = JOptionPane.ERROR_MESSAGE;
+        } finally {
+            JOptionPane.showMessageDialog(frame, msg, msgTitle, msgType);
+        }
+    }
+
+    /**
+     * Saves the loaded roads to a graph snapshot that can be loaded with
+     * loadSnapshot(). Speed limits and underpass clearances are saved with
+     * the roads once a path has been found with them.
+     * @param f The file to save to.
+     */
+    public void saveSnapshot(File f) {
+        try {
+            GraphSnapshot.write(f, roads);
+            JOptionPane.showMessageDialog(frame, "Snapshot saved successfully!",
+                    "Success", JOptionPane.INFORMATION_MESSAGE);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(frame, "The snapshot could not be saved.\n"
+                    + "Error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Loads everything stored in a dataset into the director, which is much
+     * faster than parsing the OSM and XML files it came from. Only the kinds
+     * of data the dataset holds are overwritten or appended to.
+     * @param f A dataset written by saveDataset() or DatasetConverter.
+     * @param shouldOverwrite True if data should be overwritten, false otherwise
+     */
+    public void loadDataset(File f, boolean shouldOverwrite) {
+        String msg = "";
+        String msgTitle = "";
+        int msgType = JOptionPane.INFORMATION_MESSAGE;
+        try {
+            DatasetReader reader = new DatasetReader();
+            reader.read(f);
+            Set<RoadSegment> r = reader.extractRoads();
+            Set<Vehicle> v = reader.extractVehicles();
+            Set<Terrain> t = reader.extractTerrains();
+            Set<Event> e = reader.extractEvents();
+            Set<Underpass> u = reader.extractUnderpasses();
+            Set<SpeedLimit> s = reader.extractSpeedLimits();
+            if (r.isEmpty() && v.isEmpty() && t.isEmpty() && e.isEmpty() && u.isEmpty() && s.isEmpty()) {
+                throw new IOException(LOG_NOTHING_PARSED.get(0));
+            }
+            loadTerrainNeighbors(f, t);
+            mergeScenario(r.isEmpty() ? null : r, v.isEmpty() ? null : v, t.isEmpty() ? null : t,
+                    e.isEmpty() ? null : e, u.isEmpty() ? null : u, s.isEmpty() ? null : s,
+                    shouldOverwrite);
+            msgTitle = "Success";
+            msg = "Loaded " + r.size() + " road segments, " + v.size() + " vehicles, "
+                    + t.size() + " terrains, " + e.size() + " events, " + u.size()
+                    + " underpasses and " + s.size() + " speed limits from the dataset.";
+        } catch (IOException ex) {
+            msgTitle = "Error";
+            msg = "The dataset could not be loaded. Nothing was loaded.\n"
+                    + "Error: " + ex.getMessage();
+            msgType = JOptionPane.ERROR_MESSAGE;
+        } finally {
+            JOptionPane.showMessageDialog(frame, msg, msgTitle, msgType);
+        }
+    }
+
+    /**
+     * Saves all loaded data to a dataset that can be loaded with
+     * loadDataset().
+     * @param f The file to save to.
+     */
+    public void saveDataset(File f) {
+        try {
+            DatasetWriter.write(f, roads, terrains, events, speedLimits, underpasses, vehicles);
+            JOptionPane.showMessageDialog(frame, "Dataset saved successfully!",
+                    "Success", JOptionPane.INFORMATION_MESSAGE);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(frame, "The dataset could not be saved.\n"
+                    + "Error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Uses the roads stored in a directory of tiles, instead of loading them
+     * all. Paths are found over the tiles around the start and end, which are
+     * loaded as they are needed, and only a bounded number of tiles are kept
+     * loaded.
+     * @param dir A directory written by saveTiles().
+     */
+    public void loadTiles(File dir) {
+        try {
+            TileStore store = TileStore.open(dir, RESIDENT_TILES);
+            if (store.getNumTiles() == 0) {
+                throw new IOException(LOG_NOTHING_PARSED.get(0));
+            }
+            tileStore = store;
+            tileRange = null;
+            tileRoads = null;
+            roads = new HashSet<RoadSegment>();
+            roadHierarchy = null;
+            // networks built over the old roads can't be used again
+            Transformer.clearCache();
+            transformedRequest = null;
+            JOptionPane.showMessageDialog(frame, "Using " + store.getNumTiles() + " road tiles.",
+                    "Success", JOptionPane.INFORMATION_MESSAGE);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(frame, "The tiles could not be loaded. Nothing was loaded.\n"
+                    + "Error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Saves the loaded roads to a directory of tiles that can be used with
+     * loadTiles().
+     * @param dir The directory to save to.
+     */
+    public void saveTiles(File dir) {
+        try {
+            TileStore.write(dir, roads, TILE_SIZE);
+            JOptionPane.showMessageDialog(frame, "Tiles saved successfully!",
+                    "Success", JOptionPane.INFORMATION_MESSAGE);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(frame, "The tiles could not be saved.\n"
+                    + "Error: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     /**
      * Throw the correct exception of the XML sub parser did not find data.
      */
@@ -809,7 +1042,7 @@ public class Director {
         String msgTitle = "";
         int msgType = JOptionPane.INFORMATION_MESSAGE;
         try {
-            List<String> log = XMLParser.parse(parser, new FileReader(file));
+            List<String> log = XMLParser.parse(parser, file);
             checkEmpty(parser);
             if (log.isEmpty()) {
                 msgTitle = "Success";
@@ -859,12 +1092,14 @@ public class Director {
 
         TerrainParser parser = new TerrainParser();
         loadXMLFile(f, parser);
+        loadTerrainNeighbors(f, parser.extractTerrains());
         if (shouldOverwrite || terrains == null) {
             terrains = parser.extractTerrains();
             terrainLayer.removeAllRenderables();
         } else {
             terrains.addAll(parser.extractTerrains());
         }
+        transformedRequest = null;
         terrainLayer.removeAllRenderables();
         for (Terrain t : terrains) {
             t.addToLayer(terrainLayer);
@@ -874,6 +1109,35 @@ public class Director {
         return;
     }
 
+    /**
+     * Sets the neighbors of newly parsed terrains. They are read from the
+     * adjacency file next to the terrain file if it was saved for the same
+     * terrains, otherwise they are found and the adjacency file is saved so
+     * the next load can skip the search.
+     * @param f The terrain file.
+     * @param parsed The terrains parsed from the file, in file order.
+     */
+    void loadTerrainNeighbors(File f, Set<Terrain> parsed) {
+        if (parsed.isEmpty()) {
+            return;
+        }
+        List<Terrain> list = new ArrayList<Terrain>(parsed);
+        File adjacency = TerrainAdjacency.fileFor(f);
+        try {
+            if (adjacency.isFile() && TerrainAdjacency.read(adjacency, list)) {
+                return;
+            }
+        } catch (IOException ex) {
+            // the file can't be used, so the neighbors are found again
+        }
+        Transformer.setTerrainNeighbors(parsed);
+        try {
+            TerrainAdjacency.write(adjacency, list);
+        } catch (IOException ex) {
+            // the adjacency file only saves time, so a failure is ignored
+        }
+    }
+
     /**
      * Parses Event XML file and loads the terrain into the Director and
      * WorldWind
@@ -891,6 +1155,7 @@ public class Director {
         } else {
             events.addAll(parser.extractEvents());
         }
+        transformedRequest = null;
         eventLayer.removeAllRenderables();
         for (Event e : events) {
             e.addToLayer(eventLayer);
@@ -912,6 +1177,7 @@ public class Director {
         } else {
             speedLimits.addAll(parser.extractSpeedLimits());
         }
+        transformedRequest = null;
         return;
     }
 
@@ -929,6 +1195,7 @@ public class Director {
         } else {
             underpasses.addAll(parser.extractUnderpasses());
         }
+        transformedRequest = null;
 
         for (Underpass u : underpasses) {
             u.addToLayer(underpassLayer);
@@ -950,9 +1217,92 @@ public class Director {
         } else {
             vehicles.addAll(parser.extractVehicles());
         }
+        Transformer.registerVehicles(vehicles);
+        transformedRequest = null;
         return;
     }
 
+    /**
+     * Puts the data a ScenarioLoader parsed into the director in one step.
+     * The director is locked while it does, so a path is never found with
+     * only some of the new data. Each set is null if nothing of its kind was
+     * parsed, which leaves the loaded data of that kind as it is.
+     * @param parsedRoads The parsed roads, or null.
+     * @param parsedVehicles The parsed vehicles, or null.
+     * @param parsedTerrains The parsed terrains, with their neighbors set, or
+     *                       null.
+     * @param parsedEvents The parsed events, or null.
+     * @param parsedUnderpasses The parsed underpasses, or null.
+     * @param parsedSpeedLimits The parsed speed limits, or null.
+     * @param shouldOverwrite True if data should be overwritten, false otherwise
+     */
+    synchronized void mergeScenario(Set<RoadSegment> parsedRoads, Set<Vehicle> parsedVehicles,
+            Set<Terrain> parsedTerrains, Set<Event> parsedEvents, Set<Underpass> parsedUnderpasses,
+            Set<SpeedLimit> parsedSpeedLimits, boolean shouldOverwrite) {
+        if (parsedRoads != null) {
+            if (shouldOverwrite || roads == null) {
+                roads = parsedRoads;
+            } else {
+                roads.addAll(parsedRoads);
+            }
+            roadHierarchy = null;
+            tileStore = null;
+            tileRoads = null;
+            // networks built over the old roads can't be used again
+            Transformer.clearCache();
+        }
+        if (parsedVehicles != null) {
+            if (shouldOverwrite || vehicles == null) {
+                vehicles = parsedVehicles;
+            } else {
+                vehicles.addAll(parsedVehicles);
+            }
+            Transformer.registerVehicles(vehicles);
+        }
+        if (parsedTerrains != null) {
+            if (shouldOverwrite || terrains == null) {
+                terrains = parsedTerrains;
+            } else {
+                terrains.addAll(parsedTerrains);
+            }
+            terrainLayer.removeAllRenderables();
+            for (Terrain t : terrains) {
+                t.addToLayer(terrainLayer);
+            }
+        }
+        if (parsedEvents != null) {
+            if (shouldOverwrite || events == null) {
+                events = parsedEvents;
+            } else {
+                events.addAll(parsedEvents);
+            }
+            eventLayer.removeAllRenderables();
+            for (Event e : events) {
+                e.addToLayer(eventLayer);
+            }
+        }
+        if (parsedUnderpasses != null) {
+            if (shouldOverwrite || underpasses == null) {
+                underpasses = parsedUnderpasses;
+            } else {
+                underpasses.addAll(parsedUnderpasses);
+            }
+            underpassLayer.removeAllRenderables();
+            for (Underpass u : underpasses) {
+                u.addToLayer(underpassLayer);
+            }
+        }
+        if (parsedSpeedLimits != null) {
+            if (shouldOverwrite || speedLimits == null) {
+                speedLimits = parsedSpeedLimits;
+            } else {
+                speedLimits.addAll(parsedSpeedLimits);
+            }
+        }
+        transformedRequest = null;
+        wwd.redraw();
+    }
+
     /**
      * Calls on the Transformer and Pathfinder methods to find the paths.
      * @param mode The mode of travel. Could be Road Only, Terrain Only, or Both.
@@ -964,11 +1314,11 @@ public class Director {
      * @param vehicles The vehicles to be used in this path
      * @param frame The overall frame of the Main GUI
      */
-    public void findAndDrawPaths(Transformer.TransformMode mode, double safety,
+    public synchronized void findAndDrawPaths(Transformer.TransformMode mode, double safety,
             double speed, double distance, Set<Vehicle> vehicles) {
 
         if (mode == Transformer.TransformMode.ROAD_ONLY) {
-            if (roads.isEmpty()) {
+            if (roads.isEmpty() && tileStore == null) {
                 JOptionPane.showMessageDialog(frame,
                         "No Road File Loaded.",
                         "Invalid Input",
@@ -985,7 +1335,7 @@ public class Director {
                 return;
             }
         } else {
-            if (roads.isEmpty() || terrains.isEmpty()) {
+            if ((roads.isEmpty() && tileStore == null) || terrains.isEmpty()) {
                 JOptionPane.showMessageDialog(frame,
                         "No Road File or Terrain File Loaded.",
                         "Invalid Input",
@@ -995,34 +1345,83 @@ public class Director {
         }
 
         clearPathLayer();
+        drawnPaths = null;
 
         try {
-            List<Traversable> trav = Transformer.transform(roads, events,
-                    speedLimits, terrains, underpasses, vehicles, safety,
-                    speed, distance, pathStartPoint, pathEndPoint, mode);
-            List<Path> paths = Pathfinder.getPaths(trav.get(0), trav.get(1));
-            if (paths.isEmpty()) {    
+            // while only events change, the last transform is kept and just
+            // the costs the events touch are recalculated
+            List<Traversable> trav;
+            List<Path> paths;
+            // another thread's transform must not come between this one and
+            // the reads of its results
+            synchronized (Transformer.class) {
+                tileLimitReached = false;
+                if (tileStore != null && mode != Transformer.TransformMode.TERRAIN_ONLY) {
+                    paths = findTiledPaths(mode, safety, speed, distance, vehicles);
+                    trav = transformedEnds;
+                } else {
+                    List<Object> request = Arrays.<Object>asList(mode, safety, speed, distance,
+                            vehicles, pathStartPoint, pathEndPoint);
+                    // a batch of routes may have been transformed since
+                    boolean isTransformed = request.equals(transformedRequest)
+                            && Transformer.getTraversables() == transformedTraversables;
+                    Map<Traversable, Double> changedCosts = applyPendingEventUpdates(isTransformed);
+                    if (!isTransformed) {
+                        transformedRequest = null;
+                        transformedEnds = Transformer.transform(roads, events,
+                                speedLimits, terrains, underpasses, vehicles, safety,
+                                speed, distance, pathStartPoint, pathEndPoint, mode);
+                        transformedTraversables = Transformer.getTraversables();
+                        transformedGraph = CompactGraph.compile(transformedTraversables);
+                        routeCache.clear();
+                        replanner = null;
+                        transformedRequest = request;
+                    } else if (!changedCosts.isEmpty()) {
+                        transformedGraph = transformedGraph.withCosts(changedCosts.keySet());
+                        routeCache.invalidate(changedCosts);
+                        // the replanner must follow the same costs as the graph
+                        if (replanner != null && isReplannerCurrent(mode)) {
+                            replanner.replan(transformedGraph, changedCosts.keySet());
+                        } else {
+                            replanner = null;
+                        }
+                    }
+                    trav = transformedEnds;
+                    paths = routeCache.get(trav.get(0), trav.get(1));
+                    if (paths == null) {
+                        QueryContext context = new QueryContext(transformedGraph);
+                        context.setMinCostPerKm(Transformer.getMinCostPerKm());
+                        context.setLandmarks(getLandmarks(mode));
+                        if (pathfinder.getNumPaths() == 1 && mode == Transformer.TransformMode.ROAD_ONLY
+                                && !Transformer.endsSplitRoads()) {
+                            // the road network only changes when roads are loaded, so the
+                            // hierarchy is built once and re-customized only when the
+                            // costs change. it can't be used when a road was split for
+                            // the start or end, and alternatives are found without it
+                            if (roadHierarchy == null) {
+                                roadHierarchy = new ContractionHierarchy(roads);
+                                hierarchyCostGeneration = -1;
+                            }
+                            if (hierarchyCostGeneration != Transformer.getCostGeneration()) {
+                                roadHierarchy.customize();
+                                hierarchyCostGeneration = Transformer.getCostGeneration();
+                            }
+                            context.setHierarchy(roadHierarchy);
+                        }
+                        paths = pathfinder.getPaths(context, trav.get(0), trav.get(1));
+                        routeCache.put(trav.get(0), trav.get(1), paths);
+                    }
+                }
+            }
+            if (paths.isEmpty() && tileLimitReached) {
+                JOptionPane.showMessageDialog(frame, "No paths could be found within " + MAX_TILE_RINGS + " tiles of the start and end points. A path leaving those tiles may exist.", "Warning", JOptionPane.WARNING_MESSAGE);
+            } else if (paths.isEmpty()) {    
                 JOptionPane.showMessageDialog(frame, "No paths could be found! Please make sure the start and end points are connected via loaded roads and/or loaded terrains such that it is possible to traverse from start to end with every selected vehicle.", "Warning", JOptionPane.WARNING_MESSAGE);
             } else {
-
-                Vector2D start = Logic2D.getStart(trav.get(0).getSegment());
-                Vector2D end = Logic2D.getStart(trav.get(1).getSegment());
-                SurfaceIcon startIcon = new SurfaceIcon(
-                        getWhiteTransparentBufferedImage("org/rowan/pathfinder/images/start.png"),
-                        Logic2D.vector2DToLatLon(start));
-                SurfaceIcon endIcon = new SurfaceIcon(
-                        getWhiteTransparentBufferedImage("org/rowan/pathfinder/images/end.png"),
-                        Logic2D.vector2DToLatLon(end));
-                startIcon.setMinSize(50);
-                startIcon.setOpacity(.7);
-                endIcon.setMinSize(50);
-                endIcon.setOpacity(.7);
-                for (int i = paths.size() - 1; i >= 0; i--) {
-                    paths.get(i).draw(pathLayer, i);
+                drawPaths(paths, trav);
+                if (tileLimitReached) {
+                    JOptionPane.showMessageDialog(frame, "Only the roads within " + MAX_TILE_RINGS + " tiles of the start and end points were searched. A cheaper path leaving those tiles may exist.", "Warning", JOptionPane.WARNING_MESSAGE);
                 }
-                
-                pathLayer.addRenderable(endIcon);
-                pathLayer.addRenderable(startIcon);
             }
         } catch (IllegalArgumentException ex) {
             ex.printStackTrace();
@@ -1034,6 +1433,342 @@ public class Director {
         }
     }
 
+    /**
+     * Find paths over the roads of the tile store, loading only the tiles
+     * around the start and end. The tiles searched start as those within one
+     * tile of the start and end, and grow by a ring of tiles at a time until
+     * no path leaving them can be cheaper than the cheapest path inside them.
+     * Every road is stored in the tile its start lies in, so a path that
+     * leaves the tiles must first reach a traversable that ends outside them;
+     * once the end costs no more to reach than every such exit, the paths
+     * found are the cheapest. Costs are still scaled by the values of the
+     * roads that are loaded, so they can differ slightly from those of a
+     * search over every road.
+     * No more than MAX_TILE_RINGS rings are searched, so memory stays bounded
+     * when the end is far away or can't be reached; tileLimitReached is set
+     * if the search stopped there before its paths were known to be the
+     * cheapest. The same tiles give the same set of roads, so a transform of
+     * them is reused.
+     * @param mode The mode of travel, which uses roads.
+     * @param safety The safety coefficient.
+     * @param speed The speed coefficient.
+     * @param distance The distance coefficient.
+     * @param vehicles The vehicles to be used in this path
+     * @return The paths found.
+     * @throws IOException If a tile can't be read.
+     */
+    private List<Path> findTiledPaths(Transformer.TransformMode mode, double safety,
+            double speed, double distance, Set<Vehicle> vehicles) throws IOException {
+        applyPendingEventUpdates(false);
+        transformedRequest = null;
+        routeCache.clear();
+        replanner = null;
+        int minX = Math.min(tileStore.tileOf(pathStartPoint.getX()), tileStore.tileOf(pathEndPoint.getX()));
+        int minY = Math.min(tileStore.tileOf(pathStartPoint.getY()), tileStore.tileOf(pathEndPoint.getY()));
+        int maxX = Math.max(tileStore.tileOf(pathStartPoint.getX()), tileStore.tileOf(pathEndPoint.getX()));
+        int maxY = Math.max(tileStore.tileOf(pathStartPoint.getY()), tileStore.tileOf(pathEndPoint.getY()));
+        for (int ring = 1; ; ring++) {
+            int[] range = {minX - ring, minY - ring, maxX + ring, maxY + ring};
+            if (!Arrays.equals(range, tileRange)) {
+                tileRoads = tileStore.getRoads(range[0], range[1], range[2], range[3]);
+                tileRange = range;
+            }
+            transformedEnds = Transformer.transform(tileRoads, events,
+                    speedLimits, terrains, underpasses, vehicles, safety,
+                    speed, distance, pathStartPoint, pathEndPoint, mode);
+            transformedTraversables = Transformer.getTraversables();
+            transformedGraph = CompactGraph.compile(transformedTraversables);
+            if (tileStore.covers(range[0], range[1], range[2], range[3])
+                    || isCheapestInTiles(range)) {
+                break;
+            }
+            if (ring == MAX_TILE_RINGS) {
+                tileLimitReached = true;
+                break;
+            }
+        }
+        QueryContext context = new QueryContext(transformedGraph);
+        context.setMinCostPerKm(Transformer.getMinCostPerKm());
+        List<Path> paths = pathfinder.getPaths(context, transformedEnds.get(0), transformedEnds.get(1));
+        transformedRequest = Arrays.<Object>asList(mode, safety, speed, distance,
+                vehicles, pathStartPoint, pathEndPoint);
+        return paths;
+    }
+
+    /**
+     * Returns whether no path leaving a range of tiles can be cheaper than
+     * the cheapest path inside it: the end costs no more to reach than any
+     * traversable that ends outside the range, or neither can be reached.
+     * @param range The lowest column, lowest row, highest column and highest
+     *              row of the tiles in the transformed graph.
+     * @return True if the cheapest path in the transformed graph is the
+     *         cheapest over every road.
+     */
+    private boolean isCheapestInTiles(int[] range) {
+        DijkstraSearch search = new DijkstraSearch(transformedGraph);
+        int target = transformedGraph.getId(transformedEnds.get(1));
+        search.run(transformedGraph.getId(transformedEnds.get(0)), -1);
+        double exit = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < search.getSettledCount(); i++) {
+            int node = search.getSettled(i);
+            Vector2D end = Logic2D.getEnd(transformedGraph.getTraversable(node).getSegment());
+            int x = tileStore.tileOf(end.getX());
+            int y = tileStore.tileOf(end.getY());
+            if (x < range[0] || y < range[1] || x > range[2] || y > range[3]) {
+                exit = Math.min(exit, search.getDistance(node));
+            }
+        }
+        if (!search.isSettled(target)) {
+            // without a reachable exit the end can't be reached at all
+            return exit == Double.POSITIVE_INFINITY;
+        }
+        return search.getDistance(target) <= exit;
+    }
+
+    /**
+     * Bring the drawn paths up to date with the events received since they
+     * were found, without transforming again. The optimal path is repaired by
+     * a LifelongPlanningAStar that keeps its search between calls, and the
+     * path layer is only repainted if the drawn optimal path is no longer the
+     * cheapest one, or any drawn path can no longer be traversed or costs
+     * more than when it was drawn.
+     */
+    public synchronized void replanPaths() {
+        if (transformedRequest == null || drawnPaths == null) {
+            return;
+        }
+        try {
+            synchronized (Transformer.class) {
+                if (Transformer.getTraversables() != transformedTraversables) {
+                    // something else was transformed since, so the events
+                    // wait for the next request to transform again
+                    return;
+                }
+                Map<Traversable, Double> changedCosts = applyPendingEventUpdates(true);
+                if (changedCosts.isEmpty()) {
+                    return;
+                }
+                transformedGraph = transformedGraph.withCosts(changedCosts.keySet());
+                routeCache.invalidate(changedCosts);
+                List<Traversable> trav = transformedEnds;
+                Transformer.TransformMode mode = (Transformer.TransformMode) transformedRequest.get(0);
+                double costPerKm = Transformer.getMinCostPerKm();
+                Landmarks landmarks = getLandmarks(mode);
+                if (replanner == null || !isReplannerCurrent(mode)) {
+                    // a heuristic made for lower costs could overestimate
+                    replanner = new LifelongPlanningAStar(transformedGraph);
+                    replannerCostPerKm = costPerKm;
+                    replannerLandmarks = landmarks;
+                    Heuristic heuristic = landmarks != null
+                            ? landmarks.towards(transformedGraph, trav.get(0), trav.get(1))
+                            : new GreatCircleHeuristic(trav.get(1), costPerKm);
+                    replanner.plan(transformedGraph.getId(trav.get(0)),
+                            transformedGraph.getId(trav.get(1)), heuristic);
+                } else {
+                    replanner.replan(transformedGraph, changedCosts.keySet());
+                }
+                boolean isUnchanged = drawnPaths.isEmpty()
+                        ? replanner.getDistance() == Double.POSITIVE_INFINITY
+                        : isCheapest(drawnPaths.get(0).getRoute(), replanner.getDistance())
+                        && !hasDrawnPathWorsened();
+                if (isUnchanged) {
+                    return;
+                }
+
+                List<Traversable> best = replanner.getRoute();
+                List<Path> paths = new ArrayList<Path>();
+                if (best != null) {
+                    QueryContext context = new QueryContext(transformedGraph);
+                    context.setMinCostPerKm(costPerKm);
+                    context.setLandmarks(landmarks);
+                    paths = pathfinder.getPaths(context, best);
+                }
+                routeCache.put(trav.get(0), trav.get(1), paths);
+                clearPathLayer();
+                drawnPaths = paths;
+                if (!paths.isEmpty()) {
+                    drawPaths(paths, trav);
+                }
+                wwd.redraw();
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the landmarks that direct searches over the transformed graph.
+     * Only the road network is kept between requests; the other modes lay
+     * out a new network for every request, and computing its landmarks would
+     * cost more than they save.
+     * @param mode The mode of the last transform.
+     * @return The landmarks of the road network, or null in the other modes.
+     */
+    private static Landmarks getLandmarks(Transformer.TransformMode mode) {
+        return mode == Transformer.TransformMode.ROAD_ONLY ? Transformer.getLandmarks() : null;
+    }
+
+    /**
+     * Returns whether the replanner's heuristic is still a lower bound for
+     * the current costs: its landmarks are still those of the network, or,
+     * without landmarks, the lowest cost per kilometer has not dropped.
+     * @param mode The mode of the last transform.
+     * @return True if the replanner may be kept.
+     */
+    private boolean isReplannerCurrent(Transformer.TransformMode mode) {
+        if (replannerLandmarks != null) {
+            return getLandmarks(mode) == replannerLandmarks;
+        }
+        return Transformer.getMinCostPerKm() >= replannerCostPerKm;
+    }
+
+    /**
+     * Returns whether any drawn path can no longer be traversed or costs more
+     * than when it was drawn.
+     * @return True if a drawn path has worsened.
+     */
+    private boolean hasDrawnPathWorsened() {
+        for (int i = 0; i < drawnPaths.size(); i++) {
+            double cost = getRouteCost(drawnPaths.get(i).getRoute());
+            if (cost > drawnCosts[i] + 1e-9 * Math.max(1, drawnCosts[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the cost of a route with the current costs of its traversables.
+     * @param route The route, from start to end.
+     * @return The sum of the costs of every traversable after the first, or
+     *         Double.POSITIVE_INFINITY if one of them can't be traversed.
+     */
+    private static double getRouteCost(List<Traversable> route) {
+        double cost = 0;
+        for (int i = 1; i < route.size(); i++) {
+            double c = route.get(i).getCost();
+            if (c < 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            cost += c;
+        }
+        return cost;
+    }
+
+    /**
+     * Returns whether a route still costs no more than the cheapest route
+     * between its ends.
+     * @param route The route, from start to end.
+     * @param cheapest The cost of the cheapest route.
+     * @return True if the route can be traversed and is still the cheapest.
+     */
+    private boolean isCheapest(List<Traversable> route, double cheapest) {
+        double cost = 0;
+        for (int i = 1; i < route.size(); i++) {
+            int id = transformedGraph.getId(route.get(i));
+            if (id < 0) {
+                return false;
+            }
+            double c = transformedGraph.getCost(id);
+            if (c < 0) {
+                return false;
+            }
+            cost += c;
+        }
+        return cost <= cheapest + 1e-9 * Math.max(1, cheapest);
+    }
+
+    /**
+     * Draw paths on the path layer, with icons at their start and end.
+     * @param paths The paths, optimal path first.
+     * @param trav The start and end traversables.
+     * @throws IOException If an icon can't be read.
+     */
+    private void drawPaths(List<Path> paths, List<Traversable> trav) throws IOException {
+        Vector2D start = Logic2D.getStart(trav.get(0).getSegment());
+        Vector2D end = Logic2D.getStart(trav.get(1).getSegment());
+        SurfaceIcon startIcon = new SurfaceIcon(
+                getWhiteTransparentBufferedImage("org/rowan/pathfinder/images/start.png"),
+                Logic2D.vector2DToLatLon(start));
+        SurfaceIcon endIcon = new SurfaceIcon(
+                getWhiteTransparentBufferedImage("org/rowan/pathfinder/images/end.png"),
+                Logic2D.vector2DToLatLon(end));
+        startIcon.setMinSize(50);
+        startIcon.setOpacity(.7);
+        endIcon.setMinSize(50);
+        endIcon.setOpacity(.7);
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            paths.get(i).draw(pathLayer, i);
+        }
+
+        pathLayer.addRenderable(endIcon);
+        pathLayer.addRenderable(startIcon);
+        drawnCosts = new double[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            drawnCosts[i] = getRouteCost(paths.get(i).getRoute());
+        }
+        drawnPaths = paths;
+    }
+
+    /**
+     * Attach the events received since the last request, and recalculate the
+     * decay of all events if it has changed. Runs on the thread that finds
+     * paths, so the transformed network is never changed during a search.
+     * @param isTransformed True if the last transform is kept, in which case
+     *                      only the costs the events touch are recalculated.
+     * @return The traversables whose cost changed, mapped to their cost
+     *         before the change. Empty if the network will be transformed.
+     */
+    private Map<Traversable, Double> applyPendingEventUpdates(boolean isTransformed) {
+        Map<Traversable, Double> changedCosts = new HashMap<Traversable, Double>();
+        List<Event> received;
+        synchronized (pendingEvents) {
+            received = new ArrayList<Event>(pendingEvents);
+            pendingEvents.clear();
+        }
+        boolean decayed = pendingDecay;
+        pendingDecay = false;
+        events.addAll(received);
+        if (!isTransformed) {
+            return changedCosts;
+        }
+        for (Event e : received) {
+            mergeCostChanges(changedCosts, Transformer.addEvent(e));
+        }
+        if (decayed) {
+            for (Event e : events) {
+                mergeCostChanges(changedCosts, Transformer.updateEvent(e));
+            }
+        }
+        return changedCosts;
+    }
+
+    /**
+     * Add cost changes to a set of earlier changes, keeping the earliest
+     * previous cost of every traversable.
+     * @param changedCosts The earlier changes.
+     * @param newChanges The changes to add.
+     */
+    private static void mergeCostChanges(Map<Traversable, Double> changedCosts,
+            Map<Traversable, Double> newChanges) {
+        for (Map.Entry<Traversable, Double> change : newChanges.entrySet()) {
+            if (!changedCosts.containsKey(change.getKey())) {
+                changedCosts.put(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+    /**
+     * Recalculate the decay of every event before the next path is found,
+     * for example after the decay settings have changed.
+     */
+    public void updateEventDecay() {
+        pendingDecay = true;
+        if (drawnPaths != null) {
+            new ReplanWorker(this).execute();
+        }
+    }
+
     public void clearPathLayer() {
         pathLayer.removeAllRenderables();
     }
@@ -1111,6 +1846,11 @@ public class Director {
      */
     public void addNewEventToQueue(Event e){
         receivedEventQueue.add(e);
+        // the event affects routing right away, even before it is drawn
+        pendingEvents.add(e);
+        if (drawnPaths != null) {
+            new ReplanWorker(this).execute();
+        }
     }
     
     private BufferedImage getWhiteTransparentBufferedImage(String imageLocation) throws IOException {
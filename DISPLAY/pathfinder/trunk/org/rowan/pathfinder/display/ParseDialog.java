@@ -6,6 +6,8 @@ import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JFileChooser;
@@ -45,7 +47,7 @@ final class ParseDialog extends JDialog {
         Dimension dim100by25 = new Dimension(100, 25);
         Dimension dim125by25 = new Dimension(125, 25);
         Dimension dim450by25 = new Dimension(450, 25);
-        Dimension dimPanel = new Dimension(835, 255);
+        Dimension dimPanel = new Dimension(835, 290);
         int vPad = 10;
         int hPad = 5;
         int leftSidePad = 20;
@@ -104,6 +106,8 @@ final class ParseDialog extends JDialog {
         eventLoadButton.setPreferredSize(dim100by25);
         underpassLoadButton.setPreferredSize(dim100by25);
         speedlimitLoadButton.setPreferredSize(dim100by25);
+        JButton loadAllButton = new JButton("Load All");
+        loadAllButton.setPreferredSize(dim100by25);
         
         // intialize the file choosers
         final JFileChooser roadFileChooser = new JFileChooser();
@@ -389,6 +393,59 @@ final class ParseDialog extends JDialog {
             }
         });
         
+        loadAllButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                JTextField[] textFields = {roadTextField, vehicleTextField, terrainTextField,
+                    eventTextField, underpassTextField, speedlimitTextField};
+                ScenarioLoader.FileType[] types = {ScenarioLoader.FileType.ROADS,
+                    ScenarioLoader.FileType.VEHICLES, ScenarioLoader.FileType.TERRAINS,
+                    ScenarioLoader.FileType.EVENTS, ScenarioLoader.FileType.UNDERPASSES,
+                    ScenarioLoader.FileType.SPEED_LIMITS};
+                boolean[] loaded = {!director.getRoads().isEmpty(), !director.getVehicles().isEmpty(),
+                    !director.getTerrains().isEmpty(), !director.getEvents().isEmpty(),
+                    !director.getUnderpasses().isEmpty(), !director.getSpeedLimits().isEmpty()};
+                List<ScenarioLoader.FileType> chosenTypes = new ArrayList<ScenarioLoader.FileType>();
+                List<File> chosenFiles = new ArrayList<File>();
+                boolean anyLoaded = false;
+                for (int i = 0; i < textFields.length; i++) {
+                    if (textFields[i].getText().trim().equals("")) {
+                        continue;
+                    }
+                    File file = new File(textFields[i].getText());
+                    if (!file.exists()) {
+                        JOptionPane.showMessageDialog(frame, file.getAbsolutePath() + " is not a valid file!",
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    chosenTypes.add(types[i]);
+                    chosenFiles.add(file);
+                    anyLoaded |= loaded[i];
+                }
+                if (chosenFiles.isEmpty()) {
+                    JOptionPane.showMessageDialog(frame, "No file specified!", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                boolean shouldOverwrite = true;
+                if (anyLoaded) {
+                    int x = JOptionPane.showOptionDialog(frame, "Some of the data has already been loaded. "
+                            + "Would you like to overwrite it or append to it?",
+                            "Would you like to overwrite?", JOptionPane.YES_NO_OPTION,
+                            JOptionPane.QUESTION_MESSAGE, null, new String[]{"Overwite", "Append"},
+                            "Append");
+                    shouldOverwrite = (x == JOptionPane.YES_OPTION);
+                    if (x == JOptionPane.CLOSED_OPTION || x == JOptionPane.CANCEL_OPTION) {
+                        return;
+                    }
+                }
+                ScenarioLoader loader = new ScenarioLoader(director, frame, shouldOverwrite);
+                for (int i = 0; i < chosenFiles.size(); i++) {
+                    loader.addFile(chosenTypes.get(i), chosenFiles.get(i));
+                }
+                loader.start();
+            }
+        });
+        
         // add the components to the panel
         panel.add(roadLabel);
         panel.add(roadTextField);
@@ -414,6 +471,7 @@ final class ParseDialog extends JDialog {
         panel.add(speedlimitTextField);
         panel.add(speedlimitBrowseButton);
         panel.add(speedlimitLoadButton);
+        panel.add(loadAllButton);
         
         // lay out the components in the panel
         putRowContraints(layout, panel, roadLabel, roadTextField, roadBrowseButton, roadLoadButton, panel, true, vPad, hPad, leftSidePad);
@@ -422,6 +480,8 @@ final class ParseDialog extends JDialog {
         putRowContraints(layout, panel, eventLabel, eventTextField, eventBrowseButton, eventLoadButton, terrainLabel, false, vPad, hPad, leftSidePad);
         putRowContraints(layout, panel, underpassLabel, underpassTextField, underpassBrowseButton, underpassLoadButton, eventLabel, false, vPad, hPad, leftSidePad);
         putRowContraints(layout, panel, speedlimitLabel, speedlimitTextField, speedlimitBrowseButton, speedlimitLoadButton, underpassLabel, false, vPad, hPad, leftSidePad);
+        layout.putConstraint(SpringLayout.NORTH, loadAllButton, vPad, SpringLayout.SOUTH, speedlimitLabel);
+        layout.putConstraint(SpringLayout.WEST, loadAllButton, 0, SpringLayout.WEST, speedlimitLoadButton);
 
         // set up the dialog properties and return it
         setMinimumSize(dimPanel);
@@ -202,6 +202,7 @@ final class PreferencesDialog extends JDialog {
                 } catch (NumberFormatException ex) {
                     // ignore
                 }
+                director.updateEventDecay();
                 
                 releaseInstance();
             }
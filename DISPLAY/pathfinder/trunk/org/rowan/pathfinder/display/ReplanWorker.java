@@ -0,0 +1,22 @@
+package org.rowan.pathfinder.display;
+
+import javax.swing.SwingWorker;
+
+/**
+ * ReplanWorker is a threaded Swing Worker that brings the drawn paths up to
+ * date after new events have been received.
+ */
+public class ReplanWorker extends SwingWorker<String, Void> {
+
+    private Director director;
+
+    public ReplanWorker(Director director) {
+        this.director = director;
+    }
+
+    @Override
+    protected String doInBackground() throws Exception {
+        director.replanPaths();
+        return null;
+    }
+}
@@ -0,0 +1,459 @@
+package org.rowan.pathfinder.display;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import org.rowan.pathfinder.parser.EventParser;
+import org.rowan.pathfinder.parser.PFParseException;
+import org.rowan.pathfinder.parser.PFParseLogException;
+import org.rowan.pathfinder.parser.RoadParser;
+import org.rowan.pathfinder.parser.RoadSink;
+import org.rowan.pathfinder.parser.SpeedLimitParser;
+import org.rowan.pathfinder.parser.TerrainParser;
+import org.rowan.pathfinder.parser.UnderpassParser;
+import org.rowan.pathfinder.parser.VehicleParser;
+import org.rowan.pathfinder.parser.XMLParser;
+import org.rowan.pathfinder.parser.XMLSubParser;
+import org.rowan.pathfinder.pathfinder.Event;
+import org.rowan.pathfinder.pathfinder.RoadSegment;
+import org.rowan.pathfinder.pathfinder.SpeedLimit;
+import org.rowan.pathfinder.pathfinder.Terrain;
+import org.rowan.pathfinder.pathfinder.Underpass;
+import org.rowan.pathfinder.pathfinder.Vehicle;
+
+/**
+ * Class <code>ScenarioLoader</code> is a threaded Swing Worker that loads
+ * several files into the director at once. The files are parsed at the same
+ * time, each on a thread of its own, while a progress monitor shows how much
+ * has been parsed and lets the user cancel. Once every file is parsed, all
+ * the data is put into the director in one step, so a path is found either
+ * with none of the new data or with all of it, and a single summary lists
+ * the warnings and errors of every file. A file that fails is left out,
+ * while the rest are still loaded. Cancelling stops the parsing and leaves
+ * the director as it was.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class ScenarioLoader extends SwingWorker<Void, String> {
+
+    /**
+     * The kinds of file that can be loaded.
+     */
+    public enum FileType {
+
+        ROADS("Road"), VEHICLES("Vehicle"), TERRAINS("Terrain"), EVENTS("Event"),
+        UNDERPASSES("Underpass"), SPEED_LIMITS("Speed limit");
+        /** The name of the kind of file, as shown to the user */
+        private final String name;
+
+        private FileType(String name) {
+            this.name = name;
+        }
+    }
+
+    /** How often the progress monitor is checked for a cancel, in milliseconds */
+    private static final int CANCEL_POLL_MILLIS = 200;
+    private Director director;
+    private JFrame frame;
+    private boolean shouldOverwrite;
+    /** The files to load, in the order they were added */
+    private final List<Part> parts = new ArrayList<Part>();
+    /** Shows the progress, created once the loader is started */
+    private ProgressMonitor monitor;
+    /** Checks the progress monitor for a cancel */
+    private Timer cancelTimer;
+
+    /**
+     * Create a new loader.
+     * @param director The director to load into.
+     * @param frame The overall frame of the Main GUI.
+     * @param shouldOverwrite True if data should be overwritten, false otherwise
+     */
+    public ScenarioLoader(Director director, JFrame frame, boolean shouldOverwrite) {
+        this.director = director;
+        this.frame = frame;
+        this.shouldOverwrite = shouldOverwrite;
+    }
+
+    /**
+     * Add a file to load. Several files of the same kind may be added, and
+     * what they hold is loaded together. Files must be added before the
+     * loader is started.
+     * @param type The kind of file.
+     * @param file The file.
+     */
+    public void addFile(FileType type, File file) {
+        parts.add(new Part(type, file));
+    }
+
+    /**
+     * Start loading the files, showing the progress over the frame. Must be
+     * called on the event dispatch thread.
+     */
+    public void start() {
+        monitor = new ProgressMonitor(frame, "Loading " + parts.size() + " file(s)", "", 0, 100);
+        monitor.setMillisToDecideToPopup(0);
+        monitor.setMillisToPopup(0);
+        addPropertyChangeListener(new PropertyChangeListener() {
+
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if ("progress".equals(evt.getPropertyName())) {
+                    monitor.setProgress((Integer) evt.getNewValue());
+                }
+            }
+        });
+        cancelTimer = new Timer(CANCEL_POLL_MILLIS, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (monitor.isCanceled()) {
+                    cancel(true);
+                }
+            }
+        });
+        cancelTimer.start();
+        execute();
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        if (parts.isEmpty()) {
+            return null;
+        }
+        long totalBytes = 0;
+        for (Part part : parts) {
+            totalBytes += Math.max(1, part.file.length());
+        }
+        int threads = Math.min(parts.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<Part> completion = new ExecutorCompletionService<Part>(executor);
+            for (final Part part : parts) {
+                completion.submit(new Callable<Part>() {
+
+                    @Override
+                    public Part call() throws Exception {
+                        part.parse();
+                        return part;
+                    }
+                });
+            }
+            long parsedBytes = 0;
+            for (int i = 0; i < parts.size(); i++) {
+                Part part;
+                try {
+                    part = completion.take().get();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof CancellationException) {
+                        return null;
+                    }
+                    throw ex;
+                }
+                parsedBytes += Math.max(1, part.file.length());
+                setProgress((int) (100 * parsedBytes / totalBytes));
+                publish(part.file.getName());
+            }
+        } finally {
+            // parses still running see they were cancelled and stop
+            executor.shutdownNow();
+        }
+        if (isCancelled()) {
+            return null;
+        }
+        merge();
+        return null;
+    }
+
+    /**
+     * Put what the files held into the director, leaving out the files that
+     * failed.
+     */
+    @SuppressWarnings("unchecked")
+    private void merge() {
+        Set<RoadSegment> roads = null;
+        Set<Vehicle> vehicles = null;
+        Set<Terrain> terrains = null;
+        Set<Event> events = null;
+        Set<Underpass> underpasses = null;
+        Set<SpeedLimit> speedLimits = null;
+        for (Part part : parts) {
+            if (part.parsed == null) {
+                continue;
+            }
+            switch (part.type) {
+                case ROADS:
+                    roads = union(roads, (Set<RoadSegment>) part.parsed);
+                    break;
+                case VEHICLES:
+                    vehicles = union(vehicles, (Set<Vehicle>) part.parsed);
+                    break;
+                case TERRAINS:
+                    terrains = union(terrains, (Set<Terrain>) part.parsed);
+                    break;
+                case EVENTS:
+                    events = union(events, (Set<Event>) part.parsed);
+                    break;
+                case UNDERPASSES:
+                    underpasses = union(underpasses, (Set<Underpass>) part.parsed);
+                    break;
+                case SPEED_LIMITS:
+                    speedLimits = union(speedLimits, (Set<SpeedLimit>) part.parsed);
+                    break;
+            }
+        }
+        director.mergeScenario(roads, vehicles, terrains, events, underpasses, speedLimits,
+                shouldOverwrite);
+    }
+
+    /**
+     * Returns the union of two sets, reusing the first if it can.
+     * @param set The first set, or null.
+     * @param parsed The second set.
+     * @return The union.
+     */
+    private static <T> Set<T> union(Set<T> set, Set<T> parsed) {
+        if (set == null) {
+            return parsed;
+        }
+        set.addAll(parsed);
+        return set;
+    }
+
+    @Override
+    protected void process(List<String> names) {
+        monitor.setNote("Parsed " + names.get(names.size() - 1));
+    }
+
+    @Override
+    protected void done() {
+        cancelTimer.stop();
+        monitor.close();
+        if (isCancelled()) {
+            JOptionPane.showMessageDialog(frame, "Loading was cancelled. Nothing was loaded.",
+                    "Cancelled", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        try {
+            get();
+        } catch (Exception ex) {
+            Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+            JOptionPane.showMessageDialog(frame, "A fatal error occured while loading. Nothing was loaded."
+                    + "\nError: " + (cause.getMessage() == null ? "Unknown" : cause.getMessage()),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        showSummary();
+    }
+
+    /**
+     * Show one message with the result, warnings and errors of every file.
+     */
+    private void showSummary() {
+        boolean anyWarnings = false;
+        boolean anyErrors = false;
+        String details = "";
+        for (Part part : parts) {
+            details += "\n\n" + part.type.name + " file " + part.file.getName() + ": ";
+            if (part.parsed == null) {
+                anyErrors = true;
+                details += "nothing was parsed.";
+            } else {
+                details += part.parsed.size() + " parsed";
+                if (part.log.isEmpty()) {
+                    details += ".";
+                } else {
+                    anyWarnings = true;
+                    details += " with " + part.log.size() + " warning(s).";
+                }
+            }
+            for (int i = 0; i < part.log.size(); i++) {
+                details += "\n" + (i + 1) + ") " + part.log.get(i);
+            }
+        }
+        String msg;
+        String msgTitle;
+        int msgType;
+        if (anyErrors) {
+            msgTitle = "Error";
+            msg = "One or more files could not be parsed, and the files listed below without data were not loaded.\n"
+                    + "The errors and warnings of each file are in chronological order.";
+            msgType = JOptionPane.ERROR_MESSAGE;
+        } else if (anyWarnings) {
+            msgTitle = "Warning";
+            msg = "One or more warnings occured during the parsing process.\n"
+                    + "The warnings of each file are in chronological order.";
+            msgType = JOptionPane.WARNING_MESSAGE;
+        } else {
+            msgTitle = "Success";
+            msg = "Parsing was successful!";
+            msgType = JOptionPane.INFORMATION_MESSAGE;
+        }
+        JOptionPane.showMessageDialog(frame, msg + details, msgTitle, msgType);
+    }
+
+    /**
+     * Throws if the loader was cancelled, to stop the parse calling it.
+     */
+    private void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * A file to load, and what came of parsing it.
+     */
+    private class Part {
+
+        /** The kind of file */
+        final FileType type;
+        /** The file */
+        final File file;
+        /** What the file held, null if it couldn't be parsed */
+        Set<?> parsed;
+        /** The warnings, and the errors if the file couldn't be parsed */
+        List<String> log = Collections.emptyList();
+
+        Part(FileType type, File file) {
+            this.type = type;
+            this.file = file;
+        }
+
+        /**
+         * Parse the file, keeping what it held or why it couldn't be parsed.
+         * @throws CancellationException If the loader was cancelled.
+         */
+        void parse() {
+            try {
+                Set<?> data;
+                if (type == FileType.ROADS) {
+                    final Set<RoadSegment> roads = new HashSet<RoadSegment>();
+                    log = RoadParser.parseParallel(file, null, new RoadSink() {
+
+                        @Override
+                        public void addRoad(RoadSegment road) {
+                            checkCancelled();
+                            roads.add(road);
+                        }
+                    });
+                    data = roads;
+                } else {
+                    data = parseXML();
+                }
+                if (data.isEmpty()) {
+                    log = Director.LOG_NOTHING_PARSED;
+                    return;
+                }
+                parsed = data;
+            } catch (CancellationException ex) {
+                throw ex;
+            } catch (PFParseLogException ex) {
+                log = ex.getLog();
+            } catch (Exception ex) {
+                log = Collections.singletonList("A fatal error occured. Please make sure the file is in the correct format."
+                        + "\nError: " + (ex.getMessage() == null ? "Unknown" : ex.getMessage()));
+            } catch (Error er) {
+                log = Collections.singletonList("A fatal error occured. Please make sure all of Pathfinder's "
+                        + "dependencies are in the proper location."
+                        + "\nError: " + (er.getMessage() == null ? "Unknown" : er.getMessage()));
+            }
+        }
+
+        /**
+         * Parse the file as XML with the sub parser of its kind.
+         * @return What the file held.
+         * @throws Exception If the file can't be read or has an error.
+         */
+        private Set<?> parseXML() throws Exception {
+            switch (type) {
+                case VEHICLES: {
+                    VehicleParser parser = new VehicleParser();
+                    log = XMLParser.parse(new CancellableParser(parser), file);
+                    return parser.extractVehicles();
+                }
+                case TERRAINS: {
+                    TerrainParser parser = new TerrainParser();
+                    log = XMLParser.parse(new CancellableParser(parser), file);
+                    checkCancelled();
+                    director.loadTerrainNeighbors(file, parser.extractTerrains());
+                    return parser.extractTerrains();
+                }
+                case EVENTS: {
+                    EventParser parser = new EventParser();
+                    log = XMLParser.parse(new CancellableParser(parser), file);
+                    return parser.extractEvents();
+                }
+                case UNDERPASSES: {
+                    UnderpassParser parser = new UnderpassParser();
+                    log = XMLParser.parse(new CancellableParser(parser), file);
+                    return parser.extractUnderpasses();
+                }
+                default: {
+                    SpeedLimitParser parser = new SpeedLimitParser();
+                    log = XMLParser.parse(new CancellableParser(parser), file);
+                    return parser.extractSpeedLimits();
+                }
+            }
+        }
+    }
+
+    /**
+     * A sub parser that stops the parse once the loader is cancelled, and
+     * otherwise passes everything on to another.
+     */
+    private class CancellableParser implements XMLSubParser {
+
+        /** The parser passed to */
+        private final XMLSubParser parser;
+
+        CancellableParser(XMLSubParser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void startElement(String tag, int line, int col) throws PFParseException {
+            checkCancelled();
+            parser.startElement(tag, line, col);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void endElement(String tag, int line, int col) throws PFParseException {
+            parser.endElement(tag, line, col);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void text(String str, int line, int col) throws PFParseException {
+            parser.text(str, line, col);
+        }
+    }
+}
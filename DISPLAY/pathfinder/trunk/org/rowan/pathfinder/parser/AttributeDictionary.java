@@ -0,0 +1,179 @@
+package org.rowan.pathfinder.parser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+
+/**
+ * Class <code>AttributeDictionary</code> holds the attributes of a tag for an
+ * <code>OSMSubParser</code>, in arrays that are reused for every tag of a
+ * document. The names are usually interned, so they are looked up by
+ * identity before equals(). Values added by the tokenizer are kept as chars
+ * and only made into a String when they are asked for, since most sub
+ * parsers read a few of the attributes of a tag.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+class AttributeDictionary extends Dictionary<String, String> {
+
+    /** The names of the attributes */
+    private String[] keys = new String[8];
+    /** The values of the attributes, null while a value is only chars */
+    private String[] values = new String[8];
+    /** The position of each value in chars */
+    private int[] starts = new int[8];
+    /** The length of each value in chars */
+    private int[] lengths = new int[8];
+    /** The chars of the values added by add() */
+    private char[] chars = new char[256];
+    /** The number of chars used */
+    private int charCount;
+    /** The number of attributes */
+    private int count;
+
+    /**
+     * Remove every attribute.
+     */
+    void clear() {
+        Arrays.fill(keys, 0, count, null);
+        Arrays.fill(values, 0, count, null);
+        count = 0;
+        charCount = 0;
+    }
+
+    /**
+     * Add an attribute whose name is interned, replacing any attribute of the
+     * same name. The value is copied, but not made into a String until it is
+     * asked for.
+     * @param key The interned name of the attribute.
+     * @param value The chars of the value.
+     * @param length The number of chars.
+     */
+    void add(String key, char[] value, int length) {
+        int i = 0;
+        while (i < count && keys[i] != key) {
+            i++;
+        }
+        if (i == count) {
+            grow();
+            keys[count++] = key;
+        }
+        if (charCount + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+        }
+        System.arraycopy(value, 0, chars, charCount, length);
+        values[i] = null;
+        starts[i] = charCount;
+        lengths[i] = length;
+        charCount += length;
+    }
+
+    /**
+     * Returns the position of an attribute.
+     * @param key The name of the attribute.
+     * @return The position, or -1 if there is no such attribute.
+     */
+    private int indexOf(Object key) {
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value at a position, making it into a String the first
+     * time.
+     * @param i The position.
+     * @return The value.
+     */
+    private String valueAt(int i) {
+        if (values[i] == null) {
+            values[i] = new String(chars, starts[i], lengths[i]);
+        }
+        return values[i];
+    }
+
+    /**
+     * Make room for one more attribute.
+     */
+    private void grow() {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+            starts = Arrays.copyOf(starts, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public Enumeration<String> keys() {
+        return Collections.enumeration(Arrays.asList(Arrays.copyOf(keys, count)));
+    }
+
+    @Override
+    public Enumeration<String> elements() {
+        for (int i = 0; i < count; i++) {
+            valueAt(i);
+        }
+        return Collections.enumeration(Arrays.asList(Arrays.copyOf(values, count)));
+    }
+
+    @Override
+    public String get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : valueAt(i);
+    }
+
+    @Override
+    public String put(String key, String value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        int i = indexOf(key);
+        if (i >= 0) {
+            String old = valueAt(i);
+            values[i] = value;
+            return old;
+        }
+        grow();
+        keys[count] = key;
+        values[count++] = value;
+        return null;
+    }
+
+    @Override
+    public String remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        String old = valueAt(i);
+        count--;
+        System.arraycopy(keys, i + 1, keys, i, count - i);
+        System.arraycopy(values, i + 1, values, i, count - i);
+        System.arraycopy(starts, i + 1, starts, i, count - i);
+        System.arraycopy(lengths, i + 1, lengths, i, count - i);
+        keys[count] = null;
+        values[count] = null;
+        return old;
+    }
+}
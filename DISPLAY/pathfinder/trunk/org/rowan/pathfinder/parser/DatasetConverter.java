@@ -0,0 +1,168 @@
+package org.rowan.pathfinder.parser;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import org.rowan.pathfinder.pathfinder.Event;
+import org.rowan.pathfinder.pathfinder.RoadSegment;
+import org.rowan.pathfinder.pathfinder.Terrain;
+
+/**
+ * Class <code>DatasetConverter</code> converts between the OSM and XML files
+ * Pathfinder parses and its binary datasets. Importing parses each file with
+ * its sub parser and writes everything parsed to one dataset, then reads the
+ * dataset back and prints how long parsing and reading took. Exporting reads
+ * a dataset and writes its events and terrains to XML files in a directory,
+ * in the format Director saves them in; the other kinds of data have no XML
+ * writer, so only their counts are printed.
+ *
+ * Usage:
+ * DatasetConverter import dataset [-roads file] [-vehicles file]
+ * [-terrains file] [-events file] [-underpasses file] [-speedlimits file]...
+ * DatasetConverter export dataset directory
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class DatasetConverter {
+
+    /** How the converter is used */
+    private static final String USAGE = "Usage:\n"
+            + "  DatasetConverter import dataset [-roads file] [-vehicles file] [-terrains file]\n"
+            + "                   [-events file] [-underpasses file] [-speedlimits file]...\n"
+            + "  DatasetConverter export dataset directory";
+
+    /**
+     * Run the converter.
+     * @param args The arguments, as shown by the usage.
+     * @throws Exception If a file can't be parsed, read or written.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("import") && args.length % 2 == 0) {
+            importFiles(new File(args[1]), args);
+        } else if (args.length == 3 && args[0].equals("export")) {
+            exportFiles(new File(args[1]), new File(args[2]));
+        } else {
+            System.err.println(USAGE);
+        }
+    }
+
+    /**
+     * Parse files and write what they hold to a dataset.
+     * @param dataset The dataset to write.
+     * @param args The arguments, whose pairs after the first two name the
+     *             kind of each file and the file.
+     * @throws Exception If a file can't be parsed or the dataset written.
+     */
+    private static void importFiles(File dataset, String[] args) throws Exception {
+        final Set<RoadSegment> roads = new HashSet<RoadSegment>();
+        TerrainParser terrainParser = new TerrainParser();
+        EventParser eventParser = new EventParser();
+        SpeedLimitParser speedLimitParser = new SpeedLimitParser();
+        UnderpassParser underpassParser = new UnderpassParser();
+        VehicleParser vehicleParser = new VehicleParser();
+        long parseTime = 0;
+        for (int i = 2; i < args.length; i += 2) {
+            File file = new File(args[i + 1]);
+            long start = System.nanoTime();
+            List<String> log;
+            if (args[i].equals("-roads")) {
+                log = RoadParser.parseParallel(file, null, new RoadSink() {
+
+                    @Override
+                    public void addRoad(RoadSegment road) {
+                        roads.add(road);
+                    }
+                });
+            } else if (args[i].equals("-vehicles")) {
+                log = XMLParser.parse(vehicleParser, file);
+            } else if (args[i].equals("-terrains")) {
+                log = XMLParser.parse(terrainParser, file);
+            } else if (args[i].equals("-events")) {
+                log = XMLParser.parse(eventParser, file);
+            } else if (args[i].equals("-underpasses")) {
+                log = XMLParser.parse(underpassParser, file);
+            } else if (args[i].equals("-speedlimits")) {
+                log = XMLParser.parse(speedLimitParser, file);
+            } else {
+                System.err.println(USAGE);
+                return;
+            }
+            parseTime += System.nanoTime() - start;
+            for (String msg : log) {
+                System.err.println(file + ": " + msg);
+            }
+        }
+
+        DatasetWriter.write(dataset, roads, terrainParser.extractTerrains(),
+                eventParser.extractEvents(), speedLimitParser.extractSpeedLimits(),
+                underpassParser.extractUnderpasses(), vehicleParser.extractVehicles());
+
+        long start = System.nanoTime();
+        DatasetReader reader = new DatasetReader();
+        reader.read(dataset);
+        long readTime = System.nanoTime() - start;
+        printCounts(reader);
+        System.out.println(String.format(Locale.US,
+                "Parsed in %.3f s, read back in %.3f s (%.1fx faster), %d bytes",
+                parseTime / 1e9, readTime / 1e9, (double) parseTime / Math.max(1, readTime),
+                dataset.length()));
+    }
+
+    /**
+     * Read a dataset and write its events and terrains to XML files.
+     * @param dataset The dataset to read.
+     * @param directory The directory to write events.xml and terrains.xml to.
+     * @throws IOException If the dataset can't be read or a file written.
+     */
+    private static void exportFiles(File dataset, File directory) throws IOException {
+        DatasetReader reader = new DatasetReader();
+        reader.read(dataset);
+        printCounts(reader);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the directory " + directory + ".");
+        }
+        if (!reader.extractEvents().isEmpty()) {
+            Writer out = new FileWriter(new File(directory, "events.xml"));
+            try {
+                out.write("<Events>\n");
+                for (Event e : reader.extractEvents()) {
+                    out.write(e.export());
+                }
+                out.write("</Events>");
+            } finally {
+                out.close();
+            }
+        }
+        if (!reader.extractTerrains().isEmpty()) {
+            Writer out = new FileWriter(new File(directory, "terrains.xml"));
+            try {
+                out.write("<Terrains>\n");
+                for (Terrain t : reader.extractTerrains()) {
+                    out.write(t.export());
+                }
+                out.write("</Terrains>");
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Print how much of each kind of data a reader holds.
+     * @param reader The reader.
+     */
+    private static void printCounts(DatasetReader reader) {
+        System.out.println(reader.extractRoads().size() + " roads, "
+                + reader.extractTerrains().size() + " terrains, "
+                + reader.extractEvents().size() + " events, "
+                + reader.extractSpeedLimits().size() + " speed limits, "
+                + reader.extractUnderpasses().size() + " underpasses, "
+                + reader.extractVehicles().size() + " vehicles");
+    }
+}
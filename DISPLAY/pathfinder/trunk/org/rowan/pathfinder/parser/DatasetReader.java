@@ -0,0 +1,445 @@
+package org.rowan.pathfinder.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.rowan.linalgtoolkit.Vector2D;
+import org.rowan.linalgtoolkit.shapes2d.Polygon2D;
+import org.rowan.linalgtoolkit.shapes2d.Segment2D;
+import org.rowan.pathfinder.pathfinder.Event;
+import org.rowan.pathfinder.pathfinder.RoadSegment;
+import org.rowan.pathfinder.pathfinder.SpeedLimit;
+import org.rowan.pathfinder.pathfinder.Terrain;
+import org.rowan.pathfinder.pathfinder.TerrainType;
+import org.rowan.pathfinder.pathfinder.Underpass;
+import org.rowan.pathfinder.pathfinder.Vehicle;
+
+/**
+ * Class <code>DatasetReader</code> reads the Pathfinder datasets written by
+ * <code>DatasetWriter</code>. Like the XML sub parsers, it keeps what it
+ * reads until it is extracted, so several datasets can be read into one
+ * reader. The whole file is read into memory at once and decoded from
+ * there. Sections of a kind this version doesn't know are skipped, but a
+ * dataset of a later version of the format is refused.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class DatasetReader {
+
+    private Set<RoadSegment> roads = new HashSet<RoadSegment>();
+    private Set<Terrain> terrains = new HashSet<Terrain>();
+    private Set<Event> events = new HashSet<Event>();
+    private Set<SpeedLimit> speedLimits = new HashSet<SpeedLimit>();
+    private Set<Underpass> underpasses = new HashSet<Underpass>();
+    private Set<Vehicle> vehicles = new HashSet<Vehicle>();
+    /** The contents of the dataset being read */
+    private byte[] bytes;
+    /** The position of the next byte to read */
+    private int position;
+    /** The latitude of the point read last, in stored units */
+    private long lastLat;
+    /** The longitude of the point read last, in stored units */
+    private long lastLon;
+
+    /**
+     * Read a dataset, adding what it holds to what this reader has read. As
+     * with the sub parsers, what was read before an error is kept.
+     * @param file A file written by DatasetWriter.
+     * @throws IOException If the file can't be read or isn't a valid dataset.
+     */
+    public void read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() > Integer.MAX_VALUE) {
+                throw new IOException("The dataset is too large to read.");
+            }
+            bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        position = 0;
+        try {
+            if (bytes.length < 4 || readMagic() != DatasetWriter.MAGIC) {
+                throw new IOException("The file is not a Pathfinder dataset.");
+            }
+            long version = readVarint();
+            if (version > DatasetWriter.VERSION) {
+                throw new IOException("Unsupported dataset version " + version + ".");
+            }
+            while (position < bytes.length) {
+                int tag = (int) readVarint();
+                long length = readVarint();
+                if (length > bytes.length - position) {
+                    throw new IOException("The dataset is truncated.");
+                }
+                int end = position + (int) length;
+                lastLat = 0;
+                lastLon = 0;
+                switch (tag) {
+                    case DatasetWriter.ROADS:
+                        readRoads();
+                        break;
+                    case DatasetWriter.TERRAINS:
+                        readTerrains();
+                        break;
+                    case DatasetWriter.EVENTS:
+                        readEvents();
+                        break;
+                    case DatasetWriter.SPEED_LIMITS:
+                        readSpeedLimits();
+                        break;
+                    case DatasetWriter.UNDERPASSES:
+                        readUnderpasses();
+                        break;
+                    case DatasetWriter.VEHICLES:
+                        readVehicles();
+                        break;
+                    default:
+                        // a kind of section added by a later version
+                        position = end;
+                        break;
+                }
+                if (position != end) {
+                    throw new IOException("The dataset is corrupt: a section of kind " + tag
+                            + " does not end where its length says.");
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("The dataset is truncated.");
+        } finally {
+            bytes = null;
+        }
+    }
+
+    /**
+     * Read the roads of a section.
+     * @throws IOException If the section is not valid.
+     */
+    private void readRoads() throws IOException {
+        String[] names = new String[readCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = readString();
+        }
+        Vector2D[] nodes = new Vector2D[readCount()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = readPoint();
+        }
+        int count = readCount();
+        int previousEnd = 0;
+        for (int i = 0; i < count; i++) {
+            int start = previousEnd + (int) readSigned();
+            int end = start + (int) readSigned();
+            long nameAndFlag = readVarint();
+            int name = (int) (nameAndFlag >>> 1);
+            if (start < 0 || start >= nodes.length || end < 0 || end >= nodes.length
+                    || nameAndFlag >>> 1 >= names.length) {
+                throw new IOException("The dataset is corrupt: a road refers to a point or name it doesn't have.");
+            }
+            RoadSegment road = new RoadSegment(new Segment2D(nodes[start], nodes[end]), names[name]);
+            road.setSpeedLimit((int) readSigned());
+            if ((nameAndFlag & 1) != 0) {
+                road.addClearanceHeight(readDouble());
+            }
+            roads.add(road);
+            previousEnd = end;
+        }
+    }
+
+    /**
+     * Read the terrains of a section.
+     * @throws IOException If the section is not valid.
+     */
+    private void readTerrains() throws IOException {
+        int count = readCount();
+        for (int i = 0; i < count; i++) {
+            TerrainType type = readTerrainType();
+            String description = readString();
+            terrains.add(new Terrain(readPolygon(), type, description));
+        }
+    }
+
+    /**
+     * Read the events of a section.
+     * @throws IOException If the section is not valid.
+     */
+    private void readEvents() throws IOException {
+        int count = readCount();
+        for (int i = 0; i < count; i++) {
+            int flags = (int) readVarint();
+            Calendar start = null;
+            Calendar end = null;
+            long startMillis = 0;
+            if ((flags & DatasetWriter.EVENT_HAS_START) != 0) {
+                startMillis = readSigned();
+                start = Calendar.getInstance();
+                start.setTimeInMillis(startMillis);
+            }
+            if ((flags & DatasetWriter.EVENT_HAS_END) != 0) {
+                end = Calendar.getInstance();
+                end.setTimeInMillis(startMillis + readSigned());
+            }
+            double severity = readDouble();
+            String description = readString();
+            events.add(new Event(start, end, severity, description, readPolygon(),
+                    (flags & DatasetWriter.EVENT_HAS_MINES) != 0));
+        }
+    }
+
+    /**
+     * Read the speed limits of a section.
+     * @throws IOException If the section is not valid.
+     */
+    private void readSpeedLimits() throws IOException {
+        int count = readCount();
+        for (int i = 0; i < count; i++) {
+            Vector2D start = null;
+            Vector2D end = null;
+            if (readVarint() != 0) {
+                start = readPoint();
+                end = readPoint();
+            }
+            String roadName = readString();
+            speedLimits.add(new SpeedLimit(start, end, roadName, (int) readSigned()));
+        }
+    }
+
+    /**
+     * Read the underpasses of a section.
+     * @throws IOException If the section is not valid.
+     */
+    private void readUnderpasses() throws IOException {
+        int count = readCount();
+        for (int i = 0; i < count; i++) {
+            Vector2D location = readPoint();
+            String overRoad = readString();
+            String underRoad = readString();
+            underpasses.add(new Underpass(location, overRoad, underRoad, readDouble()));
+        }
+    }
+
+    /**
+     * Read the vehicles of a section.
+     * @throws IOException If the section is not valid.
+     */
+    private void readVehicles() throws IOException {
+        int count = readCount();
+        for (int i = 0; i < count; i++) {
+            String name = readString();
+            double height = readDouble();
+            double width = readDouble();
+            int maxSpeed = (int) readSigned();
+            boolean mineResistant = readVarint() != 0;
+            Map<TerrainType, Double> traversability = null;
+            int entries = readCount() - 1;
+            if (entries >= 0) {
+                traversability = new EnumMap<TerrainType, Double>(TerrainType.class);
+                for (int j = 0; j < entries; j++) {
+                    TerrainType type = readTerrainType();
+                    traversability.put(type, readDouble());
+                }
+            }
+            vehicles.add(new Vehicle(name, height, width, maxSpeed, mineResistant, traversability));
+        }
+    }
+
+    /**
+     * Read the magic number at the start of the dataset.
+     * @return The first four bytes, big endian.
+     */
+    private int readMagic() {
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            magic = (magic << 8) | (bytes[position++] & 0xFF);
+        }
+        return magic;
+    }
+
+    /**
+     * Read a varint.
+     * @return The value.
+     * @throws IOException If the varint is longer than a long.
+     */
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = bytes[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("The dataset is corrupt: a varint is too long.");
+    }
+
+    /**
+     * Read a zigzag varint.
+     * @return The value.
+     * @throws IOException If the varint is longer than a long.
+     */
+    private long readSigned() throws IOException {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Read a count, which can't be more than the bytes left.
+     * @return The count.
+     * @throws IOException If the count is larger than the bytes left.
+     */
+    private int readCount() throws IOException {
+        long count = readVarint();
+        if (count > bytes.length - position + 1) {
+            throw new IOException("The dataset is corrupt: a count of " + count + " is too large.");
+        }
+        return (int) count;
+    }
+
+    /**
+     * Read a big endian double.
+     * @return The value.
+     */
+    private double readDouble() {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (bytes[position++] & 0xFF);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Read a string.
+     * @return The string, or null.
+     * @throws IOException If the string is longer than the bytes left.
+     */
+    private String readString() throws IOException {
+        int length = readCount() - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > bytes.length - position) {
+            throw new IOException("The dataset is truncated.");
+        }
+        String str = new String(bytes, position, length, DatasetWriter.UTF8);
+        position += length;
+        return str;
+    }
+
+    /**
+     * Read a terrain type, stored by its name.
+     * @return The terrain type.
+     * @throws IOException If there is no terrain type of that name.
+     */
+    private TerrainType readTerrainType() throws IOException {
+        String name = readString();
+        try {
+            return TerrainType.valueOf(name);
+        } catch (RuntimeException ex) {
+            throw new IOException("Unknown terrain type " + name + ".");
+        }
+    }
+
+    /**
+     * Read a point stored as the difference from the point read before it.
+     * @return The point, where x is the latitude and y the longitude.
+     * @throws IOException If the point can't be read.
+     */
+    private Vector2D readPoint() throws IOException {
+        double lat = readCoordinate(lastLat);
+        lastLat = Math.round(lat * DatasetWriter.COORDINATE_SCALE);
+        double lon = readCoordinate(lastLon);
+        lastLon = Math.round(lon * DatasetWriter.COORDINATE_SCALE);
+        return new Vector2D(lat, lon);
+    }
+
+    /**
+     * Read a coordinate stored as the difference from the one read before
+     * it, or as a double.
+     * @param last The coordinate read before it, in stored units.
+     * @return The coordinate.
+     * @throws IOException If the coordinate can't be read.
+     */
+    private double readCoordinate(long last) throws IOException {
+        long value = readVarint();
+        if ((value & 1) != 0) {
+            return readDouble();
+        }
+        value >>>= 1;
+        return (last + ((value >>> 1) ^ -(value & 1))) / DatasetWriter.COORDINATE_SCALE;
+    }
+
+    /**
+     * Read a polygon stored as its position, the number of its vertices and
+     * the vertices around the position.
+     * @return The polygon.
+     * @throws IOException If the polygon can't be read or has too few vertices.
+     */
+    private Polygon2D readPolygon() throws IOException {
+        Vector2D polygonPosition = readPoint();
+        int count = readCount();
+        if (count < 3) {
+            throw new IOException("The dataset is corrupt: a boundary has " + count + " vertices.");
+        }
+        List<Vector2D> vertices = new ArrayList<Vector2D>(count);
+        for (int i = 0; i < count; i++) {
+            vertices.add(readPoint());
+        }
+        return new Polygon2D(polygonPosition, vertices);
+    }
+
+    /**
+     * Return all roads that were read.
+     * @return The roads.
+     */
+    public Set<RoadSegment> extractRoads() {
+        return roads;
+    }
+
+    /**
+     * Return all terrains that were read. Their neighbors are not set.
+     * @return The terrains.
+     */
+    public Set<Terrain> extractTerrains() {
+        return terrains;
+    }
+
+    /**
+     * Return all events that were read.
+     * @return The events.
+     */
+    public Set<Event> extractEvents() {
+        return events;
+    }
+
+    /**
+     * Return all speed limits that were read.
+     * @return The speed limits.
+     */
+    public Set<SpeedLimit> extractSpeedLimits() {
+        return speedLimits;
+    }
+
+    /**
+     * Return all underpasses that were read.
+     * @return The underpasses.
+     */
+    public Set<Underpass> extractUnderpasses() {
+        return underpasses;
+    }
+
+    /**
+     * Return all vehicles that were read.
+     * @return The vehicles.
+     */
+    public Set<Vehicle> extractVehicles() {
+        return vehicles;
+    }
+}
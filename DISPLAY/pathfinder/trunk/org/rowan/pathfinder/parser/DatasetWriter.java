@@ -0,0 +1,493 @@
+package org.rowan.pathfinder.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.rowan.linalgtoolkit.Vector2D;
+import org.rowan.linalgtoolkit.shapes2d.Polygon2D;
+import org.rowan.pathfinder.pathfinder.Event;
+import org.rowan.pathfinder.pathfinder.Logic2D;
+import org.rowan.pathfinder.pathfinder.RoadSegment;
+import org.rowan.pathfinder.pathfinder.SpeedLimit;
+import org.rowan.pathfinder.pathfinder.Terrain;
+import org.rowan.pathfinder.pathfinder.TerrainType;
+import org.rowan.pathfinder.pathfinder.Underpass;
+import org.rowan.pathfinder.pathfinder.Vehicle;
+
+/**
+ * Class <code>DatasetWriter</code> writes roads, terrains, events, speed
+ * limits, underpasses and vehicles to a Pathfinder dataset, a compact binary
+ * file that <code>DatasetReader</code> reads many times faster than the OSM
+ * and XML files the data came from. A dataset starts with the four bytes
+ * "PFDS" and the version of the format, followed by any number of sections.
+ * Each section is a tag saying what it holds, the length of its contents in
+ * bytes and the contents, so a reader can skip the sections it doesn't know.
+ * Several sections may hold the same kind of data.
+ * <p>
+ * Counts, ids and lengths are written as varints: seven bits to a byte,
+ * lowest first, with the top bit set on every byte but the last. Signed
+ * values are zigzag encoded first, so small negative values stay short.
+ * Coordinates are stored in units of 10<sup>-7</sup> degrees, the precision
+ * of OSM files, each as the signed difference from the coordinate before it
+ * in the same section, shifted left one bit. A coordinate that is not read
+ * back as exactly the same double that way, such as one of a drawn terrain,
+ * is stored as a one followed by the double instead, so every coordinate is
+ * read back exactly. Strings are UTF-8, preceded by their length plus one, so that zero can
+ * stand for null. Other decimal values are 8 byte big endian doubles.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class DatasetWriter {
+
+    /** The first four bytes of every dataset, "PFDS" */
+    static final int MAGIC = 0x50464453;
+    /** The version of the format written by this class */
+    static final int VERSION = 1;
+    /** The tag of a section of roads */
+    static final int ROADS = 1;
+    /** The tag of a section of terrains */
+    static final int TERRAINS = 2;
+    /** The tag of a section of events */
+    static final int EVENTS = 3;
+    /** The tag of a section of speed limits */
+    static final int SPEED_LIMITS = 4;
+    /** The tag of a section of underpasses */
+    static final int UNDERPASSES = 5;
+    /** The tag of a section of vehicles */
+    static final int VEHICLES = 6;
+    /** Coordinate units per degree */
+    static final double COORDINATE_SCALE = 1e7;
+    /** The largest coordinate, in stored units, written as a difference */
+    private static final long MAX_UNITS = 1L << 60;
+    /** The charset strings are written in */
+    static final Charset UTF8 = Charset.forName("UTF-8");
+    /** Flag of an event that has a start date */
+    static final int EVENT_HAS_START = 1;
+    /** Flag of an event that has an end date */
+    static final int EVENT_HAS_END = 2;
+    /** Flag of an event that contains mines */
+    static final int EVENT_HAS_MINES = 4;
+    /** The stream the dataset is written to */
+    private OutputStream out;
+    /** The contents of the section being written */
+    private Section section = new Section();
+
+    /**
+     * Create a new dataset, writing its header.
+     * @param file The file to write to. It is overwritten if it exists.
+     * @throws IOException If the file can't be written.
+     */
+    public DatasetWriter(File file) throws IOException {
+        out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        try {
+            out.write(MAGIC >>> 24);
+            out.write(MAGIC >>> 16);
+            out.write(MAGIC >>> 8);
+            out.write(MAGIC);
+            section.writeVarint(VERSION);
+            flush(0);
+        } catch (IOException ex) {
+            out.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Write a dataset holding any of the kinds of data.
+     * @param file The file to write to. It is overwritten if it exists.
+     * @param roads The roads, or null.
+     * @param terrains The terrains, or null.
+     * @param events The events, or null.
+     * @param speedLimits The speed limits, or null.
+     * @param underpasses The underpasses, or null.
+     * @param vehicles The vehicles, or null.
+     * @throws IOException If the file can't be written.
+     */
+    public static void write(File file, Collection<RoadSegment> roads, Collection<Terrain> terrains,
+            Collection<Event> events, Collection<SpeedLimit> speedLimits,
+            Collection<Underpass> underpasses, Collection<Vehicle> vehicles) throws IOException {
+        DatasetWriter writer = new DatasetWriter(file);
+        try {
+            if (roads != null) {
+                writer.writeRoads(roads);
+            }
+            if (terrains != null) {
+                writer.writeTerrains(terrains);
+            }
+            if (events != null) {
+                writer.writeEvents(events);
+            }
+            if (speedLimits != null) {
+                writer.writeSpeedLimits(speedLimits);
+            }
+            if (underpasses != null) {
+                writer.writeUnderpasses(underpasses);
+            }
+            if (vehicles != null) {
+                writer.writeVehicles(vehicles);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Write a section of roads. The section holds the road names, each once,
+     * then the distinct points of the roads, then each segment as the ids of
+     * its start and end point, the id of its name, its speed limit and its
+     * lowest underpass clearance if it has one. The start id is stored as
+     * the difference from the end id of the segment before, and the end id
+     * as the difference from the start id, which are small for the segments
+     * of one way. Neighbors are not stored, just as they are not parsed.
+     * @param roads The roads.
+     * @throws IOException If the roads can't be written.
+     */
+    public void writeRoads(Collection<RoadSegment> roads) throws IOException {
+        Map<String, Integer> nameIds = new HashMap<String, Integer>();
+        List<String> names = new ArrayList<String>();
+        Map<String, Integer> nodeIds = new HashMap<String, Integer>();
+        List<Vector2D> nodes = new ArrayList<Vector2D>();
+        int[] starts = new int[roads.size()];
+        int[] ends = new int[roads.size()];
+        int[] nameIndices = new int[roads.size()];
+        int i = 0;
+        for (RoadSegment road : roads) {
+            starts[i] = nodeId(Logic2D.getStart(road.getSegment()), nodeIds, nodes);
+            ends[i] = nodeId(Logic2D.getEnd(road.getSegment()), nodeIds, nodes);
+            Integer nameIndex = nameIds.get(road.getRoadName());
+            if (nameIndex == null) {
+                nameIndex = names.size();
+                nameIds.put(road.getRoadName(), nameIndex);
+                names.add(road.getRoadName());
+            }
+            nameIndices[i] = nameIndex;
+            i++;
+        }
+
+        section.writeVarint(names.size());
+        for (String name : names) {
+            section.writeString(name);
+        }
+        section.writeVarint(nodes.size());
+        for (Vector2D node : nodes) {
+            section.writePoint(node);
+        }
+        section.writeVarint(roads.size());
+        int previousEnd = 0;
+        i = 0;
+        for (RoadSegment road : roads) {
+            boolean hasClearance = road.getMinClearanceHeight() != Double.MAX_VALUE;
+            section.writeSigned(starts[i] - previousEnd);
+            section.writeSigned(ends[i] - starts[i]);
+            section.writeVarint(((long) nameIndices[i] << 1) | (hasClearance ? 1 : 0));
+            section.writeSigned(road.getSpeedLimit());
+            if (hasClearance) {
+                section.writeDouble(road.getMinClearanceHeight());
+            }
+            previousEnd = ends[i];
+            i++;
+        }
+        flush(ROADS);
+    }
+
+    /**
+     * Returns the id of a point, giving it a new id if it has not been seen.
+     * Points are matched the same way Transformer matches neighbors.
+     * @param point The point.
+     * @param nodeIds Point key to id.
+     * @param nodes Id to point.
+     * @return The id of the point.
+     */
+    private static int nodeId(Vector2D point, Map<String, Integer> nodeIds, List<Vector2D> nodes) {
+        String key = point.toString();
+        Integer id = nodeIds.get(key);
+        if (id == null) {
+            id = nodes.size();
+            nodeIds.put(key, id);
+            nodes.add(point);
+        }
+        return id;
+    }
+
+    /**
+     * Write a section of terrains: the type, description and boundary of
+     * each. Neighbors are not stored, as TerrainAdjacency keeps them.
+     * @param terrains The terrains.
+     * @throws IOException If the terrains can't be written.
+     */
+    public void writeTerrains(Collection<Terrain> terrains) throws IOException {
+        section.writeVarint(terrains.size());
+        for (Terrain terrain : terrains) {
+            section.writeString(terrain.getType().name());
+            section.writeString(terrain.getDescription());
+            section.writePolygon(terrain.getBoundary());
+        }
+        flush(TERRAINS);
+    }
+
+    /**
+     * Write a section of events: for each, flags saying whether it has a
+     * start and end date and contains mines, the dates in milliseconds, its
+     * severity, description and boundary. The end date is stored as the
+     * time after the start date when there is one.
+     * @param events The events.
+     * @throws IOException If the events can't be written.
+     */
+    public void writeEvents(Collection<Event> events) throws IOException {
+        section.writeVarint(events.size());
+        for (Event event : events) {
+            Calendar start = event.getStart();
+            Calendar end = event.getEnd();
+            int flags = (start != null ? EVENT_HAS_START : 0) | (end != null ? EVENT_HAS_END : 0)
+                    | (event.containsMines() ? EVENT_HAS_MINES : 0);
+            section.writeVarint(flags);
+            long startMillis = 0;
+            if (start != null) {
+                startMillis = start.getTimeInMillis();
+                section.writeSigned(startMillis);
+            }
+            if (end != null) {
+                section.writeSigned(end.getTimeInMillis() - startMillis);
+            }
+            section.writeDouble(event.getSeverity());
+            section.writeString(event.getDescription());
+            section.writePolygon(event.getBoundary());
+        }
+        flush(EVENTS);
+    }
+
+    /**
+     * Write a section of speed limits: whether it has a start and end point
+     * and the points if it does, then the road name and limit of each. A
+     * speed limit without points holds for the whole road.
+     * @param speedLimits The speed limits.
+     * @throws IOException If the speed limits can't be written.
+     */
+    public void writeSpeedLimits(Collection<SpeedLimit> speedLimits) throws IOException {
+        section.writeVarint(speedLimits.size());
+        for (SpeedLimit speedLimit : speedLimits) {
+            if (speedLimit.getStart() == null || speedLimit.getEnd() == null) {
+                section.writeVarint(0);
+            } else {
+                section.writeVarint(1);
+                section.writePoint(speedLimit.getStart());
+                section.writePoint(speedLimit.getEnd());
+            }
+            section.writeString(speedLimit.getRoadName());
+            section.writeSigned(speedLimit.getLimit());
+        }
+        flush(SPEED_LIMITS);
+    }
+
+    /**
+     * Write a section of underpasses: the location, roads and height of
+     * each.
+     * @param underpasses The underpasses.
+     * @throws IOException If the underpasses can't be written.
+     */
+    public void writeUnderpasses(Collection<Underpass> underpasses) throws IOException {
+        section.writeVarint(underpasses.size());
+        for (Underpass underpass : underpasses) {
+            section.writePoint(underpass.getLocation());
+            section.writeString(underpass.getOverRoad());
+            section.writeString(underpass.getUnderRoad());
+            section.writeDouble(underpass.getHeight());
+        }
+        flush(UNDERPASSES);
+    }
+
+    /**
+     * Write a section of vehicles: the name, size, speed and mine resistance
+     * of each, and the traversability of every terrain type it has one for.
+     * The number of traversabilities is stored plus one, so zero can stand
+     * for no map.
+     * @param vehicles The vehicles.
+     * @throws IOException If the vehicles can't be written.
+     */
+    public void writeVehicles(Collection<Vehicle> vehicles) throws IOException {
+        section.writeVarint(vehicles.size());
+        for (Vehicle vehicle : vehicles) {
+            section.writeString(vehicle.getName());
+            section.writeDouble(vehicle.getHeight());
+            section.writeDouble(vehicle.getWidth());
+            section.writeSigned(vehicle.getMaxSpeed());
+            section.writeVarint(vehicle.isMineResistant() ? 1 : 0);
+            Map<TerrainType, Double> traversability = vehicle.getTraversabilityMap();
+            if (traversability == null) {
+                section.writeVarint(0);
+                continue;
+            }
+            section.writeVarint(traversability.size() + 1);
+            for (Map.Entry<TerrainType, Double> entry : traversability.entrySet()) {
+                section.writeString(entry.getKey().name());
+                section.writeDouble(entry.getValue());
+            }
+        }
+        flush(VEHICLES);
+    }
+
+    /**
+     * Close the dataset.
+     * @throws IOException If the file can't be written.
+     */
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Write the section that was built, preceded by its tag and length, and
+     * begin a new one.
+     * @param tag The tag of the section, or zero to write the contents alone.
+     * @throws IOException If the file can't be written.
+     */
+    private void flush(int tag) throws IOException {
+        if (tag != 0) {
+            Section header = new Section();
+            header.writeVarint(tag);
+            header.writeVarint(section.size);
+            out.write(header.bytes, 0, header.size);
+        }
+        out.write(section.bytes, 0, section.size);
+        section = new Section();
+    }
+
+    /**
+     * Returns a coordinate in the units it is stored in.
+     * @param degrees The coordinate.
+     * @return The coordinate in 10<sup>-7</sup> degrees.
+     */
+    private static long toUnits(double degrees) {
+        return Math.round(degrees * COORDINATE_SCALE);
+    }
+
+    /**
+     * The contents of a section, built in memory so its length is known
+     * before it is written.
+     */
+    private static class Section {
+
+        /** The contents */
+        byte[] bytes = new byte[1 << 12];
+        /** The number of bytes used */
+        int size;
+        /** The latitude of the point written last, in stored units */
+        long lastLat;
+        /** The longitude of the point written last, in stored units */
+        long lastLon;
+
+        /**
+         * Make room for more bytes.
+         * @param count The number of bytes about to be written.
+         */
+        void ensure(int count) {
+            if (size + count > bytes.length) {
+                byte[] larger = new byte[Math.max(bytes.length * 2, size + count)];
+                System.arraycopy(bytes, 0, larger, 0, size);
+                bytes = larger;
+            }
+        }
+
+        /**
+         * Write a value that is not negative as a varint.
+         * @param value The value.
+         */
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Write a value that may be negative as a zigzag varint.
+         * @param value The value.
+         */
+        void writeSigned(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Write a double, big endian.
+         * @param value The value.
+         */
+        void writeDouble(double value) {
+            ensure(8);
+            long bits = Double.doubleToLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (bits >>> shift);
+            }
+        }
+
+        /**
+         * Write a string as its length plus one and its UTF-8 bytes.
+         * @param str The string, or null.
+         */
+        void writeString(String str) {
+            if (str == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = str.getBytes(UTF8);
+            writeVarint(utf8.length + 1);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        /**
+         * Write a point as the difference from the point written before it.
+         * @param point The point, where x is the latitude and y the longitude.
+         */
+        void writePoint(Vector2D point) {
+            lastLat = writeCoordinate(point.getX(), lastLat);
+            lastLon = writeCoordinate(point.getY(), lastLon);
+        }
+
+        /**
+         * Write a coordinate as the difference from the one written before
+         * it, or as a double if it is not a whole number of units.
+         * @param degrees The coordinate.
+         * @param last The coordinate written before it, in stored units.
+         * @return The coordinate in stored units.
+         */
+        long writeCoordinate(double degrees, long last) {
+            long units = toUnits(degrees);
+            if (Math.abs(units) < MAX_UNITS && units / COORDINATE_SCALE == degrees) {
+                long delta = units - last;
+                writeVarint(((delta << 1) ^ (delta >> 63)) << 1);
+            } else {
+                writeVarint(1);
+                writeDouble(degrees);
+            }
+            return units;
+        }
+
+        /**
+         * Write a polygon as its position, the number of its vertices and
+         * the vertices around the position, which is how the polygon holds
+         * them. It is read back as it was, except that a position found as a
+         * centroid is rounded to the ten decimals a Vector2D keeps.
+         * @param polygon The polygon.
+         */
+        void writePolygon(Polygon2D polygon) {
+            writePoint(polygon.getPosition());
+            List<Vector2D> vertices = polygon.getVertices();
+            writeVarint(vertices.size());
+            for (Vector2D vertex : vertices) {
+                writePoint(vertex);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.rowan.pathfinder.parser;
+
+import java.util.Arrays;
+import org.rowan.linalgtoolkit.Vector2D;
+
+/**
+ * Class <code>LongCoordinateMap</code> maps long ids, such as the ids of OSM
+ * nodes, to a pair of coordinates. The ids and coordinates are kept in
+ * primitive arrays, without an object per entry, so an entry takes at most
+ * 96 bytes instead of the few hundred a <code>TreeMap</code> of strings to
+ * <code>Vector2D</code>s takes.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class LongCoordinateMap {
+
+    /** Marks an empty slot; the entry for this id is kept separately */
+    private static final long EMPTY = Long.MIN_VALUE;
+    /** The id in each slot */
+    private long[] ids;
+    /** The x and y coordinate of each slot, one after the other */
+    private double[] coordinates;
+    /** Whether there is an entry for the id used to mark empty slots */
+    private boolean containsEmpty;
+    /** The coordinates of the entry for EMPTY */
+    private double emptyX, emptyY;
+    /** The number of entries, not counting the one for EMPTY */
+    private int size;
+
+    /**
+     * Create a new, empty map.
+     */
+    public LongCoordinateMap() {
+        this(16);
+    }
+
+    /**
+     * Create a new, empty map that holds a number of entries without
+     * growing.
+     * @param capacity The number of entries.
+     */
+    public LongCoordinateMap(int capacity) {
+        ids = new long[LongHashSet.tableSize(capacity)];
+        coordinates = new double[ids.length * 2];
+        Arrays.fill(ids, EMPTY);
+    }
+
+    /**
+     * Map an id to coordinates, replacing any coordinates it had.
+     * @param id The id.
+     * @param x The first coordinate.
+     * @param y The second coordinate.
+     */
+    public void put(long id, double x, double y) {
+        if (id == EMPTY) {
+            containsEmpty = true;
+            emptyX = x;
+            emptyY = y;
+            return;
+        }
+        int slot = find(ids, id);
+        coordinates[2 * slot] = x;
+        coordinates[2 * slot + 1] = y;
+        if (ids[slot] != id) {
+            ids[slot] = id;
+            if (++size * 2 > ids.length) {
+                grow();
+            }
+        }
+    }
+
+    /**
+     * Put every coordinate of another map in this one, replacing the
+     * coordinates of any id in both.
+     * @param other The other map.
+     */
+    public void putAll(LongCoordinateMap other) {
+        if (other.containsEmpty) {
+            put(EMPTY, other.emptyX, other.emptyY);
+        }
+        for (int i = 0; i < other.ids.length; i++) {
+            if (other.ids[i] != EMPTY) {
+                put(other.ids[i], other.coordinates[2 * i], other.coordinates[2 * i + 1]);
+            }
+        }
+    }
+
+    /**
+     * Returns the coordinates of an id.
+     * @param id The id.
+     * @return The coordinates as a new vector, or null if the id has none.
+     */
+    public Vector2D get(long id) {
+        if (id == EMPTY) {
+            return containsEmpty ? new Vector2D(emptyX, emptyY) : null;
+        }
+        int slot = find(ids, id);
+        if (ids[slot] != id) {
+            return null;
+        }
+        return new Vector2D(coordinates[2 * slot], coordinates[2 * slot + 1]);
+    }
+
+    /**
+     * Returns whether an id has coordinates.
+     * @param id The id.
+     * @return True if the id is in the map.
+     */
+    public boolean containsKey(long id) {
+        if (id == EMPTY) {
+            return containsEmpty;
+        }
+        return ids[find(ids, id)] == id;
+    }
+
+    /**
+     * Returns the number of entries in the map.
+     * @return The size of the map.
+     */
+    public int size() {
+        return containsEmpty ? size + 1 : size;
+    }
+
+    /**
+     * Double the number of slots.
+     */
+    private void grow() {
+        long[] grownIds = new long[ids.length * 2];
+        double[] grownCoordinates = new double[grownIds.length * 2];
+        Arrays.fill(grownIds, EMPTY);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != EMPTY) {
+                int slot = find(grownIds, ids[i]);
+                grownIds[slot] = ids[i];
+                grownCoordinates[2 * slot] = coordinates[2 * i];
+                grownCoordinates[2 * slot + 1] = coordinates[2 * i + 1];
+            }
+        }
+        ids = grownIds;
+        coordinates = grownCoordinates;
+    }
+
+    /**
+     * Returns the slot holding an id, or the empty slot it would go in.
+     * @param ids The slots, at least one of which is empty.
+     * @param id The id.
+     * @return The slot.
+     */
+    private static int find(long[] ids, long id) {
+        int mask = ids.length - 1;
+        int slot = LongHashSet.hash(id) & mask;
+        while (ids[slot] != EMPTY && ids[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
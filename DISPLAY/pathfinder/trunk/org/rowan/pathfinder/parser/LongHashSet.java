@@ -0,0 +1,152 @@
+package org.rowan.pathfinder.parser;
+
+import java.util.Arrays;
+
+/**
+ * Class <code>LongHashSet</code> is a set of long values kept in a single
+ * open addressed array, without a wrapper object per value. It uses at most
+ * 32 bytes per value where a <code>HashSet&lt;Long&gt;</code> uses several
+ * times that, which matters when it holds the ids of every node of a large
+ * OSM file.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class LongHashSet {
+
+    /** Marks an empty slot; the value itself is kept by containsEmpty */
+    private static final long EMPTY = Long.MIN_VALUE;
+    /** The slots */
+    private long[] slots;
+    /** Whether the set holds the value used to mark empty slots */
+    private boolean containsEmpty;
+    /** The number of values, not counting EMPTY */
+    private int size;
+
+    /**
+     * Create a new, empty set.
+     */
+    public LongHashSet() {
+        this(16);
+    }
+
+    /**
+     * Create a new, empty set that holds a number of values without growing.
+     * @param capacity The number of values.
+     */
+    public LongHashSet(int capacity) {
+        slots = new long[tableSize(capacity)];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    /**
+     * Add a value to the set.
+     * @param value The value.
+     * @return True if the value was not in the set yet.
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            boolean added = !containsEmpty;
+            containsEmpty = true;
+            return added;
+        }
+        int slot = find(slots, value);
+        if (slots[slot] == value) {
+            return false;
+        }
+        slots[slot] = value;
+        if (++size * 2 > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * Add every value of another set to this one.
+     * @param other The other set.
+     */
+    public void addAll(LongHashSet other) {
+        if (other.containsEmpty) {
+            containsEmpty = true;
+        }
+        for (long value : other.slots) {
+            if (value != EMPTY) {
+                add(value);
+            }
+        }
+    }
+
+    /**
+     * Returns whether a value is in the set.
+     * @param value The value.
+     * @return True if the value is in the set.
+     */
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        return slots[find(slots, value)] == value;
+    }
+
+    /**
+     * Returns the number of values in the set.
+     * @return The size of the set.
+     */
+    public int size() {
+        return containsEmpty ? size + 1 : size;
+    }
+
+    /**
+     * Double the number of slots.
+     */
+    private void grow() {
+        long[] grown = new long[slots.length * 2];
+        Arrays.fill(grown, EMPTY);
+        for (long value : slots) {
+            if (value != EMPTY) {
+                grown[find(grown, value)] = value;
+            }
+        }
+        slots = grown;
+    }
+
+    /**
+     * Returns the slot holding a value, or the empty slot it would go in.
+     * @param slots The slots, at least one of which is empty.
+     * @param value The value.
+     * @return The slot.
+     */
+    private static int find(long[] slots, long value) {
+        int mask = slots.length - 1;
+        int slot = hash(value) & mask;
+        while (slots[slot] != EMPTY && slots[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns a hash of a value with its bits spread over the whole int, so
+     * that consecutive ids don't fill consecutive slots.
+     * @param value The value.
+     * @return The hash.
+     */
+    static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns the number of slots needed to hold a number of values at most
+     * half full: a power of two.
+     * @param capacity The number of values.
+     * @return The number of slots.
+     */
+    static int tableSize(int capacity) {
+        int size = 16;
+        while (size < capacity * 2L) {
+            size *= 2;
+        }
+        return size;
+    }
+}
@@ -20,7 +20,8 @@ public interface OSMSubParser {
      *     <name type=full>John Doe</name>
      * }
      * and the attributes actual parameter will be a Dictionary with one key,
-     * "type" which is mapped to the value "full".
+     * "type" which is mapped to the value "full". The Dictionary is reused
+     * for the next tag, so any attribute to be kept must be copied out of it.
      * @param tag The name of the tag that starts an XML element.
      * @param line The line number that the tag is on.
      * @param col The column number that the tag is on.
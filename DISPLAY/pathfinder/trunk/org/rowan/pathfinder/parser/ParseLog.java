@@ -0,0 +1,74 @@
+package org.rowan.pathfinder.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class <code>ParseLog</code> holds the warnings and errors of a single
+ * parse. Every parse begins a log of its own, and the sub parser reports to
+ * it through <code>Warnings</code> and <code>Errors</code>, which add to the
+ * log of the parse running on the calling thread. Files parsed at the same
+ * time on different threads therefore never mix their messages.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class ParseLog {
+
+    /** The log of the parse running on each thread */
+    private static final ThreadLocal<ParseLog> current = new ThreadLocal<ParseLog>();
+    /** The messages, in the order they were reported */
+    private List<String> messages = new ArrayList<String>();
+    /** The log of the parse this one was begun within, or null */
+    private ParseLog previous;
+
+    /**
+     * Create a new, empty log.
+     */
+    private ParseLog() {
+    }
+
+    /**
+     * Begin the log of a parse on the calling thread. It must be ended on
+     * the same thread once the parse is done.
+     * @return The log.
+     */
+    static ParseLog begin() {
+        ParseLog log = new ParseLog();
+        log.previous = current.get();
+        current.set(log);
+        return log;
+    }
+
+    /**
+     * End this log, so the calling thread reports to the log it had before
+     * again.
+     */
+    void end() {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * Add a message to the log of the parse running on the calling thread.
+     * Outside of a parse the message is dropped.
+     * @param msg The message.
+     */
+    static void add(String msg) {
+        ParseLog log = current.get();
+        if (log != null) {
+            log.messages.add(msg);
+        }
+    }
+
+    /**
+     * Returns the messages of this log.
+     * @return The messages, in the order they were reported.
+     */
+    public List<String> getMessages() {
+        return messages;
+    }
+}
@@ -0,0 +1,56 @@
+package org.rowan.pathfinder.parser;
+
+import java.io.File;
+import java.io.Reader;
+
+/**
+ * Interface <code>ParserBackend</code> defines how a document is read for
+ * XMLParser and OSMParser. A backend reads the document and calls a sub
+ * parser for each element and text it finds, in document order, stopping at
+ * the end of the root element. Backends hold no state between documents, so
+ * one backend can parse any number of documents at the same time, each on
+ * its own thread with its own sub parser.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public interface ParserBackend {
+
+    /**
+     * Parse a file, telling a parser about elements with their attributes.
+     * @param file The file.
+     * @param parser The parser.
+     * @throws Exception If the file can't be read or has an error, or the
+     *                   parser throws.
+     */
+    public void parse(File file, OSMSubParser parser) throws Exception;
+
+    /**
+     * Parse a file, telling a parser about elements.
+     * @param file The file.
+     * @param parser The parser.
+     * @throws Exception If the file can't be read or has an error, or the
+     *                   parser throws.
+     */
+    public void parse(File file, XMLSubParser parser) throws Exception;
+
+    /**
+     * Parse what a reader gives, telling a parser about elements with their
+     * attributes. The reader is not closed.
+     * @param reader The reader.
+     * @param parser The parser.
+     * @throws Exception If the reader fails, the document has an error or
+     *                   the parser throws.
+     */
+    public void parse(Reader reader, OSMSubParser parser) throws Exception;
+
+    /**
+     * Parse what a reader gives, telling a parser about elements. The reader
+     * is not closed.
+     * @param reader The reader.
+     * @param parser The parser.
+     * @throws Exception If the reader fails, the document has an error or
+     *                   the parser throws.
+     */
+    public void parse(Reader reader, XMLSubParser parser) throws Exception;
+}
@@ -0,0 +1,94 @@
+package org.rowan.pathfinder.parser;
+
+import java.io.File;
+import java.util.Dictionary;
+import java.util.Locale;
+
+/**
+ * Class <code>ParserBenchmark</code> compares how fast the parser backends
+ * read documents. Each file is parsed several times by each backend with a
+ * sub parser that only counts elements, attributes and chars of text, and
+ * the best time of each is printed with the throughput it gives. The counts
+ * are printed too, so a backend that reads a file differently stands out.
+ *
+ * Usage: ParserBenchmark [-runs n] file...
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class ParserBenchmark {
+
+    /** The number of times each file is parsed by default */
+    private static final int DEFAULT_RUNS = 3;
+
+    /**
+     * Run the benchmark.
+     * @param args The files to parse, optionally after -runs and the number
+     *             of times to parse each.
+     * @throws Exception If a file can't be parsed.
+     */
+    public static void main(String[] args) throws Exception {
+        int runs = DEFAULT_RUNS;
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("-runs")) {
+            runs = Integer.parseInt(args[1]);
+            first = 2;
+        }
+        if (first >= args.length) {
+            System.err.println("Usage: ParserBenchmark [-runs n] file...");
+            return;
+        }
+        String[] names = {"tokenizer", "stax"};
+        ParserBackend[] backends = {new TokenizerBackend(), new StaxBackend()};
+
+        for (int f = first; f < args.length; f++) {
+            File file = new File(args[f]);
+            double megabytes = file.length() / 1e6;
+            System.out.println(file + String.format(Locale.US, " (%.1f MB)", megabytes));
+            for (int b = 0; b < backends.length; b++) {
+                long best = Long.MAX_VALUE;
+                Counter counter = null;
+                for (int run = 0; run < runs; run++) {
+                    counter = new Counter();
+                    long start = System.nanoTime();
+                    OSMParser.parse(counter, file, backends[b]);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                double seconds = best / 1e9;
+                System.out.println(String.format(Locale.US,
+                        "  %-10s %8.3f s %8.1f MB/s   %d elements, %d attributes, %d chars of text",
+                        names[b], seconds, megabytes / seconds, counter.elements,
+                        counter.attributes, counter.chars));
+            }
+        }
+    }
+
+    /**
+     * A sub parser that only counts what it is told about.
+     */
+    private static class Counter implements OSMSubParser {
+
+        /** The number of elements started */
+        long elements;
+        /** The number of attributes */
+        long attributes;
+        /** The number of chars of text */
+        long chars;
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public void startElement(String tag, Dictionary attributes, int line, int col) {
+            elements++;
+            this.attributes += attributes.size();
+        }
+
+        @Override
+        public void endElement(String tag, int line, int col) {
+        }
+
+        @Override
+        public void text(String str, int line, int col) {
+            chars += str.length();
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package org.rowan.pathfinder.parser;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.EmptyStackException;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.rowan.linalgtoolkit.Vector2D;
 import org.rowan.linalgtoolkit.shapes2d.Segment2D;
 import org.rowan.pathfinder.pathfinder.Logic2D;
@@ -16,7 +25,11 @@ import org.rowan.pathfinder.pathfinder.RoadSegment;
 
 /**
  * Class <code>RoadParser</code> is responsible for parsing an OSM file
- * with road data into <code>RoadSegment</code> objects.
+ * with road data into <code>RoadSegment</code> objects. The road segments are
+ * either kept for extractRoads() or handed to a <code>RoadSink</code> as each
+ * way is parsed. parseStreaming() parses a file in two passes so that only
+ * the nodes roads refer to are kept, for files too large to hold every node,
+ * and parseParallel() splits a file into ranges parsed that way at once.
  * 
  * @author Dan Urbano
  * @version 1.0
@@ -58,18 +71,32 @@ public class RoadParser implements OSMSubParser {
     private static final int HW_TRUNK_MPH = 45;
     private static final int HW_MOTOR_MPH = 65;
     private static final int HW_MLINK_MPH = 30;
+    /** The smallest range of bytes parsed on a thread of its own */
+    private static final long MIN_RANGE_BYTES = 1 << 20;
+    /** The number of bytes read at a time while looking for where a range begins */
+    private static final int SPLIT_BUFFER_SIZE = 1 << 16;
+    /** The top level tags a range may begin with */
+    private static final String[] RANGE_TAGS = {TAG_NODE, TAG_WAY, "relation"};
     /** The default speed limit map */
     private HashMap<String, Double> defaultSpeedLimitMap = new HashMap<String, Double>();
     /** The stack containing the current nested tags */
     private Stack<String> stack = new Stack<String>();
     /** The set of RoadSegments that have been parsed */
     private Set<RoadSegment> roads = new HashSet<RoadSegment>();
+    /** Receives every RoadSegment that is parsed */
+    private RoadSink sink;
     /** The mode of that parser is in */
     private Mode mode = Mode.NONE;
-    /** a map of all the nodes used in this file */
-    private TreeMap<String, Vector2D> nodeMap = new TreeMap<String, Vector2D>();
-    /** a list of node ids for a way */
-    private LinkedList<String> r_wayList = new LinkedList<String>();
+    /** a map of all the nodes used in this file, by id */
+    private LongCoordinateMap nodeMap = new LongCoordinateMap();
+    /** The ids of the nodes that roads refer to, null to keep every node */
+    private LongHashSet referencedNodes = null;
+    /** True if only referencedNodes is being filled (the first of two passes) */
+    private boolean collectingReferences = false;
+    /** the node ids of a way */
+    private long[] r_wayNodes = new long[16];
+    /** The number of node ids in r_wayNodes */
+    private int r_wayLength = 0;
     /** The name of the road */
     private String r_name = null;
     /** The speed limit of the road (if defined) */
@@ -80,6 +107,8 @@ public class RoadParser implements OSMSubParser {
     private boolean r_isOneWay = false;
     /** The map of user defined speed limits */
     private Map<String, Double> speedLimitMap = new HashMap<String, Double>();
+    /** The roads kept to be made into segments later, or null */
+    private List<Way> ways = null;
     
     /**
      * Create a new RoadParser, with defined speed limits for open street map
@@ -90,6 +119,18 @@ public class RoadParser implements OSMSubParser {
      *                      street map highway types, possibly null.
      */
     public RoadParser(Map<String, Double> speedLimitMap) {
+        this(speedLimitMap, null);
+    }
+
+    /**
+     * Create a new RoadParser that hands every road segment to a sink as
+     * soon as its way is parsed, instead of keeping it for extractRoads().
+     * @param speedLimitMap A map containing defined speed limits for open
+     *                      street map highway types, possibly null.
+     * @param sink Receives the road segments, possibly null to keep them
+     *             for extractRoads().
+     */
+    public RoadParser(Map<String, Double> speedLimitMap, RoadSink sink) {
         defaultSpeedLimitMap.put(HW_RES, Logic2D.MPHtoKPH(HW_RES_MPH));
         defaultSpeedLimitMap.put(HW_PRI, Logic2D.MPHtoKPH(HW_PRI_MPH));
         defaultSpeedLimitMap.put(HW_SEC, Logic2D.MPHtoKPH(HW_SEC_MPH));
@@ -99,12 +140,365 @@ public class RoadParser implements OSMSubParser {
         defaultSpeedLimitMap.put(HW_MLINK, Logic2D.MPHtoKPH(HW_MLINK_MPH));
         if (speedLimitMap != null)
             this.speedLimitMap = speedLimitMap;
+        if (sink == null) {
+            sink = new RoadSink() {
+
+                @Override
+                public void addRoad(RoadSegment road) {
+                    roads.add(road);
+                }
+            };
+        }
+        this.sink = sink;
+    }
+
+    /**
+     * Parse the roads of an OSM file in two passes, so that only the nodes
+     * roads refer to are kept in memory. The first pass records the ids of
+     * the nodes that roads refer to. The second keeps the coordinates of
+     * only those nodes and hands each road segment to the sink as soon as
+     * its way is parsed, so the parser never holds the roads. Nodes have to
+     * come before the ways that refer to them, as they do in OSM files.
+     * @param file The OSM file.
+     * @param speedLimitMap A map containing defined speed limits for open
+     *                      street map highway types, possibly null.
+     * @param sink Receives the road segments, in the order of the file.
+     * @return The warnings logged by the second pass.
+     * @throws Exception If the file can't be read or has an error.
+     */
+    public static List<String> parseStreaming(File file, Map<String, Double> speedLimitMap,
+            RoadSink sink) throws Exception {
+        RoadParser parser = new RoadParser(speedLimitMap, sink);
+        parser.referencedNodes = new LongHashSet();
+        parser.collectingReferences = true;
+        parser.parse(file);
+
+        parser.collectingReferences = false;
+        parser.nodeMap = new LongCoordinateMap(parser.referencedNodes.size());
+        parser.stack.clear();
+        parser.mode = Mode.NONE;
+        return parser.parse(file);
+    }
+
+    /**
+     * Parse the roads of an OSM file on a thread per processor.
+     * @param file The OSM file.
+     * @param speedLimitMap A map containing defined speed limits for open
+     *                      street map highway types, possibly null.
+     * @param sink Receives the road segments, in the order of the file.
+     * @return The warnings logged, in the order of the file.
+     * @throws Exception If the file can't be read or has an error.
+     * @see #parseParallel(File, Map, RoadSink, int)
+     */
+    public static List<String> parseParallel(File file, Map<String, Double> speedLimitMap,
+            RoadSink sink) throws Exception {
+        return parseParallel(file, speedLimitMap, sink, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parse the roads of an OSM file on several threads at once. The file is
+     * split into ranges of bytes, one per thread, that each begin at a top
+     * level &lt;node&gt;, &lt;way&gt; or &lt;relation&gt; tag, and every
+     * range is parsed by a parser of its own in the two passes of
+     * parseStreaming(). The first pass records the nodes that the roads of
+     * each range refer to, and how many lines each range has so the second
+     * can number lines as in the whole file. The second pass keeps the
+     * coordinates of those nodes and the node ids of the roads of each
+     * range. The node tables of the ranges are then merged, the roads of
+     * each range made into segments, and the segments handed to the sink on
+     * the calling thread in the order of the file. The segments and warnings
+     * are those of parseStreaming(), except that a road may refer to a node
+     * anywhere in the file.
+     *
+     * Ranges are found by looking for the tags in the bytes of the file, so
+     * the file must not have them in comments or CDATA sections, which OSM
+     * files don't. A file too small to split, a file with an error, and any
+     * file when the parser backend isn't a <code>TokenizerBackend</code> are
+     * parsed by parseStreaming() on the calling thread instead, so errors
+     * are reported where they are in the file.
+     * @param file The OSM file.
+     * @param speedLimitMap A map containing defined speed limits for open
+     *                      street map highway types, possibly null.
+     * @param sink Receives the road segments, in the order of the file.
+     * @param threads The number of threads to parse on.
+     * @return The warnings logged by the second pass, in the order of the file.
+     * @throws Exception If the file can't be read or has an error.
+     */
+    public static List<String> parseParallel(final File file, final Map<String, Double> speedLimitMap,
+            RoadSink sink, int threads) throws Exception {
+        final Range[] ranges = split(file, threads);
+        if (ranges.length < 2 || !(XMLParser.getBackend() instanceof TokenizerBackend)) {
+            return parseStreaming(file, speedLimitMap, sink);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, ranges.length));
+        try {
+            final LongHashSet referencedNodes = new LongHashSet();
+            final LongCoordinateMap nodes;
+            try {
+                List<Callable<RoadParser>> firstPass = new ArrayList<Callable<RoadParser>>();
+                for (final Range range : ranges) {
+                    firstPass.add(new Callable<RoadParser>() {
+
+                        @Override
+                        public RoadParser call() throws Exception {
+                            RoadParser parser = new RoadParser(speedLimitMap, null);
+                            parser.referencedNodes = new LongHashSet();
+                            parser.collectingReferences = true;
+                            parser.parse(file, range);
+                            return parser;
+                        }
+                    });
+                }
+                for (RoadParser parser : runAll(executor, firstPass)) {
+                    referencedNodes.addAll(parser.referencedNodes);
+                }
+                // every range was counted from line 1, so the lines before
+                // each are those of the ranges before it
+                int line = 1, col = 0;
+                for (Range range : ranges) {
+                    range.line = line;
+                    range.col = col;
+                    if (range.endLine == 1) {
+                        col += range.endCol;
+                    } else {
+                        line += range.endLine - 1;
+                        col = range.endCol;
+                    }
+                }
+
+                List<Callable<RoadParser>> secondPass = new ArrayList<Callable<RoadParser>>();
+                for (final Range range : ranges) {
+                    secondPass.add(new Callable<RoadParser>() {
+
+                        @Override
+                        public RoadParser call() throws Exception {
+                            RoadParser parser = new RoadParser(speedLimitMap, null);
+                            parser.referencedNodes = referencedNodes;
+                            parser.ways = new ArrayList<Way>();
+                            range.log = parser.parse(file, range);
+                            return parser;
+                        }
+                    });
+                }
+                List<RoadParser> parsers = runAll(executor, secondPass);
+                nodes = new LongCoordinateMap(referencedNodes.size());
+                for (int i = 0; i < ranges.length; i++) {
+                    ranges[i].ways = parsers.get(i).ways;
+                    nodes.putAll(parsers.get(i).nodeMap);
+                }
+            } catch (PFParseLogException ex) {
+                return parseStreaming(file, speedLimitMap, sink);
+            }
+
+            List<Future<List<RoadSegment>>> segments = new ArrayList<Future<List<RoadSegment>>>();
+            for (final Range range : ranges) {
+                segments.add(executor.submit(new Callable<List<RoadSegment>>() {
+
+                    @Override
+                    public List<RoadSegment> call() {
+                        final List<RoadSegment> made = new ArrayList<RoadSegment>();
+                        RoadParser parser = new RoadParser(null, new RoadSink() {
+
+                            @Override
+                            public void addRoad(RoadSegment road) {
+                                made.add(road);
+                            }
+                        });
+                        parser.nodeMap = nodes;
+                        ParseLog log = ParseLog.begin();
+                        try {
+                            for (Way way : range.ways) {
+                                parser.addSegments(way.nodes, way.nodes.length, way.name,
+                                        way.speedLimit, way.isOneWay, way.line, way.col);
+                            }
+                        } finally {
+                            log.end();
+                        }
+                        range.log.addAll(log.getMessages());
+                        range.ways = null;
+                        return made;
+                    }
+                }));
+            }
+            List<String> log = new ArrayList<String>();
+            for (int i = 0; i < ranges.length; i++) {
+                for (RoadSegment road : get(segments.get(i))) {
+                    sink.addRoad(road);
+                }
+                log.addAll(ranges[i].log);
+            }
+            return log;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Split a file into ranges of bytes that each begin at a top level tag.
+     * @param file The OSM file.
+     * @param parts The number of ranges to split the file into at most.
+     * @return The ranges, in the order of the file.
+     * @throws IOException If the file can't be read.
+     */
+    private static Range[] split(File file, int parts) throws IOException {
+        long size = file.length();
+        int count = (int) Math.max(1, Math.min(parts, size / MIN_RANGE_BYTES));
+        List<Range> ranges = new ArrayList<Range>();
+        long start = 0;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            for (int i = 1; i < count; i++) {
+                long end = findRangeTag(in, Math.max(size / count * i, start + 1));
+                if (end < 0) {
+                    break;
+                }
+                if (end > start) {
+                    ranges.add(new Range(start, end));
+                    start = end;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        ranges.add(new Range(start, size));
+        return ranges.toArray(new Range[ranges.size()]);
+    }
+
+    /**
+     * Find the first top level tag a range may begin with, at or after a
+     * position in a file.
+     * @param in The file.
+     * @param from The position to look from.
+     * @return The position of the &lt; of the tag, or -1 if there is none.
+     * @throws IOException If the file can't be read.
+     */
+    private static long findRangeTag(RandomAccessFile in, long from) throws IOException {
+        byte[] buffer = new byte[SPLIT_BUFFER_SIZE];
+        long position = from;
+        int length;
+        in.seek(position);
+        while ((length = in.read(buffer)) > 0) {
+            int last = length;
+            if (length == buffer.length) {
+                // a tag cut by the end of the buffer is looked at with the next
+                last -= "relation ".length();
+            }
+            for (int i = 0; i < last; i++) {
+                if (buffer[i] == '<' && isRangeTag(buffer, i + 1, length)) {
+                    return position + i;
+                }
+            }
+            position += last;
+            in.seek(position);
+        }
+        return -1;
+    }
+
+    /**
+     * Test to see if a tag a range may begin with is at a position in a
+     * buffer, followed by whitespace, / or &gt;.
+     * @param buffer The bytes of the file.
+     * @param from The position just after the &lt;.
+     * @param length The number of bytes in the buffer.
+     * @return true if one of the tags is there.
+     */
+    private static boolean isRangeTag(byte[] buffer, int from, int length) {
+        for (String tag : RANGE_TAGS) {
+            int end = from + tag.length();
+            if (end >= length) {
+                continue;
+            }
+            int i = 0;
+            while (i < tag.length() && buffer[from + i] == tag.charAt(i)) {
+                i++;
+            }
+            int c = buffer[end];
+            if (i == tag.length() && (c == '>' || c == '/' || Character.isWhitespace(c))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run tasks and wait for them all to finish.
+     * @param executor The executor to run them on.
+     * @param tasks The tasks.
+     * @return What each task returned, in the order of the tasks.
+     * @throws Exception If a task throws, the first in order that threw.
+     */
+    private static <T> List<T> runAll(ExecutorService executor, List<Callable<T>> tasks)
+            throws Exception {
+        List<T> results = new ArrayList<T>();
+        for (Future<T> future : executor.invokeAll(tasks)) {
+            results.add(get(future));
+        }
+        return results;
+    }
+
+    /**
+     * Wait for a task to finish.
+     * @param future The task.
+     * @return What the task returned.
+     * @throws Exception If the task threw.
+     */
+    private static <T> T get(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            } else if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Parse a range of the bytes of a file with this parser. A range that
+     * doesn't begin the file begins among the children of &lt;osm&gt;.
+     * Where the range ends is kept in the range.
+     * @param file The OSM file.
+     * @param range The range.
+     * @return The warnings logged.
+     * @throws Exception If the file can't be read or has an error.
+     */
+    private List<String> parse(File file, Range range) throws Exception {
+        XMLTokenizer tokenizer = new XMLTokenizer(this);
+        if (range.start > 0) {
+            tokenizer.beginInsideRoot(range.line, range.col);
+            stack.push(TAG_OUTER);
+            mode = Mode.OUTER;
+        }
+        ParseLog log = ParseLog.begin();
+        try {
+            tokenizer.tokenize(file, range.start, range.end);
+        } catch (PFParseException ex) {
+            throw new PFParseLogException(log.getMessages());
+        } finally {
+            log.end();
+        }
+        range.endLine = tokenizer.getLine();
+        range.endCol = tokenizer.getCol();
+        return log.getMessages();
+    }
+
+    /**
+     * Parse a file with this parser.
+     * @param file The OSM file.
+     * @return The warnings logged.
+     * @throws Exception If the file can't be read or has an error.
+     */
+    private List<String> parse(File file) throws Exception {
+        return OSMParser.parse(this, file);
     }
     
     /**
      * Return all roads that were parsed using this parser. Be warned,
      * if this parser is reused, any newly parsed roads will be added
-     * to this list unless clearRoads() is called.
+     * to this list unless clearRoads() is called. Roads handed to a sink
+     * given to the constructor are not in the list.
      * @return all parsed roads.
      */
     public Set<RoadSegment> extractRoads() {
@@ -181,13 +575,26 @@ public class RoadParser implements OSMSubParser {
             switch (mode) {
                 case OUTER:
                     mode = Mode.NODE;
+                    if (collectingReferences) {
+                        break;
+                    }
+                    long id;
+                    try {
+                        id = Long.parseLong(attributes.get(ATR_ID).toString().trim());
+                    } catch (NumberFormatException ex) {
+                        Warnings.invalidFormat(ATR_ID+"=\""+attributes.get(ATR_ID).toString()+"\"", tag, line, col);
+                        break;
+                    }
+                    if (referencedNodes != null && !referencedNodes.contains(id)) {
+                        break; //no road refers to the node
+                    }
                     //attempt to place the node in the node map with its id
                     Double lat, lon;                    
                     try {
                         lat = Double.parseDouble(attributes.get(ATR_LAT).toString());
                         try {
                             lon = Double.parseDouble(attributes.get(ATR_LONG).toString());
-                            nodeMap.put(attributes.get(ATR_ID).toString().trim(), new Vector2D(lat, lon));
+                            nodeMap.put(id, lat, lon);
                         } catch (NumberFormatException ex) {
                             Warnings.invalidFormat(ATR_LONG+"=\"" + attributes.get(ATR_LONG).toString()+"\"", tag, line, col);
                         }
@@ -206,7 +613,7 @@ public class RoadParser implements OSMSubParser {
                     r_speedLimit = -1f;
                     r_isRoad = false;
                     r_isOneWay = false;
-                    r_wayList.clear();
+                    r_wayLength = 0;
                     mode = Mode.WAY;
                     break;
                 default:
@@ -217,7 +624,11 @@ public class RoadParser implements OSMSubParser {
             switch (mode) {
                 case WAY:
                     mode = Mode.ND;
-                    r_wayList.add(attributes.get(ATR_REF).toString());
+                    try {
+                        addWayNode(Long.parseLong(attributes.get(ATR_REF).toString().trim()));
+                    } catch (NumberFormatException ex) {
+                        Warnings.invalidFormat(ATR_REF+"=\""+attributes.get(ATR_REF).toString()+"\"", tag, line, col);
+                    }
                     break;
                 default:
                     Errors.unexpectedOpen(tag, line, col);
@@ -287,39 +698,17 @@ public class RoadParser implements OSMSubParser {
         } else if (isEqual(tag, TAG_WAY)) {
             switch (mode) {
                 case WAY:
-                    if (r_wayList == null || r_wayList.size() < 2) {
+                    if (r_wayLength < 2) {
                         Warnings.unexpectedClose(tag, TAG_WAY, line, col);
-                    } else if (r_isRoad) {
-                        // declare variables for each segment
-                        RoadSegment r = null;
-                        Vector2D s, e = nodeMap.get(r_wayList.getFirst());
-                        String errorRef;
-                        for (int i = 1; i < r_wayList.size(); i++) {
-                            s = e;
-                            e = nodeMap.get(r_wayList.get(i));
-                            // skip this segment if any of the points are invalid
-                            errorRef = null;
-                            if (s == null)
-                                errorRef = r_wayList.get(i-1);
-                            if (e == null) {
-                                errorRef = r_wayList.get(i);
-                                e = s;
-                            }
-                            if (errorRef != null) {
-                                Warnings.general("While parsing a <way> tag, the nd tag " +
-                                        "containing ref=\"" + errorRef + "\" refered " +
-                                        "to an invalid node. Skipping that node.", line, col);
-                                continue;
-                            }
-                            r = new RoadSegment(new Segment2D(s, e), r_name);
-                            r.setSpeedLimit((int)r_speedLimit); //TODO KEEP AS DOUBLE, CHANGE ROADSEGMENT TO TAKE DOUBLE
-                            roads.add(r);
-                            if (!r_isOneWay) {
-                                r = new RoadSegment(new Segment2D(e, s), r_name);
-                                r.setSpeedLimit((int) r_speedLimit); //TODO KEEP AS DOUBLE, CHANGE ROADSEGMENT TO TAKE DOUBLE
-                                roads.add(r);
-                            }
+                    } else if (r_isRoad && collectingReferences) {
+                        for (int i = 0; i < r_wayLength; i++) {
+                            referencedNodes.add(r_wayNodes[i]);
                         }
+                    } else if (r_isRoad && ways != null) {
+                        ways.add(new Way(Arrays.copyOf(r_wayNodes, r_wayLength), r_name,
+                                r_speedLimit, r_isOneWay, line, col));
+                    } else if (r_isRoad) {
+                        addSegments(r_wayNodes, r_wayLength, r_name, r_speedLimit, r_isOneWay, line, col);
                     }
                     break;
                 default:
@@ -330,7 +719,7 @@ public class RoadParser implements OSMSubParser {
             r_speedLimit = -1f;
             r_isRoad = false;
             r_isOneWay = false;
-            r_wayList.clear();
+            r_wayLength = 0;
             mode = Mode.OUTER;
         } else if (isEqual(tag, TAG_ND)) {
             switch (mode) {
@@ -366,6 +755,62 @@ public class RoadParser implements OSMSubParser {
         }
     }
     
+    /**
+     * Hand the segments of a road to the sink, skipping any node that isn't
+     * in the node map.
+     * @param wayNodes The node ids of the road.
+     * @param wayLength The number of node ids.
+     * @param name The name of the road, possibly null.
+     * @param speedLimit The speed limit of the road.
+     * @param isOneWay True if the road is one-way.
+     * @param line The line number that the way is closed on.
+     * @param col The column number that the way is closed on.
+     */
+    private void addSegments(long[] wayNodes, int wayLength, String name, double speedLimit,
+            boolean isOneWay, int line, int col) {
+        // declare variables for each segment
+        RoadSegment r = null;
+        Vector2D s, e = nodeMap.get(wayNodes[0]);
+        String errorRef;
+        for (int i = 1; i < wayLength; i++) {
+            s = e;
+            e = nodeMap.get(wayNodes[i]);
+            // skip this segment if any of the points are invalid
+            errorRef = null;
+            if (s == null)
+                errorRef = String.valueOf(wayNodes[i-1]);
+            if (e == null) {
+                errorRef = String.valueOf(wayNodes[i]);
+                e = s;
+            }
+            if (errorRef != null) {
+                Warnings.general("While parsing a <way> tag, the nd tag " +
+                        "containing ref=\"" + errorRef + "\" refered " +
+                        "to an invalid node. Skipping that node.", line, col);
+                continue;
+            }
+            r = new RoadSegment(new Segment2D(s, e), name);
+            r.setSpeedLimit((int)speedLimit); //TODO KEEP AS DOUBLE, CHANGE ROADSEGMENT TO TAKE DOUBLE
+            sink.addRoad(r);
+            if (!isOneWay) {
+                r = new RoadSegment(new Segment2D(e, s), name);
+                r.setSpeedLimit((int) speedLimit); //TODO KEEP AS DOUBLE, CHANGE ROADSEGMENT TO TAKE DOUBLE
+                sink.addRoad(r);
+            }
+        }
+    }
+
+    /**
+     * Add a node id to the way being parsed.
+     * @param ref The id of the node.
+     */
+    private void addWayNode(long ref) {
+        if (r_wayLength == r_wayNodes.length) {
+            r_wayNodes = Arrays.copyOf(r_wayNodes, r_wayLength * 2);
+        }
+        r_wayNodes[r_wayLength++] = ref;
+    }
+
     /**
      * Return the speed, in kilometers per hour, from the given text. If no
      * number is contained, -1 is returned. If the text contains "mph" (or MPH),
@@ -445,4 +890,54 @@ public class RoadParser implements OSMSubParser {
         // if tag was found, it will be equal to s
         return (s.equals(tag));
     }
+
+    /**
+     * A range of the bytes of a file, parsed on a thread of its own.
+     */
+    private static class Range {
+
+        /** The position of the first byte */
+        final long start;
+        /** The position after the last byte */
+        final long end;
+        /** The line and column of the last char before the range */
+        int line = 1, col = 0;
+        /** The line and column of the last char of the range */
+        int endLine, endCol;
+        /** The roads of the range, until they are made into segments */
+        List<Way> ways;
+        /** The warnings logged while parsing the range */
+        List<String> log;
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * A road whose segments are made once the nodes of every range are known.
+     */
+    private static class Way {
+
+        /** The node ids */
+        final long[] nodes;
+        /** The name, possibly null */
+        final String name;
+        /** The speed limit */
+        final double speedLimit;
+        /** True if the road is one-way */
+        final boolean isOneWay;
+        /** The line and column the way is closed on */
+        final int line, col;
+
+        Way(long[] nodes, String name, double speedLimit, boolean isOneWay, int line, int col) {
+            this.nodes = nodes;
+            this.name = name;
+            this.speedLimit = speedLimit;
+            this.isOneWay = isOneWay;
+            this.line = line;
+            this.col = col;
+        }
+    }
 }
@@ -0,0 +1,21 @@
+package org.rowan.pathfinder.parser;
+
+import org.rowan.pathfinder.pathfinder.RoadSegment;
+
+/**
+ * Interface <code>RoadSink</code> receives the road segments parsed by
+ * <code>RoadParser</code> one at a time, as each way is closed, so they can
+ * be handed on while the file is still being parsed instead of being kept
+ * by the parser until it is done.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public interface RoadSink {
+
+    /**
+     * Called for every road segment parsed, in the order of the file.
+     * @param road The road segment.
+     */
+    public void addRoad(RoadSegment road);
+}
@@ -0,0 +1,178 @@
+package org.rowan.pathfinder.parser;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Class <code>StaxBackend</code> parses documents with the streaming pull
+ * parser of the Java platform (StAX), so no other library is needed. Unlike
+ * the tokenizer it is a conforming XML parser: a document that is not well
+ * formed, such as one with tags that don't match, fails with the parser's
+ * message instead of being passed on to the sub parser. Adjacent text and
+ * CDATA are given to the sub parser as one text, and files are read in the
+ * encoding they declare. Lines and columns are those the pull parser reports
+ * for the end of each event. DTDs and external entities are not read.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class StaxBackend implements ParserBackend {
+
+    /** The size of the buffer files are read through */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** The factory of the pull parsers, only used while locked */
+    private final XMLInputFactory factory;
+
+    /**
+     * Create a new backend.
+     */
+    public StaxBackend() {
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(File file, OSMSubParser parser) throws Exception {
+        parse(file, parser, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(File file, XMLSubParser parser) throws Exception {
+        parse(file, null, parser);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(Reader reader, OSMSubParser parser) throws Exception {
+        parse(createReader(reader), parser, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(Reader reader, XMLSubParser parser) throws Exception {
+        parse(createReader(reader), null, parser);
+    }
+
+    /**
+     * Parse a file, telling one of two parsers about it.
+     * @param file The file.
+     * @param osmParser The parser to tell about elements with their
+     *                  attributes, or null.
+     * @param xmlParser The parser to tell about elements, or null.
+     * @throws Exception If the file can't be read or has an error, or the
+     *                   parser throws.
+     */
+    private void parse(File file, OSMSubParser osmParser, XMLSubParser xmlParser) throws Exception {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            XMLStreamReader reader;
+            synchronized (factory) {
+                reader = factory.createXMLStreamReader(in);
+            }
+            parse(reader, osmParser, xmlParser);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Create a pull parser over a reader.
+     * @param reader The reader.
+     * @return The pull parser.
+     * @throws XMLStreamException If the parser can't be created.
+     */
+    private XMLStreamReader createReader(Reader reader) throws XMLStreamException {
+        synchronized (factory) {
+            return factory.createXMLStreamReader(reader);
+        }
+    }
+
+    /**
+     * Pull every event up to the end of the root element and tell one of
+     * two parsers about it.
+     * @param reader The pull parser.
+     * @param osmParser The parser to tell about elements with their
+     *                  attributes, or null.
+     * @param xmlParser The parser to tell about elements, or null.
+     * @throws Exception If the document has an error or the parser throws.
+     */
+    private static void parse(XMLStreamReader reader, OSMSubParser osmParser, XMLSubParser xmlParser)
+            throws Exception {
+        AttributeDictionary attributes = new AttributeDictionary();
+        int depth = 0;
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT: {
+                        Location at = reader.getLocation();
+                        depth++;
+                        if (osmParser != null) {
+                            attributes.clear();
+                            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                                attributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                            }
+                            osmParser.startElement(reader.getLocalName(), attributes,
+                                    at.getLineNumber(), at.getColumnNumber());
+                        } else {
+                            xmlParser.startElement(reader.getLocalName(),
+                                    at.getLineNumber(), at.getColumnNumber());
+                        }
+                        break;
+                    }
+                    case XMLStreamConstants.END_ELEMENT: {
+                        Location at = reader.getLocation();
+                        depth--;
+                        if (osmParser != null) {
+                            osmParser.endElement(reader.getLocalName(), at.getLineNumber(), at.getColumnNumber());
+                        } else {
+                            xmlParser.endElement(reader.getLocalName(), at.getLineNumber(), at.getColumnNumber());
+                        }
+                        if (depth == 0) {
+                            // anything after the root element is ignored
+                            return;
+                        }
+                        break;
+                    }
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE: {
+                        if (depth == 0) {
+                            break;
+                        }
+                        Location at = reader.getLocation();
+                        if (osmParser != null) {
+                            osmParser.text(reader.getText(), at.getLineNumber(), at.getColumnNumber());
+                        } else {
+                            xmlParser.text(reader.getText(), at.getLineNumber(), at.getColumnNumber());
+                        }
+                        break;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
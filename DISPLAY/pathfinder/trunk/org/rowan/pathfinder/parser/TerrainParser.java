@@ -4,7 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EmptyStackException;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Stack;
@@ -40,8 +40,8 @@ public class TerrainParser implements XMLSubParser {
     private static final String TAG_COORD = "Coord"; 
     /** The stack containing the current nested tags */
     private Stack<String> stack = new Stack<String>();
-    /** The set of Events that have been parsed */
-    private Set<Terrain> terrains = new HashSet<Terrain>();
+    /** The set of Terrains that have been parsed, in the order they were parsed */
+    private Set<Terrain> terrains = new LinkedHashSet<Terrain>();
     /** The mode of that parser is in */
     private Mode mode = Mode.NONE;
     /** The type of the terrain */
@@ -69,7 +69,7 @@ public class TerrainParser implements XMLSubParser {
      * list of any previously parsed terrains.
      */
     public void clearTerrains() {
-        terrains = new HashSet<Terrain>();
+        terrains = new LinkedHashSet<Terrain>();
     }
     
     /**
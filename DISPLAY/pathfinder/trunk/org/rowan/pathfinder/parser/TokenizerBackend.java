@@ -0,0 +1,49 @@
+package org.rowan.pathfinder.parser;
+
+import java.io.File;
+import java.io.Reader;
+
+/**
+ * Class <code>TokenizerBackend</code> parses documents with an
+ * <code>XMLTokenizer</code>, the lenient state machine the parsers have
+ * always used. It tells the sub parser about tags that don't match as they
+ * are, so the sub parser can report them, and it ignores anything after the
+ * root element. Files are mapped into memory and read as UTF-8.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class TokenizerBackend implements ParserBackend {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(File file, OSMSubParser parser) throws Exception {
+        new XMLTokenizer(parser).tokenize(file);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(File file, XMLSubParser parser) throws Exception {
+        new XMLTokenizer(parser).tokenize(file);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(Reader reader, OSMSubParser parser) throws Exception {
+        new XMLTokenizer(parser).tokenize(reader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(Reader reader, XMLSubParser parser) throws Exception {
+        new XMLTokenizer(parser).tokenize(reader);
+    }
+}
@@ -0,0 +1,828 @@
+package org.rowan.pathfinder.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Class <code>XMLTokenizer</code> is the state machine behind OSMParser and
+ * XMLParser. It reads its input a buffer at a time, from a Reader or from a
+ * UTF-8 file mapped into memory, instead of a character at a time, and keeps
+ * everything it builds while reading in arrays that are reused:
+ * <ul>
+ * <li>the modes it returns to are ints on an array, not boxed on a Stack,</li>
+ * <li>text is collected in a char array instead of a StringBuffer,</li>
+ * <li>tag and attribute names, and the whitespace between tags, are
+ * interned, so each distinct one is only made into a String once,</li>
+ * <li>the attributes of a tag are kept in one <code>Dictionary</code> that is
+ * cleared for the next tag rather than made again, and their values are only
+ * made into Strings when a sub parser asks for them.</li>
+ * </ul>
+ * The attributes handed to an <code>OSMSubParser</code> are only valid until
+ * startElement() returns, so a sub parser must copy any it wants to keep.
+ * Elements, text, line and column numbers and errors are exactly those of
+ * the old character at a time parsers.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+class XMLTokenizer {
+
+    /** The number of chars read or decoded at a time */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** The largest part of a file mapped into memory at a time */
+    private static final long MAP_WINDOW = 1 << 28;
+    private final static int TEXT = 1,
+            ENTITY = 2,
+            OPEN_TAG = 3,
+            CLOSE_TAG = 4,
+            START_TAG = 5,
+            ATTRIBUTE_LVALUE = 6,
+            ATTRIBUTE_EQUAL = 9,
+            ATTRIBUTE_RVALUE = 10,
+            QUOTE = 7,
+            IN_TAG = 8,
+            SINGLE_TAG = 12,
+            COMMENT = 13,
+            DONE = 11,
+            DOCTYPE = 14,
+            PRE = 15,
+            CDATA = 16;
+    /** The parser told about elements with their attributes, or null */
+    private OSMSubParser osmParser;
+    /** The parser told about elements without their attributes, or null */
+    private XMLSubParser xmlParser;
+    /** The modes to return to, the last on top */
+    private int[] modes = new int[16];
+    /** The number of modes to return to */
+    private int modeCount;
+    /** The current mode */
+    private int mode = PRE;
+    /** The text, name or value being collected */
+    private char[] sb = new char[256];
+    /** The number of chars collected */
+    private int sbLength;
+    /** The name of the entity being collected */
+    private char[] etag = new char[16];
+    /** The number of chars of the entity collected */
+    private int etagLength;
+    /** The quote the current attribute value started with */
+    private int quotec = '"';
+    /** The number of elements open */
+    private int depth;
+    /** The name of the tag being read, null until it is known */
+    private String tagName;
+    /** The name of the attribute being read */
+    private String lvalue;
+    /** The attributes of the tag being read */
+    private AttributeDictionary attrs = new AttributeDictionary();
+    /** The names seen so far */
+    private NameTable names = new NameTable();
+    /** The line and column of the last char */
+    private int line = 1, col = 0;
+    /** Whether the last char was a \r */
+    private boolean eol;
+    /** Whether the root element has ended */
+    private boolean finished;
+
+    /**
+     * Create a new tokenizer that tells a parser about elements with their
+     * attributes.
+     * @param parser The parser.
+     */
+    XMLTokenizer(OSMSubParser parser) {
+        this.osmParser = parser;
+    }
+
+    /**
+     * Create a new tokenizer that tells a parser about elements.
+     * @param parser The parser.
+     */
+    XMLTokenizer(XMLSubParser parser) {
+        this.xmlParser = parser;
+    }
+
+    /**
+     * Tokenize everything a reader gives, or up to the end of the root
+     * element.
+     * @param r The reader, which is not closed.
+     * @throws Exception If the reader fails, the document has an error or a
+     *                   parser throws.
+     */
+    void tokenize(Reader r) throws Exception {
+        char[] buffer = new char[BUFFER_SIZE];
+        int count;
+        while (!finished && (count = r.read(buffer)) != -1) {
+            feed(buffer, count);
+        }
+    }
+
+    /**
+     * Tokenize a UTF-8 file, or the part of it up to the end of the root
+     * element. The file is mapped into memory a window at a time and decoded
+     * straight into the buffer that is tokenized.
+     * @param file The file.
+     * @throws Exception If the file can't be read, the document has an error
+     *                   or a parser throws.
+     */
+    void tokenize(File file) throws Exception {
+        tokenize(file, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Tokenize the bytes of a UTF-8 file from one position to another, or up
+     * to the end of the root element. The range must start and end between
+     * chars, as it does at the &lt; of a tag.
+     * @param file The file.
+     * @param start The position of the first byte.
+     * @param end The position after the last byte, which may be past the end
+     *            of the file.
+     * @throws Exception If the file can't be read, the document has an error
+     *                   or a parser throws.
+     */
+    void tokenize(File file, long start, long end) throws Exception {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            // the decoder is much faster from an array than from the mapping,
+            // so the bytes are copied over a buffer at a time
+            ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+            CharBuffer out = CharBuffer.allocate(BUFFER_SIZE);
+            long size = Math.min(end, channel.size());
+            for (long position = start; position < size && !finished; position += MAP_WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_WINDOW, size - position));
+                while (window.hasRemaining() && !finished) {
+                    int length = Math.min(bytes.remaining(), window.remaining());
+                    window.get(bytes.array(), bytes.position(), length);
+                    bytes.position(bytes.position() + length);
+                    bytes.flip();
+                    decode(decoder, bytes, out, false);
+                    // a char cut by the end of the buffer is decoded with the next
+                    bytes.compact();
+                }
+            }
+            bytes.flip();
+            decode(decoder, bytes, out, true);
+            while (!finished && decoder.flush(out).isOverflow()) {
+                drain(out);
+            }
+            drain(out);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Start tokenizing as if the root element had just been opened, for a
+     * part of a document that begins among the children of the root. The
+     * root element then ends with the first unmatched closing tag.
+     * @param line The line the part begins on.
+     * @param col The column of the last char before the part.
+     */
+    void beginInsideRoot(int line, int col) {
+        mode = TEXT;
+        depth = 1;
+        this.line = line;
+        this.col = col;
+    }
+
+    /**
+     * Returns the line of the last char tokenized.
+     * @return The line.
+     */
+    int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the column of the last char tokenized.
+     * @return The column.
+     */
+    int getCol() {
+        return col;
+    }
+
+    /**
+     * Decode bytes and tokenize the chars.
+     * @param decoder The decoder.
+     * @param bytes The bytes, of which a char cut short may be left.
+     * @param out The buffer the chars are decoded into.
+     * @param last Whether no bytes follow.
+     * @throws Exception If the document has an error or a parser throws.
+     */
+    private void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer out, boolean last)
+            throws Exception {
+        while (!finished && decoder.decode(bytes, out, last).isOverflow()) {
+            drain(out);
+        }
+        drain(out);
+    }
+
+    /**
+     * Tokenize the chars decoded into a buffer and empty it.
+     * @param out The buffer.
+     * @throws Exception If the document has an error or a parser throws.
+     */
+    private void drain(CharBuffer out) throws Exception {
+        if (!finished) {
+            feed(out.array(), out.position());
+        }
+        out.clear();
+    }
+
+    /**
+     * Run the state machine over a buffer of chars.
+     * @param buffer The chars.
+     * @param count The number of chars in the buffer.
+     * @throws Exception If the document has an error or a parser throws.
+     */
+    private void feed(char[] buffer, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            if (!eol) {
+                i = scan(buffer, i, count);
+                if (i == count) {
+                    return;
+                }
+            }
+            int c = buffer[i];
+
+            // We need to map \r, \r\n, and \n to \n
+            // See XML spec section 2.11
+            if (c == '\n' && eol) {
+                eol = false;
+                continue;
+            } else if (eol) {
+                eol = false;
+            } else if (c == '\n') {
+                line++;
+                col = 0;
+            } else if (c == '\r') {
+                eol = true;
+                c = '\n';
+                line++;
+                col = 0;
+            } else {
+                col++;
+            }
+
+            switch (mode) {
+                case DONE:
+                    finished = true;
+                    return;
+
+                // We are between tags collecting text.
+                case TEXT:
+                    if (c == '<') {
+                        pushMode(mode);
+                        mode = START_TAG;
+                        if (sbLength > 0) {
+                            text(takeTextBetweenTags());
+                        }
+                    } else if (c == '&') {
+                        pushMode(mode);
+                        mode = ENTITY;
+                        etagLength = 0;
+                    } else {
+                        append(c);
+                    }
+                    break;
+
+                // we are processing a closing tag: e.g. </foo>
+                case CLOSE_TAG:
+                    if (c == '>') {
+                        mode = popMode();
+                        tagName = takeName();
+                        depth--;
+                        if (depth == 0) {
+                            mode = DONE;
+                        }
+                        endElement(tagName);
+                    } else {
+                        append(c);
+                    }
+                    break;
+
+                // we are processing CDATA
+                case CDATA:
+                    if (c == '>' && endsWith(']')) {
+                        sbLength -= 2;
+                        text(takeText());
+                        mode = popMode();
+                    } else {
+                        append(c);
+                    }
+                    break;
+
+                // we are processing a comment.  We are inside
+                // the <!-- .... --> looking for the -->.
+                case COMMENT:
+                    if (c == '>' && endsWith('-')) {
+                        sbLength = 0;
+                        mode = popMode();
+                    } else {
+                        append(c);
+                    }
+                    break;
+
+                // We are outside the root tag element
+                case PRE:
+                    if (c == '<') {
+                        pushMode(TEXT);
+                        mode = START_TAG;
+                    }
+                    break;
+
+                // We are inside one of these <? ... ?>
+                // or one of these <!DOCTYPE ... >
+                case DOCTYPE:
+                    if (c == '>') {
+                        mode = popMode();
+                        if (mode == TEXT) {
+                            mode = PRE;
+                        }
+                    }
+                    break;
+
+                // we have just seen a < and
+                // are wondering what we are looking at
+                // <foo>, </foo>, <!-- ... --->, etc.
+                case START_TAG:
+                    mode = popMode();
+                    if (c == '/') {
+                        pushMode(mode);
+                        mode = CLOSE_TAG;
+                    } else if (c == '?') {
+                        mode = DOCTYPE;
+                    } else {
+                        pushMode(mode);
+                        mode = OPEN_TAG;
+                        tagName = null;
+                        attrs.clear();
+                        append(c);
+                    }
+                    break;
+
+                // we are processing an entity, e.g. &lt;, &#187;, etc.
+                case ENTITY:
+                    if (c == ';') {
+                        mode = popMode();
+                        appendEntity();
+                    } else {
+                        if (etagLength == etag.length) {
+                            etag = Arrays.copyOf(etag, etagLength * 2);
+                        }
+                        etag[etagLength++] = (char) c;
+                    }
+                    break;
+
+                // we have just seen something like this:
+                // <foo a="b"/
+                // and are looking for the final >.
+                case SINGLE_TAG:
+                    if (tagName == null) {
+                        tagName = takeName();
+                    }
+                    if (c != '>') {
+                        exc("Expected > for tag: <" + tagName + "/>");
+                    }
+                    startElement(tagName);
+                    endElement(tagName);
+                    if (depth == 0) {
+                        finished = true;
+                        return;
+                    }
+                    sbLength = 0;
+                    attrs.clear();
+                    tagName = null;
+                    mode = popMode();
+                    break;
+
+                // we are processing something
+                // like this <foo ... >.  It could
+                // still be a <!-- ... --> or something.
+                case OPEN_TAG:
+                    if (c == '>') {
+                        if (tagName == null) {
+                            tagName = takeName();
+                        }
+                        sbLength = 0;
+                        depth++;
+                        startElement(tagName);
+                        tagName = null;
+                        attrs.clear();
+                        mode = popMode();
+                    } else if (c == '/') {
+                        mode = SINGLE_TAG;
+                    } else if (c == '-' && textEquals("!-")) {
+                        mode = COMMENT;
+                    } else if (c == '[' && textEquals("![CDATA")) {
+                        mode = CDATA;
+                        sbLength = 0;
+                    } else if (c == 'E' && textEquals("!DOCTYP")) {
+                        sbLength = 0;
+                        mode = DOCTYPE;
+                    } else if (Character.isWhitespace((char) c)) {
+                        tagName = takeName();
+                        mode = IN_TAG;
+                    } else {
+                        append(c);
+                    }
+                    break;
+
+                // We are processing the quoted right-hand side
+                // of an element's attribute.
+                case QUOTE:
+                    if (c == quotec) {
+                        if (osmParser != null) {
+                            attrs.add(lvalue, sb, sbLength);
+                        }
+                        sbLength = 0;
+                        mode = IN_TAG;
+                        // See section the XML spec, section 3.3.3
+                        // on normalization processing.
+                    } else if (c == ' ' || c == '\r' || c == '\n' || c == '\u0009') {
+                        append(' ');
+                    } else if (c == '&') {
+                        pushMode(mode);
+                        mode = ENTITY;
+                        etagLength = 0;
+                    } else {
+                        append(c);
+                    }
+                    break;
+
+                case ATTRIBUTE_RVALUE:
+                    if (c == '"' || c == '\'') {
+                        quotec = c;
+                        mode = QUOTE;
+                    } else if (!Character.isWhitespace((char) c)) {
+                        exc("Error in attribute processing");
+                    }
+                    break;
+
+                case ATTRIBUTE_LVALUE:
+                    if (Character.isWhitespace((char) c)) {
+                        lvalue = takeName();
+                        mode = ATTRIBUTE_EQUAL;
+                    } else if (c == '=') {
+                        lvalue = takeName();
+                        mode = ATTRIBUTE_RVALUE;
+                    } else {
+                        append(c);
+                    }
+                    break;
+
+                case ATTRIBUTE_EQUAL:
+                    if (c == '=') {
+                        mode = ATTRIBUTE_RVALUE;
+                    } else if (!Character.isWhitespace((char) c)) {
+                        exc("Error in attribute processing.");
+                    }
+                    break;
+
+                case IN_TAG:
+                    if (c == '>') {
+                        mode = popMode();
+                        startElement(tagName);
+                        depth++;
+                        tagName = null;
+                        attrs.clear();
+                    } else if (c == '/') {
+                        mode = SINGLE_TAG;
+                    } else if (!Character.isWhitespace((char) c)) {
+                        mode = ATTRIBUTE_LVALUE;
+                        append(c);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Collect the chars of a run that the current mode only collects, such as
+     * the chars of a name or value, without going through the state machine
+     * for each. Any char that could end the run, change the line or need the
+     * state machine otherwise ends it.
+     * @param buffer The chars.
+     * @param from The position of the first char of the run.
+     * @param count The number of chars in the buffer.
+     * @return The position of the first char after the run.
+     */
+    private int scan(char[] buffer, int from, int count) {
+        int i = from;
+        switch (mode) {
+            case TEXT:
+                while (i < count) {
+                    char c = buffer[i];
+                    if (c == '<' || c == '&' || c == '\n' || c == '\r') {
+                        break;
+                    }
+                    i++;
+                }
+                break;
+            case QUOTE:
+                while (i < count) {
+                    char c = buffer[i];
+                    if (c == quotec || c == '&' || c <= ' ') {
+                        break;
+                    }
+                    i++;
+                }
+                break;
+            case OPEN_TAG:
+                // a tag name also ends where it may turn out to be a
+                // comment, CDATA or DOCTYPE
+                while (i < count) {
+                    char c = buffer[i];
+                    if (c == '>' || c == '/' || c == '-' || c == '[' || c == 'E'
+                            || c <= ' ' || c >= 0x80) {
+                        break;
+                    }
+                    i++;
+                }
+                break;
+            case ATTRIBUTE_LVALUE:
+            case CLOSE_TAG:
+                // names end at whitespace, which may be any char above ASCII
+                while (i < count) {
+                    char c = buffer[i];
+                    if (c == '=' || c == '>' || c <= ' ' || c >= 0x80) {
+                        break;
+                    }
+                    i++;
+                }
+                break;
+            default:
+                return from;
+        }
+        int length = i - from;
+        if (length > 0) {
+            if (sbLength + length > sb.length) {
+                sb = Arrays.copyOf(sb, Math.max(sb.length * 2, sbLength + length));
+            }
+            System.arraycopy(buffer, from, sb, sbLength, length);
+            sbLength += length;
+            col += length;
+        }
+        return i;
+    }
+
+    /**
+     * Tell the parser an element started.
+     * @param tag The name of the element.
+     * @throws PFParseException If the parser stops parsing.
+     */
+    private void startElement(String tag) throws PFParseException {
+        if (osmParser != null) {
+            osmParser.startElement(tag, attrs, line, col);
+        } else {
+            xmlParser.startElement(tag, line, col);
+        }
+    }
+
+    /**
+     * Tell the parser an element ended.
+     * @param tag The name of the element.
+     * @throws PFParseException If the parser stops parsing.
+     */
+    private void endElement(String tag) throws PFParseException {
+        if (osmParser != null) {
+            osmParser.endElement(tag, line, col);
+        } else {
+            xmlParser.endElement(tag, line, col);
+        }
+    }
+
+    /**
+     * Tell the parser about text.
+     * @param str The text.
+     * @throws PFParseException If the parser stops parsing.
+     */
+    private void text(String str) throws PFParseException {
+        if (osmParser != null) {
+            osmParser.text(str, line, col);
+        } else {
+            xmlParser.text(str, line, col);
+        }
+    }
+
+    /**
+     * Append the char of the entity that was just read to the text.
+     * @throws Exception If the entity is unknown.
+     */
+    private void appendEntity() throws Exception {
+        String cent = new String(etag, 0, etagLength);
+        etagLength = 0;
+        if (cent.equals("lt")) {
+            append('<');
+        } else if (cent.equals("gt")) {
+            append('>');
+        } else if (cent.equals("amp")) {
+            append('&');
+        } else if (cent.equals("quot")) {
+            append('"');
+        } else if (cent.equals("apos")) {
+            append('\'');
+        } else if (cent.startsWith("#")) {
+            append((char) Integer.parseInt(cent.substring(1)));
+        } else {
+            exc("Unknown entity: &" + cent + ";");
+        }
+    }
+
+    /**
+     * Add a char to the text being collected.
+     * @param c The char.
+     */
+    private void append(int c) {
+        if (sbLength == sb.length) {
+            sb = Arrays.copyOf(sb, sbLength * 2);
+        }
+        sb[sbLength++] = (char) c;
+    }
+
+    /**
+     * Returns the text collected and starts collecting again.
+     * @return The text.
+     */
+    private String takeText() {
+        String str = new String(sb, 0, sbLength);
+        sbLength = 0;
+        return str;
+    }
+
+    /**
+     * Returns the text collected between two tags and starts collecting
+     * again. Text that is only whitespace, such as the indentation of the
+     * next tag, comes from the name table, so the same few strings are not
+     * made again for every tag.
+     * @return The text.
+     */
+    private String takeTextBetweenTags() {
+        for (int i = 0; i < sbLength; i++) {
+            if (sb[i] > ' ') {
+                return takeText();
+            }
+        }
+        return takeName();
+    }
+
+    /**
+     * Returns the name collected, interned, and starts collecting again.
+     * @return The name.
+     */
+    private String takeName() {
+        String name = names.get(sb, sbLength);
+        sbLength = 0;
+        return name;
+    }
+
+    /**
+     * Returns whether the text collected ends with a char twice.
+     * @param c The char.
+     * @return True if the last two chars are c.
+     */
+    private boolean endsWith(char c) {
+        return sbLength >= 2 && sb[sbLength - 1] == c && sb[sbLength - 2] == c;
+    }
+
+    /**
+     * Returns whether the text collected is a string.
+     * @param str The string.
+     * @return True if the text has the same chars as the string.
+     */
+    private boolean textEquals(String str) {
+        if (sbLength != str.length()) {
+            return false;
+        }
+        for (int i = 0; i < sbLength; i++) {
+            if (sb[i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Save a mode to return to.
+     * @param m The mode.
+     */
+    private void pushMode(int m) {
+        if (modeCount == modes.length) {
+            modes = Arrays.copyOf(modes, modeCount * 2);
+        }
+        modes[modeCount++] = m;
+    }
+
+    /**
+     * Returns the last mode saved, PRE if there is none.
+     * @return The mode.
+     */
+    private int popMode() {
+        return modeCount > 0 ? modes[--modeCount] : PRE;
+    }
+
+    /**
+     * Stop with an error at the current line and column.
+     * @param s The error message.
+     * @throws Exception Always.
+     */
+    private void exc(String s) throws Exception {
+        throw new Exception(s + " near line " + line + ", column " + col);
+    }
+
+    /**
+     * The distinct names read, so that a name is made into a String once and
+     * not for every tag. Names are found by their String hash code, which is
+     * computed from the chars the same way. Once the table holds a few
+     * thousand names, new names are no longer kept.
+     */
+    private static class NameTable {
+
+        /** The most names kept */
+        private static final int MAX_NAMES = 4096;
+        /** The names, by hash code, with linear probing */
+        private String[] table = new String[64];
+        /** The number of names kept */
+        private int count;
+
+        /**
+         * Returns the name made of some chars.
+         * @param chars The chars.
+         * @param length The number of chars.
+         * @return The interned name.
+         */
+        String get(char[] chars, int length) {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            int mask = table.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            for (String name = table[slot]; name != null; name = table[slot]) {
+                if (name.hashCode() == hash && matches(name, chars, length)) {
+                    return name;
+                }
+                slot = (slot + 1) & mask;
+            }
+            String name = new String(chars, 0, length).intern();
+            if (count < MAX_NAMES) {
+                table[slot] = name;
+                if (++count * 2 > table.length) {
+                    grow();
+                }
+            }
+            return name;
+        }
+
+        /**
+         * Returns whether a name is made of some chars.
+         * @param name The name.
+         * @param chars The chars.
+         * @param length The number of chars.
+         * @return True if they are the same.
+         */
+        private static boolean matches(String name, char[] chars, int length) {
+            if (name.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (name.charAt(i) != chars[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Double the size of the table.
+         */
+        private void grow() {
+            String[] old = table;
+            table = new String[old.length * 2];
+            int mask = table.length - 1;
+            for (String name : old) {
+                if (name != null) {
+                    int hash = name.hashCode();
+                    int slot = (hash ^ (hash >>> 16)) & mask;
+                    while (table[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = name;
+                }
+            }
+        }
+    }
+}
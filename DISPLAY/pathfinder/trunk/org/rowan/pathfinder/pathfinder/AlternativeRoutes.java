@@ -0,0 +1,308 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Class <code>AlternativeRoutes</code> finds the optimal route between two
+ * nodes along with a number of reasonable, diverse alternatives, using the
+ * plateau method. A backward tree to the destination and a forward tree from
+ * the start are grown once, up to a maximum route cost, and the optimal route
+ * is read from them unless it is already known. Wherever the two trees share a stretch of route (a plateau), the route that follows
+ * the forward tree to the plateau, along it, and the backward tree from it is
+ * locally optimal, and the longer the plateau the more natural the
+ * alternative. Plateaus are tried longest first, and a route is only offered
+ * if it does not share too much of its cost with a route already offered.
+ *
+ * All search state lives in the <code>QueryContext</code>, and costs are only
+ * ever read, so one instance can be used by any number of threads at once.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class AlternativeRoutes {
+
+    /** The maximum number of routes to return */
+    private int maxRoutes;
+    /** The largest fraction of a route's cost that may be shared with a
+     * route already found */
+    private double maxOverlap;
+    /** How much more than the optimal route an alternative may cost, as a
+     * fraction of the optimal cost */
+    private double maxStretch;
+
+    /**
+     * Create a new alternative route finder.
+     * @param maxRoutes The maximum number of routes to return, the optimal
+     *                  route included.
+     * @param maxOverlap The largest fraction (between 0 and 1) of an
+     *                   alternative's cost that may be shared with any route
+     *                   found before it.
+     * @param maxStretch How much more than the optimal route an alternative
+     *                   may cost, for example 0.5 for 50% more.
+     */
+    public AlternativeRoutes(int maxRoutes, double maxOverlap, double maxStretch) {
+        if (maxRoutes < 1) {
+            throw new IllegalArgumentException("At least one route must be requested.");
+        }
+        this.maxRoutes = maxRoutes;
+        this.maxOverlap = maxOverlap;
+        this.maxStretch = maxStretch;
+    }
+
+    /**
+     * Returns the maximum number of routes to return.
+     * @return The maximum number of routes, the optimal route included.
+     */
+    public int getMaxRoutes() {
+        return maxRoutes;
+    }
+
+    /**
+     * Returns the largest fraction of an alternative's cost that may be
+     * shared with a route found before it.
+     * @return The diversity threshold.
+     */
+    public double getMaxOverlap() {
+        return maxOverlap;
+    }
+
+    /**
+     * Returns how much more than the optimal route an alternative may cost.
+     * @return The maximum stretch, as a fraction of the optimal cost.
+     */
+    public double getMaxStretch() {
+        return maxStretch;
+    }
+
+    /**
+     * Find the optimal route from source to target and up to
+     * getMaxRoutes() - 1 alternatives.
+     * @param context The context to search in. Its forward and reverse
+     *                searches are used.
+     * @param source The id of the start node, -1 if it is not in the graph.
+     * @param target The id of the destination node, -1 if it is not in the
+     *               graph.
+     * @return The routes found, optimal route first. Empty if target can't be
+     *         reached from source.
+     */
+    public List<List<Traversable>> find(QueryContext context, int source, int target) {
+        return find(context, source, target, null);
+    }
+
+    /**
+     * Find up to getMaxRoutes() - 1 alternatives to an optimal route that is
+     * already known, for example from a faster search.
+     * @param context The context to search in. Its forward and reverse
+     *                searches are used.
+     * @param source The id of the start node, -1 if it is not in the graph.
+     * @param target The id of the destination node, -1 if it is not in the
+     *               graph.
+     * @param optimal The optimal route from source to target, or null to
+     *                find it along with the alternatives.
+     * @return The routes found, optimal route first. Empty if target can't be
+     *         reached from source.
+     */
+    public List<List<Traversable>> find(QueryContext context, int source, int target,
+            List<Traversable> optimal) {
+        List<List<Traversable>> routes = new ArrayList<List<Traversable>>();
+        if (source < 0 || target < 0 || source == target) {
+            return routes;
+        }
+        DijkstraSearch backward = context.getReverseSearch();
+        backward.setHeuristic(null);
+        if (!backward.run(target, source)) {
+            return routes;
+        }
+        double limit = backward.getDistance(source) * (1 + maxStretch);
+        backward.settleWithin(limit);
+        DijkstraSearch forward = context.getSearch();
+        forward.setHeuristic(null);
+        forward.run(source, target);
+        forward.settleWithin(limit);
+
+        List<List<Integer>> accepted = new ArrayList<List<Integer>>();
+        List<Set<Integer>> acceptedNodes = new ArrayList<Set<Integer>>();
+        if (optimal == null) {
+            accept(buildRoute(forward, backward, source), accepted, acceptedNodes);
+        } else {
+            List<Integer> route = new ArrayList<Integer>(optimal.size());
+            for (Traversable t : optimal) {
+                route.add(context.getId(t));
+            }
+            accept(route, accepted, acceptedNodes);
+        }
+
+        for (Plateau plateau : findPlateaus(forward, backward, limit)) {
+            if (accepted.size() >= maxRoutes) {
+                break;
+            }
+            List<Integer> route = buildRoute(forward, backward, plateau.start);
+            if (route != null && !accepted.contains(route)
+                    && isDiverse(context, route, acceptedNodes)) {
+                accept(route, accepted, acceptedNodes);
+            }
+        }
+
+        for (List<Integer> route : accepted) {
+            List<Traversable> traversables = new ArrayList<Traversable>(route.size());
+            for (int id : route) {
+                traversables.add(context.getTraversable(id));
+            }
+            routes.add(traversables);
+        }
+        return routes;
+    }
+
+    /**
+     * Find every plateau: a maximal run of nodes that lies on both the
+     * forward and the backward tree, where the route through it costs no more
+     * than the limit. Only the nodes settled by the smaller tree are looked
+     * at, since every plateau lies on both.
+     * @param forward The forward tree.
+     * @param backward The backward tree.
+     * @param limit The largest route cost allowed.
+     * @return The plateaus, longest first.
+     */
+    private List<Plateau> findPlateaus(DijkstraSearch forward, DijkstraSearch backward,
+            double limit) {
+        List<Plateau> plateaus = new ArrayList<Plateau>();
+        DijkstraSearch smaller = forward.getSettledCount() < backward.getSettledCount()
+                ? forward : backward;
+        int count = smaller.getSettledCount();
+        for (int i = 0; i < count; i++) {
+            int v = smaller.getSettled(i);
+            if (!onPlateauEdge(forward, backward, v)) {
+                continue;
+            }
+            int previous = forward.getPredecessor(v);
+            if (previous >= 0 && onPlateauEdge(forward, backward, previous)
+                    && backward.getPredecessor(previous) == v) {
+                // v is inside a plateau, not at its start
+                continue;
+            }
+            if (forward.getDistance(v) + backward.getDistance(v) > limit) {
+                continue;
+            }
+            int end = v;
+            while (onPlateauEdge(forward, backward, end)) {
+                end = backward.getPredecessor(end);
+            }
+            plateaus.add(new Plateau(v, forward.getDistance(end) - forward.getDistance(v)));
+        }
+        Collections.sort(plateaus, new Comparator<Plateau>() {
+
+            @Override
+            public int compare(Plateau a, Plateau b) {
+                return Double.compare(b.length, a.length);
+            }
+        });
+        return plateaus;
+    }
+
+    /**
+     * Returns whether the edge from a node to its successor in the backward
+     * tree is also an edge of the forward tree.
+     * @param forward The forward tree.
+     * @param backward The backward tree.
+     * @param v The id of a node.
+     * @return True if the node starts an edge of a plateau.
+     */
+    private boolean onPlateauEdge(DijkstraSearch forward, DijkstraSearch backward, int v) {
+        if (!forward.isSettled(v) || !backward.isSettled(v)) {
+            return false;
+        }
+        int next = backward.getPredecessor(v);
+        return next >= 0 && forward.isSettled(next) && forward.getPredecessor(next) == v;
+    }
+
+    /**
+     * Build the route that follows the forward tree from the source to a node
+     * and the backward tree from that node to the destination.
+     * @param forward The forward tree.
+     * @param backward The backward tree.
+     * @param via The id of the node the route passes through.
+     * @return The ids of the nodes on the route, or null if the route visits
+     *         a node more than once.
+     */
+    private List<Integer> buildRoute(DijkstraSearch forward, DijkstraSearch backward, int via) {
+        List<Integer> route = new ArrayList<Integer>();
+        for (int step = via; step >= 0; step = forward.getPredecessor(step)) {
+            route.add(step);
+        }
+        Collections.reverse(route);
+        for (int step = backward.getPredecessor(via); step >= 0; step = backward.getPredecessor(step)) {
+            route.add(step);
+        }
+        if (new HashSet<Integer>(route).size() != route.size()) {
+            return null;
+        }
+        return route;
+    }
+
+    /**
+     * Returns whether a route shares no more than the allowed fraction of its
+     * cost with every route accepted so far.
+     * @param context The context being searched.
+     * @param route The ids of the nodes on the route.
+     * @param acceptedNodes The ids of the nodes on each accepted route.
+     * @return True if the route is diverse enough to offer.
+     */
+    private boolean isDiverse(QueryContext context, List<Integer> route,
+            List<Set<Integer>> acceptedNodes) {
+        double total = 0;
+        for (int i = 1; i < route.size(); i++) {
+            total += context.getCost(route.get(i));
+        }
+        for (Set<Integer> nodes : acceptedNodes) {
+            double shared = 0;
+            for (int i = 1; i < route.size(); i++) {
+                if (nodes.contains(route.get(i))) {
+                    shared += context.getCost(route.get(i));
+                }
+            }
+            if (total > 0 ? shared > maxOverlap * total
+                    : nodes.containsAll(route.subList(1, route.size()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add a route to the accepted routes.
+     * @param route The ids of the nodes on the route.
+     * @param accepted The accepted routes.
+     * @param acceptedNodes The ids of the nodes on each accepted route.
+     */
+    private void accept(List<Integer> route, List<List<Integer>> accepted,
+            List<Set<Integer>> acceptedNodes) {
+        accepted.add(route);
+        acceptedNodes.add(new HashSet<Integer>(route.subList(1, route.size())));
+    }
+
+    /**
+     * A stretch of route shared by the forward and backward trees.
+     */
+    private static class Plateau {
+
+        /** The id of the first node of the plateau */
+        private int start;
+        /** The cost of travelling along the plateau */
+        private double length;
+
+        /**
+         * Create a new plateau.
+         * @param start The id of its first node.
+         * @param length The cost of travelling along it.
+         */
+        Plateau(int start, double length) {
+            this.start = start;
+            this.length = length;
+        }
+    }
+}
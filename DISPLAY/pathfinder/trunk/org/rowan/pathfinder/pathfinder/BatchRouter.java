@@ -0,0 +1,138 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.rowan.linalgtoolkit.Vector2D;
+
+/**
+ * Class <code>BatchRouter</code> finds the cheapest road routes from many
+ * sources to many targets at once, for planning convoys over a set of depots
+ * and destinations without a display. The roads are transformed a single
+ * time for all the points, compiled into a <code>CompactGraph</code>, and
+ * then one search per source settles the graph until every target is
+ * reached. The searches share the graph and run in parallel on the threads
+ * of the Transformer (see Transformer.setParallelism()).
+ *
+ * Routes are only found over roads. Off-road segments are laid out from a
+ * single start and end, so they can't be shared by many points.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class BatchRouter {
+
+    /** The roads */
+    private Set<RoadSegment> roads;
+    /** The events, may be null */
+    private Set<Event> events;
+    /** The speed limits */
+    private Set<SpeedLimit> speedLimits;
+    /** The underpasses */
+    private Set<Underpass> underpasses;
+
+    /**
+     * Create a new router over a set of road data.
+     * @param roads A set of traversable roads.
+     * @param events A set of events that have occurred in the surrounding area.
+     *               Could be null if no events have taken place in the area.
+     * @param speedLimits A set of speed limits for the roads.
+     * @param underpasses A set of underpasses that will be converted to clearances.
+     */
+    public BatchRouter(Set<RoadSegment> roads, Set<Event> events, Set<SpeedLimit> speedLimits,
+            Set<Underpass> underpasses) {
+        this.roads = roads;
+        this.events = events;
+        this.speedLimits = speedLimits;
+        this.underpasses = underpasses;
+    }
+
+    /**
+     * Find the cheapest route from every source to every target.
+     * @param sources The locations routes start from.
+     * @param targets The locations routes lead to.
+     * @param vehicles A set of all vehicles that need to travel, or null for
+     *                 the default vehicle.
+     * @param safetyCoefficient The user defined value which represents the
+     *                          importance of safety.
+     * @param speedCoefficient The user defined value which represents the
+     *                          importance of speed.
+     * @param distanceCoefficient The user defined value which represents the
+     *                          importance of distance.
+     * @return The matrix of routes, with a row per source and a column per
+     *         target. A source or target that is not close to any road has
+     *         no routes.
+     */
+    public RouteMatrix route(List<Vector2D> sources, List<Vector2D> targets, Set<Vehicle> vehicles,
+            double safetyCoefficient, double speedCoefficient, double distanceCoefficient) {
+        List<Vector2D> points = new ArrayList<Vector2D>(sources);
+        points.addAll(targets);
+        final CompactGraph graph;
+        List<Traversable> ends;
+        // the display transforms under the same lock, so no other transform
+        // comes between this one and reading its traversables. the transform
+        // changes the neighbors of shared traversables, so only the compiled
+        // graph is used once it is made
+        synchronized (Transformer.class) {
+            ends = Transformer.transformPoints(roads, events, speedLimits, underpasses, vehicles,
+                    safetyCoefficient, speedCoefficient, distanceCoefficient, points);
+            graph = CompactGraph.compile(Transformer.getTraversables());
+        }
+
+        final int[] sourceIds = new int[sources.size()];
+        final int[] targetIds = new int[targets.size()];
+        for (int i = 0; i < sourceIds.length; i++) {
+            sourceIds[i] = ends.get(i) == null ? -1 : graph.getId(ends.get(i));
+        }
+        for (int j = 0; j < targetIds.length; j++) {
+            Traversable end = ends.get(sourceIds.length + j);
+            targetIds[j] = end == null ? -1 : graph.getId(end);
+        }
+
+        final RouteMatrix matrix = new RouteMatrix(sourceIds.length, targetIds.length);
+        // every source is a whole search, so each is a range of its own
+        ParallelLoop.run(Transformer.getPool(), sourceIds.length, 1, new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                DijkstraSearch search = new DijkstraSearch(graph);
+                for (int i = from; i < to; i++) {
+                    if (sourceIds[i] >= 0) {
+                        fillRow(search, graph, matrix, i, sourceIds[i], targetIds);
+                    }
+                }
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * Search from one source and put its route to every target in the
+     * matrix.
+     * @param search The search to run.
+     * @param graph The graph being searched.
+     * @param matrix The matrix to fill.
+     * @param row The index of the source.
+     * @param source The id of the source.
+     * @param targetIds The id of every target, -1 for a target off the roads.
+     */
+    private static void fillRow(DijkstraSearch search, CompactGraph graph, RouteMatrix matrix,
+            int row, int source, int[] targetIds) {
+        double sourceCost = graph.getCost(source);
+        if (sourceCost < 0) {
+            // the source can't be traversed, so it leads nowhere
+            return;
+        }
+        search.run(source, targetIds);
+        for (int j = 0; j < targetIds.length; j++) {
+            int target = targetIds[j];
+            if (target == source) {
+                matrix.set(row, j, sourceCost,
+                        Collections.singletonList(graph.getTraversable(source)));
+            } else if (target >= 0 && search.isSettled(target)) {
+                matrix.set(row, j, sourceCost + search.getDistance(target), search.getRoute(target));
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class <code>BidirectionalSearch</code> finds the cheapest route between two
+ * nodes of a <code>SearchGraph</code> by running Djikstra's algorithm forward
+ * from the source and backward (over the reverse edges) from the destination
+ * at the same time, until the two searches meet in the middle. Each search
+ * only has to cover about half the distance, so far fewer nodes are settled
+ * than by a single search on long routes.
+ *
+ * Costs follow the same rules as <code>DijkstraSearch</code>: the cost of a
+ * route is the sum of the costs of every node on it except the first, and
+ * nodes with a negative (infinite) cost are never entered. If heuristics are
+ * set, both searches are directed towards each other (bidirectional A*)
+ * using the average of the forward and backward estimates as the potential,
+ * which keeps the two searches consistent with one another.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class BidirectionalSearch {
+
+    /** The graph being searched */
+    private SearchGraph graph;
+    /** The best known distance from the source to each node */
+    private double[] forwardDistance;
+    /** The best known distance from each node to the destination */
+    private double[] backwardDistance;
+    /** The node each node was reached from in the forward search, or -1 */
+    private int[] predecessor;
+    /** The node each node was reached from in the backward search, or -1 */
+    private int[] successor;
+    /** Whether each node's forward distance is final */
+    private boolean[] forwardSettled;
+    /** Whether each node's backward distance is final */
+    private boolean[] backwardSettled;
+    /** The nodes reached but not settled by the forward search */
+    private IndexedMinHeap forwardUnsettled;
+    /** The nodes reached but not settled by the backward search */
+    private IndexedMinHeap backwardUnsettled;
+    /** Estimates the cost from a node to the destination, or null */
+    private Heuristic forwardHeuristic;
+    /** Estimates the cost from the source to a node, or null */
+    private Heuristic backwardHeuristic;
+    /** Id to the potential of the node, NaN if it hasn't been computed yet */
+    private double[] potentials;
+    /** The nodes reached by the last search from either end, the only ones
+     * reset() clears */
+    private int[] touched;
+    /** The number of nodes reached by the last search */
+    private int touchedCount;
+    /** The cost of the cheapest route found by the last search */
+    private double bestDistance;
+    /** The node where the cheapest route of the last search was found, or -1 */
+    private int meetingNode;
+    /** The source of the last search */
+    private int source;
+    /** The number of nodes settled during the last search */
+    private int settledCount;
+
+    /**
+     * Create a new search over the given graph.
+     * @param graph The graph to search.
+     */
+    public BidirectionalSearch(SearchGraph graph) {
+        this.graph = graph;
+        int capacity = Math.max(graph.size(), 64);
+        forwardDistance = new double[capacity];
+        backwardDistance = new double[capacity];
+        predecessor = new int[capacity];
+        successor = new int[capacity];
+        forwardSettled = new boolean[capacity];
+        backwardSettled = new boolean[capacity];
+        forwardUnsettled = new IndexedMinHeap(capacity);
+        backwardUnsettled = new IndexedMinHeap(capacity);
+        potentials = new double[capacity];
+        touched = new int[capacity];
+        Arrays.fill(forwardDistance, Double.MAX_VALUE);
+        Arrays.fill(backwardDistance, Double.MAX_VALUE);
+        Arrays.fill(predecessor, -1);
+        Arrays.fill(successor, -1);
+        Arrays.fill(potentials, Double.NaN);
+    }
+
+    /**
+     * Set the heuristics used to direct the following searches towards each
+     * other. Both heuristics must be consistent for the routes found to be
+     * the cheapest ones.
+     * @param forward Estimates the cost from a node to the destination, or
+     *                null to run plain Djikstra.
+     * @param backward Estimates the cost from the source to a node, or null
+     *                 to run plain Djikstra.
+     */
+    public void setHeuristics(Heuristic forward, Heuristic backward) {
+        if (forward == null || backward == null) {
+            forward = null;
+            backward = null;
+        }
+        this.forwardHeuristic = forward;
+        this.backwardHeuristic = backward;
+        // only the nodes reached by the last search have a potential
+        for (int i = 0; i < touchedCount; i++) {
+            potentials[touched[i]] = Double.NaN;
+        }
+    }
+
+    /**
+     * Runs the forward and backward searches until the cheapest route from
+     * source to target is known.
+     * @param source The id of the start node.
+     * @param target The id of the destination node.
+     * @return True if the target was reached, false otherwise.
+     */
+    public boolean run(int source, int target) {
+        reset();
+        this.source = source;
+        if (source == target) {
+            return false;
+        }
+        touch(source);
+        forwardDistance[source] = 0;
+        forwardUnsettled.insertOrUpdate(source, potential(source));
+        if (graph.getCost(target) >= 0) {
+            touch(target);
+            backwardDistance[target] = 0;
+            backwardUnsettled.insertOrUpdate(target, -potential(target));
+        }
+
+        while (!forwardUnsettled.isEmpty() && !backwardUnsettled.isEmpty()) {
+            if (forwardUnsettled.peekKey() + backwardUnsettled.peekKey() >= bestDistance) {
+                break;
+            }
+            if (forwardUnsettled.size() <= backwardUnsettled.size()) {
+                int node = forwardUnsettled.poll();
+                forwardSettled[node] = true;
+                settledCount++;
+                relaxForward(node);
+            } else {
+                int node = backwardUnsettled.poll();
+                backwardSettled[node] = true;
+                settledCount++;
+                relaxBackward(node);
+            }
+        }
+        return meetingNode >= 0;
+    }
+
+    /**
+     * Lower the forward distance of every neighbor of a node that can be
+     * reached more cheaply through that node.
+     * @param node The id of the node that was just settled going forward.
+     */
+    private void relaxForward(int node) {
+        int first = graph.firstEdge(node);
+        int end = graph.endEdge(node);
+        ensureCapacity(graph.size());
+        double base = forwardDistance[node];
+
+        for (int e = first; e < end; e++) {
+            int target = graph.getTarget(e);
+            double cost = graph.getCost(target);
+            if (cost < 0 || forwardSettled[target]) {
+                continue;
+            }
+            double newDistance = base + cost;
+            if (newDistance < forwardDistance[target]) {
+                touch(target);
+                forwardDistance[target] = newDistance;
+                predecessor[target] = node;
+                forwardUnsettled.insertOrUpdate(target, newDistance + potential(target));
+                checkMeeting(target);
+            }
+        }
+    }
+
+    /**
+     * Lower the backward distance of every node that leads to the given node,
+     * if it reaches the destination more cheaply through it.
+     * @param node The id of the node that was just settled going backward.
+     */
+    private void relaxBackward(int node) {
+        double cost = graph.getCost(node);
+        if (cost < 0) {
+            return;
+        }
+        int first = graph.firstReverseEdge(node);
+        int end = graph.endReverseEdge(node);
+        ensureCapacity(graph.size());
+        double newDistance = backwardDistance[node] + cost;
+
+        for (int e = first; e < end; e++) {
+            int from = graph.getSource(e);
+            if (backwardSettled[from] || (from != source && graph.getCost(from) < 0)) {
+                continue;
+            }
+            if (newDistance < backwardDistance[from]) {
+                touch(from);
+                backwardDistance[from] = newDistance;
+                successor[from] = node;
+                backwardUnsettled.insertOrUpdate(from, newDistance - potential(from));
+                checkMeeting(from);
+            }
+        }
+    }
+
+    /**
+     * Record the route through a node if it has been reached from both ends
+     * and is cheaper than the best route found so far.
+     * @param node The id of a node whose distance just changed.
+     */
+    private void checkMeeting(int node) {
+        if (forwardDistance[node] == Double.MAX_VALUE
+                || backwardDistance[node] == Double.MAX_VALUE) {
+            return;
+        }
+        double distance = forwardDistance[node] + backwardDistance[node];
+        if (distance < bestDistance) {
+            bestDistance = distance;
+            meetingNode = node;
+        }
+    }
+
+    /**
+     * Remember that a node is reached by this search, before its distance
+     * from either end is first lowered.
+     * @param id The id of the node.
+     */
+    private void touch(int id) {
+        if (forwardDistance[id] == Double.MAX_VALUE && backwardDistance[id] == Double.MAX_VALUE) {
+            touched[touchedCount++] = id;
+        }
+    }
+
+    /**
+     * Returns the potential of a node: half the difference between the
+     * estimated cost to the destination and the estimated cost from the
+     * source, computed only the first time it is asked for.
+     * @param id The id of a node.
+     * @return The potential of the node, 0 if there are no heuristics.
+     */
+    private double potential(int id) {
+        if (forwardHeuristic == null) {
+            return 0;
+        }
+        if (Double.isNaN(potentials[id])) {
+            Traversable t = graph.getTraversable(id);
+            potentials[id] = (forwardHeuristic.estimate(t) - backwardHeuristic.estimate(t)) / 2;
+        }
+        return potentials[id];
+    }
+
+    /**
+     * Returns the cost of the cheapest route found by the last search, or
+     * Double.MAX_VALUE if the destination was not reached.
+     * @return The cost of the route.
+     */
+    public double getDistance() {
+        return bestDistance;
+    }
+
+    /**
+     * Returns the number of nodes that were settled in the last search, by
+     * both directions together.
+     * @return The number of settled nodes.
+     */
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    /**
+     * Build the cheapest route found by the last search by following
+     * predecessors back to the source and successors on to the destination
+     * from the node where the searches met.
+     * @return The Traversables from source to target, or null if the target
+     *         was not reached.
+     */
+    public List<Traversable> getRoute() {
+        if (meetingNode < 0) {
+            return null;
+        }
+        List<Traversable> route = new ArrayList<Traversable>();
+        for (int step = meetingNode; step >= 0; step = predecessor[step]) {
+            route.add(graph.getTraversable(step));
+        }
+        Collections.reverse(route);
+        for (int step = successor[meetingNode]; step >= 0; step = successor[step]) {
+            route.add(graph.getTraversable(step));
+        }
+        return route;
+    }
+
+    /**
+     * Clear the state of the previous search. Only the nodes it reached are
+     * touched, and their potentials are cleared as well, since the
+     * heuristics may be for other ends by the next search.
+     */
+    private void reset() {
+        ensureCapacity(graph.size());
+        for (int i = 0; i < touchedCount; i++) {
+            int node = touched[i];
+            forwardDistance[node] = Double.MAX_VALUE;
+            backwardDistance[node] = Double.MAX_VALUE;
+            predecessor[node] = -1;
+            successor[node] = -1;
+            forwardSettled[node] = false;
+            backwardSettled[node] = false;
+            potentials[node] = Double.NaN;
+        }
+        touchedCount = 0;
+        forwardUnsettled.clear();
+        backwardUnsettled.clear();
+        bestDistance = Double.MAX_VALUE;
+        meetingNode = -1;
+        settledCount = 0;
+    }
+
+    /**
+     * Grow the search arrays so that every id below capacity can be stored.
+     * @param capacity The number of ids that must fit.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= forwardDistance.length) {
+            return;
+        }
+        int oldCapacity = forwardDistance.length;
+        int newCapacity = Math.max(capacity, oldCapacity * 2);
+        forwardDistance = Arrays.copyOf(forwardDistance, newCapacity);
+        backwardDistance = Arrays.copyOf(backwardDistance, newCapacity);
+        predecessor = Arrays.copyOf(predecessor, newCapacity);
+        successor = Arrays.copyOf(successor, newCapacity);
+        forwardSettled = Arrays.copyOf(forwardSettled, newCapacity);
+        backwardSettled = Arrays.copyOf(backwardSettled, newCapacity);
+        potentials = Arrays.copyOf(potentials, newCapacity);
+        touched = Arrays.copyOf(touched, newCapacity);
+        Arrays.fill(forwardDistance, oldCapacity, newCapacity, Double.MAX_VALUE);
+        Arrays.fill(backwardDistance, oldCapacity, newCapacity, Double.MAX_VALUE);
+        Arrays.fill(predecessor, oldCapacity, newCapacity, -1);
+        Arrays.fill(successor, oldCapacity, newCapacity, -1);
+        Arrays.fill(potentials, oldCapacity, newCapacity, Double.NaN);
+        forwardUnsettled.ensureCapacity(newCapacity);
+        backwardUnsettled.ensureCapacity(newCapacity);
+    }
+}
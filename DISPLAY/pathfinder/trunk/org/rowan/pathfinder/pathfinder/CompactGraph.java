@@ -0,0 +1,244 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Class <code>CompactGraph</code> is a frozen, compressed sparse row copy of a
+ * <code>Traversable</code> network. The outgoing edges of node i are
+ * {@code targets[offsets[i]]} to {@code targets[offsets[i + 1] - 1]}, the
+ * incoming edges are stored the same way in a second pair of arrays, and the
+ * cost of every node is copied into a double array when the graph is
+ * compiled. A search over a compact graph only touches primitive arrays; the
+ * Traversables are only looked at again when a route is turned into a Path.
+ *
+ * A compact graph never changes after it is compiled, so it can be shared
+ * by any number of <code>QueryContext</code>s and threads. It has to be
+ * compiled again whenever the neighbors of the network change; when only
+ * some costs change, withCosts() makes an updated copy instead.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class CompactGraph implements SearchGraph {
+
+    /** Id to Traversable */
+    private Traversable[] nodes;
+    /** Open addressed table of ids by the hash code of their Traversable,
+     * -1 for an empty slot; only used to look up the ends of a request */
+    private int[] ids;
+    /** Id to the cost of entering the node */
+    private double[] costs;
+    /** Id to index of its first outgoing edge; the last entry is the edge count */
+    private int[] offsets;
+    /** Edge index to target id */
+    private int[] targets;
+    /** Id to index of its first incoming edge; the last entry is the edge count */
+    private int[] reverseOffsets;
+    /** Reverse edge index to source id */
+    private int[] sources;
+
+    /**
+     * Create a new compact graph from arrays that have already been filled.
+     */
+    private CompactGraph(Traversable[] nodes, int[] ids, double[] costs,
+            int[] offsets, int[] targets, int[] reverseOffsets, int[] sources) {
+        this.nodes = nodes;
+        this.ids = ids;
+        this.costs = costs;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.reverseOffsets = reverseOffsets;
+        this.sources = sources;
+    }
+
+    /**
+     * Freeze a set of Traversables, usually Transformer.getTraversables(),
+     * into a compact graph. Neighbors that are not in the set are left out.
+     * @param traversables The Traversables to compile, with their costs and
+     *                     neighbors already set.
+     * @return The compiled graph.
+     */
+    public static CompactGraph compile(Collection<? extends Traversable> traversables) {
+        int n = traversables.size();
+        Traversable[] nodes = traversables.toArray(new Traversable[n]);
+        int[] ids = new int[Integer.highestOneBit(Math.max(n, 1)) * 4];
+        Arrays.fill(ids, -1);
+        double[] costs = new double[n];
+        for (int i = 0; i < n; i++) {
+            int slot = slot(nodes, ids, nodes[i]);
+            if (ids[slot] < 0) {
+                ids[slot] = i;
+            }
+            costs[i] = nodes[i].getCost();
+        }
+
+        int[] offsets = new int[n + 1];
+        int[] inDegree = new int[n + 1];
+        int numEdges = 0;
+        for (int i = 0; i < n; i++) {
+            offsets[i] = numEdges;
+            for (Traversable neighbor : nodes[i].getNeighbors()) {
+                int target = ids[slot(nodes, ids, neighbor)];
+                if (target >= 0) {
+                    numEdges++;
+                    inDegree[target]++;
+                }
+            }
+        }
+        offsets[n] = numEdges;
+
+        int[] targets = new int[numEdges];
+        int edge = 0;
+        for (int i = 0; i < n; i++) {
+            for (Traversable neighbor : nodes[i].getNeighbors()) {
+                int target = ids[slot(nodes, ids, neighbor)];
+                if (target >= 0) {
+                    targets[edge++] = target;
+                }
+            }
+        }
+
+        int[] reverseOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            reverseOffsets[i + 1] = reverseOffsets[i] + inDegree[i];
+        }
+        int[] next = new int[n];
+        System.arraycopy(reverseOffsets, 0, next, 0, n);
+        int[] sources = new int[numEdges];
+        for (int i = 0; i < n; i++) {
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                sources[next[targets[e]]++] = i;
+            }
+        }
+        return new CompactGraph(nodes, ids, costs, offsets, targets, reverseOffsets, sources);
+    }
+
+    /**
+     * Returns a copy of this graph in which the given Traversables have their
+     * current cost. The copy shares everything but the costs with this graph,
+     * which is left unchanged.
+     * @param changed The Traversables whose cost changed. Traversables that
+     *                are not in the graph are ignored.
+     * @return The updated graph.
+     */
+    public CompactGraph withCosts(Collection<? extends Traversable> changed) {
+        double[] newCosts = costs.clone();
+        for (Traversable t : changed) {
+            int id = getId(t);
+            if (id >= 0) {
+                newCosts[id] = t.getCost();
+            }
+        }
+        return new CompactGraph(nodes, ids, newCosts, offsets, targets, reverseOffsets, sources);
+    }
+
+    /**
+     * Returns the number of edges in the graph.
+     * @return The number of edges.
+     */
+    public int getNumEdges() {
+        return targets.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getId(Traversable t) {
+        return ids[slot(nodes, ids, t)];
+    }
+
+    /**
+     * Returns the slot of the id table that holds a Traversable, or the empty
+     * slot it would go in. Slots are probed linearly from its hash code, and
+     * Traversables are compared with equals(), as a HashMap would.
+     * @param nodes Id to Traversable.
+     * @param ids The id table, whose length is a power of two.
+     * @param t The Traversable to look for.
+     * @return The index of the slot.
+     */
+    private static int slot(Traversable[] nodes, int[] ids, Traversable t) {
+        int mask = ids.length - 1;
+        int h = t.hashCode() * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (ids[slot] >= 0 && !nodes[ids[slot]].equals(t)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Traversable getTraversable(int id) {
+        return nodes[id];
+    }
+
+    /**
+     * Returns the cost the node had when the graph was compiled.
+     * @param id The id of a node.
+     * @return The cost of the node.
+     */
+    @Override
+    public double getCost(int id) {
+        return costs[id];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int firstEdge(int id) {
+        return offsets[id];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int endEdge(int id) {
+        return offsets[id + 1];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getTarget(int edge) {
+        return targets[edge];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int firstReverseEdge(int id) {
+        return reverseOffsets[id];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int endReverseEdge(int id) {
+        return reverseOffsets[id + 1];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSource(int reverseEdge) {
+        return sources[reverseEdge];
+    }
+}
@@ -0,0 +1,809 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.rowan.linalgtoolkit.Vector2D;
+
+/**
+ * Class <code>ContractionHierarchy</code> is a preprocessed index over a set
+ * of <code>Traversable</code>s (usually all loaded roads) that answers
+ * shortest route queries by searching only upward in a node ordering.
+ *
+ * The hierarchy is split into two stages so that costs can change without
+ * repeating the expensive part:
+ * <ul>
+ * <li>Construction orders the nodes, eliminating those with few neighbors
+ * first and ordering the dense core that is left by nested dissection, and
+ * adds a shortcut between every pair of higher neighbors of each node as it
+ * is eliminated in that order. This depends only on which Traversables are
+ * connected and where they are, never on their costs, so it is done once per
+ * road set.</li>
+ * <li>Customization computes the weight of every arc and shortcut from the
+ * current costs of the Traversables. It must be repeated whenever costs
+ * change (new coefficients, vehicles or events), which takes a fraction of
+ * the time of construction.</li>
+ * </ul>
+ * Queries are run with a <code>HierarchySearch</code>. A hierarchy may be
+ * queried from any number of threads at once, but must not be customized
+ * while it is being queried.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class ContractionHierarchy {
+
+    /** Weight of an arc that can't be traversed */
+    static final double NO_ARC = Double.POSITIVE_INFINITY;
+    /** Nodes with no more neighbors than this are eliminated before the core */
+    private static final int MAX_PERIPHERY_DEGREE = 4;
+    /** Parts of the nested dissection with no more nodes than this are not cut */
+    private static final int LEAF_SIZE = 8;
+    /** Where a part may be cut, as fractions of its nodes along a direction */
+    private static final double[] CUTS = {.3, .4, .5, .6, .7};
+    /** Rank to Traversable */
+    private Traversable[] nodes;
+    /** Traversable to rank */
+    private Map<Traversable, Integer> ranks;
+    /** Rank to index of its first upward arc; the last entry is the arc count */
+    private int[] firstArc;
+    /** Arc index to the rank of its (higher ranked) head, ascending per node */
+    private int[] heads;
+    /** Arc index to the rank of its (lower ranked) tail */
+    private int[] tails;
+    /** Whether the tail of each arc is a neighbor of its head */
+    private boolean[] upOriginal;
+    /** Whether the head of each arc is a neighbor of its tail */
+    private boolean[] downOriginal;
+    /** Arc index to the cost of travelling from its tail to its head */
+    private double[] upWeights;
+    /** Arc index to the cost of travelling from its head to its tail */
+    private double[] downWeights;
+    /** Arc index to the node the up route passes through, or -1 if direct */
+    private int[] upMiddle;
+    /** Arc index to the node the down route passes through, or -1 if direct */
+    private int[] downMiddle;
+    /** Rank to its parent in the elimination tree, or -1 for a root */
+    private int[] parent;
+
+    /**
+     * Build the hierarchy for the given Traversables. Only neighbors that are
+     * also in the collection are taken into account, so the start and end
+     * points created by the Transformer never become part of the hierarchy.
+     * The hierarchy has to be customized before it can be queried.
+     * @param traversables The Traversables to build the hierarchy over, with
+     *                     their neighbors already set.
+     */
+    public ContractionHierarchy(Collection<? extends Traversable> traversables) {
+        int n = traversables.size();
+        Traversable[] input = traversables.toArray(new Traversable[n]);
+        Map<Traversable, Integer> index = new HashMap<Traversable, Integer>();
+        for (int i = 0; i < n; i++) {
+            index.put(input[i], i);
+        }
+        int[][] adjacency = undirectedAdjacency(input, index);
+        int[] order = order(input, adjacency);
+        int[] rankOf = new int[n];
+        for (int rank = 0; rank < n; rank++) {
+            rankOf[order[rank]] = rank;
+        }
+
+        // the upward neighbors of a node, once every node below it is
+        // eliminated, are its own neighbors above it and the upward
+        // neighbors of its children in the elimination tree
+        int[][] upNeighbors = new int[n][];
+        int[] firstChild = new int[n];
+        int[] nextSibling = new int[n];
+        int[] seen = new int[n];
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(seen, -1);
+        int[] up = new int[16];
+        int numArcs = 0;
+        for (int rank = 0; rank < n; rank++) {
+            int count = 0;
+            seen[rank] = rank;
+            for (int neighbor : adjacency[order[rank]]) {
+                int head = rankOf[neighbor];
+                if (head > rank && seen[head] != rank) {
+                    seen[head] = rank;
+                    up = ensureRoom(up, count);
+                    up[count++] = head;
+                }
+            }
+            for (int child = firstChild[rank]; child >= 0; child = nextSibling[child]) {
+                for (int head : upNeighbors[child]) {
+                    if (seen[head] != rank) {
+                        seen[head] = rank;
+                        up = ensureRoom(up, count);
+                        up[count++] = head;
+                    }
+                }
+            }
+            Arrays.sort(up, 0, count);
+            upNeighbors[rank] = Arrays.copyOf(up, count);
+            if (count > 0) {
+                nextSibling[rank] = firstChild[up[0]];
+                firstChild[up[0]] = rank;
+            }
+            numArcs += count;
+        }
+
+        nodes = new Traversable[n];
+        ranks = new HashMap<Traversable, Integer>();
+        firstArc = new int[n + 1];
+        heads = new int[numArcs];
+        tails = new int[numArcs];
+        parent = new int[n];
+        int arc = 0;
+        for (int rank = 0; rank < n; rank++) {
+            nodes[rank] = input[order[rank]];
+            ranks.put(nodes[rank], rank);
+            firstArc[rank] = arc;
+            for (int head : upNeighbors[rank]) {
+                tails[arc] = rank;
+                heads[arc++] = head;
+            }
+            upNeighbors[rank] = null;
+            parent[rank] = arc > firstArc[rank] ? heads[firstArc[rank]] : -1;
+        }
+        firstArc[n] = arc;
+
+        upOriginal = new boolean[numArcs];
+        downOriginal = new boolean[numArcs];
+        for (int rank = 0; rank < n; rank++) {
+            for (int a = firstArc[rank]; a < firstArc[rank + 1]; a++) {
+                upOriginal[a] = nodes[rank].getNeighbors().contains(nodes[heads[a]]);
+                downOriginal[a] = nodes[heads[a]].getNeighbors().contains(nodes[rank]);
+            }
+        }
+        upWeights = new double[numArcs];
+        downWeights = new double[numArcs];
+        upMiddle = new int[numArcs];
+        downMiddle = new int[numArcs];
+        Arrays.fill(upWeights, NO_ARC);
+        Arrays.fill(downWeights, NO_ARC);
+    }
+
+    /**
+     * Returns which Traversables are connected, in either direction, by
+     * index. Neighbors outside of the input are left out.
+     * @param input The Traversables.
+     * @param index Traversable to index.
+     * @return Index to the indices of its neighbors, each listed once.
+     */
+    private static int[][] undirectedAdjacency(Traversable[] input, Map<Traversable, Integer> index) {
+        int n = input.length;
+        int[] degree = new int[n];
+        int[][] out = new int[n][];
+        for (int i = 0; i < n; i++) {
+            int[] targets = new int[input[i].getNeighbors().size()];
+            int count = 0;
+            for (Traversable neighbor : input[i].getNeighbors()) {
+                Integer j = index.get(neighbor);
+                if (j != null && j != i) {
+                    targets[count++] = j;
+                    degree[i]++;
+                    degree[j]++;
+                }
+            }
+            out[i] = Arrays.copyOf(targets, count);
+        }
+        int[][] adjacency = new int[n][];
+        for (int i = 0; i < n; i++) {
+            adjacency[i] = new int[degree[i]];
+            degree[i] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j : out[i]) {
+                adjacency[i][degree[i]++] = j;
+                adjacency[j][degree[j]++] = i;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            // a pair connected both ways is listed twice
+            int[] list = adjacency[i];
+            Arrays.sort(list);
+            int count = 0;
+            for (int k = 0; k < list.length; k++) {
+                if (k == 0 || list[k] != list[k - 1]) {
+                    list[count++] = list[k];
+                }
+            }
+            adjacency[i] = Arrays.copyOf(list, count);
+        }
+        return adjacency;
+    }
+
+    /**
+     * Order the nodes for elimination. Nodes with few neighbors, such as the
+     * segments of a road between two intersections or of a dead end, are
+     * eliminated first, always the one with the fewest neighbors left, for
+     * as long as that is no more than MAX_PERIPHERY_DEGREE. Eliminating one
+     * of them joins no more than that many nodes with shortcuts, so the
+     * fill-in stays bounded. The core that is left, where every node has
+     * more neighbors, is ordered by nested dissection and ranked above the
+     * rest.
+     * @param input The Traversables, whose segment midpoints are used.
+     * @param adjacency Index to the indices of its neighbors.
+     * @return Rank to index.
+     */
+    private static int[] order(Traversable[] input, int[][] adjacency) {
+        int n = input.length;
+        // the neighbors each node has left, shortcuts included
+        int[][] left = new int[n][];
+        int[] degree = new int[n];
+        IndexedMinHeap remaining = new IndexedMinHeap(n);
+        for (int i = 0; i < n; i++) {
+            left[i] = adjacency[i].clone();
+            degree[i] = left[i].length;
+            remaining.insertOrUpdate(i, degree[i]);
+        }
+        int[] order = new int[n];
+        int rank = 0;
+        while (!remaining.isEmpty() && remaining.peekKey() <= MAX_PERIPHERY_DEGREE) {
+            int v = remaining.poll();
+            order[rank++] = v;
+            for (int a = 0; a < degree[v]; a++) {
+                int u = left[v][a];
+                degree[u] = remove(left[u], degree[u], v);
+                for (int b = 0; b < degree[v]; b++) {
+                    int w = left[v][b];
+                    if (w != u && indexOf(left[u], degree[u], w) < 0) {
+                        left[u] = ensureRoom(left[u], degree[u]);
+                        left[u][degree[u]++] = w;
+                    }
+                }
+            }
+            for (int a = 0; a < degree[v]; a++) {
+                remaining.insertOrUpdate(left[v][a], degree[left[v][a]]);
+            }
+            left[v] = null;
+        }
+
+        Dissection dissection = new Dissection(left, degree, order);
+        int core = 0;
+        for (int i = 0; i < n; i++) {
+            if (left[i] != null) {
+                Vector2D start = Logic2D.getStart(input[i].getSegment());
+                Vector2D end = Logic2D.getEnd(input[i].getSegment());
+                dissection.x[i] = (start.getX() + end.getX()) / 2;
+                dissection.y[i] = (start.getY() + end.getY()) / 2;
+                dissection.members[core++] = i;
+            }
+        }
+        dissection.split(0, core, n);
+        return order;
+    }
+
+    /**
+     * Returns the position of a value among the first values of an array.
+     * @param values The array.
+     * @param count The number of values.
+     * @param value The value.
+     * @return The position, or -1 if the value isn't there.
+     */
+    private static int indexOf(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Remove a value from among the first values of an array, moving the
+     * last value into its place.
+     * @param values The array.
+     * @param count The number of values.
+     * @param value The value.
+     * @return The number of values left.
+     */
+    private static int remove(int[] values, int count, int value) {
+        int i = indexOf(values, count, value);
+        if (i < 0) {
+            return count;
+        }
+        values[i] = values[count - 1];
+        return count - 1;
+    }
+
+    /**
+     * Returns an array with room for one more value after the first values of
+     * another, which is the same array if it has the room.
+     * @param values The array.
+     * @param count The number of values.
+     * @return The array with room.
+     */
+    private static int[] ensureRoom(int[] values, int count) {
+        if (count < values.length) {
+            return values;
+        }
+        return Arrays.copyOf(values, Math.max(4, count * 2));
+    }
+
+    /**
+     * Compute the weight of every arc from the current costs of the
+     * Traversables. Each node is visited in rank order and every pair of its
+     * upward arcs is used to improve the arc between the two higher nodes, so
+     * when a node is reached all routes through lower nodes are known.
+     */
+    public void customize() {
+        int n = nodes.length;
+        for (int v = 0; v < n; v++) {
+            for (int a = firstArc[v]; a < firstArc[v + 1]; a++) {
+                upWeights[a] = upOriginal[a] ? entryCost(heads[a]) : NO_ARC;
+                downWeights[a] = downOriginal[a] ? entryCost(v) : NO_ARC;
+                upMiddle[a] = -1;
+                downMiddle[a] = -1;
+            }
+        }
+
+        for (int v = 0; v < n; v++) {
+            int end = firstArc[v + 1];
+            for (int i = firstArc[v]; i < end; i++) {
+                for (int j = i + 1; j < end; j++) {
+                    int shortcut = findArc(heads[i], heads[j]);
+                    // heads[i] -> v -> heads[j]
+                    double weight = downWeights[i] + upWeights[j];
+                    if (weight < upWeights[shortcut]) {
+                        upWeights[shortcut] = weight;
+                        upMiddle[shortcut] = v;
+                    }
+                    // heads[j] -> v -> heads[i]
+                    weight = downWeights[j] + upWeights[i];
+                    if (weight < downWeights[shortcut]) {
+                        downWeights[shortcut] = weight;
+                        downMiddle[shortcut] = v;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cost of entering a node, or NO_ARC if it can't be entered.
+     * @param rank The rank of a node.
+     * @return The cost of the node.
+     */
+    private double entryCost(int rank) {
+        double cost = nodes[rank].getCost();
+        return cost < 0 ? NO_ARC : cost;
+    }
+
+    /**
+     * Returns the number of Traversables in the hierarchy.
+     * @return The number of nodes.
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the number of arcs in the hierarchy, shortcuts included.
+     * @return The number of arcs.
+     */
+    public int getNumArcs() {
+        return heads.length;
+    }
+
+    /**
+     * Returns the rank of a Traversable.
+     * @param t A Traversable.
+     * @return The rank of the Traversable, or -1 if it is not in the hierarchy.
+     */
+    public int getRank(Traversable t) {
+        Integer rank = ranks.get(t);
+        return rank == null ? -1 : rank;
+    }
+
+    /**
+     * Returns the Traversable with the given rank.
+     * @param rank The rank of a node.
+     * @return The Traversable.
+     */
+    public Traversable getTraversable(int rank) {
+        return nodes[rank];
+    }
+
+    /**
+     * Returns the parent of a node in the elimination tree, the lowest
+     * ranked of its upward neighbors.
+     * @param rank The rank of a node.
+     * @return The rank of the parent, or -1 if the node has none.
+     */
+    int getParent(int rank) {
+        return parent[rank];
+    }
+
+    /**
+     * Returns the index of the first upward arc of a node.
+     * @param rank The rank of a node.
+     * @return The first arc index.
+     */
+    int firstArc(int rank) {
+        return firstArc[rank];
+    }
+
+    /**
+     * Returns one past the index of the last upward arc of a node.
+     * @param rank The rank of a node.
+     * @return The end (exclusive) arc index.
+     */
+    int endArc(int rank) {
+        return firstArc[rank + 1];
+    }
+
+    /**
+     * Returns the higher ranked end of an arc.
+     * @param arc An arc index.
+     * @return The rank of the head of the arc.
+     */
+    int getHead(int arc) {
+        return heads[arc];
+    }
+
+    /**
+     * Returns the cost of travelling up an arc, from its tail to its head.
+     * @param arc An arc index.
+     * @return The weight, or NO_ARC.
+     */
+    double getUpWeight(int arc) {
+        return upWeights[arc];
+    }
+
+    /**
+     * Returns the cost of travelling down an arc, from its head to its tail.
+     * @param arc An arc index.
+     * @return The weight, or NO_ARC.
+     */
+    double getDownWeight(int arc) {
+        return downWeights[arc];
+    }
+
+    /**
+     * Returns the arc from one node up to another.
+     * @param tail The rank of the lower node.
+     * @param head The rank of the higher node.
+     * @return The arc index.
+     */
+    private int findArc(int tail, int head) {
+        return Arrays.binarySearch(heads, firstArc[tail], firstArc[tail + 1], head);
+    }
+
+    /**
+     * Append the Traversables an arc stands for to a route, replacing every
+     * shortcut with the arcs it was made from. The node the arc is travelled
+     * from is not appended, the node it is travelled to is.
+     * @param arc The arc index.
+     * @param up True to travel from tail to head, false for head to tail.
+     * @param route The route to append to.
+     */
+    void unpack(int arc, boolean up, List<Traversable> route) {
+        // each entry is an arc index times two, plus one if travelled up
+        int[] stack = new int[16];
+        int size = 0;
+        stack[size++] = arc * 2 + (up ? 1 : 0);
+        while (size > 0) {
+            int entry = stack[--size];
+            int a = entry >> 1;
+            boolean isUp = (entry & 1) == 1;
+            int middle = isUp ? upMiddle[a] : downMiddle[a];
+            if (middle < 0) {
+                route.add(nodes[isUp ? heads[a] : tails[a]]);
+                continue;
+            }
+            int tail = tails[a];
+            if (size + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (isUp) {
+                // tail -> middle -> head, pushed in reverse
+                stack[size++] = findArc(middle, heads[a]) * 2 + 1;
+                stack[size++] = findArc(middle, tail) * 2;
+            } else {
+                // head -> middle -> tail, pushed in reverse
+                stack[size++] = findArc(middle, tail) * 2 + 1;
+                stack[size++] = findArc(middle, heads[a]) * 2;
+            }
+        }
+    }
+
+    /**
+     * A nested dissection of the core of the network. A part is cut across
+     * the direction, and at the position, that needs the smallest separator
+     * for the size of the smaller side; the separator is ranked above both
+     * sides, and both sides are cut the same way until they are no larger
+     * than LEAF_SIZE. The separator of a cut is the smallest set of nodes
+     * that covers every edge across it: by Konig's theorem, it is found from
+     * a maximum matching between the nodes on either side of the cut.
+     */
+    private static class Dissection {
+
+        /** Index to the indices of its neighbors, the first degree of them */
+        final int[][] adjacency;
+        /** Index to the number of its neighbors */
+        final int[] degree;
+        /** Rank to index, filled from the top down */
+        final int[] order;
+        /** Index to the coordinates of the node */
+        final double[] x, y;
+        /** Index to the sum and the difference of the coordinates of the node */
+        final double[] sum, difference;
+        /** The directions a part may be cut across */
+        final double[][] directions;
+        /** The indices, each part of the dissection a run of them */
+        final int[] members;
+        /** Index to the label of the side it was last put on */
+        final int[] side;
+        /** Room to rearrange a part */
+        final int[] scratch;
+        /** Index to its position in the boundary of its side of a cut */
+        final int[] slot;
+        /** The nodes of each side of a cut with a neighbor across it */
+        final int[] lowBoundary, highBoundary;
+        /** The high node each low boundary node is matched to, or -1 */
+        final int[] lowMatch;
+        /** The low node each high boundary node is matched to, or -1 */
+        final int[] highMatch;
+        /** The low node each high boundary node was reached from */
+        final int[] via;
+        /** The last search that reached each low and high boundary node */
+        final int[] lowReached, highReached;
+        /** Low boundary nodes waiting to be searched from */
+        final int[] queue;
+        /** The last label given to a side */
+        int labels;
+        /** The last search of the boundary */
+        int searches;
+
+        Dissection(int[][] adjacency, int[] degree, int[] order) {
+            int n = adjacency.length;
+            this.adjacency = adjacency;
+            this.degree = degree;
+            this.order = order;
+            x = new double[n];
+            y = new double[n];
+            sum = new double[n];
+            difference = new double[n];
+            directions = new double[][] {x, y, sum, difference};
+            members = new int[n];
+            side = new int[n];
+            scratch = new int[n];
+            slot = new int[n];
+            lowBoundary = new int[n];
+            highBoundary = new int[n];
+            lowMatch = new int[n];
+            highMatch = new int[n];
+            via = new int[n];
+            lowReached = new int[n];
+            highReached = new int[n];
+            queue = new int[n];
+        }
+
+        /**
+         * Rank the nodes of a part.
+         * @param from The first member of the part.
+         * @param to One past the last member of the part.
+         * @param rankEnd One past the highest rank given to the part.
+         */
+        void split(int from, int to, int rankEnd) {
+            int size = to - from;
+            if (size <= LEAF_SIZE) {
+                System.arraycopy(members, from, order, rankEnd - size, size);
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int v = members[i];
+                sum[v] = x[v] + y[v];
+                difference[v] = x[v] - y[v];
+            }
+            double[] bestDirection = null;
+            int bestMiddle = 0;
+            double bestScore = Double.POSITIVE_INFINITY;
+            for (double[] direction : directions) {
+                for (double cut : CUTS) {
+                    int middle = from + (int) (size * cut);
+                    select(from, to, middle, direction);
+                    double score = separate(from, middle, to) / Math.min(cut, 1 - cut);
+                    if (score < bestScore) {
+                        bestScore = score;
+                        bestDirection = direction;
+                        bestMiddle = middle;
+                    }
+                }
+            }
+            select(from, to, bestMiddle, bestDirection);
+            separate(from, bestMiddle, to);
+
+            int separator = labels;
+            int low = labels - 2;
+            int a = 0, b = 0, c = 0;
+            for (int i = from; i < to; i++) {
+                int v = members[i];
+                if (side[v] == separator) {
+                    scratch[to - 1 - c++] = v;
+                } else if (side[v] == low) {
+                    scratch[from + a++] = v;
+                }
+            }
+            for (int i = from; i < to; i++) {
+                int v = members[i];
+                if (side[v] != separator && side[v] != low) {
+                    scratch[from + a + b++] = v;
+                }
+            }
+            System.arraycopy(scratch, from, members, from, size);
+            System.arraycopy(members, to - c, order, rankEnd - c, c);
+            split(from, from + a, rankEnd - c - b);
+            split(from + a, from + a + b, rankEnd - c);
+        }
+
+        /**
+         * Cut a run of members in two and find the separator of the cut. The
+         * members before the middle are labeled as the low side, the rest as
+         * the high side, and the separator is labeled apart from both. The
+         * three labels are the last three given.
+         * @param from The first member.
+         * @param middle The first member of the high side.
+         * @param to One past the last member.
+         * @return The number of nodes in the separator.
+         */
+        private int separate(int from, int middle, int to) {
+            int low = ++labels;
+            int high = ++labels;
+            int separator = ++labels;
+            for (int i = from; i < to; i++) {
+                side[members[i]] = i < middle ? low : high;
+            }
+            int lows = 0, highs = 0;
+            for (int i = from; i < to; i++) {
+                int v = members[i];
+                if (side[v] == low && touches(v, high)) {
+                    slot[v] = lows;
+                    lowMatch[lows] = -1;
+                    lowBoundary[lows++] = v;
+                } else if (side[v] == high && touches(v, low)) {
+                    slot[v] = highs;
+                    highMatch[highs] = -1;
+                    highBoundary[highs++] = v;
+                }
+            }
+            for (int i = 0; i < lows; i++) {
+                augment(i, high);
+            }
+
+            // the nodes reached from the unmatched low nodes by alternating
+            // paths give the cover: the low nodes not reached, the high
+            // nodes reached
+            int search = ++searches;
+            int head = 0, tail = 0;
+            for (int i = 0; i < lows; i++) {
+                if (lowMatch[i] < 0) {
+                    lowReached[i] = search;
+                    queue[tail++] = i;
+                }
+            }
+            while (head < tail) {
+                int v = lowBoundary[queue[head++]];
+                for (int k = 0; k < degree[v]; k++) {
+                    int w = adjacency[v][k];
+                    if (side[w] != high || highReached[slot[w]] == search) {
+                        continue;
+                    }
+                    highReached[slot[w]] = search;
+                    int match = highMatch[slot[w]];
+                    if (match >= 0 && lowReached[match] != search) {
+                        lowReached[match] = search;
+                        queue[tail++] = match;
+                    }
+                }
+            }
+            int count = 0;
+            for (int i = 0; i < lows; i++) {
+                if (lowReached[i] != search) {
+                    side[lowBoundary[i]] = separator;
+                    count++;
+                }
+            }
+            for (int j = 0; j < highs; j++) {
+                if (highReached[j] == search) {
+                    side[highBoundary[j]] = separator;
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Match a low boundary node to a high one, rematching others along
+         * the shortest alternating path that frees one.
+         * @param root The position of the low node in the boundary.
+         * @param high The label of the high side.
+         */
+        private void augment(int root, int high) {
+            int search = ++searches;
+            int head = 0, tail = 0;
+            queue[tail++] = root;
+            while (head < tail) {
+                int i = queue[head++];
+                int v = lowBoundary[i];
+                for (int k = 0; k < degree[v]; k++) {
+                    int w = adjacency[v][k];
+                    if (side[w] != high || highReached[slot[w]] == search) {
+                        continue;
+                    }
+                    int j = slot[w];
+                    highReached[j] = search;
+                    via[j] = i;
+                    if (highMatch[j] < 0) {
+                        // flip the path back to the root
+                        while (j >= 0) {
+                            int owner = via[j];
+                            int next = lowMatch[owner];
+                            lowMatch[owner] = j;
+                            highMatch[j] = owner;
+                            j = next;
+                        }
+                        return;
+                    }
+                    queue[tail++] = highMatch[j];
+                }
+            }
+        }
+
+        /**
+         * Returns whether a node has a neighbor with a label.
+         * @param v The index of the node.
+         * @param label The label.
+         * @return True if it has.
+         */
+        private boolean touches(int v, int label) {
+            for (int k = 0; k < degree[v]; k++) {
+                if (side[adjacency[v][k]] == label) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Rearrange a run of members so that the one at a position is where
+         * it would be if the run were sorted by a coordinate, with none
+         * greater before it and none smaller after it.
+         * @param from The first member.
+         * @param to One past the last member.
+         * @param k The position.
+         * @param key Index to the coordinate.
+         */
+        private void select(int from, int to, int k, double[] key) {
+            int lo = from, hi = to - 1;
+            while (lo < hi) {
+                double pivot = key[members[(lo + hi) >>> 1]];
+                int i = lo, j = hi;
+                while (i <= j) {
+                    while (key[members[i]] < pivot) {
+                        i++;
+                    }
+                    while (key[members[j]] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        int t = members[i];
+                        members[i++] = members[j];
+                        members[j--] = t;
+                    }
+                }
+                if (k <= j) {
+                    hi = j;
+                } else if (k >= i) {
+                    lo = i;
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+}
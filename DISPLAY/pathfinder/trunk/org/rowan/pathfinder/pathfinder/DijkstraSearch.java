@@ -0,0 +1,394 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class <code>DijkstraSearch</code> finds the cheapest route between two
+ * nodes of a <code>SearchGraph</code> using Djikstra's algorithm with an
+ * indexed binary heap. The cost of a route is the sum of the costs of every
+ * node on it except the first, and nodes with a negative (infinite) cost are
+ * never entered. The search stops as soon as the destination is settled.
+ * If a <code>Heuristic</code> is set, nodes are settled in order of their
+ * distance plus the estimated remaining cost instead (A*), which settles
+ * fewer nodes on the way to the destination the closer the estimate is to
+ * the real remaining cost.
+ *
+ * A backward search runs over the reverse edges instead: it is started at
+ * the destination, and the distance of each node is then the cost of the
+ * cheapest route from that node to the destination, with the predecessor of
+ * each node being the next node on that route.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class DijkstraSearch {
+
+    /** The graph being searched */
+    private SearchGraph graph;
+    /** Whether the search follows reverse edges */
+    private boolean backward;
+    /** The best known distance (weight) to each node */
+    private double[] distance;
+    /** The node each node was reached from, or -1 */
+    private int[] predecessor;
+    /** Whether each node's distance is final */
+    private boolean[] settled;
+    /** The nodes that have been reached but not settled */
+    private IndexedMinHeap unsettled;
+    /** The nodes settled during the last search, in the order settled */
+    private int[] settledOrder;
+    /** The number of nodes settled during the last search */
+    private int settledCount;
+    /** The estimate of the remaining cost, or null for plain Djikstra */
+    private Heuristic heuristic;
+    /** Id to the heuristic's estimate, NaN if it hasn't been computed yet */
+    private double[] estimates;
+    /** The nodes reached by the last search, the only ones reset() clears */
+    private int[] touched;
+    /** The number of nodes reached by the last search */
+    private int touchedCount;
+    /** Whether each node is a target of the running search, false between searches */
+    private boolean[] wanted;
+
+    /**
+     * Create a new search over the given graph.
+     * @param graph The graph to search.
+     */
+    public DijkstraSearch(SearchGraph graph) {
+        this(graph, false);
+    }
+
+    /**
+     * Create a new search over the given graph.
+     * @param graph The graph to search.
+     * @param backward True to follow reverse edges from the destination,
+     *                 false to follow edges from the start.
+     */
+    public DijkstraSearch(SearchGraph graph, boolean backward) {
+        this.graph = graph;
+        this.backward = backward;
+        int capacity = Math.max(graph.size(), 64);
+        distance = new double[capacity];
+        predecessor = new int[capacity];
+        settled = new boolean[capacity];
+        settledOrder = new int[capacity];
+        touched = new int[capacity];
+        unsettled = new IndexedMinHeap(capacity);
+        estimates = new double[capacity];
+        wanted = new boolean[capacity];
+        Arrays.fill(distance, Double.MAX_VALUE);
+        Arrays.fill(predecessor, -1);
+        Arrays.fill(estimates, Double.NaN);
+    }
+
+    /**
+     * Set the heuristic used to direct the following searches towards their
+     * destination. The heuristic must be consistent for the routes found to
+     * be the cheapest ones.
+     * @param heuristic The heuristic, or null to run plain Djikstra.
+     */
+    public void setHeuristic(Heuristic heuristic) {
+        this.heuristic = heuristic;
+        // only the nodes reached by the last search have an estimate
+        for (int i = 0; i < touchedCount; i++) {
+            estimates[touched[i]] = Double.NaN;
+        }
+    }
+
+    /**
+     * Returns the heuristic used by this search.
+     * @return The heuristic, or null if there is none.
+     */
+    public Heuristic getHeuristic() {
+        return heuristic;
+    }
+
+    /**
+     * Runs Djikstra's algorithm from source until target is settled. If target
+     * is -1 the entire reachable graph is settled.
+     * @param source The id of the start node.
+     * @param target The id of the destination node, or -1.
+     * @return True if the target was reached, false otherwise.
+     */
+    public boolean run(int source, int target) {
+        reset();
+        touch(source);
+        distance[source] = 0;
+        unsettled.insertOrUpdate(source, estimate(source));
+        return settle(target, Double.MAX_VALUE);
+    }
+
+    /**
+     * Runs Djikstra's algorithm from source until every target is settled,
+     * so the routes from one source to many targets are found in a single
+     * search. Must not be used with a heuristic.
+     * @param source The id of the start node.
+     * @param targets The ids of the destination nodes, -1 for none.
+     * @return True if every target was reached, false otherwise.
+     */
+    public boolean run(int source, int[] targets) {
+        reset();
+        int remaining = 0;
+        for (int target : targets) {
+            ensureCapacity(target + 1);
+            if (target >= 0 && !wanted[target]) {
+                wanted[target] = true;
+                remaining++;
+            }
+        }
+        touch(source);
+        distance[source] = 0;
+        unsettled.insertOrUpdate(source, estimate(source));
+        while (remaining > 0 && !unsettled.isEmpty()) {
+            int node = unsettled.poll();
+            settled[node] = true;
+            settledOrder[settledCount++] = node;
+            if (wanted[node]) {
+                remaining--;
+            }
+            if (backward) {
+                relaxReverseNeighbors(node);
+            } else {
+                relaxNeighbors(node);
+            }
+        }
+        for (int target : targets) {
+            if (target >= 0) {
+                wanted[target] = false;
+            }
+        }
+        return remaining == 0;
+    }
+
+    /**
+     * Continue the last search, settling every node whose distance is at
+     * most the given limit. Must not be used with a heuristic.
+     * @param limit The largest distance to settle.
+     */
+    public void settleWithin(double limit) {
+        settle(-1, limit);
+    }
+
+    /**
+     * Settle nodes until the target is settled, the next node is further
+     * than the limit, or no reachable node is left.
+     * @param target The id of the destination node, or -1.
+     * @param limit The largest key to settle.
+     * @return True if the target was reached, false otherwise.
+     */
+    private boolean settle(int target, double limit) {
+        while (!unsettled.isEmpty() && unsettled.peekKey() <= limit) {
+            int node = unsettled.poll();
+            settled[node] = true;
+            settledOrder[settledCount++] = node;
+            if (node == target) {
+                return true;
+            }
+            if (backward) {
+                relaxReverseNeighbors(node);
+            } else {
+                relaxNeighbors(node);
+            }
+        }
+        return target >= 0 && predecessor[target] >= 0;
+    }
+
+    /**
+     * Lower the distance of every neighbor of a node that can be reached more
+     * cheaply through that node.
+     * @param node The id of the node that was just settled.
+     */
+    private void relaxNeighbors(int node) {
+        int first = graph.firstEdge(node);
+        int end = graph.endEdge(node);
+        ensureCapacity(graph.size());
+        double base = distance[node];
+
+        for (int e = first; e < end; e++) {
+            int target = graph.getTarget(e);
+            double cost = graph.getCost(target);
+            if (cost < 0 || settled[target]) {
+                continue;
+            }
+            double newDistance = base + cost;
+            if (newDistance < distance[target]) {
+                touch(target);
+                distance[target] = newDistance;
+                predecessor[target] = node;
+                unsettled.insertOrUpdate(target, newDistance + estimate(target));
+            }
+        }
+    }
+
+    /**
+     * Lower the distance of every node leading to a node if it reaches the
+     * destination more cheaply through that node. Nothing leads through a
+     * node that can't be entered.
+     * @param node The id of the node that was just settled.
+     */
+    private void relaxReverseNeighbors(int node) {
+        double cost = graph.getCost(node);
+        if (cost < 0) {
+            return;
+        }
+        int first = graph.firstReverseEdge(node);
+        int end = graph.endReverseEdge(node);
+        ensureCapacity(graph.size());
+        double newDistance = distance[node] + cost;
+
+        for (int e = first; e < end; e++) {
+            int source = graph.getSource(e);
+            if (settled[source]) {
+                continue;
+            }
+            if (newDistance < distance[source]) {
+                touch(source);
+                distance[source] = newDistance;
+                predecessor[source] = node;
+                unsettled.insertOrUpdate(source, newDistance + estimate(source));
+            }
+        }
+    }
+
+    /**
+     * Remember that a node is reached by this search, before its distance is
+     * first lowered.
+     * @param id The id of the node.
+     */
+    private void touch(int id) {
+        if (distance[id] == Double.MAX_VALUE) {
+            touched[touchedCount++] = id;
+        }
+    }
+
+    /**
+     * Returns the heuristic's estimate of the cost from a node to the
+     * destination, computing it only the first time it is asked for.
+     * @param id The id of a node.
+     * @return The estimated remaining cost, 0 if there is no heuristic.
+     */
+    private double estimate(int id) {
+        if (heuristic == null) {
+            return 0;
+        }
+        if (Double.isNaN(estimates[id])) {
+            estimates[id] = heuristic.estimate(graph.getTraversable(id));
+        }
+        return estimates[id];
+    }
+
+    /**
+     * Returns the distance (weight) from the source of the last search to a
+     * node, or Double.MAX_VALUE if the node was not reached.
+     * @param id The id of a node.
+     * @return The shortest known distance to the node.
+     */
+    public double getDistance(int id) {
+        return id < distance.length ? distance[id] : Double.MAX_VALUE;
+    }
+
+    /**
+     * Returns the node that a node was reached from in the last search.
+     * @param id The id of a node.
+     * @return The id of the predecessor, or -1 if there is none.
+     */
+    public int getPredecessor(int id) {
+        return id < predecessor.length ? predecessor[id] : -1;
+    }
+
+    /**
+     * Returns whether the distance of a node is final.
+     * @param id The id of a node.
+     * @return True if the node was settled by the last search.
+     */
+    public boolean isSettled(int id) {
+        return id < settled.length && settled[id];
+    }
+
+    /**
+     * Returns the number of nodes that were settled in the last search.
+     * @return The number of settled nodes.
+     */
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    /**
+     * Returns a node settled in the last search. Nodes are numbered in the
+     * order they were settled, from 0 to getSettledCount() - 1, so the nodes
+     * a search reached can be visited without scanning the whole graph.
+     * @param i The number of the node.
+     * @return The id of the node.
+     */
+    public int getSettled(int i) {
+        return settledOrder[i];
+    }
+
+    /**
+     * Build the route from the source of the last search to a node by
+     * following predecessors. In a backward search the route leads from the
+     * given node to the destination instead.
+     * @param target The id of the last node of the route.
+     * @return The Traversables from source to target, or null if the target
+     *         was not reached.
+     */
+    public List<Traversable> getRoute(int target) {
+        if (getPredecessor(target) < 0) {
+            return null;
+        }
+        List<Traversable> route = new ArrayList<Traversable>();
+        for (int step = target; step >= 0; step = predecessor[step]) {
+            route.add(graph.getTraversable(step));
+        }
+        if (!backward) {
+            Collections.reverse(route);
+        }
+        return route;
+    }
+
+    /**
+     * Clear the state of the previous search. Only the nodes it reached are
+     * touched, so a short search stays cheap on a large graph. Their
+     * estimates are cleared as well, since the heuristic may be for another
+     * destination by the next search.
+     */
+    private void reset() {
+        ensureCapacity(graph.size());
+        for (int i = 0; i < touchedCount; i++) {
+            int node = touched[i];
+            distance[node] = Double.MAX_VALUE;
+            predecessor[node] = -1;
+            settled[node] = false;
+            estimates[node] = Double.NaN;
+        }
+        touchedCount = 0;
+        unsettled.clear();
+        settledCount = 0;
+    }
+
+    /**
+     * Grow the search arrays so that every id below capacity can be stored.
+     * @param capacity The number of ids that must fit.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= distance.length) {
+            return;
+        }
+        int oldCapacity = distance.length;
+        int newCapacity = Math.max(capacity, oldCapacity * 2);
+        distance = Arrays.copyOf(distance, newCapacity);
+        predecessor = Arrays.copyOf(predecessor, newCapacity);
+        settled = Arrays.copyOf(settled, newCapacity);
+        settledOrder = Arrays.copyOf(settledOrder, newCapacity);
+        touched = Arrays.copyOf(touched, newCapacity);
+        estimates = Arrays.copyOf(estimates, newCapacity);
+        wanted = Arrays.copyOf(wanted, newCapacity);
+        Arrays.fill(distance, oldCapacity, newCapacity, Double.MAX_VALUE);
+        Arrays.fill(predecessor, oldCapacity, newCapacity, -1);
+        Arrays.fill(estimates, oldCapacity, newCapacity, Double.NaN);
+        unsettled.ensureCapacity(newCapacity);
+    }
+}
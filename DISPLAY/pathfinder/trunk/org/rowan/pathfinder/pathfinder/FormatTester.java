@@ -0,0 +1,307 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.rowan.linalgtoolkit.Vector2D;
+import org.rowan.pathfinder.parser.DatasetReader;
+import org.rowan.pathfinder.parser.DatasetWriter;
+import org.rowan.pathfinder.parser.EventParser;
+import org.rowan.pathfinder.parser.RoadParser;
+import org.rowan.pathfinder.parser.RoadSink;
+import org.rowan.pathfinder.parser.TerrainParser;
+import org.rowan.pathfinder.parser.VehicleParser;
+import org.rowan.pathfinder.parser.XMLParser;
+
+/**
+ * Class <code>FormatTester</code> checks that the binary files Pathfinder
+ * writes read back what was written. The parsed roads are written as a
+ * <code>GraphSnapshot</code>, as a <code>TileStore</code> and, with the
+ * parsed vehicles, terrains and events, as a dataset, and each is read
+ * back and compared to what was parsed. Every tenth road is given a speed
+ * limit and a clearance first, and a speed limit and an underpass are made
+ * on it, so those are written too. The tester exits with status 1 if a
+ * check fails.
+ *
+ * Usage: FormatTester roads.osm vehicles.xml terrains.xml events.xml
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class FormatTester {
+
+    /** The size of a tile in degrees; small, so that a city has many tiles */
+    private static final double TILE_SIZE = .01;
+    /** The number of tiles the tile store keeps, fewer than it has */
+    private static final int TILE_CAPACITY = 4;
+
+    /**
+     * Run the checks.
+     * @param args The road file, the vehicle file, the terrain file and the
+     *             event file.
+     * @throws Exception If a file can't be parsed, written or read.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 4) {
+            System.err.println("Usage: FormatTester roads.osm vehicles.xml terrains.xml events.xml");
+            return;
+        }
+        final Set<RoadSegment> roads = new HashSet<RoadSegment>();
+        RoadParser.parseParallel(new File(args[0]), null, new RoadSink() {
+
+            @Override
+            public void addRoad(RoadSegment road) {
+                roads.add(road);
+            }
+        });
+        VehicleParser vehicleParser = new VehicleParser();
+        XMLParser.parse(vehicleParser, new File(args[1]));
+        TerrainParser terrainParser = new TerrainParser();
+        XMLParser.parse(terrainParser, new File(args[2]));
+        EventParser eventParser = new EventParser();
+        XMLParser.parse(eventParser, new File(args[3]));
+
+        Set<SpeedLimit> speedLimits = new HashSet<SpeedLimit>();
+        Set<Underpass> underpasses = new HashSet<Underpass>();
+        int n = 0;
+        for (RoadSegment road : roads) {
+            if (n++ % 10 == 0) {
+                Vector2D start = Logic2D.getStart(road.getSegment());
+                road.setSpeedLimit(10 + n % 90);
+                road.addClearanceHeight(2 + n % 7 * .25);
+                speedLimits.add(new SpeedLimit(start, Logic2D.getEnd(road.getSegment()),
+                        road.getRoadName(), road.getSpeedLimit()));
+                underpasses.add(new Underpass(start, road.getRoadName(), "Under " + n,
+                        road.getMinClearanceHeight()));
+            }
+        }
+
+        int failures = 0;
+        File snapshotFile = File.createTempFile("snapshot", ".pfgs");
+        File datasetFile = File.createTempFile("dataset", ".pfds");
+        File tileDirectory = File.createTempFile("tiles", "");
+        try {
+            failures += checkSnapshot(snapshotFile, roads);
+            failures += checkTiles(tileDirectory, roads);
+
+            DatasetWriter.write(datasetFile, roads, terrainParser.extractTerrains(),
+                    eventParser.extractEvents(), speedLimits, underpasses,
+                    vehicleParser.extractVehicles());
+            DatasetReader reader = new DatasetReader();
+            reader.read(datasetFile);
+            failures += check("dataset roads", describeRoads(roads, false),
+                    describeRoads(reader.extractRoads(), false));
+            List<String> expected = new ArrayList<String>();
+            List<String> actual = new ArrayList<String>();
+            for (Terrain t : terrainParser.extractTerrains()) {
+                expected.add(t.export());
+            }
+            for (Terrain t : reader.extractTerrains()) {
+                actual.add(t.export());
+            }
+            failures += check("dataset terrains", expected, actual);
+            expected.clear();
+            actual.clear();
+            for (Event e : eventParser.extractEvents()) {
+                expected.add(e.export());
+            }
+            for (Event e : reader.extractEvents()) {
+                actual.add(e.export());
+            }
+            failures += check("dataset events", expected, actual);
+            failures += check("dataset speed limits", describe(speedLimits),
+                    describe(reader.extractSpeedLimits()));
+            failures += check("dataset underpasses", describe(underpasses),
+                    describe(reader.extractUnderpasses()));
+            failures += check("dataset vehicles", describe(vehicleParser.extractVehicles()),
+                    describe(reader.extractVehicles()));
+        } finally {
+            snapshotFile.delete();
+            datasetFile.delete();
+            File[] tiles = tileDirectory.listFiles();
+            if (tiles != null) {
+                for (File tile : tiles) {
+                    tile.delete();
+                }
+            }
+            tileDirectory.delete();
+        }
+
+        System.out.println(roads.size() + " roads, " + terrainParser.extractTerrains().size()
+                + " terrains, " + eventParser.extractEvents().size() + " events, "
+                + speedLimits.size() + " speed limits, " + underpasses.size()
+                + " underpasses and " + vehicleParser.extractVehicles().size()
+                + " vehicles written and read back");
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * Write the roads to a snapshot and compare what is read back: the roads
+     * read lazily and extracted, and the neighbors of every segment, which
+     * must be the segments that start where it ends.
+     * @param file The file to write the snapshot to.
+     * @param roads The roads.
+     * @return The number of checks that failed.
+     * @throws IOException If the snapshot can't be written or read.
+     */
+    private static int checkSnapshot(File file, Set<RoadSegment> roads) throws IOException {
+        GraphSnapshot.write(file, roads);
+        GraphSnapshot snapshot = GraphSnapshot.open(file);
+        List<String> expected = describeRoads(roads, true);
+        int failures = check("snapshot roads", expected, describeRoads(snapshot.roads(), true));
+        failures += check("snapshot extracted roads", expected,
+                describeRoads(snapshot.extractRoads(), true));
+
+        // points are matched by their strings, as the snapshot matches them
+        Map<String, Integer> startingAt = new HashMap<String, Integer>();
+        for (RoadSegment road : roads) {
+            String start = Logic2D.getStart(road.getSegment()).toString();
+            Integer count = startingAt.get(start);
+            startingAt.put(start, count == null ? 1 : count + 1);
+        }
+        int wrongNeighbors = 0;
+        for (int i = 0; i < snapshot.getNumSegments(); i++) {
+            RoadSegment road = snapshot.getRoad(i);
+            String end = Logic2D.getEnd(road.getSegment()).toString();
+            Integer count = startingAt.get(end);
+            int neighbors = count == null ? 0 : count;
+            if (Logic2D.getStart(road.getSegment()).toString().equals(end)) {
+                // a segment that ends where it starts isn't its own neighbor
+                neighbors--;
+            }
+            for (int e = snapshot.firstEdge(i); e < snapshot.endEdge(i); e++) {
+                RoadSegment neighbor = snapshot.getRoad(snapshot.getTarget(e));
+                if (!Logic2D.getStart(neighbor.getSegment()).toString().equals(end)) {
+                    wrongNeighbors++;
+                }
+            }
+            if (snapshot.endEdge(i) - snapshot.firstEdge(i) != neighbors) {
+                wrongNeighbors++;
+            }
+        }
+        if (wrongNeighbors > 0) {
+            System.out.println("FAILED: " + wrongNeighbors + " snapshot segments have the wrong neighbors");
+            failures++;
+        }
+        return failures;
+    }
+
+    /**
+     * Write the roads to a tile store and compare what is read back: every
+     * tile must hold only roads that start in it, and the tiles together
+     * must hold every road. The store keeps fewer tiles than it has, so
+     * tiles are dropped and loaded again on the way.
+     * @param directory The directory to write the tiles to.
+     * @param roads The roads.
+     * @return The number of checks that failed.
+     * @throws IOException If the tiles can't be written or read.
+     */
+    private static int checkTiles(File directory, Set<RoadSegment> roads) throws IOException {
+        directory.delete();
+        TileStore.write(directory, roads, TILE_SIZE);
+        TileStore store = TileStore.open(directory, TILE_CAPACITY);
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (RoadSegment road : roads) {
+            Vector2D start = Logic2D.getStart(road.getSegment());
+            minX = Math.min(minX, store.tileOf(start.getX()));
+            minY = Math.min(minY, store.tileOf(start.getY()));
+            maxX = Math.max(maxX, store.tileOf(start.getX()));
+            maxY = Math.max(maxY, store.tileOf(start.getY()));
+        }
+        int failures = 0;
+        if (!store.covers(minX, minY, maxX, maxY)) {
+            System.out.println("FAILED: the tiles of every road don't cover the tile store");
+            failures++;
+        }
+        List<RoadSegment> fromTiles = new ArrayList<RoadSegment>();
+        int misplaced = 0;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (RoadSegment road : store.getTile(x, y)) {
+                    Vector2D start = Logic2D.getStart(road.getSegment());
+                    if (store.tileOf(start.getX()) != x || store.tileOf(start.getY()) != y) {
+                        misplaced++;
+                    }
+                    fromTiles.add(road);
+                }
+            }
+        }
+        if (misplaced > 0) {
+            System.out.println("FAILED: " + misplaced + " roads are in a tile their start isn't in");
+            failures++;
+        }
+        List<String> expected = describeRoads(roads, true);
+        failures += check("tile roads", expected, describeRoads(fromTiles, true));
+        failures += check("tile range roads", expected,
+                describeRoads(store.getRoads(minX, minY, maxX, maxY), true));
+        return failures;
+    }
+
+    /**
+     * Returns a description of every road.
+     * @param roads The roads.
+     * @param nameOrEmpty Whether a road without a name is described as one
+     *                    named "", as a snapshot stores it.
+     * @return The ends, name, speed limit and clearance of every road.
+     */
+    private static List<String> describeRoads(Collection<RoadSegment> roads, boolean nameOrEmpty) {
+        List<String> descriptions = new ArrayList<String>(roads.size());
+        for (RoadSegment road : roads) {
+            String name = road.getRoadName() == null && nameOrEmpty ? "" : road.getRoadName();
+            descriptions.add(Logic2D.getStart(road.getSegment()) + " " + Logic2D.getEnd(road.getSegment())
+                    + " " + name + " " + road.getSpeedLimit() + " " + road.getMinClearanceHeight());
+        }
+        return descriptions;
+    }
+
+    /**
+     * Returns the string of every object.
+     * @param objects The objects.
+     * @return The strings.
+     */
+    private static List<String> describe(Collection<?> objects) {
+        List<String> descriptions = new ArrayList<String>(objects.size());
+        for (Object o : objects) {
+            descriptions.add(o.toString());
+        }
+        return descriptions;
+    }
+
+    /**
+     * Compare what was read back to what was written, in any order.
+     * @param name What was read.
+     * @param expected The descriptions of what was written.
+     * @param actual The descriptions of what was read.
+     * @return 1 if they differ, 0 otherwise.
+     */
+    private static int check(String name, List<String> expected, List<String> actual) {
+        expected = new ArrayList<String>(expected);
+        actual = new ArrayList<String>(actual);
+        Collections.sort(expected);
+        Collections.sort(actual);
+        if (expected.equals(actual)) {
+            return 0;
+        }
+        int i = 0;
+        while (i < Math.min(expected.size(), actual.size()) && expected.get(i).equals(actual.get(i))) {
+            i++;
+        }
+        System.out.println("FAILED: " + name + ": " + actual.size() + " read instead of "
+                + expected.size() + ", first difference "
+                + (i < actual.size() ? actual.get(i) : "none") + " instead of "
+                + (i < expected.size() ? expected.get(i) : "none"));
+        return 1;
+    }
+}
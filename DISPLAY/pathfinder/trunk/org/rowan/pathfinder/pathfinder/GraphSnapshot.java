@@ -0,0 +1,493 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.rowan.linalgtoolkit.Vector2D;
+import org.rowan.linalgtoolkit.shapes2d.Segment2D;
+
+/**
+ * Class <code>GraphSnapshot</code> is a binary copy of a road network that can
+ * be written once and then opened by later sessions without parsing the OSM
+ * file again. The file is memory mapped when it is opened, in chunks so that
+ * files larger than 2 GB can be mapped too, so nothing is read until it is
+ * used, and every record has a fixed size so any segment can be read
+ * directly. A snapshot holds:
+ * <ul>
+ * <li>every distinct point (latitude and longitude),</li>
+ * <li>every road segment (its start and end point, road name, speed limit and
+ * lowest underpass clearance),</li>
+ * <li>the neighbors of every segment, in compressed sparse row form,</li>
+ * <li>the road names, each stored once.</li>
+ * </ul>
+ * All values are big endian. Speed limits and clearances are only stored if
+ * they were attached to the roads (by Transformer.transform()) before the
+ * snapshot was written.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class GraphSnapshot {
+
+    /** The first four bytes of every snapshot, "PFGS" */
+    private static final int MAGIC = 0x50464753;
+    /** The version of the format written by this class */
+    private static final int VERSION = 1;
+    /** Bytes before the first point: magic, version and four counts */
+    private static final int HEADER_SIZE = 6 * 4;
+    /** Bytes per point: latitude and longitude */
+    private static final int NODE_SIZE = 2 * 8;
+    /** Bytes per segment: start, end, name, speed limit and clearance */
+    private static final int SEGMENT_SIZE = 4 * 4 + 8;
+    /** Bytes of the file each mapped chunk starts after the previous one */
+    private static final long CHUNK_SIZE = 1 << 30;
+    /** Bytes each chunk overlaps the next, so no value is split between two */
+    private static final int CHUNK_OVERLAP = 8;
+    /** The mapped file, chunk i starting at byte i * CHUNK_SIZE */
+    private ByteBuffer[] chunks;
+    /** The length of the file */
+    private long length;
+    /** The number of distinct points */
+    private int numNodes;
+    /** The number of road segments */
+    private int numSegments;
+    /** The number of neighbor entries */
+    private int numEdges;
+    /** Name index to the position of its length in the file */
+    private long[] namePositions;
+    /** Position of the first segment record */
+    private long segmentsStart;
+    /** Position of the first edge offset */
+    private long offsetsStart;
+    /** Position of the first edge target */
+    private long targetsStart;
+
+    /**
+     * Create a new snapshot over the mapped chunks of a snapshot file.
+     * @param chunks The contents of the file, CHUNK_SIZE bytes apart.
+     * @param length The length of the file.
+     * @throws IOException If the chunks don't hold a valid snapshot.
+     */
+    private GraphSnapshot(ByteBuffer[] chunks, long length) throws IOException {
+        this.chunks = chunks;
+        this.length = length;
+        if (length < HEADER_SIZE || getInt(0) != MAGIC) {
+            throw new IOException("The file is not a Pathfinder graph snapshot.");
+        }
+        if (getInt(4) != VERSION) {
+            throw new IOException("Unsupported graph snapshot version " + getInt(4) + ".");
+        }
+        numNodes = getInt(8);
+        numSegments = getInt(12);
+        int numNames = getInt(16);
+        numEdges = getInt(20);
+
+        segmentsStart = HEADER_SIZE + (long) numNodes * NODE_SIZE;
+        offsetsStart = segmentsStart + (long) numSegments * SEGMENT_SIZE;
+        targetsStart = offsetsStart + (numSegments + 1L) * 4;
+        long position = targetsStart + (long) numEdges * 4;
+        namePositions = new long[numNames];
+        for (int i = 0; i < numNames; i++) {
+            if (position + 4 > length) {
+                throw new IOException("The graph snapshot is truncated.");
+            }
+            namePositions[i] = position;
+            position += 4 + getInt(position);
+        }
+        if (position > length) {
+            throw new IOException("The graph snapshot is truncated.");
+        }
+    }
+
+    /**
+     * Open a snapshot file. The file is mapped into memory, not read.
+     * @param file A file written by write().
+     * @return The opened snapshot.
+     * @throws IOException If the file can't be read or isn't a snapshot.
+     */
+    public static GraphSnapshot open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = i * CHUNK_SIZE;
+                long size = Math.min(CHUNK_SIZE + CHUNK_OVERLAP, length - start);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            }
+            return new GraphSnapshot(chunks, length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the byte at a position of the file.
+     * @param position The position.
+     * @return The byte.
+     */
+    private byte get(long position) {
+        return chunks[(int) (position / CHUNK_SIZE)].get((int) (position % CHUNK_SIZE));
+    }
+
+    /**
+     * Returns the int at a position of the file.
+     * @param position The position of its first byte.
+     * @return The int.
+     */
+    private int getInt(long position) {
+        return chunks[(int) (position / CHUNK_SIZE)].getInt((int) (position % CHUNK_SIZE));
+    }
+
+    /**
+     * Returns the double at a position of the file.
+     * @param position The position of its first byte.
+     * @return The double.
+     */
+    private double getDouble(long position) {
+        return chunks[(int) (position / CHUNK_SIZE)].getDouble((int) (position % CHUNK_SIZE));
+    }
+
+    /**
+     * Write a snapshot of a set of roads. The neighbors of each road are
+     * found from the points the roads share, so they don't have to be set.
+     * @param file The file to write to. It is overwritten if it exists.
+     * @param roads The roads to store.
+     * @throws IOException If the file can't be written.
+     */
+    public static void write(File file, Collection<RoadSegment> roads) throws IOException {
+        RoadSegment[] segments = roads.toArray(new RoadSegment[roads.size()]);
+        Map<String, Integer> nodeIds = new HashMap<String, Integer>();
+        List<Vector2D> nodes = new ArrayList<Vector2D>();
+        Map<String, Integer> nameIds = new HashMap<String, Integer>();
+        List<String> names = new ArrayList<String>();
+        int[] starts = new int[segments.length];
+        int[] ends = new int[segments.length];
+        int[] nameIndices = new int[segments.length];
+
+        for (int i = 0; i < segments.length; i++) {
+            starts[i] = nodeId(Logic2D.getStart(segments[i].getSegment()), nodeIds, nodes);
+            ends[i] = nodeId(Logic2D.getEnd(segments[i].getSegment()), nodeIds, nodes);
+            String name = segments[i].getRoadName() == null ? "" : segments[i].getRoadName();
+            Integer nameIndex = nameIds.get(name);
+            if (nameIndex == null) {
+                nameIndex = names.size();
+                nameIds.put(name, nameIndex);
+                names.add(name);
+            }
+            nameIndices[i] = nameIndex;
+        }
+
+        // the neighbors of a segment are the segments that start where it
+        // ends, just like Transformer.setNeighbors()
+        int[] startingAt = new int[nodes.size() + 1];
+        for (int i = 0; i < segments.length; i++) {
+            startingAt[starts[i] + 1]++;
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            startingAt[i + 1] += startingAt[i];
+        }
+        int[] bySegment = new int[segments.length];
+        int[] next = Arrays.copyOf(startingAt, nodes.size());
+        for (int i = 0; i < segments.length; i++) {
+            bySegment[next[starts[i]]++] = i;
+        }
+        int[] offsets = new int[segments.length + 1];
+        int numEdges = 0;
+        for (int i = 0; i < segments.length; i++) {
+            numEdges += startingAt[ends[i] + 1] - startingAt[ends[i]];
+        }
+        int[] targets = new int[numEdges];
+        numEdges = 0;
+        for (int i = 0; i < segments.length; i++) {
+            offsets[i] = numEdges;
+            for (int j = startingAt[ends[i]]; j < startingAt[ends[i] + 1]; j++) {
+                if (!segments[bySegment[j]].equals(segments[i])) {
+                    targets[numEdges++] = bySegment[j];
+                }
+            }
+        }
+        offsets[segments.length] = numEdges;
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodes.size());
+            out.writeInt(segments.length);
+            out.writeInt(names.size());
+            out.writeInt(numEdges);
+            for (Vector2D node : nodes) {
+                out.writeDouble(node.getX());
+                out.writeDouble(node.getY());
+            }
+            for (int i = 0; i < segments.length; i++) {
+                out.writeInt(starts[i]);
+                out.writeInt(ends[i]);
+                out.writeInt(nameIndices[i]);
+                out.writeInt(segments[i].getSpeedLimit());
+                out.writeDouble(segments[i].getMinClearanceHeight());
+            }
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            for (int e = 0; e < numEdges; e++) {
+                out.writeInt(targets[e]);
+            }
+            for (String name : names) {
+                byte[] bytes = name.getBytes("UTF-8");
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the id of a point, giving it a new id if it has not been seen.
+     * Points are matched the same way Transformer matches neighbors.
+     * @param point The point.
+     * @param nodeIds Point key to id.
+     * @param nodes Id to point.
+     * @return The id of the point.
+     */
+    private static int nodeId(Vector2D point, Map<String, Integer> nodeIds, List<Vector2D> nodes) {
+        String key = point.toString();
+        Integer id = nodeIds.get(key);
+        if (id == null) {
+            id = nodes.size();
+            nodeIds.put(key, id);
+            nodes.add(point);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the number of distinct points in the snapshot.
+     * @return The number of points.
+     */
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    /**
+     * Returns the number of road segments in the snapshot.
+     * @return The number of segments.
+     */
+    public int getNumSegments() {
+        return numSegments;
+    }
+
+    /**
+     * Returns the number of neighbor entries in the snapshot.
+     * @return The number of edges.
+     */
+    public int getNumEdges() {
+        return numEdges;
+    }
+
+    /**
+     * Returns a point of the snapshot.
+     * @param node The index of the point.
+     * @return The point, where x is the latitude and y the longitude.
+     */
+    public Vector2D getNode(int node) {
+        long position = HEADER_SIZE + (long) node * NODE_SIZE;
+        return new Vector2D(getDouble(position), getDouble(position + 8));
+    }
+
+    /**
+     * Returns the index of the point a segment starts at.
+     * @param segment The index of a segment.
+     * @return The index of its start point.
+     */
+    public int getStartNode(int segment) {
+        return getInt(segmentsStart + (long) segment * SEGMENT_SIZE);
+    }
+
+    /**
+     * Returns the index of the point a segment ends at.
+     * @param segment The index of a segment.
+     * @return The index of its end point.
+     */
+    public int getEndNode(int segment) {
+        return getInt(segmentsStart + (long) segment * SEGMENT_SIZE + 4);
+    }
+
+    /**
+     * Returns the name of the road a segment lies on.
+     * @param segment The index of a segment.
+     * @return The road name.
+     */
+    public String getRoadName(int segment) {
+        return getName(getInt(segmentsStart + (long) segment * SEGMENT_SIZE + 8));
+    }
+
+    /**
+     * Returns a road name of the snapshot.
+     * @param name The index of the name.
+     * @return The road name.
+     */
+    private String getName(int name) {
+        long position = namePositions[name];
+        byte[] bytes = new byte[getInt(position)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = get(position + 4 + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns the speed limit of a segment.
+     * @param segment The index of a segment.
+     * @return The speed limit in km/h.
+     */
+    public int getSpeedLimit(int segment) {
+        return getInt(segmentsStart + (long) segment * SEGMENT_SIZE + 12);
+    }
+
+    /**
+     * Returns the lowest underpass clearance of a segment.
+     * @param segment The index of a segment.
+     * @return The clearance height, Double.MAX_VALUE if there is none.
+     */
+    public double getMinClearanceHeight(int segment) {
+        return getDouble(segmentsStart + (long) segment * SEGMENT_SIZE + 16);
+    }
+
+    /**
+     * Returns the index of the first neighbor entry of a segment.
+     * @param segment The index of a segment.
+     * @return The first edge index.
+     */
+    public int firstEdge(int segment) {
+        return getInt(offsetsStart + (long) segment * 4);
+    }
+
+    /**
+     * Returns one past the index of the last neighbor entry of a segment.
+     * @param segment The index of a segment.
+     * @return The end (exclusive) edge index.
+     */
+    public int endEdge(int segment) {
+        return getInt(offsetsStart + (segment + 1L) * 4);
+    }
+
+    /**
+     * Returns the segment a neighbor entry refers to.
+     * @param edge An edge index.
+     * @return The index of the neighboring segment.
+     */
+    public int getTarget(int edge) {
+        return getInt(targetsStart + (long) edge * 4);
+    }
+
+    /**
+     * Create the RoadSegment of one segment, with its speed limit and
+     * clearance set. Its neighbors are not set; Transformer.transform() sets
+     * them, as it does for parsed roads.
+     * @param segment The index of a segment.
+     * @return The road.
+     */
+    public RoadSegment getRoad(int segment) {
+        return getRoad(segment, getRoadName(segment));
+    }
+
+    /**
+     * Create the RoadSegment of one segment, with its speed limit and
+     * clearance set.
+     * @param segment The index of a segment.
+     * @param name The name of its road.
+     * @return The road.
+     */
+    private RoadSegment getRoad(int segment, String name) {
+        RoadSegment road = new RoadSegment(new Segment2D(getNode(getStartNode(segment)),
+                getNode(getEndNode(segment))), name);
+        road.setSpeedLimit(getSpeedLimit(segment));
+        road.addClearanceHeight(getMinClearanceHeight(segment));
+        return road;
+    }
+
+    /**
+     * Returns the roads of the snapshot, read lazily: each RoadSegment is
+     * created from the file as the iterator reaches it, and nothing is kept,
+     * so the snapshot can be scanned or filtered without holding all of its
+     * roads. Their neighbors are not set. Looking a road up in the set reads
+     * every segment.
+     * @return An unmodifiable view of the roads.
+     */
+    public Set<RoadSegment> roads() {
+        final String[] names = new String[namePositions.length];
+        return new AbstractSet<RoadSegment>() {
+
+            @Override
+            public Iterator<RoadSegment> iterator() {
+                return new Iterator<RoadSegment>() {
+
+                    /** The index of the next segment */
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < numSegments;
+                    }
+
+                    @Override
+                    public RoadSegment next() {
+                        if (next >= numSegments) {
+                            throw new NoSuchElementException();
+                        }
+                        int name = getInt(segmentsStart + (long) next * SEGMENT_SIZE + 8);
+                        if (names[name] == null) {
+                            names[name] = getName(name);
+                        }
+                        return getRoad(next++, names[name]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return numSegments;
+            }
+        };
+    }
+
+    /**
+     * Create a RoadSegment for every segment in the snapshot, with its speed
+     * limit and clearance set. Their neighbors are not set;
+     * Transformer.transform() sets them, as it does for parsed roads.
+     * @return The roads of the snapshot.
+     */
+    public Set<RoadSegment> extractRoads() {
+        return new HashSet<RoadSegment>(roads());
+    }
+}
@@ -0,0 +1,53 @@
+package org.rowan.pathfinder.pathfinder;
+
+import org.rowan.linalgtoolkit.Vector2D;
+
+/**
+ * Class <code>GreatCircleHeuristic</code> estimates the remaining cost of a
+ * route as the great circle distance to the destination multiplied by the
+ * lowest cost per kilometer of any Traversable in the network. Every
+ * Traversable costs at least that much per kilometer of its own length, and
+ * a route can never be shorter than the great circle distance between its
+ * ends, so the estimate is both admissible and consistent.
+ *
+ * The costs made by the Transformer are normalized values, not lengths, and
+ * the cheapest Traversable per kilometer is usually a long road with nothing
+ * on it, so the estimate is a small fraction of the real remaining cost and
+ * A* directed by it settles nearly as many nodes as Djikstra's algorithm.
+ * <code>Landmarks</code> give much closer bounds where they are available.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class GreatCircleHeuristic implements Heuristic {
+
+    /** Shrinks every estimate slightly so rounding can't overestimate */
+    private static final double ROUNDING_MARGIN = 1 - 1e-9;
+    /** The point every route should end at */
+    private Vector2D destination;
+    /** The lowest cost per kilometer in the network */
+    private double costPerKm;
+
+    /**
+     * Create a new heuristic for routes ending at the given Traversable.
+     * @param destination The last Traversable of every route.
+     * @param costPerKm The lowest cost per kilometer of any Traversable,
+     *                  see Transformer.getMinCostPerKm().
+     */
+    public GreatCircleHeuristic(Traversable destination, double costPerKm) {
+        this.destination = Logic2D.getEnd(destination.getSegment());
+        this.costPerKm = Math.max(costPerKm, 0) * ROUNDING_MARGIN;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double estimate(Traversable t) {
+        if (costPerKm == 0) {
+            return 0;
+        }
+        Vector2D from = Logic2D.getEnd(t.getSegment());
+        return costPerKm * Logic2D.greatCircleDistance(from, destination);
+    }
+}
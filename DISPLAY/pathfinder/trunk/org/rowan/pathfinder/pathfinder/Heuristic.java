@@ -0,0 +1,23 @@
+package org.rowan.pathfinder.pathfinder;
+
+/**
+ * Interface <code>Heuristic</code> estimates the cost of the cheapest route
+ * from a <code>Traversable</code> to the destination of a search. Searches
+ * that use a heuristic are only guaranteed to find the cheapest route if the
+ * estimate never exceeds the real cost (it is admissible), and they only
+ * settle each node once if, for every neighbor n of t, the estimate of t is
+ * at most the cost of n plus the estimate of n (it is consistent).
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public interface Heuristic {
+
+    /**
+     * Returns a lower bound on the cost of reaching the destination from the
+     * end of the given Traversable.
+     * @param t A Traversable in the graph being searched.
+     * @return The estimated remaining cost, never negative.
+     */
+    public double estimate(Traversable t);
+}
@@ -0,0 +1,308 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class <code>HierarchySearch</code> answers route queries on a customized
+ * <code>ContractionHierarchy</code>. Both the forward search from the start
+ * and the backward search from the destination only ever move up the
+ * hierarchy, and every node they can reach is an ancestor in the elimination
+ * tree, so instead of a priority queue each search simply walks up the tree
+ * relaxing the arcs of every ancestor in rank order. The cheapest route is
+ * the best node reached by both searches.
+ *
+ * The start and end Traversables do not have to be part of the hierarchy:
+ * if they aren't, the search starts from their neighbors (and ends at their
+ * reverse neighbors) instead. Costs follow the same rules as
+ * <code>DijkstraSearch</code>.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class HierarchySearch {
+
+    /** The hierarchy being searched */
+    private ContractionHierarchy hierarchy;
+    /** The best known distance from the start to each node */
+    private double[] forwardDistance;
+    /** The best known distance from each node to the destination */
+    private double[] backwardDistance;
+    /** The arc each node was reached by going forward, or -1 */
+    private int[] forwardArc;
+    /** The arc each node was reached by going backward, or -1 */
+    private int[] backwardArc;
+    /** The node each node was reached from going forward, or -1 */
+    private int[] predecessor;
+    /** The node each node was reached from going backward, or -1 */
+    private int[] successor;
+    /** The ranks visited by the forward search of the last query */
+    private int[] forwardVisited = new int[64];
+    /** The number of ranks visited by the forward search */
+    private int numForwardVisited;
+    /** The ranks visited by the backward search of the last query */
+    private int[] backwardVisited = new int[64];
+    /** The number of ranks visited by the backward search */
+    private int numBackwardVisited;
+    /** The start of the last query */
+    private Traversable start;
+    /** The destination of the last query */
+    private Traversable end;
+    /** The cost of the cheapest route found by the last query */
+    private double bestDistance;
+    /** The rank where the cheapest route was found, -1 if it goes straight
+     * from start to end, or -2 if there is none */
+    private int meetingNode = -2;
+
+    /**
+     * Create a new search over the given hierarchy.
+     * @param hierarchy A hierarchy that has been customized.
+     */
+    public HierarchySearch(ContractionHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+        int n = hierarchy.size();
+        forwardDistance = new double[n];
+        backwardDistance = new double[n];
+        forwardArc = new int[n];
+        backwardArc = new int[n];
+        predecessor = new int[n];
+        successor = new int[n];
+        Arrays.fill(forwardDistance, ContractionHierarchy.NO_ARC);
+        Arrays.fill(backwardDistance, ContractionHierarchy.NO_ARC);
+        Arrays.fill(predecessor, -1);
+        Arrays.fill(successor, -1);
+    }
+
+    /**
+     * Returns the hierarchy this search runs on.
+     * @return The hierarchy.
+     */
+    public ContractionHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Find the cheapest route from start to end.
+     * @param start The Traversable to start from.
+     * @param end The Traversable to end at.
+     * @return True if end can be reached from start, false otherwise.
+     */
+    public boolean run(Traversable start, Traversable end) {
+        reset();
+        this.start = start;
+        this.end = end;
+        if (start == end) {
+            return false;
+        }
+
+        int source = hierarchy.getRank(start);
+        if (source >= 0) {
+            reachForward(source, 0, -1, -1);
+        } else {
+            for (Traversable neighbor : start.getNeighbors()) {
+                int rank = hierarchy.getRank(neighbor);
+                if (rank >= 0 && neighbor.getCost() >= 0) {
+                    reachForward(rank, neighbor.getCost(), -1, -1);
+                } else if (neighbor == end && end.getCost() >= 0) {
+                    bestDistance = end.getCost();
+                    meetingNode = -1;
+                }
+            }
+        }
+
+        int target = hierarchy.getRank(end);
+        if (target >= 0) {
+            reachBackward(target, 0, -1, -1);
+        } else if (end.getCost() >= 0) {
+            for (Traversable neighbor : end.getReverseNeighbors()) {
+                int rank = hierarchy.getRank(neighbor);
+                if (rank >= 0) {
+                    reachBackward(rank, end.getCost(), -1, -1);
+                }
+            }
+        }
+
+        int numForward = collectAncestors(forwardVisited, numForwardVisited, true);
+        for (int i = 0; i < numForward; i++) {
+            int node = forwardVisited[i];
+            if (forwardDistance[node] == ContractionHierarchy.NO_ARC) {
+                continue;
+            }
+            for (int a = hierarchy.firstArc(node); a < hierarchy.endArc(node); a++) {
+                reachForward(hierarchy.getHead(a),
+                        forwardDistance[node] + hierarchy.getUpWeight(a), a, node);
+            }
+        }
+        int numBackward = collectAncestors(backwardVisited, numBackwardVisited, false);
+        for (int i = 0; i < numBackward; i++) {
+            int node = backwardVisited[i];
+            if (backwardDistance[node] == ContractionHierarchy.NO_ARC) {
+                continue;
+            }
+            for (int a = hierarchy.firstArc(node); a < hierarchy.endArc(node); a++) {
+                reachBackward(hierarchy.getHead(a),
+                        backwardDistance[node] + hierarchy.getDownWeight(a), a, node);
+            }
+            double distance = forwardDistance[node] + backwardDistance[node];
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                meetingNode = node;
+            }
+        }
+        return meetingNode != -2;
+    }
+
+    /**
+     * Lower the forward distance of a node.
+     * @param node The rank of the node.
+     * @param distance The cost of reaching it.
+     * @param arc The arc it was reached by, or -1.
+     * @param from The node it was reached from, or -1.
+     */
+    private void reachForward(int node, double distance, int arc, int from) {
+        if (distance < forwardDistance[node]) {
+            forwardDistance[node] = distance;
+            forwardArc[node] = arc;
+            predecessor[node] = from;
+            if (from < 0) {
+                forwardVisited = append(forwardVisited, numForwardVisited++, node);
+            }
+        }
+    }
+
+    /**
+     * Lower the backward distance of a node.
+     * @param node The rank of the node.
+     * @param distance The cost of reaching the destination from it.
+     * @param arc The arc it reaches the destination by, or -1.
+     * @param to The node it reaches the destination through, or -1.
+     */
+    private void reachBackward(int node, double distance, int arc, int to) {
+        if (distance < backwardDistance[node]) {
+            backwardDistance[node] = distance;
+            backwardArc[node] = arc;
+            successor[node] = to;
+            if (to < 0) {
+                backwardVisited = append(backwardVisited, numBackwardVisited++, node);
+            }
+        }
+    }
+
+    /**
+     * Replace the given starting nodes with every node on their paths to the
+     * root of the elimination tree, in ascending rank order. The distances of
+     * the added nodes are still unknown.
+     * @param visited The starting nodes, then all their ancestors.
+     * @param count The number of starting nodes.
+     * @param forward True for the forward search, false for the backward one.
+     * @return The number of nodes in the visited array.
+     */
+    private int collectAncestors(int[] visited, int count, boolean forward) {
+        double[] distance = forward ? forwardDistance : backwardDistance;
+        int[] from = forward ? predecessor : successor;
+        int total = count;
+        for (int i = 0; i < count; i++) {
+            for (int node = hierarchy.getParent(visited[i]); node >= 0;
+                    node = hierarchy.getParent(node)) {
+                // a node already reached or marked is on the path of an
+                // earlier start, and so is everything above it
+                if (distance[node] != ContractionHierarchy.NO_ARC || from[node] == -2) {
+                    break;
+                }
+                from[node] = -2;
+                visited = append(visited, total++, node);
+            }
+        }
+        if (forward) {
+            forwardVisited = visited;
+            numForwardVisited = total;
+        } else {
+            backwardVisited = visited;
+            numBackwardVisited = total;
+        }
+        Arrays.sort(visited, 0, total);
+        return total;
+    }
+
+    /**
+     * Store a value in an array, growing the array if needed.
+     * @param array The array.
+     * @param index The index to store at.
+     * @param value The value to store.
+     * @return The array, or a larger copy of it.
+     */
+    private static int[] append(int[] array, int index, int value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+        array[index] = value;
+        return array;
+    }
+
+    /**
+     * Returns the cost of the cheapest route found by the last query, or
+     * Double.MAX_VALUE if the destination was not reached.
+     * @return The cost of the route.
+     */
+    public double getDistance() {
+        return meetingNode == -2 ? Double.MAX_VALUE : bestDistance;
+    }
+
+    /**
+     * Build the cheapest route found by the last query, unpacking every
+     * shortcut on it.
+     * @return The Traversables from start to end, or null if end was not
+     *         reached.
+     */
+    public List<Traversable> getRoute() {
+        if (meetingNode == -2) {
+            return null;
+        }
+        List<Traversable> route = new ArrayList<Traversable>();
+        route.add(start);
+        if (meetingNode >= 0) {
+            List<Integer> arcs = new ArrayList<Integer>();
+            int first = meetingNode;
+            for (; forwardArc[first] >= 0; first = predecessor[first]) {
+                arcs.add(forwardArc[first]);
+            }
+            if (first != hierarchy.getRank(start)) {
+                route.add(hierarchy.getTraversable(first));
+            }
+            Collections.reverse(arcs);
+            for (int arc : arcs) {
+                hierarchy.unpack(arc, true, route);
+            }
+            for (int node = meetingNode; backwardArc[node] >= 0; node = successor[node]) {
+                hierarchy.unpack(backwardArc[node], false, route);
+            }
+        }
+        if (route.get(route.size() - 1) != end) {
+            route.add(end);
+        }
+        return route;
+    }
+
+    /**
+     * Clear the state of the previous query. Only the nodes it visited are
+     * touched.
+     */
+    private void reset() {
+        for (int i = 0; i < numForwardVisited; i++) {
+            int node = forwardVisited[i];
+            forwardDistance[node] = ContractionHierarchy.NO_ARC;
+            predecessor[node] = -1;
+        }
+        for (int i = 0; i < numBackwardVisited; i++) {
+            int node = backwardVisited[i];
+            backwardDistance[node] = ContractionHierarchy.NO_ARC;
+            successor[node] = -1;
+        }
+        numForwardVisited = 0;
+        numBackwardVisited = 0;
+        bestDistance = ContractionHierarchy.NO_ARC;
+        meetingNode = -2;
+    }
+}
@@ -0,0 +1,248 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Class <code>IndexedMinHeap</code> is a binary min-heap of dense integer ids
+ * ordered by a double key, with ties broken by an optional second double
+ * key. Every id can be located in the heap in constant
+ * time, which allows the key of an id already in the heap to be decreased
+ * (or removed) in O(log n) instead of searching the entire heap.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class IndexedMinHeap {
+
+    /** Heap position to id */
+    private int[] heap;
+    /** Id to heap position, or -1 if the id is not in the heap */
+    private int[] position;
+    /** Id to key */
+    private double[] keys;
+    /** Id to the key that orders ids with equal keys */
+    private double[] tieBreaks;
+    /** The number of ids currently in the heap */
+    private int size = 0;
+
+    /**
+     * Create a new heap that can hold ids in the range [0, capacity) without
+     * resizing. Larger ids are accepted, the heap will grow as needed.
+     * @param capacity The initial id capacity of the heap.
+     */
+    public IndexedMinHeap(int capacity) {
+        capacity = Math.max(capacity, 16);
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new double[capacity];
+        tieBreaks = new double[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    /**
+     * Returns the number of ids currently in the heap.
+     * @return The size of the heap.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether or not the heap is empty.
+     * @return True if there are no ids in the heap, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns whether or not the given id is currently in the heap.
+     * @param id The id to look for.
+     * @return True if the id is in the heap, false otherwise.
+     */
+    public boolean contains(int id) {
+        return id < position.length && position[id] >= 0;
+    }
+
+    /**
+     * Returns the key of an id currently in the heap.
+     * @param id An id that is in the heap.
+     * @return The key the id is ordered by.
+     */
+    public double getKey(int id) {
+        return keys[id];
+    }
+
+    /**
+     * Returns the tie-breaking key of an id currently in the heap.
+     * @param id An id that is in the heap.
+     * @return The key that orders the id among ids with an equal key.
+     */
+    public double getTieBreak(int id) {
+        return tieBreaks[id];
+    }
+
+    /**
+     * Insert an id into the heap, or change its key if it is already present.
+     * @param id The id to insert or update.
+     * @param key The new key of the id.
+     */
+    public void insertOrUpdate(int id, double key) {
+        insertOrUpdate(id, key, 0);
+    }
+
+    /**
+     * Insert an id into the heap, or change its keys if it is already
+     * present. Ids are ordered by key, and ids with equal keys by tieBreak.
+     * @param id The id to insert or update.
+     * @param key The new key of the id.
+     * @param tieBreak The new tie-breaking key of the id.
+     */
+    public void insertOrUpdate(int id, double key, double tieBreak) {
+        ensureCapacity(id + 1);
+        if (position[id] < 0) {
+            heap[size] = id;
+            position[id] = size;
+            keys[id] = key;
+            tieBreaks[id] = tieBreak;
+            siftUp(size++);
+        } else if (key < keys[id] || (key == keys[id] && tieBreak < tieBreaks[id])) {
+            keys[id] = key;
+            tieBreaks[id] = tieBreak;
+            siftUp(position[id]);
+        } else {
+            keys[id] = key;
+            tieBreaks[id] = tieBreak;
+            siftDown(position[id]);
+        }
+    }
+
+    /**
+     * Returns the id with the smallest key without removing it.
+     * @return The id at the top of the heap.
+     */
+    public int peek() {
+        return heap[0];
+    }
+
+    /**
+     * Returns the smallest key in the heap.
+     * @return The key of the id at the top of the heap.
+     */
+    public double peekKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * Returns the tie-breaking key of the id at the top of the heap.
+     * @return The tie-breaking key of the id at the top of the heap.
+     */
+    public double peekTieBreak() {
+        return tieBreaks[heap[0]];
+    }
+
+    /**
+     * Remove and return the id with the smallest key.
+     * @return The id that was at the top of the heap.
+     */
+    public int poll() {
+        int top = heap[0];
+        remove(top);
+        return top;
+    }
+
+    /**
+     * Remove an id from the heap. Nothing happens if it is not present.
+     * @param id The id to remove.
+     */
+    public void remove(int id) {
+        if (!contains(id)) {
+            return;
+        }
+        int pos = position[id];
+        int last = heap[--size];
+        position[id] = -1;
+        if (pos == size) {
+            return;
+        }
+        heap[pos] = last;
+        position[last] = pos;
+        siftUp(pos);
+        siftDown(position[last]);
+    }
+
+    /**
+     * Remove every id from the heap. Runs in time proportional to the
+     * number of ids in the heap, not its capacity.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Grow the heap so it can hold every id below the given capacity.
+     * @param capacity The number of ids the heap must be able to hold.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= position.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, position.length * 2);
+        int oldCapacity = position.length;
+        heap = Arrays.copyOf(heap, newCapacity);
+        keys = Arrays.copyOf(keys, newCapacity);
+        tieBreaks = Arrays.copyOf(tieBreaks, newCapacity);
+        position = Arrays.copyOf(position, newCapacity);
+        Arrays.fill(position, oldCapacity, newCapacity, -1);
+    }
+
+    /**
+     * Returns whether one id is ordered before another.
+     * @param a An id in the heap.
+     * @param b Another id in the heap.
+     * @return True if a has a smaller key, or an equal key and a smaller
+     *         tie-breaking key, than b.
+     */
+    private boolean less(int a, int b) {
+        return keys[a] < keys[b] || (keys[a] == keys[b] && tieBreaks[a] < tieBreaks[b]);
+    }
+
+    private void siftUp(int pos) {
+        int id = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            int parentId = heap[parent];
+            if (!less(id, parentId)) {
+                break;
+            }
+            heap[pos] = parentId;
+            position[parentId] = pos;
+            pos = parent;
+        }
+        heap[pos] = id;
+        position[id] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int id = heap[pos];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && less(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!less(heap[child], id)) {
+                break;
+            }
+            heap[pos] = heap[child];
+            position[heap[pos]] = pos;
+            pos = child;
+        }
+        heap[pos] = id;
+        position[id] = pos;
+    }
+}
@@ -0,0 +1,570 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import org.rowan.linalgtoolkit.Vector2D;
+
+/**
+ * Class <code>IntersectionSweep</code> finds the points where a set of
+ * <code>Traversable</code>s cross or touch each other, so that they can be
+ * split into pieces that meet only at their ends. Two RoadSegments are never
+ * tested against each other, since roads only meet where the road data says
+ * they do.
+ *
+ * A line is swept across the segments from west to east. A segment is active
+ * while the line is within its bounding box, and the y extents of the active
+ * segments are kept in an interval tree, so when a segment becomes active only
+ * the segments whose bounding boxes overlap its own are found, without looking
+ * at the rest. Each of those pairs is then tested exactly: the orientation of
+ * every endpoint against the other segment is computed in floating point when
+ * the result is certain and in exact arithmetic when it is not, so touching
+ * and collinear segments are recognized without any tolerance.
+ *
+ * The result does not depend on the order of the input: the point where two
+ * segments cross is always computed the same way, and it is the same
+ * <code>Vector2D</code> for both of them, so the pieces on either side share
+ * their ends exactly.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class IntersectionSweep {
+
+    /** The relative error bound of the floating point orientation test */
+    private static final double ORIENTATION_ERROR = 3.3306690738754716e-16;
+    /** The number of strips each thread gets when sweeping in parallel */
+    private static final int STRIPS_PER_THREAD = 4;
+    /** The smallest number of segments worth a strip of its own */
+    private static final int MIN_STRIP_SIZE = 4096;
+    /** Orders split points from the start of their segment to its end */
+    private static final Comparator<TraversableAndPOI> ALONG_SEGMENT = new Comparator<TraversableAndPOI>() {
+
+        @Override
+        public int compare(TraversableAndPOI a, TraversableAndPOI b) {
+            int cmp = a.compareTo(b);
+            if (cmp == 0) {
+                cmp = Double.compare(a.POI.getX(), b.POI.getX());
+            }
+            return cmp != 0 ? cmp : Double.compare(a.POI.getY(), b.POI.getY());
+        }
+    };
+    /** The segments being intersected */
+    private List<? extends Traversable> segments;
+    /** The start and end of each segment: startX, startY, endX, endY */
+    private double[] ends;
+    /** The bounding box of each segment */
+    private double[] minX, minY, maxX, maxY;
+    /** The indices of the segments, ordered by the west side of their boxes */
+    private Integer[] byMinX;
+
+    /**
+     * Create a new sweep over a list of segments.
+     * @param segments The segments.
+     */
+    private IntersectionSweep(List<? extends Traversable> segments) {
+        this.segments = segments;
+        int n = segments.size();
+        ends = new double[4 * n];
+        minX = new double[n];
+        minY = new double[n];
+        maxX = new double[n];
+        maxY = new double[n];
+        byMinX = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            Vector2D start = Logic2D.getStart(segments.get(i).getSegment());
+            Vector2D end = Logic2D.getEnd(segments.get(i).getSegment());
+            ends[4 * i] = start.getX();
+            ends[4 * i + 1] = start.getY();
+            ends[4 * i + 2] = end.getX();
+            ends[4 * i + 3] = end.getY();
+            minX[i] = Math.min(start.getX(), end.getX());
+            maxX[i] = Math.max(start.getX(), end.getX());
+            minY[i] = Math.min(start.getY(), end.getY());
+            maxY[i] = Math.max(start.getY(), end.getY());
+            byMinX[i] = i;
+        }
+        Arrays.sort(byMinX, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(minX[a], minX[b]);
+            }
+        });
+    }
+
+    /**
+     * Find the points at which each segment must be split, on the calling
+     * thread.
+     * @param segments The segments to intersect.
+     * @return The split points of each segment, as described by
+     *         findSplitPoints(List, ForkJoinPool).
+     */
+    public static List<List<TraversableAndPOI>> findSplitPoints(List<? extends Traversable> segments) {
+        return findSplitPoints(segments, null);
+    }
+
+    /**
+     * Find the points at which each segment must be split: every point where
+     * another segment crosses it, and every end of another segment that lies
+     * inside it. A segment is never split at its own ends, and a RoadSegment
+     * is never split because of another RoadSegment.
+     *
+     * With a pool, the plane is cut into vertical strips holding the same
+     * number of segments, and each strip is swept on its own. A pair of
+     * segments is only tested in the strip where the later of them starts, so
+     * the strips find exactly the points a single sweep would.
+     * @param segments The segments to intersect.
+     * @param pool The pool to sweep on, or null to sweep on the calling thread.
+     * @return For each segment, in the same order, the points at which it must
+     *         be split sorted from its start to its end, together with the
+     *         Traversable that caused each. The list is empty if the segment
+     *         does not have to be split.
+     */
+    public static List<List<TraversableAndPOI>> findSplitPoints(List<? extends Traversable> segments,
+            ForkJoinPool pool) {
+        final IntersectionSweep sweep = new IntersectionSweep(segments);
+        final int n = segments.size();
+        int strips = 1;
+        if (pool != null) {
+            strips = Math.max(1, Math.min(pool.getParallelism() * STRIPS_PER_THREAD, n / MIN_STRIP_SIZE));
+        }
+        final int stripCount = strips;
+        final Found[] found = new Found[strips];
+        ParallelLoop.run(pool, strips, 1, new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int strip = from; strip < to; strip++) {
+                    found[strip] = sweep.sweep((int) ((long) strip * n / stripCount),
+                            (int) ((long) (strip + 1) * n / stripCount));
+                }
+            }
+        });
+
+        List<List<TraversableAndPOI>> empty = Collections.nCopies(n, null);
+        final List<List<TraversableAndPOI>> points = new ArrayList<List<TraversableAndPOI>>(empty);
+        for (Found f : found) {
+            for (int k = 0; k < f.segments.size(); k++) {
+                int i = f.segments.get(k);
+                if (points.get(i) == null) {
+                    points.set(i, new ArrayList<TraversableAndPOI>(2));
+                }
+                points.get(i).add(f.points.get(k));
+            }
+        }
+
+        // every range only sets its own elements, which never resizes the list
+        ParallelLoop.run(pool, n, new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    points.set(i, distinctPoints(points.get(i)));
+                }
+            }
+        });
+        return points;
+    }
+
+    /**
+     * Sort the split points of a segment and drop the ones found more than
+     * once, which happens when several segments meet at the same point.
+     * @param found The split points found, or null.
+     * @return The distinct split points from the start of the segment to
+     *         its end.
+     */
+    private static List<TraversableAndPOI> distinctPoints(List<TraversableAndPOI> found) {
+        if (found == null) {
+            return Collections.<TraversableAndPOI>emptyList();
+        }
+        Collections.sort(found, ALONG_SEGMENT);
+        List<TraversableAndPOI> distinct = new ArrayList<TraversableAndPOI>(found.size());
+        for (TraversableAndPOI poi : found) {
+            if (distinct.isEmpty() || !distinct.get(distinct.size() - 1).POI.equals(poi.POI)) {
+                distinct.add(poi);
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Sweep a vertical line across one strip of the segments, testing every
+     * pair whose bounding boxes overlap and of which the later one starts in
+     * the strip.
+     * @param first The position in byMinX of the first segment of the strip.
+     * @param end The position in byMinX one past the last segment of the strip.
+     * @return The split points found.
+     */
+    private Found sweep(int first, int end) {
+        Found found = new Found();
+        if (first >= end) {
+            return found;
+        }
+        // segments that start before the strip but reach into it are active
+        // when the sweep enters it
+        final List<Integer> members = new ArrayList<Integer>();
+        double stripX = minX[byMinX[first]];
+        for (int r = 0; r < first; r++) {
+            if (maxX[byMinX[r]] >= stripX) {
+                members.add(byMinX[r]);
+            }
+        }
+        int entering = members.size();
+        members.addAll(Arrays.asList(byMinX).subList(first, end));
+
+        Integer[] byMaxX = members.toArray(new Integer[members.size()]);
+        Arrays.sort(byMaxX, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(maxX[a], maxX[b]);
+            }
+        });
+        double[] keys = new double[members.size()];
+        for (int k = 0; k < keys.length; k++) {
+            keys[k] = minY[members.get(k)];
+        }
+        Arrays.sort(keys);
+        IntervalTree roads = new IntervalTree(keys, minY, maxY);
+        IntervalTree others = new IntervalTree(keys, minY, maxY);
+        for (int k = 0; k < entering; k++) {
+            int i = members.get(k);
+            (isRoad(i) ? roads : others).insert(i);
+        }
+        List<Integer> candidates = new ArrayList<Integer>();
+
+        // a segment becomes active before any segment ending at the same x
+        // stops being active, so boxes that only touch are tested as well
+        int removed = 0;
+        for (int r = first; r < end; r++) {
+            int i = byMinX[r];
+            while (maxX[byMaxX[removed]] < minX[i]) {
+                int j = byMaxX[removed++];
+                (isRoad(j) ? roads : others).remove(j);
+            }
+            candidates.clear();
+            if (!isRoad(i)) {
+                roads.query(minY[i], maxY[i], candidates);
+            }
+            others.query(minY[i], maxY[i], candidates);
+            for (int j : candidates) {
+                intersect(i, j, found);
+            }
+            (isRoad(i) ? roads : others).insert(i);
+        }
+        return found;
+    }
+
+    /**
+     * Returns whether a segment is a RoadSegment.
+     * @param i The index of the segment.
+     * @return True if the segment is a road.
+     */
+    private boolean isRoad(int i) {
+        return segments.get(i) instanceof RoadSegment;
+    }
+
+    /**
+     * Test two segments exactly and record where they must be split.
+     * @param i The index of one segment.
+     * @param j The index of the other segment.
+     * @param found The split points found so far.
+     */
+    private void intersect(int i, int j, Found found) {
+        // always test in the same order so the same point is computed no
+        // matter which segment was swept first
+        if (compareSegments(i, j) > 0) {
+            int swap = i;
+            i = j;
+            j = swap;
+        }
+        double ax = ends[4 * i], ay = ends[4 * i + 1], bx = ends[4 * i + 2], by = ends[4 * i + 3];
+        double cx = ends[4 * j], cy = ends[4 * j + 1], dx = ends[4 * j + 2], dy = ends[4 * j + 3];
+        int oa = orientation(cx, cy, dx, dy, ax, ay);
+        int ob = orientation(cx, cy, dx, dy, bx, by);
+        int oc = orientation(ax, ay, bx, by, cx, cy);
+        int od = orientation(ax, ay, bx, by, dx, dy);
+
+        if (oa * ob < 0 && oc * od < 0) {
+            // a proper crossing, inside both segments
+            double denominator = (bx - ax) * (dy - cy) - (by - ay) * (dx - cx);
+            double t = ((cx - ax) * (dy - cy) - (cy - ay) * (dx - cx)) / denominator;
+            Vector2D poi = new Vector2D(ax + t * (bx - ax), ay + t * (by - ay));
+            addPoint(i, j, poi, found);
+            addPoint(j, i, poi, found);
+            return;
+        }
+        // the end of one segment touching the inside of the other
+        if (oa == 0 && isInside(ax, ay, j)) {
+            addPoint(j, i, Logic2D.getStart(segments.get(i).getSegment()), found);
+        }
+        if (ob == 0 && isInside(bx, by, j)) {
+            addPoint(j, i, Logic2D.getEnd(segments.get(i).getSegment()), found);
+        }
+        if (oc == 0 && isInside(cx, cy, i)) {
+            addPoint(i, j, Logic2D.getStart(segments.get(j).getSegment()), found);
+        }
+        if (od == 0 && isInside(dx, dy, i)) {
+            addPoint(i, j, Logic2D.getEnd(segments.get(j).getSegment()), found);
+        }
+    }
+
+    /**
+     * Returns whether a point on the line through a segment lies strictly
+     * between the segment's ends.
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param i The index of the segment.
+     * @return True if the point is inside the segment and is neither of its ends.
+     */
+    private boolean isInside(double x, double y, int i) {
+        double sx = ends[4 * i], sy = ends[4 * i + 1], ex = ends[4 * i + 2], ey = ends[4 * i + 3];
+        if ((x == sx && y == sy) || (x == ex && y == ey)) {
+            return false;
+        }
+        return x >= minX[i] && x <= maxX[i] && y >= minY[i] && y <= maxY[i];
+    }
+
+    /**
+     * Record a point at which a segment must be split.
+     * @param i The index of the segment to split.
+     * @param other The index of the segment that caused the split.
+     * @param poi The point.
+     * @param found The split points found so far.
+     */
+    private void addPoint(int i, int other, Vector2D poi, Found found) {
+        found.segments.add(i);
+        found.points.add(new TraversableAndPOI(segments.get(other), poi,
+                new Vector2D(ends[4 * i], ends[4 * i + 1])));
+    }
+
+    /**
+     * Order two segments by their coordinates, so that the order does not
+     * depend on where they are in the input.
+     * @param i The index of one segment.
+     * @param j The index of the other segment.
+     * @return A negative number, zero or a positive number as the first
+     *         segment comes before, at the same place as or after the second.
+     */
+    private int compareSegments(int i, int j) {
+        for (int k = 0; k < 4; k++) {
+            int cmp = Double.compare(ends[4 * i + k], ends[4 * j + k]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns which side of the directed line from a to b the point c is on.
+     * The floating point result is used when its error can't change the sign,
+     * and the exact result otherwise.
+     * @return 1 if c is to the left, -1 if it is to the right, 0 if the three
+     *         points are collinear.
+     */
+    static int orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        double left = (bx - ax) * (cy - ay);
+        double right = (by - ay) * (cx - ax);
+        double det = left - right;
+        double bound = ORIENTATION_ERROR * (Math.abs(left) + Math.abs(right));
+        if (det > bound) {
+            return 1;
+        } else if (-det > bound) {
+            return -1;
+        }
+        BigDecimal exactLeft = exact(bx, ax).multiply(exact(cy, ay));
+        BigDecimal exactRight = exact(by, ay).multiply(exact(cx, ax));
+        return exactLeft.compareTo(exactRight);
+    }
+
+    /**
+     * Returns the exact difference of two doubles.
+     * @param a The first value.
+     * @param b The value to subtract.
+     * @return a - b without rounding.
+     */
+    private static BigDecimal exact(double a, double b) {
+        return new BigDecimal(a).subtract(new BigDecimal(b));
+    }
+
+    /**
+     * The split points found by the sweep of one strip.
+     */
+    private static class Found {
+
+        /** The index of the segment each point splits */
+        private List<Integer> segments = new ArrayList<Integer>();
+        /** The points */
+        private List<TraversableAndPOI> points = new ArrayList<TraversableAndPOI>();
+    }
+
+    /**
+     * An interval tree over the y extents of the active segments. Its shape
+     * is fixed by the sorted lower ends of all segments: each node has one of
+     * them as its key and holds the intervals that contain its key but not
+     * the key of any node above it. The intervals at a node are kept sorted
+     * by both ends, so a query only looks at the intervals it reports.
+     */
+    private static class IntervalTree {
+
+        /** The sorted keys; the node for a range of keys is its middle */
+        private double[] keys;
+        /** The lower end of each interval */
+        private double[] low;
+        /** The upper end of each interval */
+        private double[] high;
+        /** The intervals at each node, by their lower ends */
+        private List<TreeSet<Integer>> byLow;
+        /** The intervals at each node, by their upper ends */
+        private List<TreeSet<Integer>> byHigh;
+        /** The number of intervals at or below each node */
+        private int[] counts;
+        /** Orders intervals by their lower ends */
+        private Comparator<Integer> lowOrder;
+        /** Orders intervals by their upper ends */
+        private Comparator<Integer> highOrder;
+
+        /**
+         * Create a new empty tree.
+         * @param keys The sorted lower ends of every interval that may be added.
+         * @param low The lower end of each interval.
+         * @param high The upper end of each interval.
+         */
+        IntervalTree(double[] keys, final double[] low, final double[] high) {
+            this.keys = keys;
+            this.low = low;
+            this.high = high;
+            List<TreeSet<Integer>> empty = Collections.nCopies(keys.length, null);
+            byLow = new ArrayList<TreeSet<Integer>>(empty);
+            byHigh = new ArrayList<TreeSet<Integer>>(empty);
+            counts = new int[keys.length];
+            lowOrder = new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int cmp = Double.compare(low[a], low[b]);
+                    return cmp != 0 ? cmp : a.compareTo(b);
+                }
+            };
+            highOrder = new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer a, Integer b) {
+                    int cmp = Double.compare(high[a], high[b]);
+                    return cmp != 0 ? cmp : a.compareTo(b);
+                }
+            };
+        }
+
+        /**
+         * Add an interval to the tree.
+         * @param i The index of the interval.
+         */
+        void insert(int i) {
+            int from = 0, to = keys.length;
+            while (from < to) {
+                int node = (from + to) >>> 1;
+                counts[node]++;
+                if (high[i] < keys[node]) {
+                    to = node;
+                } else if (low[i] > keys[node]) {
+                    from = node + 1;
+                } else {
+                    if (byLow.get(node) == null) {
+                        byLow.set(node, new TreeSet<Integer>(lowOrder));
+                        byHigh.set(node, new TreeSet<Integer>(highOrder));
+                    }
+                    byLow.get(node).add(i);
+                    byHigh.get(node).add(i);
+                    return;
+                }
+            }
+            throw new IllegalArgumentException("The lower end of the interval is not a key.");
+        }
+
+        /**
+         * Remove an interval from the tree.
+         * @param i The index of the interval.
+         */
+        void remove(int i) {
+            int from = 0, to = keys.length;
+            while (from < to) {
+                int node = (from + to) >>> 1;
+                counts[node]--;
+                if (high[i] < keys[node]) {
+                    to = node;
+                } else if (low[i] > keys[node]) {
+                    from = node + 1;
+                } else {
+                    byLow.get(node).remove(i);
+                    byHigh.get(node).remove(i);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Find every interval that overlaps [y1, y2].
+         * @param y1 The lower end of the query.
+         * @param y2 The upper end of the query.
+         * @param found The list the intervals are added to.
+         */
+        void query(double y1, double y2, List<Integer> found) {
+            query(0, keys.length, y1, y2, found);
+        }
+
+        /**
+         * Find every interval below a node that overlaps [y1, y2].
+         * @param from The first key below the node.
+         * @param to One past the last key below the node.
+         * @param y1 The lower end of the query.
+         * @param y2 The upper end of the query.
+         * @param found The list the intervals are added to.
+         */
+        private void query(int from, int to, double y1, double y2, List<Integer> found) {
+            while (from < to) {
+                int node = (from + to) >>> 1;
+                if (counts[node] == 0) {
+                    return;
+                }
+                double key = keys[node];
+                if (y2 < key) {
+                    // intervals here contain the key, so they overlap if they start low enough
+                    if (byLow.get(node) != null) {
+                        for (int i : byLow.get(node)) {
+                            if (low[i] > y2) {
+                                break;
+                            }
+                            found.add(i);
+                        }
+                    }
+                    to = node;
+                } else if (y1 > key) {
+                    // intervals here contain the key, so they overlap if they end high enough
+                    if (byHigh.get(node) != null) {
+                        for (int i : byHigh.get(node).descendingSet()) {
+                            if (high[i] < y1) {
+                                break;
+                            }
+                            found.add(i);
+                        }
+                    }
+                    from = node + 1;
+                } else {
+                    if (byLow.get(node) != null) {
+                        found.addAll(byLow.get(node));
+                    }
+                    query(from, node, y1, y2, found);
+                    from = node + 1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.rowan.linalgtoolkit.Vector2D;
+
+/**
+ * Class <code>Landmarks</code> directs A* with the triangle inequality (ALT).
+ * The cost of the cheapest route from every node to and from a few landmarks
+ * is computed once, and the cost from a node v to a destination t is then at
+ * least d(v, L) - d(t, L) and d(L, t) - d(L, v) for every landmark L. Unlike
+ * the great circle distance, these bounds follow the costs themselves, so
+ * they stay close to the real remaining cost however the costs are weighted.
+ *
+ * The distances are computed over a graph of the network alone, and they are
+ * only bounds while no cost in the network is lower than when they were
+ * computed. The start and end of a request, and the pieces of roads split for
+ * them, are not in that graph. The heuristics made by <code>towards()</code>
+ * and <code>from()</code> bound the cost to them by the cost to the nodes of
+ * the network that lead to them, and allow for any route through the pieces
+ * being cheaper than the roads they were cut from.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class Landmarks {
+
+    /** Shrinks every bound, relative to its distances, so the float distances can't overestimate */
+    private static final double ROUNDING_MARGIN = 1e-6;
+    /** The graph of the network the distances were computed over */
+    private CompactGraph graph;
+    /** The number of landmarks */
+    private int count;
+    /** The cost from each node to each landmark, count values per node */
+    private float[] toLandmark;
+    /** The cost from each landmark to each node, count values per node */
+    private float[] fromLandmark;
+
+    /**
+     * Create landmarks with no distances computed yet.
+     * @param graph The graph of the network.
+     * @param count The number of landmarks.
+     */
+    private Landmarks(CompactGraph graph, int count) {
+        this.graph = graph;
+        this.count = count;
+        toLandmark = new float[graph.size() * count];
+        fromLandmark = new float[graph.size() * count];
+        Arrays.fill(toLandmark, Float.POSITIVE_INFINITY);
+        Arrays.fill(fromLandmark, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Choose landmarks on the edge of a network and compute the cost of the
+     * cheapest route between them and every node, one search per landmark
+     * and direction.
+     * @param graph The graph of the network, without any start or end.
+     * @param count The largest number of landmarks to choose.
+     * @param pool The pool to run the searches on, or null to run them on
+     *             the calling thread.
+     * @return The landmarks.
+     */
+    public static Landmarks compute(final CompactGraph graph, int count, ForkJoinPool pool) {
+        final int[] chosen = choose(graph, count);
+        final Landmarks landmarks = new Landmarks(graph, chosen.length);
+        ParallelLoop.run(pool, chosen.length * 2, 1, new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    int landmark = i % chosen.length;
+                    // the backward search finds the cost of reaching the landmark
+                    boolean backward = i >= chosen.length;
+                    float[] values = backward ? landmarks.toLandmark : landmarks.fromLandmark;
+                    DijkstraSearch search = new DijkstraSearch(graph, backward);
+                    search.run(chosen[landmark], -1);
+                    for (int j = 0; j < search.getSettledCount(); j++) {
+                        int node = search.getSettled(j);
+                        values[node * chosen.length + landmark] = (float) search.getDistance(node);
+                    }
+                }
+            }
+        });
+        return landmarks;
+    }
+
+    /**
+     * Choose the landmarks: the node furthest from the middle of the network
+     * in each of count equal sectors around it. Only nodes that can reach
+     * and be reached from the node closest to the middle are chosen, so a
+     * landmark is never on a small piece of road cut off from the rest.
+     * @param graph The graph of the network.
+     * @param count The number of sectors.
+     * @return The ids of the landmarks, at most count of them.
+     */
+    private static int[] choose(CompactGraph graph, int count) {
+        int size = graph.size();
+        double[] x = new double[size];
+        double[] y = new double[size];
+        double middleX = 0;
+        double middleY = 0;
+        int passable = 0;
+        for (int id = 0; id < size; id++) {
+            Vector2D end = Logic2D.getEnd(graph.getTraversable(id).getSegment());
+            x[id] = end.getX();
+            y[id] = end.getY();
+            if (graph.getCost(id) >= 0) {
+                middleX += x[id];
+                middleY += y[id];
+                passable++;
+            }
+        }
+        if (passable == 0) {
+            return new int[0];
+        }
+        middleX /= passable;
+        middleY /= passable;
+
+        int middle = -1;
+        double closest = Double.MAX_VALUE;
+        for (int id = 0; id < size; id++) {
+            double d = (x[id] - middleX) * (x[id] - middleX) + (y[id] - middleY) * (y[id] - middleY);
+            if (graph.getCost(id) >= 0 && d < closest) {
+                closest = d;
+                middle = id;
+            }
+        }
+        DijkstraSearch forward = new DijkstraSearch(graph);
+        forward.run(middle, -1);
+        DijkstraSearch backward = new DijkstraSearch(graph, true);
+        backward.run(middle, -1);
+
+        int[] furthest = new int[count];
+        double[] furthestDistance = new double[count];
+        Arrays.fill(furthest, -1);
+        for (int id = 0; id < size; id++) {
+            if (!forward.isSettled(id) || !backward.isSettled(id)) {
+                continue;
+            }
+            double dx = x[id] - middleX;
+            double dy = y[id] - middleY;
+            int sector = (int) ((Math.atan2(dy, dx) + Math.PI) / (2 * Math.PI) * count) % count;
+            double d = dx * dx + dy * dy;
+            if (d > furthestDistance[sector]) {
+                furthestDistance[sector] = d;
+                furthest[sector] = id;
+            }
+        }
+        int[] chosen = new int[count];
+        int found = 0;
+        for (int id : furthest) {
+            if (id >= 0) {
+                chosen[found++] = id;
+            }
+        }
+        return Arrays.copyOf(chosen, found);
+    }
+
+    /**
+     * Returns the number of landmarks.
+     * @return The number of landmarks, 0 if the network has no passable node.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the graph of the network the distances were computed over.
+     * @return The graph.
+     */
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Make a heuristic for a forward search from source to target, which
+     * bounds the cost from a node to the target.
+     * @param query The graph being searched: the network of these landmarks,
+     *              with the costs they were computed with or higher, plus
+     *              the start and end and any pieces of roads made for them.
+     * @param source The start of the search.
+     * @param target The destination of the search.
+     * @return A consistent heuristic.
+     */
+    public Heuristic towards(SearchGraph query, Traversable source, Traversable target) {
+        return bound(query, query.getId(source), query.getId(target), false);
+    }
+
+    /**
+     * Make a heuristic for a backward search from target to source, which
+     * bounds the cost from the source to a node.
+     * @param query The graph being searched, as for towards().
+     * @param source The start of the route.
+     * @param target The destination of the route, where the search starts.
+     * @return A consistent heuristic.
+     */
+    public Heuristic from(SearchGraph query, Traversable source, Traversable target) {
+        return bound(query, query.getId(source), query.getId(target), true);
+    }
+
+    /**
+     * Make a heuristic for a search over a graph that holds the network and
+     * a few nodes outside it. The bound for a node of the network uses the
+     * nodes of the network that lead directly to the nodes outside it that
+     * reach the goal (the gateways) in place of the goal itself, less the
+     * most any detour through the other outside nodes could save. The bound
+     * for an outside node is the cheapest way out of them plus the bound
+     * where it leads, so the heuristic stays consistent across every edge.
+     * @param query The graph being searched.
+     * @param source The id of the start of the route.
+     * @param target The id of the destination of the route.
+     * @param reverse True for a backward search, whose goal is the source.
+     * @return A consistent heuristic.
+     */
+    private Heuristic bound(SearchGraph query, int source, int target, boolean reverse) {
+        // every node outside the network was made for the start or end, and
+        // is connected to it through other outside nodes
+        Map<Integer, Integer> index = new HashMap<Integer, Integer>();
+        List<Integer> outside = new ArrayList<Integer>();
+        explore(query, source, index, outside);
+        explore(query, target, index, outside);
+        int goal = reverse ? source : target;
+
+        // the outside nodes that reach the goal without entering the network
+        // cost nothing more to bound, and the gateways lead to them
+        boolean[] reachesGoal = new boolean[outside.size()];
+        List<Integer> gateways = new ArrayList<Integer>();
+        if (index.containsKey(goal)) {
+            List<Integer> open = new ArrayList<Integer>();
+            open.add(goal);
+            reachesGoal[index.get(goal)] = true;
+            while (!open.isEmpty()) {
+                int node = open.remove(open.size() - 1);
+                for (int previous : steps(query, node, !reverse)) {
+                    if (weight(query, previous, node, reverse) < 0) {
+                        continue;
+                    }
+                    Integer i = index.get(previous);
+                    if (i == null) {
+                        gateways.add(previous);
+                    } else if (!reachesGoal[i]) {
+                        reachesGoal[i] = true;
+                        open.add(previous);
+                    }
+                }
+            }
+        } else if (goal >= 0) {
+            gateways.add(goal);
+        }
+
+        Bound bound = new Bound(reverse);
+        for (int gateway : gateways) {
+            int id = graph.getId(query.getTraversable(gateway));
+            if (id >= 0) {
+                bound.addGateway(id);
+            }
+        }
+
+        // the bound of a node of the network may be lowered by no more than
+        // the slack, which is the most a detour through the outside nodes
+        // saves against the bounds of where it enters and leaves the network
+        double[] exit = cheapestExits(query, outside, index, reachesGoal, bound, reverse);
+        for (int i = 0; i < outside.size(); i++) {
+            if (reachesGoal[i] || exit[i] == Double.MAX_VALUE) {
+                continue;
+            }
+            for (int previous : steps(query, outside.get(i), !reverse)) {
+                double w = weight(query, previous, outside.get(i), reverse);
+                int id = index.containsKey(previous) ? -1 : graph.getId(query.getTraversable(previous));
+                if (w >= 0 && id >= 0) {
+                    bound.slack = Math.max(bound.slack, bound.estimate(id) - (w + exit[i]));
+                }
+            }
+        }
+        bound.useSlack = true;
+        exit = cheapestExits(query, outside, index, reachesGoal, bound, reverse);
+        for (int i = 0; i < outside.size(); i++) {
+            double estimate = reachesGoal[i] || exit[i] == Double.MAX_VALUE ? 0 : exit[i];
+            bound.outside.put(query.getTraversable(outside.get(i)), estimate);
+        }
+        return bound;
+    }
+
+    /**
+     * Find every node outside the network connected to a node through
+     * other outside nodes, following edges both ways.
+     * @param query The graph being searched.
+     * @param start The id of the node, -1 for none.
+     * @param index The position of each outside node found so far in
+     *              outside, added to.
+     * @param outside The ids of the outside nodes found so far, added to.
+     */
+    private void explore(SearchGraph query, int start, Map<Integer, Integer> index, List<Integer> outside) {
+        if (start < 0 || index.containsKey(start) || graph.getId(query.getTraversable(start)) >= 0) {
+            return;
+        }
+        List<Integer> open = new ArrayList<Integer>();
+        index.put(start, outside.size());
+        outside.add(start);
+        open.add(start);
+        while (!open.isEmpty()) {
+            int node = open.remove(open.size() - 1);
+            for (int direction = 0; direction < 2; direction++) {
+                for (int next : steps(query, node, direction == 1)) {
+                    if (!index.containsKey(next) && graph.getId(query.getTraversable(next)) < 0) {
+                        index.put(next, outside.size());
+                        outside.add(next);
+                        open.add(next);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the cheapest way from each outside node that doesn't reach the
+     * goal on its own to a node where the bound is known: an outside node
+     * that reaches the goal (bound 0) or a node of the network.
+     * @param query The graph being searched.
+     * @param outside The ids of the outside nodes.
+     * @param index The position of each outside node in outside.
+     * @param reachesGoal Whether each outside node reaches the goal.
+     * @param bound The bound of the nodes of the network.
+     * @param reverse True for a backward search.
+     * @return The cost of the way out plus the bound where it leads, for
+     *         each outside node, Double.MAX_VALUE if there is none.
+     */
+    private double[] cheapestExits(SearchGraph query, List<Integer> outside,
+            Map<Integer, Integer> index, boolean[] reachesGoal, Bound bound, boolean reverse) {
+        double[] exit = new double[outside.size()];
+        Arrays.fill(exit, Double.MAX_VALUE);
+        // there are only a few outside nodes, so they are relaxed until
+        // nothing changes
+        boolean changed = true;
+        for (int round = 0; changed && round <= outside.size(); round++) {
+            changed = false;
+            for (int i = 0; i < outside.size(); i++) {
+                if (reachesGoal[i]) {
+                    continue;
+                }
+                int node = outside.get(i);
+                for (int next : steps(query, node, reverse)) {
+                    double w = weight(query, node, next, reverse);
+                    if (w < 0) {
+                        continue;
+                    }
+                    double rest;
+                    Integer j = index.get(next);
+                    if (j != null) {
+                        rest = reachesGoal[j] ? 0 : exit[j];
+                    } else {
+                        int id = graph.getId(query.getTraversable(next));
+                        rest = id < 0 ? Double.MAX_VALUE : bound.estimate(id);
+                    }
+                    if (rest < Double.MAX_VALUE && w + rest < exit[i]) {
+                        exit[i] = w + rest;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return exit;
+    }
+
+    /**
+     * Returns the nodes a search can move to from a node.
+     * @param query The graph being searched.
+     * @param node The id of the node.
+     * @param reverse True to follow reverse edges.
+     * @return The ids of the nodes.
+     */
+    private static int[] steps(SearchGraph query, int node, boolean reverse) {
+        int first = reverse ? query.firstReverseEdge(node) : query.firstEdge(node);
+        int end = reverse ? query.endReverseEdge(node) : query.endEdge(node);
+        int[] steps = new int[end - first];
+        for (int e = first; e < end; e++) {
+            steps[e - first] = reverse ? query.getSource(e) : query.getTarget(e);
+        }
+        return steps;
+    }
+
+    /**
+     * Returns what a search pays to move from one node to the next: the cost
+     * of the node entered going forward, and of the node left going backward.
+     * @param query The graph being searched.
+     * @param from The id of the node moved from.
+     * @param to The id of the node moved to.
+     * @param reverse True for a backward search.
+     * @return The cost, negative if the move is not possible.
+     */
+    private static double weight(SearchGraph query, int from, int to, boolean reverse) {
+        return query.getCost(reverse ? from : to);
+    }
+
+    /**
+     * A heuristic made from the landmarks for a single search.
+     */
+    private class Bound implements Heuristic {
+
+        /** The distances d(v, L) of the first bound, d(L, v) going backward */
+        private float[] first;
+        /** The distances d(L, v) of the second bound, d(v, L) going backward */
+        private float[] second;
+        /** The largest of the first distances of the gateways, per landmark */
+        private double[] firstMax;
+        /** The smallest of the second distances of the gateways, per landmark */
+        private double[] secondMin;
+        /** Whether any gateway was added */
+        private boolean hasGateway = false;
+        /** The most a detour outside the network can save */
+        private double slack = 0;
+        /** Whether the slack has been found and is subtracted */
+        private boolean useSlack = false;
+        /** The estimate of every node outside the network */
+        private Map<Traversable, Double> outside = new HashMap<Traversable, Double>();
+
+        /**
+         * Create a bound with no gateways, which estimates 0 everywhere.
+         * @param reverse True for a backward search.
+         */
+        Bound(boolean reverse) {
+            first = reverse ? fromLandmark : toLandmark;
+            second = reverse ? toLandmark : fromLandmark;
+            firstMax = new double[count];
+            secondMin = new double[count];
+            Arrays.fill(firstMax, Double.NEGATIVE_INFINITY);
+            Arrays.fill(secondMin, Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * Add a node of the network that leads directly to the goal, or to an
+         * outside node that reaches it.
+         * @param id The id of the node in the graph of the landmarks.
+         */
+        void addGateway(int id) {
+            hasGateway = true;
+            for (int l = 0; l < count; l++) {
+                firstMax[l] = Math.max(firstMax[l], first[id * count + l]);
+                secondMin[l] = Math.min(secondMin[l], second[id * count + l]);
+            }
+        }
+
+        /**
+         * Returns the bound of a node of the network.
+         * @param id The id of the node in the graph of the landmarks.
+         * @return The bound, never negative.
+         */
+        double estimate(int id) {
+            if (!hasGateway) {
+                return 0;
+            }
+            double best = 0;
+            int at = id * count;
+            for (int l = 0; l < count; l++) {
+                double a = first[at + l];
+                if (a != Float.POSITIVE_INFINITY && firstMax[l] != Float.POSITIVE_INFINITY) {
+                    best = Math.max(best, a - firstMax[l] - ROUNDING_MARGIN * (a + firstMax[l]));
+                }
+                double b = second[at + l];
+                if (b != Float.POSITIVE_INFINITY && secondMin[l] != Float.POSITIVE_INFINITY) {
+                    best = Math.max(best, secondMin[l] - b - ROUNDING_MARGIN * (b + secondMin[l]));
+                }
+            }
+            return useSlack ? Math.max(0, best - slack) : best;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public double estimate(Traversable t) {
+            int id = graph.getId(t);
+            if (id >= 0) {
+                return estimate(id);
+            }
+            Double estimate = outside.get(t);
+            return estimate == null ? 0 : estimate;
+        }
+    }
+}
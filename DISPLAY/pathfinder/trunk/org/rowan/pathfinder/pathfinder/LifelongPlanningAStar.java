@@ -0,0 +1,271 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class <code>LifelongPlanningAStar</code> keeps the cheapest route between
+ * two nodes of a <code>SearchGraph</code> up to date while the costs of its
+ * nodes change, using Lifelong Planning A* (LPA*). The first plan is an
+ * ordinary A* search, but the search tree is kept afterwards: when some costs
+ * change, only the nodes whose best distance is affected are searched again,
+ * which is usually a small fraction of the first search.
+ *
+ * Every node has a distance g, the cost of the cheapest route to it found so
+ * far, and a lookahead rhs, the cheapest route through any of its reverse
+ * neighbors. A node whose two values differ is inconsistent and waits in the
+ * queue, ordered by [min(g, rhs) + estimate, min(g, rhs)]. A change of a
+ * node's cost only changes the rhs of that node, since the cost of a node is
+ * the cost of entering it. Costs follow the same rules as
+ * <code>DijkstraSearch</code>.
+ *
+ * The heuristic must stay consistent for the new costs, so if costs can drop
+ * below the scale it was made with, a new plan has to be started.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class LifelongPlanningAStar {
+
+    /** The graph being searched, with the latest costs */
+    private SearchGraph graph;
+    /** The estimate of the remaining cost, or null for none */
+    private Heuristic heuristic;
+    /** The cost of the cheapest route found to each node */
+    private double[] g;
+    /** The cost of the cheapest route to each node through its reverse neighbors */
+    private double[] rhs;
+    /** Id to the heuristic's estimate, NaN if it hasn't been computed yet */
+    private double[] estimates;
+    /** The inconsistent nodes */
+    private IndexedMinHeap queue;
+    /** The id of the start node */
+    private int source = -1;
+    /** The id of the destination node */
+    private int target = -1;
+    /** The number of nodes expanded by the last plan or replan */
+    private int expandedCount;
+
+    /**
+     * Create a new planner over the given graph.
+     * @param graph The graph to search.
+     */
+    public LifelongPlanningAStar(SearchGraph graph) {
+        this.graph = graph;
+        int n = graph.size();
+        g = new double[n];
+        rhs = new double[n];
+        estimates = new double[n];
+        queue = new IndexedMinHeap(n);
+    }
+
+    /**
+     * Find the cheapest route from source to target, forgetting any earlier
+     * plan.
+     * @param source The id of the start node.
+     * @param target The id of the destination node.
+     * @param heuristic A consistent estimate of the cost of reaching the
+     *                  target, or null to search without one.
+     * @return True if target can be reached from source, false otherwise.
+     */
+    public boolean plan(int source, int target, Heuristic heuristic) {
+        this.source = source;
+        this.target = target;
+        this.heuristic = heuristic;
+        Arrays.fill(g, Double.POSITIVE_INFINITY);
+        Arrays.fill(rhs, Double.POSITIVE_INFINITY);
+        Arrays.fill(estimates, Double.NaN);
+        queue.clear();
+        expandedCount = 0;
+        if (source < 0 || target < 0) {
+            return false;
+        }
+        rhs[source] = 0;
+        enqueue(source);
+        computeRoute();
+        return getDistance() != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Repair the plan after the costs of some nodes changed.
+     * @param graph The graph with the new costs. It must have the same nodes
+     *              and edges as the graph the plan was made on, such as a copy
+     *              made by CompactGraph.withCosts().
+     * @param changed The Traversables whose cost changed.
+     * @return True if target can still be reached from source, false otherwise.
+     */
+    public boolean replan(SearchGraph graph, Collection<? extends Traversable> changed) {
+        if (graph.size() != this.graph.size()) {
+            throw new IllegalArgumentException("The graph must have the same nodes as the plan.");
+        }
+        this.graph = graph;
+        expandedCount = 0;
+        if (source < 0 || target < 0) {
+            return false;
+        }
+        for (Traversable t : changed) {
+            int id = graph.getId(t);
+            if (id >= 0) {
+                updateNode(id);
+            }
+        }
+        computeRoute();
+        return getDistance() != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Expand inconsistent nodes until the target is consistent and no node in
+     * the queue could lead to a cheaper route to it.
+     */
+    private void computeRoute() {
+        while (!queue.isEmpty() && (compareTop() < 0 || rhs[target] != g[target])) {
+            int node = queue.poll();
+            expandedCount++;
+            if (g[node] > rhs[node]) {
+                g[node] = rhs[node];
+                for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+                    int next = graph.getTarget(e);
+                    double cost = graph.getCost(next);
+                    if (next != source && cost >= 0 && g[node] + cost < rhs[next]) {
+                        rhs[next] = g[node] + cost;
+                        updateQueue(next);
+                    }
+                }
+            } else {
+                g[node] = Double.POSITIVE_INFINITY;
+                updateNode(node);
+                for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+                    updateNode(graph.getTarget(e));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compare the keys of the top of the queue with the keys of the target.
+     * @return A negative number if the top of the queue comes first, zero or
+     *         a positive number otherwise.
+     */
+    private int compareTop() {
+        double best = Math.min(g[target], rhs[target]);
+        int cmp = Double.compare(queue.peekKey(), best + estimate(target));
+        return cmp != 0 ? cmp : Double.compare(queue.peekTieBreak(), best);
+    }
+
+    /**
+     * Recalculate the rhs of a node from its reverse neighbors and put it in
+     * the queue if it is inconsistent, or take it out if it is not.
+     * @param node The id of the node.
+     */
+    private void updateNode(int node) {
+        if (node != source) {
+            double best = Double.POSITIVE_INFINITY;
+            double cost = graph.getCost(node);
+            if (cost >= 0) {
+                for (int e = graph.firstReverseEdge(node); e < graph.endReverseEdge(node); e++) {
+                    best = Math.min(best, g[graph.getSource(e)] + cost);
+                }
+            }
+            rhs[node] = best;
+        }
+        updateQueue(node);
+    }
+
+    /**
+     * Put a node in the queue, or move it, if it is inconsistent, and take it
+     * out of the queue if it is not. A consistent node left in the queue
+     * would be expanded as if its distance had grown.
+     * @param node The id of the node.
+     */
+    private void updateQueue(int node) {
+        if (g[node] != rhs[node]) {
+            enqueue(node);
+        } else {
+            queue.remove(node);
+        }
+    }
+
+    /**
+     * Put a node in the queue, or move it, according to its current keys.
+     * @param node The id of the node.
+     */
+    private void enqueue(int node) {
+        double best = Math.min(g[node], rhs[node]);
+        queue.insertOrUpdate(node, best + estimate(node), best);
+    }
+
+    /**
+     * Returns the heuristic's estimate for a node, computing it only once.
+     * @param node The id of the node.
+     * @return The estimated remaining cost, 0 without a heuristic.
+     */
+    private double estimate(int node) {
+        if (heuristic == null) {
+            return 0;
+        }
+        if (Double.isNaN(estimates[node])) {
+            estimates[node] = heuristic.estimate(graph.getTraversable(node));
+        }
+        return estimates[node];
+    }
+
+    /**
+     * Returns the graph the current plan was made on.
+     * @return The graph, with the latest costs.
+     */
+    public SearchGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the cost of the cheapest route found by the last plan or
+     * replan.
+     * @return The cost of the route, or Double.POSITIVE_INFINITY if the
+     *         target can't be reached.
+     */
+    public double getDistance() {
+        return target < 0 ? Double.POSITIVE_INFINITY : g[target];
+    }
+
+    /**
+     * Returns the number of nodes expanded by the last plan or replan.
+     * @return The number of expanded nodes.
+     */
+    public int getExpandedCount() {
+        return expandedCount;
+    }
+
+    /**
+     * Build the cheapest route found by the last plan or replan, following
+     * the cheapest reverse neighbor of each node back from the target.
+     * @return The Traversables from start to end, or null if the target
+     *         can't be reached.
+     */
+    public List<Traversable> getRoute() {
+        if (getDistance() == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        List<Traversable> route = new ArrayList<Traversable>();
+        int node = target;
+        route.add(graph.getTraversable(node));
+        while (node != source) {
+            int previous = -1;
+            for (int e = graph.firstReverseEdge(node); e < graph.endReverseEdge(node); e++) {
+                int candidate = graph.getSource(e);
+                if (previous < 0 || g[candidate] < g[previous]) {
+                    previous = candidate;
+                }
+            }
+            if (previous < 0 || route.size() > graph.size()) {
+                return null;
+            }
+            node = previous;
+            route.add(graph.getTraversable(node));
+        }
+        Collections.reverse(route);
+        return route;
+    }
+}
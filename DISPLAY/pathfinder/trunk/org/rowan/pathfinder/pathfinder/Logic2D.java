@@ -8,6 +8,7 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import org.rowan.linalgtoolkit.Vector2D;
+import org.rowan.linalgtoolkit.WGS84Coord;
 import org.rowan.linalgtoolkit.shapes2d.Polygon2D;
 import org.rowan.linalgtoolkit.shapes2d.Segment2D;
 
@@ -207,6 +208,17 @@ public class Logic2D {
         return polygon.toWorld(closest);
     }
 
+    /**
+     * Find the closest point on a segment to a given vertex.
+     * @param vertex  The vertex to calculate the closest point to.
+     * @param segment The segment on which to find the closest point.
+     * @return The closest point to the given vertex on the segment, which is
+     *         the start or end vector of the segment if it is one of them.
+     */
+    public static Vector2D closestPoint(Vector2D vertex, Segment2D segment) {
+        return closestBetween(vertex, getStart(segment), getEnd(segment));
+    }
+
     /**
      * Determines the closest vertex, between two given 2D vertices, to a given
      * 2D vertex.
@@ -261,6 +273,19 @@ public class Logic2D {
         return mph * 1.609344d;
     }
 
+    /**
+     * Return the great circle distance between two points, where the x value
+     * of each point is its latitude and the y value its longitude.
+     * @param a The first point.
+     * @param b The second point.
+     * @return The distance between the points in kilometers.
+     */
+    public static double greatCircleDistance(Vector2D a, Vector2D b) {
+        WGS84Coord start = new WGS84Coord(a.getX(), a.getY());
+        WGS84Coord end = new WGS84Coord(b.getX(), b.getY());
+        return start.greatCircleDistance(end);
+    }
+
     /**
      * Converts a Vector2D to LatLon, the format used by WorldWind.
      * @param v A Vector2D to be transformed into a LatLon.
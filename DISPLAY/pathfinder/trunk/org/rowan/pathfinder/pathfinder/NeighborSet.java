@@ -0,0 +1,145 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Class <code>NeighborSet</code> is the set of neighbors of a traversable.
+ * A traversable has a handful of neighbors, so they are kept in an array
+ * and found by a linear scan; a <code>HashSet</code> holds a table and an
+ * entry object per neighbor, which is most of the memory a road network
+ * takes. A set without neighbors shares one empty array.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+class NeighborSet extends AbstractSet<Traversable> {
+
+    /** The array of every set without neighbors */
+    private static final Traversable[] EMPTY = new Traversable[0];
+    /** The smallest array a set grows to */
+    private static final int MIN_CAPACITY = 4;
+    /** The neighbors, followed by unused slots */
+    private Traversable[] elements = EMPTY;
+    /** The number of neighbors */
+    private int size;
+    /** The number of times this set has changed */
+    private int modCount;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public boolean add(Traversable t) {
+        if (indexOf(t) >= 0) {
+            return false;
+        }
+        if (size == elements.length) {
+            Traversable[] grown = new Traversable[Math.max(MIN_CAPACITY, size * 2)];
+            System.arraycopy(elements, 0, grown, 0, size);
+            elements = grown;
+        }
+        elements[size++] = t;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int i = indexOf(o);
+        if (i < 0) {
+            return false;
+        }
+        removeAt(i);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        elements = EMPTY;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Iterator<Traversable> iterator() {
+        return new Iterator<Traversable>() {
+
+            /** The index of the next neighbor returned */
+            private int next;
+            /** The index of the neighbor last returned, -1 if it was removed */
+            private int last = -1;
+            /** The number of changes this iterator expects */
+            private int expected = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Traversable next() {
+                if (expected != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                return elements[next++];
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                if (expected != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                // the last neighbor moves into the removed slot, so it is
+                // returned next
+                removeAt(last);
+                next = last;
+                last = -1;
+                expected = modCount;
+            }
+        };
+    }
+
+    /**
+     * Returns the index of a neighbor.
+     * @param o The neighbor.
+     * @return The index of the neighbor in the array, -1 if it isn't in
+     *         this set.
+     */
+    private int indexOf(Object o) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == o || (o != null && o.equals(elements[i]))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Remove the neighbor at an index by moving the last neighbor into its
+     * slot.
+     * @param i The index.
+     */
+    private void removeAt(int i) {
+        size--;
+        elements[i] = elements[size];
+        elements[size] = null;
+        modCount++;
+    }
+}
@@ -19,7 +19,9 @@ public class OffRoadSegment implements Traversable {
     /** All of the events that this OffRoadSegment intersects */
     private Set<Event> events = new HashSet<Event>();
     /** A set of all neighboring traversables */
-    private Set<Traversable> neighbors = new HashSet<Traversable>();
+    private Set<Traversable> neighbors = new NeighborSet();
+    /** A set of all traversables that have this OffRoadSegment as a neighbor */
+    private Set<Traversable> reverseNeighbors = new NeighborSet();
     /** The segment that defines the start/end points of this OffRoadSegment */
     private Segment2D segment;
     /** The type of terrain that this OffRoadSegment lies in. */
@@ -132,6 +134,14 @@ public class OffRoadSegment implements Traversable {
         return this.neighbors;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Traversable> getReverseNeighbors() {
+        return this.reverseNeighbors;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -148,6 +158,14 @@ public class OffRoadSegment implements Traversable {
         this.neighbors = n;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setReverseNeighbors(Set<Traversable> n) {
+        this.reverseNeighbors = n;
+    }
+
     /**
      * Calculates the value of safety of this Traversable.
      */
@@ -208,6 +226,25 @@ public class OffRoadSegment implements Traversable {
 
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSpeedValue(double speedValue, double travelTime) {
+        this.speedVal = speedValue;
+        this.travelTime = travelTime;
+    }
+
+    /**
+     * The vehicle that traverses the terrain worst limits the speed off road.
+     * @param vehicle A vehicle.
+     * @return The traversability value of the terrain for the vehicle.
+     */
+    @Override
+    public double getLimitingFactor(Vehicle vehicle) {
+        return getTraversabilityValue(vehicle);
+    }
+
     /**
      * Calculates the distance value of this off-road in Kilometers.
      */
@@ -256,7 +293,7 @@ public class OffRoadSegment implements Traversable {
                 }
             }
 
-            if (vehicle.getTraversabilityMap().get(terrainType) <= 0) {
+            if (!canTraverse(vehicle)) {
                 setCost(Transformer.INFINITY);
                 return false;
             }
@@ -265,6 +302,14 @@ public class OffRoadSegment implements Traversable {
         return true;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canTraverse(Vehicle vehicle) {
+        return getTraversabilityValue(vehicle) > 0;
+    }
+
     @Override
     public boolean equals(Object o) {
 
@@ -0,0 +1,111 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class <code>ParallelLoop</code> runs the iterations of a loop on a
+ * <code>ForkJoinPool</code>. The range of the loop is split in halves until
+ * the pieces are small enough, and idle threads steal the pieces that are
+ * left, so iterations of uneven cost are still spread over every thread.
+ *
+ * The body is handed whole ranges rather than single iterations, so that it
+ * can keep partial results in local variables and merge them once per range.
+ * Ranges are run in no particular order, so a body that merges results must
+ * do so in a way that gives the same answer in any order, such as taking a
+ * minimum or writing to the slot of each iteration.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class ParallelLoop {
+
+    /** The number of ranges each thread gets when the grain is not given */
+    private static final int RANGES_PER_THREAD = 8;
+    /** The smallest range split by default */
+    private static final int MIN_GRAIN = 256;
+
+    /**
+     * The body of a loop.
+     */
+    public interface Body {
+
+        /**
+         * Run the iterations in a range.
+         * @param from The first iteration.
+         * @param to One past the last iteration.
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * Run a loop, choosing the size of the ranges from the number of
+     * iterations and threads.
+     * @param pool The pool to run on, or null to run on the calling thread.
+     * @param size The number of iterations.
+     * @param body The body of the loop.
+     */
+    public static void run(ForkJoinPool pool, int size, Body body) {
+        int grain = MIN_GRAIN;
+        if (pool != null) {
+            grain = Math.max(grain, size / (pool.getParallelism() * RANGES_PER_THREAD));
+        }
+        run(pool, size, grain, body);
+    }
+
+    /**
+     * Run a loop.
+     * @param pool The pool to run on, or null to run on the calling thread.
+     * @param size The number of iterations.
+     * @param grain The largest range that is not split further.
+     * @param body The body of the loop.
+     */
+    public static void run(ForkJoinPool pool, int size, int grain, Body body) {
+        if (pool == null || size <= grain) {
+            body.run(0, size);
+        } else {
+            pool.invoke(new Range(body, 0, size, Math.max(1, grain)));
+        }
+    }
+
+    /**
+     * A range of iterations, split in halves until it is no larger than the
+     * grain.
+     */
+    private static class Range extends RecursiveAction {
+
+        private static final long serialVersionUID = 0;
+        /** The body of the loop */
+        private Body body;
+        /** The first iteration */
+        private int from;
+        /** One past the last iteration */
+        private int to;
+        /** The largest range that is not split further */
+        private int grain;
+
+        /**
+         * Create a new range.
+         * @param body The body of the loop.
+         * @param from The first iteration.
+         * @param to One past the last iteration.
+         * @param grain The largest range that is not split further.
+         */
+        Range(Body body, int from, int to, int grain) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                body.run(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Range(body, from, middle, grain), new Range(body, middle, to, grain));
+            }
+        }
+    }
+}
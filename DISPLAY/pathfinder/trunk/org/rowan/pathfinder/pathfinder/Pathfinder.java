@@ -1,184 +1,228 @@
 package org.rowan.pathfinder.pathfinder;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * <code>Pathfinder</code> is responsible for finding the shortest paths
  * based on weight assigned to each segment. Pathfinder will employ the use
- * of Djikstra's algorithm to locate these paths.
+ * of Djikstra's algorithm to locate these paths, or of A*, which finds the
+ * same paths while searching less of the network. A* is directed by the
+ * <code>Landmarks</code> of the context if it has them, and otherwise by a
+ * <code>GreatCircleHeuristic</code>. The costs of the Transformer are scaled
+ * values rather than lengths, so the great circle bound is weak and A*
+ * directed by it settles nearly as many nodes as Djikstra's algorithm; the
+ * landmark bounds follow the costs and settle far fewer. Either algorithm
+ * can also be run from both ends at once, meeting in the middle, which
+ * settles fewer nodes again on long routes. If the context has a
+ * <code>ContractionHierarchy</code>, the optimal path is read from the
+ * hierarchy instead of searching at all.
+ *
+ * Alternatives to the optimal path are found by <code>AlternativeRoutes</code>
+ * from a forward and a backward tree grown over the network with Djikstra's
+ * algorithm. The optimal path is read from the same trees, so when
+ * alternatives are generated neither the search algorithm nor a hierarchy
+ * is used: they would only repeat part of that work. They answer requests
+ * for a single path.
+ *
+ * A Pathfinder holds no search state of its own. Every request is answered
+ * inside a <code>QueryContext</code>, and the costs of the Traversables are
+ * never modified, so one Pathfinder can serve any number of concurrent
+ * requests on the same network.
  * @author Shahid Akhter
  */
 public class Pathfinder {
 
-    /** Nodes that have been used in the route */
-    private static Set<Traversable> settledNodes;
-    /** Nodes that haven't been used in the path yet */
-    private static Set<Traversable> unsettledNodes;
-    /**Stores the source node for each node when it is added to the
-    route */
-    private static Map<Traversable, Traversable> predecessors;
-    /** Stores the distances (weight) of all nodes */
-    private static Map<Traversable, Double> distance;
     /**the number of routes that will be generated */
     private static final int NUM_PATHS = 3;
+    /** The largest fraction of an alternative's cost shared with another path */
+    private static final double MAX_OVERLAP = .7;
+    /** How much more than the optimal path an alternative may cost */
+    private static final double MAX_STRETCH = .5;
     /** Infinity value will be represented as -1 */
     public static final double INFINITY = -1;
-    /** High value for reweighting purposes */
-    public static final double REWEIGHT_VAL = 10000;
+    /** The algorithm used to answer requests */
+    private SearchMode mode;
+    /** Finds the alternative paths, null if only the optimal path is generated */
+    private AlternativeRoutes alternatives;
 
-    public static List<Path> getPaths(Traversable start, Traversable end) {
+    /** The search algorithms the Pathfinder can use */
+    public enum SearchMode {
+        DIJKSTRA, ASTAR, BIDIRECTIONAL, BIDIRECTIONAL_ASTAR
+    };
 
-        List<Path> paths = new ArrayList<Path>();
-
-        for (int i = 0; i < NUM_PATHS; i++) {
-            execute(start);
-            List<Traversable> pathSegments = new ArrayList<Traversable>();
-            Traversable step = end;
-            /**If this is null it means a full path to the destination
-            is not possible */
-            if (predecessors.get(step) == null) {
-                break;
-            }
-
-            pathSegments.add(step);
-
-            while (predecessors.get(step) != null) {
-                step = predecessors.get(step);
-                pathSegments.add(step);
-            }
-            Collections.reverse(pathSegments);
-            if (pathSegments.get(0).equals(start)) {
-                paths.add(i, new Path(pathSegments));
-            }
-            reWeight(pathSegments);
-        }
-        return paths;
+    /**
+     * Create a new Pathfinder that uses Djikstra's algorithm.
+     */
+    public Pathfinder() {
+        this(SearchMode.DIJKSTRA);
     }
 
     /**
-     * Runs Djikstra's algorithm with the given start point
+     * Create a new Pathfinder that uses the given search algorithm.
+     * @param mode The search algorithm to use.
      */
-    private static void execute(Traversable start) {
-        settledNodes = new HashSet<Traversable>();
-        unsettledNodes = new HashSet<Traversable>();
-        distance = new HashMap<Traversable, Double>();
-        predecessors = new HashMap<Traversable, Traversable>();
-
-        distance.put(start, 0.0);
-        unsettledNodes.add(start);
-
-        /** For each iteration, get the node with the minimum distance of all
-         * neighbors of any settled nodes, make it a settled node, then find
-         * all of the lowest distances (weights) from that node to all other
-         * adjacent nodes */
-        while (unsettledNodes.size() > 0) {
-            Traversable node = getMinimum(unsettledNodes);
-            settledNodes.add(node);
-            unsettledNodes.remove(node);
-            findMinimalDistances(node);
-        }
+    public Pathfinder(SearchMode mode) {
+        this(mode, NUM_PATHS, MAX_OVERLAP);
     }
 
     /**
-     * Finds the minimal distances of every neighboring node.
-     * @param node A Vector2D whose neighbors are being searched for.
+     * Create a new Pathfinder that uses the given search algorithm and
+     * generates the given number of paths.
+     * @param mode The search algorithm to use for single paths.
+     * @param numPaths The maximum number of paths to generate, the optimal
+     *                 path included.
+     * @param maxOverlap The largest fraction (between 0 and 1) of an
+     *                   alternative path's cost that may be shared with any
+     *                   path generated before it.
      */
-    private static void findMinimalDistances(Traversable node) {
-        Set<Traversable> adjacentSegments = node.getNeighbors();
-
-        for (Traversable target : adjacentSegments) {
-      
-            if (target.getCost() >= 0) {
-                if (getShortestDistance(target) > getShortestDistance(node)
-                        + target.getCost()) {
-
-                    distance.put(target, getShortestDistance(node) + target.getCost());
-
-                    predecessors.put(target, node);
-                    unsettledNodes.add(target);
-
-                }
-            }
+    public Pathfinder(SearchMode mode, int numPaths, double maxOverlap) {
+        if (numPaths < 1) {
+            throw new IllegalArgumentException("At least one path must be generated.");
         }
+        this.mode = mode;
+        if (numPaths > 1) {
+            alternatives = new AlternativeRoutes(numPaths, maxOverlap, MAX_STRETCH);
+        }
+    }
 
-
+    /**
+     * Returns the search algorithm this Pathfinder uses.
+     * @return The search mode.
+     */
+    public SearchMode getMode() {
+        return mode;
     }
 
     /**
-     * Get the shortest distance (weight)to a given destination.
-     * @param dest The destiation point.
-     * @return The shortest distance (weight) to the destination.
+     * Returns the maximum number of paths this Pathfinder generates.
+     * @return The number of paths, the optimal path included. A hierarchy
+     *         or heuristic in the context is only used if this is 1.
      */
-    private static double getShortestDistance(Traversable dest) {
-        Double shortestDistance = distance.get(dest);
+    public int getNumPaths() {
+        return alternatives == null ? 1 : alternatives.getMaxRoutes();
+    }
 
-        if (shortestDistance == null) {
-            return Double.MAX_VALUE;
-        } else {
-            return shortestDistance;
-        }
+    /**
+     * Find the optimal path from start to end and any alternatives.
+     * Safe to call from several threads at once.
+     * @param start The Traversable to start from.
+     * @param end The Traversable to end at.
+     * @return The paths found, optimal path first. Empty if end can't be
+     *         reached from start.
+     */
+    public List<Path> getPaths(Traversable start, Traversable end) {
+        return getPaths(new QueryContext(), start, end);
     }
 
     /**
-     * Find the node with the lowest cost out of all intesections in the set
-     * @param nodes A set of nodes
-     * @return The node with the lowest cost.
+     * Find the optimal path from start to end and any alternatives, using
+     * the given context for all search state.
+     * @param context A context that is not being used by any other thread.
+     * @param start The Traversable to start from.
+     * @param end The Traversable to end at.
+     * @return The paths found, optimal path first. Empty if end can't be
+     *         reached from start, or either is not in the context's graph.
      */
-    private static Traversable getMinimum(Set<Traversable> nodes) {
-        Traversable minimum = null;
+    public List<Path> getPaths(QueryContext context, Traversable start, Traversable end) {
 
-        for (Traversable node : nodes) {
-            if (minimum == null) {
-                minimum = node;
-            } else {
-                if (getShortestDistance(node) < getShortestDistance(minimum)) {
-                    minimum = node;
-                }
+        List<Path> paths = new ArrayList<Path>();
+        int source = context.getId(start);
+        int target = context.getId(end);
+        if (source < 0 || target < 0) {
+            return paths;
+        }
+        if (alternatives != null) {
+            // the trees the alternatives are found in hold the optimal path
+            for (List<Traversable> route : alternatives.find(context, source, target)) {
+                paths.add(new Path(route));
             }
+            return paths;
+        }
+        double costPerKm = context.getMinCostPerKm();
+        Landmarks landmarks = context.getLandmarks();
+        switch (mode) {
+            case ASTAR:
+                context.getSearch().setHeuristic(landmarks != null
+                        ? landmarks.towards(context, start, end)
+                        : new GreatCircleHeuristic(end, costPerKm));
+                break;
+            case BIDIRECTIONAL_ASTAR:
+                if (landmarks != null) {
+                    context.getBidirectionalSearch().setHeuristics(
+                            landmarks.towards(context, start, end),
+                            landmarks.from(context, start, end));
+                } else {
+                    // great circle distance is symmetric, so the estimate towards
+                    // the start is also a bound on the cost of reaching a node
+                    context.getBidirectionalSearch().setHeuristics(
+                            new GreatCircleHeuristic(end, costPerKm),
+                            new GreatCircleHeuristic(start, costPerKm));
+                }
+                break;
+            case BIDIRECTIONAL:
+                context.getBidirectionalSearch().setHeuristics(null, null);
+                break;
+            default:
+                context.getSearch().setHeuristic(null);
         }
 
-        return minimum;
+        /**If this is null it means a full path to the destination
+        is not possible */
+        List<Traversable> pathSegments = execute(context, source, target);
+        if (pathSegments != null) {
+            paths.add(new Path(pathSegments));
+        }
+        return paths;
     }
 
     /**
-     * This will reweight 70% of the path. The first and last 15% will not be
-     * touched.
-     * @param path The path generated that needs to be reweighted
+     * Build the paths for an optimal route that is already known, for
+     * example one kept up to date by a <code>LifelongPlanningAStar</code>,
+     * adding alternatives to it.
+     * @param context A context that is not being used by any other thread.
+     * @param optimal The optimal route, from start to end.
+     * @return The paths, optimal path first.
      */
-    private static void reWeight(List<Traversable> path) {
-
-     double distance = 0;
-     double totalDistance = 0;
-     double threshold;
-     for(Traversable t: path)
-     {
-         distance+=t.getDistance();
-     }
-
-     threshold = distance * .35;
-
-     for(Traversable t: path)
-     {
-         totalDistance += t.getDistance() / 2;
-         if(totalDistance > threshold && totalDistance < (distance - threshold))
-             predecessors.get(t).setCost(t.getCost() + 100);
-         totalDistance += t.getDistance()/2;
-     }
-        
-        //        int boundary = (int) (path.size() * .15);
-//
-//        for (int i = boundary + 1; i < path.size() - boundary - 1; i++) {
-//            Traversable t = predecessors.get(path.get(i));
-//            t.setCost(t.getCost() + 100);
-//        }
-//
+    public List<Path> getPaths(QueryContext context, List<Traversable> optimal) {
+        List<Path> paths = new ArrayList<Path>();
+        if (alternatives == null) {
+            paths.add(new Path(optimal));
+            return paths;
+        }
+        int source = context.getId(optimal.get(0));
+        int target = context.getId(optimal.get(optimal.size() - 1));
+        for (List<Traversable> route : alternatives.find(context, source, target, optimal)) {
+            paths.add(new Path(route));
+        }
+        return paths;
+    }
 
+    /**
+     * Runs Djikstra's algorithm (or A*, if the search has a heuristic) with
+     * the given start point, stopping as soon as the destination has been
+     * settled. In the bidirectional modes the search is run from both ends
+     * instead, stopping once no cheaper meeting point can exist. If the
+     * context has a contraction hierarchy and no costs have been changed,
+     * the route is read from the hierarchy instead.
+     * @param context The context to search in.
+     * @param source The id of the start node.
+     * @param target The id of the destination node.
+     * @return The route from start to destination, or null if there is none.
+     */
+    private List<Traversable> execute(QueryContext context, int source, int target) {
+        if (context.getHierarchy() != null && !context.hasCostOverrides()) {
+            HierarchySearch search = context.getHierarchySearch();
+            search.run(context.getTraversable(source), context.getTraversable(target));
+            return search.getRoute();
+        }
+        if (mode == SearchMode.BIDIRECTIONAL || mode == SearchMode.BIDIRECTIONAL_ASTAR) {
+            BidirectionalSearch search = context.getBidirectionalSearch();
+            search.run(source, target);
+            return search.getRoute();
+        }
+        DijkstraSearch search = context.getSearch();
+        search.run(source, target);
+        return search.getRoute(target);
     }
 }
- 
\ No newline at end of file
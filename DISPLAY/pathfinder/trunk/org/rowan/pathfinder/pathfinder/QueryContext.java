@@ -0,0 +1,315 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.Arrays;
+
+/**
+ * Class <code>QueryContext</code> owns everything that changes while a single
+ * route request is being answered: the node ids and search state, and any
+ * cost overrides made along the way (for example, to avoid an area for a
+ * single request). The Traversables themselves are only ever read, so any
+ * number of contexts can search the same network at the same time, each from
+ * its own thread. A context must not be shared between threads.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class QueryContext implements SearchGraph {
+
+    /** The graph this context searches */
+    private SearchGraph graph;
+    /** Id to overridden cost, NaN if the cost of the node is not overridden */
+    private double[] costs = new double[0];
+    /** The Djikstra search state of this context (created when needed) */
+    private DijkstraSearch search;
+    /** The backward Djikstra search state of this context (created when needed) */
+    private DijkstraSearch reverseSearch;
+    /** The bidirectional search state of this context (created when needed) */
+    private BidirectionalSearch bidirectionalSearch;
+    /** The lowest cost per kilometer of the network, used to direct A* */
+    private double minCostPerKm = 0;
+    /** The landmarks used to direct A*, or null to use the great circle distance */
+    private Landmarks landmarks;
+    /** The contraction hierarchy to answer requests with, or null */
+    private ContractionHierarchy hierarchy;
+    /** The search over the hierarchy (created when needed) */
+    private HierarchySearch hierarchySearch;
+    /** Whether the cost of any node has been overridden */
+    private boolean costsOverridden = false;
+
+    /**
+     * Create a new context that discovers the network lazily from the
+     * neighbors of each Traversable.
+     */
+    public QueryContext() {
+        this(new TraversableGraph());
+    }
+
+    /**
+     * Create a new context over the given graph. The graph is never modified
+     * by this context, but if it indexes nodes lazily it must not be shared
+     * with any other context.
+     * @param graph The graph to search.
+     */
+    public QueryContext(SearchGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Returns the graph that this context overrides costs of.
+     * @return The underlying graph.
+     */
+    public SearchGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the Djikstra search of this context.
+     * @return A search that runs over this context's costs.
+     */
+    public DijkstraSearch getSearch() {
+        if (search == null) {
+            search = new DijkstraSearch(this);
+        }
+        return search;
+    }
+
+    /**
+     * Returns the backward Djikstra search of this context, which follows
+     * reverse edges from the destination.
+     * @return A backward search that runs over this context's costs.
+     */
+    public DijkstraSearch getReverseSearch() {
+        if (reverseSearch == null) {
+            reverseSearch = new DijkstraSearch(this, true);
+        }
+        return reverseSearch;
+    }
+
+    /**
+     * Returns the bidirectional search of this context.
+     * @return A search that runs over this context's costs from both ends.
+     */
+    public BidirectionalSearch getBidirectionalSearch() {
+        if (bidirectionalSearch == null) {
+            bidirectionalSearch = new BidirectionalSearch(this);
+        }
+        return bidirectionalSearch;
+    }
+
+    /**
+     * Returns the contraction hierarchy that requests in this context may be
+     * answered with.
+     * @return The hierarchy, or null if there is none.
+     */
+    public ContractionHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Set a customized contraction hierarchy over the network this context
+     * searches. It is only used while no costs are overridden, since the
+     * hierarchy's weights are computed from the costs of the Traversables,
+     * and only for requests for a single path, since alternatives are found
+     * in two plain search trees that hold the optimal path anyway.
+     * @param hierarchy The hierarchy, or null to always search the graph.
+     */
+    public void setHierarchy(ContractionHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+        this.hierarchySearch = null;
+    }
+
+    /**
+     * Returns the search over this context's contraction hierarchy.
+     * @return A search over the hierarchy, or null if there is none.
+     */
+    public HierarchySearch getHierarchySearch() {
+        if (hierarchySearch == null && hierarchy != null) {
+            hierarchySearch = new HierarchySearch(hierarchy);
+        }
+        return hierarchySearch;
+    }
+
+    /**
+     * Returns whether the cost of any node has been overridden in this
+     * context since it was created or last cleared.
+     * @return True if there are cost overrides, false otherwise.
+     */
+    public boolean hasCostOverrides() {
+        return costsOverridden;
+    }
+
+    /**
+     * Returns the lowest cost per kilometer of any Traversable in the network
+     * this context searches.
+     * @return The lowest cost per kilometer, 0 if it is not known.
+     */
+    public double getMinCostPerKm() {
+        return minCostPerKm;
+    }
+
+    /**
+     * Set the lowest cost per kilometer of any Traversable in the network,
+     * usually Transformer.getMinCostPerKm(). Cost overrides made by this
+     * context must never go below it.
+     * @param minCostPerKm The lowest cost per kilometer, 0 if it is not known.
+     */
+    public void setMinCostPerKm(double minCostPerKm) {
+        this.minCostPerKm = minCostPerKm;
+    }
+
+    /**
+     * Returns the landmarks that direct A* in this context.
+     * @return The landmarks, or null if A* is directed by the great circle
+     *         distance.
+     */
+    public Landmarks getLandmarks() {
+        return landmarks;
+    }
+
+    /**
+     * Set the landmarks that direct A* in this context, usually
+     * Transformer.getLandmarks(). They must have been computed over the
+     * network this context searches, with no cost higher than it is now, and
+     * cost overrides made by this context must never lower a cost.
+     * @param landmarks The landmarks, or null to direct A* by the great
+     *                  circle distance.
+     */
+    public void setLandmarks(Landmarks landmarks) {
+        this.landmarks = landmarks;
+    }
+
+    /**
+     * Override the cost of a node for searches run through this context only.
+     * @param id The id of the node.
+     * @param cost The new cost, or Transformer.INFINITY.
+     */
+    public void setCost(int id, double cost) {
+        if (id >= costs.length) {
+            int oldLength = costs.length;
+            costs = Arrays.copyOf(costs, Math.max(id + 1, Math.max(graph.size(), oldLength * 2)));
+            Arrays.fill(costs, oldLength, costs.length, Double.NaN);
+        }
+        costs[id] = cost;
+        costsOverridden = true;
+    }
+
+    /**
+     * Override the cost of a Traversable for searches run through this
+     * context only.
+     * @param t The Traversable whose cost should change.
+     * @param cost The new cost, or Transformer.INFINITY.
+     */
+    public void setCost(Traversable t, double cost) {
+        int id = getId(t);
+        if (id < 0) {
+            throw new IllegalArgumentException("The Traversable is not in the graph.");
+        }
+        setCost(id, cost);
+    }
+
+    /**
+     * Remove every cost override, so that the costs of the network are
+     * used again.
+     */
+    public void clearCosts() {
+        Arrays.fill(costs, Double.NaN);
+        costsOverridden = false;
+    }
+
+    /**
+     * Returns the cost of a node in this context: the override if there is
+     * one, otherwise the cost of the Traversable.
+     * @param id The id of a node.
+     * @return The cost of the node.
+     */
+    @Override
+    public double getCost(int id) {
+        if (id < costs.length && !Double.isNaN(costs[id])) {
+            return costs[id];
+        }
+        return graph.getCost(id);
+    }
+
+    /**
+     * Returns the cost of a Traversable in this context.
+     * @param t A Traversable.
+     * @return The cost of the Traversable, or Transformer.INFINITY if it is
+     *         not in the graph.
+     */
+    public double getCost(Traversable t) {
+        int id = getId(t);
+        return id < 0 ? Transformer.INFINITY : getCost(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return graph.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getId(Traversable t) {
+        return graph.getId(t);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Traversable getTraversable(int id) {
+        return graph.getTraversable(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int firstEdge(int id) {
+        return graph.firstEdge(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int endEdge(int id) {
+        return graph.endEdge(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getTarget(int edge) {
+        return graph.getTarget(edge);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int firstReverseEdge(int id) {
+        return graph.firstReverseEdge(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int endReverseEdge(int id) {
+        return graph.endReverseEdge(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSource(int reverseEdge) {
+        return graph.getSource(reverseEdge);
+    }
+}
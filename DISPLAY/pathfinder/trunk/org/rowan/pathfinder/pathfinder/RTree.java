@@ -0,0 +1,379 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.rowan.linalgtoolkit.BoundingBox2D;
+import org.rowan.linalgtoolkit.Vector2D;
+
+/**
+ * Class <code>RTree</code> is a static spatial index over the bounding boxes
+ * of a set of items, packed with the Sort-Tile-Recursive (STR) algorithm.
+ * The items are sorted into vertical slices by the x coordinate of their
+ * centers, each slice is sorted by y and cut into leaves of up to
+ * NODE_CAPACITY items, and the same is repeated on the leaves until a single
+ * root is left. Packing this way fills every node and keeps sibling boxes
+ * from overlapping much, so a query only descends into the few nodes whose
+ * boxes it touches.
+ *
+ * A tree never changes after it is built, so it may be queried from any
+ * number of threads at once.
+ *
+ * @param <T> The type of the items in the tree.
+ * @version 1.0
+ * @since 1.0
+ */
+public class RTree<T> {
+
+    /** The largest number of children of a node */
+    private static final int NODE_CAPACITY = 16;
+    /** The items, in the order the leaves reference them */
+    private Object[] items;
+    /** The bounding box of each item: minX, minY, maxX, maxY */
+    private double[] itemBoxes;
+    /** The root of the tree, null if the tree is empty */
+    private Node root;
+
+    /**
+     * Build a tree over the given items.
+     * @param items The items to index.
+     * @param boxes The bounding box of each item, in the same order.
+     */
+    public RTree(List<? extends T> items, List<BoundingBox2D> boxes) {
+        if (items.size() != boxes.size()) {
+            throw new IllegalArgumentException("Every item needs exactly one bounding box.");
+        }
+        int n = items.size();
+        final double[] unsorted = new double[4 * n];
+        for (int i = 0; i < n; i++) {
+            BoundingBox2D box = boxes.get(i);
+            unsorted[4 * i] = box.getA().getX();
+            unsorted[4 * i + 1] = box.getA().getY();
+            unsorted[4 * i + 2] = box.getB().getX();
+            unsorted[4 * i + 3] = box.getB().getY();
+        }
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        strSort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(unsorted[4 * a] + unsorted[4 * a + 2],
+                        unsorted[4 * b] + unsorted[4 * b + 2]);
+            }
+        }, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(unsorted[4 * a + 1] + unsorted[4 * a + 3],
+                        unsorted[4 * b + 1] + unsorted[4 * b + 3]);
+            }
+        });
+
+        this.items = new Object[n];
+        itemBoxes = new double[4 * n];
+        List<Node> level = new ArrayList<Node>();
+        for (int i = 0; i < n; i++) {
+            this.items[i] = items.get(order[i]);
+            System.arraycopy(unsorted, 4 * order[i], itemBoxes, 4 * i, 4);
+        }
+        for (int first = 0; first < n; first += NODE_CAPACITY) {
+            Node leaf = new Node();
+            leaf.first = first;
+            leaf.end = Math.min(first + NODE_CAPACITY, n);
+            leaf.setBox(itemBoxes, first, leaf.end);
+            level.add(leaf);
+        }
+
+        while (level.size() > 1) {
+            Node[] nodes = level.toArray(new Node[level.size()]);
+            strSort(nodes, new Comparator<Node>() {
+
+                @Override
+                public int compare(Node a, Node b) {
+                    return Double.compare(a.minX + a.maxX, b.minX + b.maxX);
+                }
+            }, new Comparator<Node>() {
+
+                @Override
+                public int compare(Node a, Node b) {
+                    return Double.compare(a.minY + a.maxY, b.minY + b.maxY);
+                }
+            });
+            level = new ArrayList<Node>();
+            for (int first = 0; first < nodes.length; first += NODE_CAPACITY) {
+                Node parent = new Node();
+                parent.children = Arrays.copyOfRange(nodes, first,
+                        Math.min(first + NODE_CAPACITY, nodes.length));
+                parent.setBox();
+                level.add(parent);
+            }
+        }
+        root = level.isEmpty() ? null : level.get(0);
+    }
+
+    /**
+     * Build a tree over a set of Traversables, indexed by the bounding boxes
+     * of their segments.
+     * @param traversables The Traversables to index.
+     * @return The tree.
+     */
+    public static <T extends Traversable> RTree<T> ofTraversables(Collection<? extends T> traversables) {
+        List<T> items = new ArrayList<T>(traversables);
+        List<BoundingBox2D> boxes = new ArrayList<BoundingBox2D>(items.size());
+        for (T t : items) {
+            boxes.add(t.getSegment().boundingBox());
+        }
+        return new RTree<T>(items, boxes);
+    }
+
+    /**
+     * Sort entries in STR order: into vertical slices by x, then each slice
+     * by y, so that every run of NODE_CAPACITY entries is a compact tile.
+     * @param entries The entries to sort.
+     * @param byX Orders entries by the x coordinate of their centers.
+     * @param byY Orders entries by the y coordinate of their centers.
+     */
+    private static <E> void strSort(E[] entries, Comparator<? super E> byX, Comparator<? super E> byY) {
+        int n = entries.length;
+        Arrays.sort(entries, byX);
+        int numNodes = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int numSlices = (int) Math.ceil(Math.sqrt(numNodes));
+        int sliceSize = numSlices * NODE_CAPACITY;
+        for (int first = 0; first < n; first += sliceSize) {
+            Arrays.sort(entries, first, Math.min(first + sliceSize, n), byY);
+        }
+    }
+
+    /**
+     * Returns the number of items in the tree.
+     * @return The number of items.
+     */
+    public int size() {
+        return items.length;
+    }
+
+    /**
+     * Returns the items in the order of the leaves of the tree, so that items
+     * close to each other are mostly next to each other in the list and a run
+     * of the list covers a compact area.
+     * @return The items, which can't be modified.
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getItems() {
+        return Collections.unmodifiableList((List<T>) Arrays.asList(items));
+    }
+
+    /**
+     * Find every item whose bounding box intersects the given box. The items
+     * themselves may not intersect it, so callers still have to test the
+     * exact shapes.
+     * @param box The box to search.
+     * @return The items near the box.
+     */
+    public List<T> query(BoundingBox2D box) {
+        List<T> found = new ArrayList<T>();
+        query(box, found);
+        return found;
+    }
+
+    /**
+     * Find every item whose bounding box intersects the given box.
+     * @param box The box to search.
+     * @param found The collection the items are added to.
+     */
+    @SuppressWarnings("unchecked")
+    public void query(BoundingBox2D box, Collection<? super T> found) {
+        if (root == null) {
+            return;
+        }
+        double minX = box.getA().getX(), minY = box.getA().getY();
+        double maxX = box.getB().getX(), maxY = box.getB().getY();
+        Node[] stack = new Node[64];
+        int size = 0;
+        stack[size++] = root;
+        while (size > 0) {
+            Node node = stack[--size];
+            if (node.minX > maxX || node.maxX < minX || node.minY > maxY || node.maxY < minY) {
+                continue;
+            }
+            if (node.children == null) {
+                for (int i = node.first; i < node.end; i++) {
+                    if (itemBoxes[4 * i] <= maxX && itemBoxes[4 * i + 2] >= minX
+                            && itemBoxes[4 * i + 1] <= maxY && itemBoxes[4 * i + 3] >= minY) {
+                        found.add((T) items[i]);
+                    }
+                }
+            } else {
+                if (size + node.children.length > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2 + node.children.length);
+                }
+                for (Node child : node.children) {
+                    stack[size++] = child;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the item closest to a point. Nodes are searched in the order of
+     * the distance to their boxes, which is never more than the distance to
+     * anything inside them, so the search stops as soon as the closest box
+     * left is farther away than the closest item found.
+     * @param point The point.
+     * @param maxDistance Only items closer than this are considered.
+     * @param distance Measures the distance from the point to an item. It
+     *                 must never be less than the distance to the item's box.
+     * @return The closest item, or null if none is closer than maxDistance.
+     */
+    @SuppressWarnings("unchecked")
+    public T nearest(Vector2D point, double maxDistance, Distance<? super T> distance) {
+        if (root == null) {
+            return null;
+        }
+        double x = point.getX(), y = point.getY();
+        PriorityQueue<NodeDistance> queue = new PriorityQueue<NodeDistance>();
+        queue.add(new NodeDistance(root, root.distance(x, y)));
+        T best = null;
+        double bestDistance = maxDistance;
+        while (!queue.isEmpty() && queue.peek().distance < bestDistance) {
+            Node node = queue.poll().node;
+            if (node.children != null) {
+                for (Node child : node.children) {
+                    double d = child.distance(x, y);
+                    if (d < bestDistance) {
+                        queue.add(new NodeDistance(child, d));
+                    }
+                }
+                continue;
+            }
+            for (int i = node.first; i < node.end; i++) {
+                if (boxDistance(itemBoxes[4 * i], itemBoxes[4 * i + 1], itemBoxes[4 * i + 2],
+                        itemBoxes[4 * i + 3], x, y) < bestDistance) {
+                    double d = distance.distance((T) items[i], point);
+                    if (d < bestDistance) {
+                        best = (T) items[i];
+                        bestDistance = d;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the distance from a point to a box, 0 if the point is inside.
+     * @return The distance.
+     */
+    private static double boxDistance(double minX, double minY, double maxX, double maxY,
+            double x, double y) {
+        double dx = Math.max(0, Math.max(minX - x, x - maxX));
+        double dy = Math.max(0, Math.max(minY - y, y - maxY));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Measures the distance from a point to an item.
+     * @param <T> The type of the items.
+     */
+    public interface Distance<T> {
+
+        /**
+         * Returns the distance from a point to an item.
+         * @param item The item.
+         * @param point The point.
+         * @return The distance.
+         */
+        double distance(T item, Vector2D point);
+    }
+
+    /**
+     * A node of the tree: a leaf referencing a range of items, or an inner
+     * node with child nodes.
+     */
+    private static class Node {
+
+        /** The bounding box of everything below the node */
+        private double minX, minY, maxX, maxY;
+        /** The child nodes, or null for a leaf */
+        private Node[] children;
+        /** The first item of a leaf */
+        private int first;
+        /** One past the last item of a leaf */
+        private int end;
+
+        /**
+         * Set the box of a leaf to the union of its items' boxes.
+         * @param boxes The item boxes.
+         * @param first The first item.
+         * @param end One past the last item.
+         */
+        void setBox(double[] boxes, int first, int end) {
+            minX = minY = Double.POSITIVE_INFINITY;
+            maxX = maxY = Double.NEGATIVE_INFINITY;
+            for (int i = first; i < end; i++) {
+                minX = Math.min(minX, boxes[4 * i]);
+                minY = Math.min(minY, boxes[4 * i + 1]);
+                maxX = Math.max(maxX, boxes[4 * i + 2]);
+                maxY = Math.max(maxY, boxes[4 * i + 3]);
+            }
+        }
+
+        /**
+         * Returns the distance from a point to the box of the node.
+         * @param x The x coordinate of the point.
+         * @param y The y coordinate of the point.
+         * @return The distance, 0 if the point is inside the box.
+         */
+        double distance(double x, double y) {
+            return boxDistance(minX, minY, maxX, maxY, x, y);
+        }
+
+        /**
+         * Set the box of an inner node to the union of its children's boxes.
+         */
+        void setBox() {
+            minX = minY = Double.POSITIVE_INFINITY;
+            maxX = maxY = Double.NEGATIVE_INFINITY;
+            for (Node child : children) {
+                minX = Math.min(minX, child.minX);
+                minY = Math.min(minY, child.minY);
+                maxX = Math.max(maxX, child.maxX);
+                maxY = Math.max(maxY, child.maxY);
+            }
+        }
+    }
+
+    /**
+     * A node waiting to be searched, ordered by the distance to its box.
+     */
+    private static class NodeDistance implements Comparable<NodeDistance> {
+
+        /** The node */
+        private Node node;
+        /** The distance from the point to the node's box */
+        private double distance;
+
+        /**
+         * Create a new entry.
+         * @param node The node.
+         * @param distance The distance from the point to the node's box.
+         */
+        NodeDistance(Node node, double distance) {
+            this.node = node;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(NodeDistance other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+}
@@ -22,7 +22,9 @@ public class RoadSegment implements Traversable {
     /** The minimum clearance height of all clearances on this RoadSegment */
     private double minClearanceHeight = Double.MAX_VALUE;
     /** A set of all neighboring traversables */
-    private Set<Traversable> neighbors = new HashSet<Traversable>();
+    private Set<Traversable> neighbors = new NeighborSet();
+    /** A set of all traversables that have this RoadSegment as a neighbor */
+    private Set<Traversable> reverseNeighbors = new NeighborSet();
     /** The segment that defines the start/end points of this RoadSegment */
     private Segment2D segment;
     /** The speed limit of this road segment (in km/h) */
@@ -173,6 +175,14 @@ public class RoadSegment implements Traversable {
         return this.neighbors;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Traversable> getReverseNeighbors() {
+        return this.reverseNeighbors;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -189,6 +199,14 @@ public class RoadSegment implements Traversable {
         this.neighbors = n;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setReverseNeighbors(Set<Traversable> n) {
+        this.reverseNeighbors = n;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -245,6 +263,25 @@ public class RoadSegment implements Traversable {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSpeedValue(double speedValue, double travelTime) {
+        this.speedVal = speedValue;
+        this.travelTime = travelTime;
+    }
+
+    /**
+     * The slowest vehicle limits the speed on a road.
+     * @param vehicle A vehicle.
+     * @return The maximum speed of the vehicle.
+     */
+    @Override
+    public double getLimitingFactor(Vehicle vehicle) {
+        return vehicle.getMaxSpeed();
+    }
+
     /**
      * Calculates the distance value of this off-road in Kilometers.
      */
@@ -293,7 +330,7 @@ public class RoadSegment implements Traversable {
                     return false;
                 }
             }
-            if (vehicle.getHeight() > minClearanceHeight) {
+            if (!canTraverse(vehicle)) {
                 setCost(Transformer.INFINITY);
                 return false;
             }
@@ -303,6 +340,15 @@ public class RoadSegment implements Traversable {
         return true;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean canTraverse(Vehicle vehicle) {
+        // a vehicle must fit under every clearance
+        return vehicle.getHeight() <= minClearanceHeight;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof RoadSegment)) {
@@ -0,0 +1,172 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class <code>RouteCache</code> remembers the paths found between pairs of
+ * <code>Traversable</code>s so that a request can be answered again without
+ * searching, as long as the costs of the network have not changed in a way
+ * that could make a different path better. The least recently used paths are
+ * forgotten first once the cache is full.
+ *
+ * When costs change, invalidate() forgets exactly the paths that may no
+ * longer be right: a path is kept if every Traversable that changed got more
+ * expensive and none of them is on it, since every other route can only have
+ * become more expensive too.
+ *
+ * All methods are synchronized, so a cache may be shared between threads.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class RouteCache {
+
+    /** The number of requests remembered by default */
+    private static final int DEFAULT_CAPACITY = 16;
+    /** Request to the paths found for it, least recently used first */
+    private Map<Request, List<Path>> entries;
+
+    /**
+     * Create a new cache that remembers the paths of the last 16 requests.
+     */
+    public RouteCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new cache.
+     * @param capacity The number of requests to remember.
+     */
+    public RouteCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1.");
+        }
+        entries = new LinkedHashMap<Request, List<Path>>(capacity * 2, .75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Request, List<Path>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the paths remembered for a request.
+     * @param start The Traversable the paths start at.
+     * @param end The Traversable the paths end at.
+     * @return The paths, or null if there are none.
+     */
+    public synchronized List<Path> get(Traversable start, Traversable end) {
+        return entries.get(new Request(start, end));
+    }
+
+    /**
+     * Remember the paths found for a request.
+     * @param start The Traversable the paths start at.
+     * @param end The Traversable the paths end at.
+     * @param paths The paths found, which may be empty.
+     */
+    public synchronized void put(Traversable start, Traversable end, List<Path> paths) {
+        entries.put(new Request(start, end), paths);
+    }
+
+    /**
+     * Forget every path that may have been made wrong by a change of costs.
+     * @param previousCosts The Traversables whose cost changed, mapped to
+     *                      their cost before the change, as returned by the
+     *                      Transformer's event methods.
+     */
+    public synchronized void invalidate(Map<Traversable, Double> previousCosts) {
+        if (previousCosts.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Traversable, Double> change : previousCosts.entrySet()) {
+            double previous = change.getValue();
+            double cost = change.getKey().getCost();
+            if (cost >= 0 && (previous < 0 || cost < previous)) {
+                // something got cheaper, so any path may have a better rival
+                entries.clear();
+                return;
+            }
+        }
+        Set<Traversable> changed = previousCosts.keySet();
+        Iterator<List<Path>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (usesAny(it.next(), changed)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Forget every path.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of requests remembered.
+     * @return The number of requests.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns whether any of the paths goes through any of the Traversables.
+     * @param paths The paths.
+     * @param traversables The Traversables.
+     * @return True if a path uses one of the Traversables.
+     */
+    private static boolean usesAny(List<Path> paths, Set<Traversable> traversables) {
+        for (Path path : paths) {
+            for (Traversable t : path.getRoute()) {
+                if (traversables.contains(t)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A start and end pair, compared by identity since the start and end
+     * Traversables are created anew by every transform.
+     */
+    private static class Request {
+
+        /** Where the paths start */
+        private Traversable start;
+        /** Where the paths end */
+        private Traversable end;
+
+        /**
+         * Create a new request.
+         * @param start Where the paths start.
+         * @param end Where the paths end.
+         */
+        Request(Traversable start, Traversable end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Request)) {
+                return false;
+            }
+            Request other = (Request) o;
+            return start == other.start && end == other.end;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(start) * 31 + System.identityHashCode(end);
+        }
+    }
+}
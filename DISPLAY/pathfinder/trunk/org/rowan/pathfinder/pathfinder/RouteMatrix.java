@@ -0,0 +1,114 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class <code>RouteMatrix</code> holds the cheapest routes from every source
+ * to every target of a <code>BatchRouter</code> request. The cost of a route
+ * is the sum of the costs of every traversable on it, the same as
+ * Path.getTotalCost(). A pair with no route has an infinite cost and a null
+ * route.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class RouteMatrix {
+
+    /** Source to target to the cost of the cheapest route */
+    private double[][] costs;
+    /** The cheapest route of every pair, at source * numTargets + target */
+    private List<List<Traversable>> routes;
+    /** The number of targets */
+    private int numTargets;
+
+    /**
+     * Create a new matrix with no routes.
+     * @param numSources The number of sources.
+     * @param numTargets The number of targets.
+     */
+    RouteMatrix(int numSources, int numTargets) {
+        this.numTargets = numTargets;
+        costs = new double[numSources][numTargets];
+        // rows are filled in parallel, so the list is never resized
+        List<List<Traversable>> empty = Collections.nCopies(numSources * numTargets, null);
+        routes = new ArrayList<List<Traversable>>(empty);
+        for (double[] row : costs) {
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+        }
+    }
+
+    /**
+     * Set the route between a source and a target.
+     * @param source The index of the source.
+     * @param target The index of the target.
+     * @param cost The cost of the route.
+     * @param route The traversables of the route.
+     */
+    void set(int source, int target, double cost, List<Traversable> route) {
+        costs[source][target] = cost;
+        routes.set(index(source, target), route);
+    }
+
+    /**
+     * Returns the number of sources.
+     * @return The number of rows of the matrix.
+     */
+    public int getNumSources() {
+        return costs.length;
+    }
+
+    /**
+     * Returns the number of targets.
+     * @return The number of columns of the matrix.
+     */
+    public int getNumTargets() {
+        return numTargets;
+    }
+
+    /**
+     * Returns the cost of the cheapest route from a source to a target.
+     * @param source The index of the source.
+     * @param target The index of the target.
+     * @return The cost, or Double.POSITIVE_INFINITY if there is no route.
+     */
+    public double getCost(int source, int target) {
+        return costs[source][target];
+    }
+
+    /**
+     * Returns whether there is a route from a source to a target.
+     * @param source The index of the source.
+     * @param target The index of the target.
+     * @return True if the target can be reached from the source.
+     */
+    public boolean hasRoute(int source, int target) {
+        return getRoute(source, target) != null;
+    }
+
+    /**
+     * Returns the cheapest route from a source to a target.
+     * @param source The index of the source.
+     * @param target The index of the target.
+     * @return The traversables from the source to the target, or null if
+     *         there is no route.
+     */
+    public List<Traversable> getRoute(int source, int target) {
+        return routes.get(index(source, target));
+    }
+
+    /**
+     * Returns the position of a pair in the list of routes.
+     * @param source The index of the source.
+     * @param target The index of the target.
+     * @return The position.
+     */
+    private int index(int source, int target) {
+        if (target < 0 || target >= numTargets) {
+            throw new IndexOutOfBoundsException("Target " + target + " of " + numTargets + ".");
+        }
+        return source * numTargets + target;
+    }
+}
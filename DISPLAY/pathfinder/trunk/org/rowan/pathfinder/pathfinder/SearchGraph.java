@@ -0,0 +1,88 @@
+package org.rowan.pathfinder.pathfinder;
+
+/**
+ * Interface <code>SearchGraph</code> is the view of a <code>Traversable</code>
+ * network that the search engines in <code>Pathfinder</code> run on. Every
+ * Traversable is given a dense integer id so that search state can be kept in
+ * primitive arrays, and the outgoing edges of each node are stored as a range
+ * of edge indices: {@code firstEdge(id) <= e < endEdge(id)}. The incoming
+ * edges of each node are stored the same way, in a separate range of reverse
+ * edge indices, so that a search can also be run backwards from the
+ * destination.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public interface SearchGraph {
+
+    /**
+     * Returns the number of nodes that currently have an id. Every id is in
+     * the range [0, size()).
+     * @return The number of nodes known to the graph.
+     */
+    public int size();
+
+    /**
+     * Returns the id of a Traversable.
+     * @param t A Traversable in this graph.
+     * @return The id of the Traversable, or -1 if it is not in this graph.
+     */
+    public int getId(Traversable t);
+
+    /**
+     * Returns the Traversable with the given id.
+     * @param id The id of a node.
+     * @return The Traversable that the id refers to.
+     */
+    public Traversable getTraversable(int id);
+
+    /**
+     * Returns the cost of entering a node, or Transformer.INFINITY (a negative
+     * value) if the node must never be entered.
+     * @param id The id of a node.
+     * @return The cost of the node.
+     */
+    public double getCost(int id);
+
+    /**
+     * Returns the index of the first outgoing edge of a node.
+     * @param id The id of a node.
+     * @return The first edge index of the node.
+     */
+    public int firstEdge(int id);
+
+    /**
+     * Returns one past the index of the last outgoing edge of a node.
+     * @param id The id of a node.
+     * @return The end (exclusive) edge index of the node.
+     */
+    public int endEdge(int id);
+
+    /**
+     * Returns the node that an edge leads to.
+     * @param edge An edge index.
+     * @return The id of the node the edge points to.
+     */
+    public int getTarget(int edge);
+
+    /**
+     * Returns the index of the first incoming edge of a node.
+     * @param id The id of a node.
+     * @return The first reverse edge index of the node.
+     */
+    public int firstReverseEdge(int id);
+
+    /**
+     * Returns one past the index of the last incoming edge of a node.
+     * @param id The id of a node.
+     * @return The end (exclusive) reverse edge index of the node.
+     */
+    public int endReverseEdge(int id);
+
+    /**
+     * Returns the node that a reverse edge comes from.
+     * @param reverseEdge A reverse edge index.
+     * @return The id of the node the edge starts at.
+     */
+    public int getSource(int reverseEdge);
+}
@@ -0,0 +1,215 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import org.rowan.linalgtoolkit.Vector2D;
+import org.rowan.pathfinder.parser.RoadParser;
+import org.rowan.pathfinder.parser.RoadSink;
+import org.rowan.pathfinder.parser.VehicleParser;
+import org.rowan.pathfinder.parser.XMLParser;
+
+/**
+ * Class <code>SearchTester</code> checks the search algorithms against each
+ * other on a road network. Requests between random points on the roads are
+ * transformed, so roads are split for their start and end as they are in
+ * the display, and the cheapest route of every request is found by each
+ * algorithm. Every algorithm must find a route of the same cost as
+ * Djikstra's algorithm, and A* directed by landmarks must settle fewer nodes
+ * than Djikstra's algorithm over all requests. Requests whose start and end
+ * don't split a road are also answered from a contraction hierarchy over
+ * the roads, which is customized whenever the costs change, as the display
+ * does; every other request starts and ends at the start of a road so that
+ * many are. The nodes each algorithm settled are printed, and the tester exits
+ * with status 1 if a check fails.
+ *
+ * Usage: SearchTester [-requests n] roads.osm vehicles.xml
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class SearchTester {
+
+    /** The number of requests made by default */
+    private static final int DEFAULT_REQUESTS = 100;
+    /** The largest difference between two costs, relative to the costs, that counts as equal */
+    private static final double TOLERANCE = 1e-9;
+    /** The names of the algorithms, in the order of the settled counts */
+    private static final String[] NAMES = {"dijkstra", "astar", "astar-landmarks",
+        "bidirectional", "bidirectional-landmarks"};
+
+    /**
+     * Run the checks.
+     * @param args The road file and the vehicle file, optionally after
+     *             -requests and the number of requests to make.
+     * @throws Exception If a file can't be parsed.
+     */
+    public static void main(String[] args) throws Exception {
+        int requests = DEFAULT_REQUESTS;
+        int first = 0;
+        if (args.length >= 2 && args[0].equals("-requests")) {
+            requests = Integer.parseInt(args[1]);
+            first = 2;
+        }
+        if (args.length - first != 2) {
+            System.err.println("Usage: SearchTester [-requests n] roads.osm vehicles.xml");
+            return;
+        }
+        final Set<RoadSegment> roads = new HashSet<RoadSegment>();
+        RoadParser.parseParallel(new File(args[first]), null, new RoadSink() {
+
+            @Override
+            public void addRoad(RoadSegment road) {
+                roads.add(road);
+            }
+        });
+        VehicleParser vehicleParser = new VehicleParser();
+        XMLParser.parse(vehicleParser, new File(args[first + 1]));
+        Set<Vehicle> vehicles = new HashSet<Vehicle>(Collections.singleton(
+                vehicleParser.extractVehicles().iterator().next()));
+
+        List<RoadSegment> roadList = new ArrayList<RoadSegment>(roads);
+        Random random = new Random(1);
+        long[] settled = new long[NAMES.length];
+        int found = 0;
+        int failures = 0;
+        ContractionHierarchy hierarchy = null;
+        long hierarchyCostGeneration = -1;
+        int hierarchyChecks = 0;
+        for (int i = 0; i < requests; i++) {
+            Vector2D start = pointOn(roadList.get(random.nextInt(roadList.size())), random, i % 2 == 1);
+            Vector2D end = pointOn(roadList.get(random.nextInt(roadList.size())), random, i % 2 == 1);
+            List<Traversable> ends = Transformer.transform(roads, null, null, null, null,
+                    vehicles, 1, 1, 1, start, end, Transformer.TransformMode.ROAD_ONLY);
+            QueryContext context = new QueryContext(CompactGraph.compile(Transformer.getTraversables()));
+            Landmarks landmarks = Transformer.getLandmarks();
+            int source = context.getId(ends.get(0));
+            int target = context.getId(ends.get(1));
+
+            DijkstraSearch search = context.getSearch();
+            search.setHeuristic(null);
+            if (!search.run(source, target)) {
+                continue;
+            }
+            found++;
+            double cost = search.getDistance(target);
+            settled[0] += search.getSettledCount();
+
+            search.setHeuristic(new GreatCircleHeuristic(ends.get(1), Transformer.getMinCostPerKm()));
+            search.run(source, target);
+            failures += check(NAMES[1], cost, search.getDistance(target));
+            settled[1] += search.getSettledCount();
+
+            search.setHeuristic(landmarks.towards(context, ends.get(0), ends.get(1)));
+            search.run(source, target);
+            failures += check(NAMES[2], cost, search.getDistance(target));
+            settled[2] += search.getSettledCount();
+
+            BidirectionalSearch bidirectional = context.getBidirectionalSearch();
+            bidirectional.setHeuristics(null, null);
+            bidirectional.run(source, target);
+            failures += check(NAMES[3], cost, costOf(context, bidirectional.getRoute()));
+            settled[3] += bidirectional.getSettledCount();
+
+            bidirectional.setHeuristics(landmarks.towards(context, ends.get(0), ends.get(1)),
+                    landmarks.from(context, ends.get(0), ends.get(1)));
+            bidirectional.run(source, target);
+            failures += check(NAMES[4], cost, costOf(context, bidirectional.getRoute()));
+            settled[4] += bidirectional.getSettledCount();
+
+            if (!Transformer.endsSplitRoads()) {
+                // the neighbors of the roads are only set by a transform, so
+                // the hierarchy is built after the first one
+                if (hierarchy == null) {
+                    hierarchy = new ContractionHierarchy(roads);
+                }
+                if (hierarchyCostGeneration != Transformer.getCostGeneration()) {
+                    hierarchy.customize();
+                    hierarchyCostGeneration = Transformer.getCostGeneration();
+                }
+                context.setHierarchy(hierarchy);
+                HierarchySearch hierarchySearch = context.getHierarchySearch();
+                if (ends.get(0) != ends.get(1)) {
+                    hierarchySearch.run(ends.get(0), ends.get(1));
+                    failures += check("hierarchy", cost, hierarchySearch.getDistance());
+                    failures += check("hierarchy route", cost,
+                            costOf(context, hierarchySearch.getRoute()));
+                    hierarchyChecks++;
+                }
+            }
+        }
+
+        System.out.println(found + " of " + requests + " requests have a route");
+        for (int i = 0; i < NAMES.length; i++) {
+            System.out.println(String.format(Locale.US, "  %-24s %8d nodes settled per request",
+                    NAMES[i], found == 0 ? 0 : settled[i] / found));
+        }
+        System.out.println(hierarchyChecks + " requests checked against the contraction hierarchy");
+        if (settled[2] >= settled[0]) {
+            System.out.println("FAILED: A* with landmarks settled no fewer nodes than Djikstra's algorithm");
+            failures++;
+        }
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * Returns a random point on a road.
+     * @param road The road.
+     * @param random The source of randomness.
+     * @param atStart Whether the point must be the start of the road.
+     * @return A point between the ends of the road, or its start.
+     */
+    private static Vector2D pointOn(RoadSegment road, Random random, boolean atStart) {
+        Vector2D start = Logic2D.getStart(road.getSegment());
+        Vector2D end = Logic2D.getEnd(road.getSegment());
+        if (atStart || random.nextInt(4) == 0) {
+            return start;
+        }
+        double f = random.nextDouble();
+        return new Vector2D(start.getX() + f * (end.getX() - start.getX()),
+                start.getY() + f * (end.getY() - start.getY()));
+    }
+
+    /**
+     * Returns the cost of a route in a context.
+     * @param context The context.
+     * @param route The route, may be null.
+     * @return The sum of the costs of every node after the first,
+     *         Double.MAX_VALUE if there is no route.
+     */
+    private static double costOf(QueryContext context, List<Traversable> route) {
+        if (route == null) {
+            return Double.MAX_VALUE;
+        }
+        double cost = 0;
+        for (int i = 1; i < route.size(); i++) {
+            cost += context.getCost(route.get(i));
+        }
+        return cost;
+    }
+
+    /**
+     * Compare the cost of a route found by an algorithm to the cheapest.
+     * @param name The name of the algorithm.
+     * @param expected The cost of the cheapest route.
+     * @param actual The cost of the route the algorithm found.
+     * @return 1 if they differ, 0 otherwise.
+     */
+    private static int check(String name, double expected, double actual) {
+        if (Math.abs(expected - actual) <= TOLERANCE * Math.max(1, expected)) {
+            return 0;
+        }
+        System.out.println("FAILED: " + name + " found a route costing " + actual
+                + " instead of " + expected);
+        return 1;
+    }
+}
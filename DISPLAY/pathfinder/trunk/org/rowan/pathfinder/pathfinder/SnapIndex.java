@@ -0,0 +1,163 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.rowan.linalgtoolkit.BoundingBox2D;
+import org.rowan.linalgtoolkit.Vector2D;
+import org.rowan.linalgtoolkit.shapes2d.Segment2D;
+
+/**
+ * Class <code>SnapIndex</code> finds the roads and terrains near a point, such
+ * as the start or end of a path entered by the user, without looking at every
+ * road and terrain. The roads are indexed by their segments and the terrains
+ * by their boundaries, each in an <code>RTree</code> that is built the first
+ * time it is needed, so a nearest road or terrain is found in logarithmic time.
+ *
+ * An index belongs to one loaded set of roads and terrains. Whether it still
+ * matches them is told by isFor(), which compares the sets themselves and
+ * their sizes, so an index has to be made again when data is loaded.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class SnapIndex {
+
+    /** The distance from a point to a road's segment */
+    private static final RTree.Distance<RoadSegment> TO_SEGMENT = new RTree.Distance<RoadSegment>() {
+
+        @Override
+        public double distance(RoadSegment road, Vector2D point) {
+            return Logic2D.closestPoint(point, road.getSegment()).distance(point);
+        }
+    };
+    /** The distance from a point to the start of a road's segment */
+    private static final RTree.Distance<RoadSegment> TO_START = new RTree.Distance<RoadSegment>() {
+
+        @Override
+        public double distance(RoadSegment road, Vector2D point) {
+            return Logic2D.getStart(road.getSegment()).distance(point);
+        }
+    };
+    /** The distance from a point to a terrain's boundary */
+    private static final RTree.Distance<Terrain> TO_TERRAIN = new RTree.Distance<Terrain>() {
+
+        @Override
+        public double distance(Terrain terrain, Vector2D point) {
+            return terrain.getBoundary().distance(new Segment2D(point, point));
+        }
+    };
+    /** The roads indexed */
+    private Set<RoadSegment> roads;
+    /** The number of roads when the index was made */
+    private int roadCount;
+    /** The index over the roads, null until it is needed */
+    private RTree<RoadSegment> roadTree;
+    /** The terrains indexed */
+    private Set<Terrain> terrains;
+    /** The number of terrains when the index was made */
+    private int terrainCount;
+    /** The index over the terrains, null until it is needed */
+    private RTree<Terrain> terrainTree;
+
+    /**
+     * Create a new index.
+     * @param roads The roads to index, may be null.
+     * @param terrains The terrains to index, may be null.
+     */
+    public SnapIndex(Set<RoadSegment> roads, Set<Terrain> terrains) {
+        this.roads = roads;
+        this.roadCount = roads == null ? 0 : roads.size();
+        this.terrains = terrains;
+        this.terrainCount = terrains == null ? 0 : terrains.size();
+    }
+
+    /**
+     * Returns whether this index was made for the given roads and terrains,
+     * and they have not had anything added or removed since.
+     * @param roads The roads, may be null.
+     * @param terrains The terrains, may be null.
+     * @return True if the index can be used for the roads and terrains.
+     */
+    public boolean isFor(Set<RoadSegment> roads, Set<Terrain> terrains) {
+        return roads == this.roads && (roads == null || roads.size() == roadCount)
+                && terrains == this.terrains && (terrains == null || terrains.size() == terrainCount);
+    }
+
+    /**
+     * Find the road segment closest to a point.
+     * @param point The point.
+     * @param maxDistance Only roads closer than this are considered.
+     * @return The closest road segment, or null if none is close enough.
+     */
+    public synchronized RoadSegment nearestRoad(Vector2D point, double maxDistance) {
+        return getRoadTree().nearest(point, maxDistance, TO_SEGMENT);
+    }
+
+    /**
+     * Find the road segment whose start is closest to a point.
+     * @param point The point.
+     * @param maxDistance Only roads that start closer than this are considered.
+     * @return The road segment, or null if none is close enough.
+     */
+    public synchronized RoadSegment nearestRoadStart(Vector2D point, double maxDistance) {
+        return getRoadTree().nearest(point, maxDistance, TO_START);
+    }
+
+    /**
+     * Find a terrain that contains a point.
+     * @param point The point.
+     * @return A terrain whose boundary contains the point, or null if there
+     *         is none.
+     */
+    public synchronized Terrain terrainAt(Vector2D point) {
+        Segment2D at = new Segment2D(point, point);
+        for (Terrain terrain : getTerrainTree().query(at.boundingBox())) {
+            if (terrain.getBoundary().intersects(at)) {
+                return terrain;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the terrain closest to a point.
+     * @param point The point.
+     * @param maxDistance Only terrains closer than this are considered.
+     * @return The closest terrain, or null if none is close enough.
+     */
+    public synchronized Terrain nearestTerrain(Vector2D point, double maxDistance) {
+        return getTerrainTree().nearest(point, maxDistance, TO_TERRAIN);
+    }
+
+    /**
+     * Returns the index over the roads, building it if needed.
+     * @return The index.
+     */
+    private RTree<RoadSegment> getRoadTree() {
+        if (roadTree == null) {
+            roadTree = RTree.ofTraversables(roads == null ? Collections.<RoadSegment>emptySet() : roads);
+        }
+        return roadTree;
+    }
+
+    /**
+     * Returns the index over the terrains, building it if needed.
+     * @return The index.
+     */
+    private RTree<Terrain> getTerrainTree() {
+        if (terrainTree == null) {
+            List<Terrain> list = new ArrayList<Terrain>();
+            List<BoundingBox2D> boxes = new ArrayList<BoundingBox2D>();
+            if (terrains != null) {
+                for (Terrain terrain : terrains) {
+                    list.add(terrain);
+                    boxes.add(terrain.getBoundary().boundingBox());
+                }
+            }
+            terrainTree = new RTree<Terrain>(list, boxes);
+        }
+        return terrainTree;
+    }
+}
@@ -34,6 +34,8 @@ public class Terrain {
     private Vector2D mainPoint;
     /** The neighbors of this terrain */
     private Set<Terrain> neighbors = new HashSet<Terrain>();
+    /** The terrains whose neighbors were found together with this one's */
+    private Object neighborhood;
     /** The set of unity points */
     private Set<Vector2D> unityPoints = new HashSet<Vector2D>();
     private BasicShapeAttributes terrainAttr;
@@ -115,6 +117,25 @@ public class Terrain {
         return neighbors;
     }
 
+    /**
+     * Returns the token shared by the terrains whose neighbors were found
+     * together with this one's. Whether two terrains with the same token are
+     * neighbors is already known.
+     * @return The token, or null if this terrain's neighbors were never found.
+     */
+    Object getNeighborhood() {
+        return neighborhood;
+    }
+
+    /**
+     * Sets the token shared by the terrains whose neighbors were found
+     * together with this one's.
+     * @param neighborhood The token.
+     */
+    void setNeighborhood(Object neighborhood) {
+        this.neighborhood = neighborhood;
+    }
+
     /**
      * Adds a unity point to this terrains set of unity points.
      * @param uPoint A point of unity from one terrain to another.
@@ -0,0 +1,175 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.rowan.linalgtoolkit.Vector2D;
+
+/**
+ * Class <code>TerrainAdjacency</code> saves the neighbors found by
+ * Transformer.setTerrainNeighbors() to a file kept next to the terrain file,
+ * so that loading the same terrains again does not have to search for them.
+ * Terrains are referred to by their position in the list they were loaded
+ * in, so the list has to be in the same order when the file is read. A file
+ * holds:
+ * <ul>
+ * <li>the number of terrains and a fingerprint of their boundaries,</li>
+ * <li>the neighbors of every terrain, in compressed sparse row form.</li>
+ * </ul>
+ * A file whose fingerprint doesn't match the terrains is ignored, so a
+ * terrain file that was edited after its adjacency was saved is searched
+ * again. All values are big endian.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class TerrainAdjacency {
+
+    /** The extension added to a terrain file's name to name its adjacency file */
+    private static final String EXTENSION = ".adj";
+    /** The first four bytes of every adjacency file, "PFTA" */
+    private static final int MAGIC = 0x50465441;
+    /** The version of the format written by this class */
+    private static final int VERSION = 1;
+
+    /**
+     * Returns the adjacency file kept next to a terrain file.
+     * @param terrainFile The terrain file.
+     * @return The adjacency file, which may not exist.
+     */
+    public static File fileFor(File terrainFile) {
+        return new File(terrainFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Write the neighbors of a list of terrains. Only neighbors that are in
+     * the list are written.
+     * @param file The file to write to. It is overwritten if it exists.
+     * @param terrains The terrains, whose neighbors have been set.
+     * @throws IOException If the file can't be written.
+     */
+    public static void write(File file, List<Terrain> terrains) throws IOException {
+        Map<Terrain, Integer> ids = new HashMap<Terrain, Integer>();
+        for (int i = 0; i < terrains.size(); i++) {
+            ids.put(terrains.get(i), i);
+        }
+        int[] offsets = new int[terrains.size() + 1];
+        for (int i = 0; i < terrains.size(); i++) {
+            int count = 0;
+            for (Terrain neighbor : terrains.get(i).getNeighbors()) {
+                if (ids.containsKey(neighbor)) {
+                    count++;
+                }
+            }
+            offsets[i + 1] = offsets[i] + count;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(terrains.size());
+            out.writeLong(fingerprint(terrains));
+            out.writeInt(offsets[terrains.size()]);
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            for (Terrain terrain : terrains) {
+                for (Terrain neighbor : terrain.getNeighbors()) {
+                    Integer id = ids.get(neighbor);
+                    if (id != null) {
+                        out.writeInt(id);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read the neighbors of a list of terrains from a file written by
+     * write(). If the file was written for these terrains, their neighbors
+     * are added and Transformer.setTerrainNeighbors() will not search for
+     * neighbors among them again.
+     * @param file The file to read.
+     * @param terrains The terrains, in the order they were written in.
+     * @return True if the neighbors were read, false if the file was written
+     *         for other terrains and nothing was changed.
+     * @throws IOException If the file can't be read or isn't an adjacency
+     *         file.
+     */
+    public static boolean read(File file, List<Terrain> terrains) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("The file is not a Pathfinder terrain adjacency file.");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported terrain adjacency version " + version + ".");
+            }
+            int n = in.readInt();
+            long fingerprint = in.readLong();
+            if (n != terrains.size() || fingerprint != fingerprint(terrains)) {
+                return false;
+            }
+            int numEdges = in.readInt();
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i <= n; i++) {
+                offsets[i] = in.readInt();
+                if (offsets[i] < (i == 0 ? 0 : offsets[i - 1]) || offsets[i] > numEdges) {
+                    throw new IOException("The terrain adjacency file is corrupt.");
+                }
+            }
+            int[] targets = new int[numEdges];
+            for (int i = 0; i < numEdges; i++) {
+                targets[i] = in.readInt();
+                if (targets[i] < 0 || targets[i] >= n) {
+                    throw new IOException("The terrain adjacency file is corrupt.");
+                }
+            }
+
+            Object neighborhood = new Object();
+            for (int i = 0; i < n; i++) {
+                for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                    terrains.get(i).addNeighbor(terrains.get(targets[j]));
+                }
+                terrains.get(i).setNeighborhood(neighborhood);
+            }
+            return true;
+        } catch (EOFException ex) {
+            throw new IOException("The terrain adjacency file is truncated.");
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns a number that changes when any boundary in a list of terrains,
+     * their order, or the distance within which terrains are neighbors
+     * changes.
+     * @param terrains The terrains.
+     * @return The fingerprint.
+     */
+    private static long fingerprint(List<Terrain> terrains) {
+        long hash = Double.doubleToLongBits(Logic2D.MAX_SHAPE_PROXIMITY_DISTANCE);
+        for (Terrain terrain : terrains) {
+            for (Vector2D v : terrain.getBoundary().getWorldVertices()) {
+                hash = 31 * hash + Double.doubleToLongBits(v.getX());
+                hash = 31 * hash + Double.doubleToLongBits(v.getY());
+            }
+            hash = 31 * hash + 1;
+        }
+        return hash;
+    }
+}
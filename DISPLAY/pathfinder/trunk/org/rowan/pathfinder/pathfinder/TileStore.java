@@ -0,0 +1,312 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.rowan.linalgtoolkit.Vector2D;
+
+/**
+ * Class <code>TileStore</code> keeps a road network too large to hold at once
+ * in a directory of tiles, so that only the part of it around a request has
+ * to be in memory. The network is cut into square tiles of a fixed size in
+ * degrees, and every road segment goes in the tile its start lies in. Each
+ * tile is a <code>GraphSnapshot</code> file of its own, next to an index of
+ * the tiles that exist:
+ * <ul>
+ * <li>the tile size and the number of tiles,</li>
+ * <li>the column, row and number of segments of every tile.</li>
+ * </ul>
+ * Tiles are loaded when they are first asked for and kept while they are
+ * used; once more tiles are loaded than the store may keep, the least
+ * recently used are dropped, so memory stays the same however large the
+ * network is. All values are big endian.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class TileStore {
+
+    /** The name of the index file in the directory */
+    private static final String INDEX = "tiles.idx";
+    /** The first four bytes of every index, "PFTI" */
+    private static final int MAGIC = 0x50465449;
+    /** The version of the format written by this class */
+    private static final int VERSION = 1;
+    /** The directory of the store */
+    private File directory;
+    /** The size of a tile in degrees */
+    private double tileSize;
+    /** Tile key to the number of segments in the tile, for the tiles that exist */
+    private Map<Long, Integer> tiles = new HashMap<Long, Integer>();
+    /** The lowest and highest column and row of any tile */
+    private int minX, minY, maxX, maxY;
+    /** Tile key to the roads of the tile, least recently used first */
+    private Map<Long, Set<RoadSegment>> resident;
+
+    /**
+     * Create a new store over the tiles of a directory.
+     * @param directory The directory.
+     * @param capacity The number of tiles to keep loaded.
+     */
+    private TileStore(File directory, final int capacity) {
+        this.directory = directory;
+        resident = new LinkedHashMap<Long, Set<RoadSegment>>(capacity * 2, .75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Set<RoadSegment>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Write a set of roads to a directory as tiles. Existing tiles in the
+     * directory are overwritten, but tiles no longer in the index are not
+     * deleted.
+     * @param directory The directory, which is created if it doesn't exist.
+     * @param roads The roads to store.
+     * @param tileSize The size of a tile in degrees.
+     * @throws IOException If a file can't be written.
+     */
+    public static void write(File directory, Collection<RoadSegment> roads, double tileSize)
+            throws IOException {
+        if (!(tileSize > 0)) {
+            throw new IllegalArgumentException("The tile size must be positive.");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("The directory " + directory + " could not be created.");
+        }
+        Map<Long, List<RoadSegment>> byTile = new LinkedHashMap<Long, List<RoadSegment>>();
+        for (RoadSegment road : roads) {
+            Vector2D start = Logic2D.getStart(road.getSegment());
+            long key = key(column(start.getX(), tileSize), column(start.getY(), tileSize));
+            List<RoadSegment> tile = byTile.get(key);
+            if (tile == null) {
+                tile = new ArrayList<RoadSegment>();
+                byTile.put(key, tile);
+            }
+            tile.add(road);
+        }
+        for (Map.Entry<Long, List<RoadSegment>> entry : byTile.entrySet()) {
+            GraphSnapshot.write(tileFile(directory, x(entry.getKey()), y(entry.getKey())), entry.getValue());
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(directory, INDEX))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeDouble(tileSize);
+            out.writeInt(byTile.size());
+            for (Map.Entry<Long, List<RoadSegment>> entry : byTile.entrySet()) {
+                out.writeInt(x(entry.getKey()));
+                out.writeInt(y(entry.getKey()));
+                out.writeInt(entry.getValue().size());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Open a directory of tiles written by write(). Only the index is read.
+     * @param directory The directory.
+     * @param capacity The number of tiles to keep loaded.
+     * @return The opened store.
+     * @throws IOException If the index can't be read or isn't a tile index.
+     */
+    public static TileStore open(File directory, int capacity) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1.");
+        }
+        TileStore store = new TileStore(directory, capacity);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(directory, INDEX))));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("The file is not a Pathfinder tile index.");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported tile index version " + version + ".");
+            }
+            store.tileSize = in.readDouble();
+            int count = in.readInt();
+            if (!(store.tileSize > 0) || count < 0) {
+                throw new IOException("The tile index is corrupt.");
+            }
+            store.minX = store.minY = Integer.MAX_VALUE;
+            store.maxX = store.maxY = Integer.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                int x = in.readInt();
+                int y = in.readInt();
+                store.tiles.put(key(x, y), in.readInt());
+                store.minX = Math.min(store.minX, x);
+                store.minY = Math.min(store.minY, y);
+                store.maxX = Math.max(store.maxX, x);
+                store.maxY = Math.max(store.maxY, y);
+            }
+        } catch (EOFException ex) {
+            throw new IOException("The tile index is truncated.");
+        } finally {
+            in.close();
+        }
+        return store;
+    }
+
+    /**
+     * Returns the size of a tile in degrees.
+     * @return The tile size.
+     */
+    public double getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Returns the number of tiles in the store.
+     * @return The number of tiles.
+     */
+    public int getNumTiles() {
+        return tiles.size();
+    }
+
+    /**
+     * Returns the column or row of the tiles a coordinate lies in.
+     * @param coordinate A latitude (for the column) or longitude (for the
+     *                   row).
+     * @return The column or row.
+     */
+    public int tileOf(double coordinate) {
+        return column(coordinate, tileSize);
+    }
+
+    /**
+     * Returns whether a range of tiles holds every tile of the store.
+     * @param minX The lowest column.
+     * @param minY The lowest row.
+     * @param maxX The highest column.
+     * @param maxY The highest row.
+     * @return True if no tile lies outside the range.
+     */
+    public boolean covers(int minX, int minY, int maxX, int maxY) {
+        return tiles.isEmpty() || (minX <= this.minX && minY <= this.minY
+                && maxX >= this.maxX && maxY >= this.maxY);
+    }
+
+    /**
+     * Returns the roads of a tile, loading it if it isn't loaded.
+     * @param x The column of the tile.
+     * @param y The row of the tile.
+     * @return The roads of the tile, empty if there is no such tile. The set
+     *         must not be changed.
+     * @throws IOException If the tile can't be read.
+     */
+    public synchronized Set<RoadSegment> getTile(int x, int y) throws IOException {
+        long key = key(x, y);
+        if (!tiles.containsKey(key)) {
+            return Collections.emptySet();
+        }
+        Set<RoadSegment> roads = resident.get(key);
+        if (roads == null) {
+            roads = Collections.unmodifiableSet(GraphSnapshot.open(tileFile(directory, x, y)).extractRoads());
+            resident.put(key, roads);
+        }
+        return roads;
+    }
+
+    /**
+     * Returns the roads of a range of tiles, loading the tiles that aren't
+     * loaded.
+     * @param minX The lowest column.
+     * @param minY The lowest row.
+     * @param maxX The highest column.
+     * @param maxY The highest row.
+     * @return A new set of the roads of every tile in the range.
+     * @throws IOException If a tile can't be read.
+     */
+    public Set<RoadSegment> getRoads(int minX, int minY, int maxX, int maxY) throws IOException {
+        // only the tiles that exist are visited, the range may be much larger
+        minX = Math.max(minX, this.minX);
+        minY = Math.max(minY, this.minY);
+        maxX = Math.min(maxX, this.maxX);
+        maxY = Math.min(maxY, this.maxY);
+        int size = 0;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                Integer count = tiles.get(key(x, y));
+                size += count == null ? 0 : count;
+            }
+        }
+        Set<RoadSegment> roads = new HashSet<RoadSegment>(size * 2);
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                roads.addAll(getTile(x, y));
+            }
+        }
+        return roads;
+    }
+
+    /**
+     * Returns the file of a tile.
+     * @param directory The directory of the store.
+     * @param x The column of the tile.
+     * @param y The row of the tile.
+     * @return The file.
+     */
+    private static File tileFile(File directory, int x, int y) {
+        return new File(directory, "tile_" + x + "_" + y + ".pfgs");
+    }
+
+    /**
+     * Returns the column or row of the tiles a coordinate lies in.
+     * @param coordinate The coordinate.
+     * @param tileSize The size of a tile in degrees.
+     * @return The column or row.
+     */
+    private static int column(double coordinate, double tileSize) {
+        return (int) Math.floor(coordinate / tileSize);
+    }
+
+    /**
+     * Returns the key of a tile.
+     * @param x The column of the tile.
+     * @param y The row of the tile.
+     * @return The key.
+     */
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the column of a tile key.
+     * @param key The key.
+     * @return The column.
+     */
+    private static int x(long key) {
+        return (int) (key >> 32);
+    }
+
+    /**
+     * Returns the row of a tile key.
+     * @param key The key.
+     * @return The row.
+     */
+    private static int y(long key) {
+        return (int) key;
+    }
+}
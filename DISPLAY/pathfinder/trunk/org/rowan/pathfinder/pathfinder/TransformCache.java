@@ -0,0 +1,370 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class <code>TransformCache</code> remembers the networks built by
+ * Transformer.transform(), so that a request for the same data is answered
+ * without splitting roads and attaching speed limits, underpasses and events
+ * again. It has two layers:
+ * <ul>
+ * <li>networks, keyed by the data they were built from: the traversables
+ * with everything attached and their neighbors, but without the start and
+ * end of travel,</li>
+ * <li>within each network, costs, keyed by the vehicles and coefficients
+ * they were calculated with.</li>
+ * </ul>
+ * A network also keeps a profile of every vehicle that has traveled it: what
+ * each of its items is worth to the vehicle alone. The values for a set of
+ * vehicles are picked from their profiles, so they are not calculated from
+ * the items again when the vehicles change.
+ * The data sets are told apart by identity and size, not by their contents,
+ * so the same sets with nothing added or removed give the same network.
+ * The least recently used networks, and the least recently used costs of a
+ * network, are forgotten first once the cache is full.
+ *
+ * The traversables of a network keep their neighbors in sets owned by the
+ * network, which Transformer puts back in place when it uses the network
+ * again, since networks built from the same roads share road segments.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class TransformCache {
+
+    /** The number of networks remembered by default */
+    private static final int DEFAULT_NETWORKS = 4;
+    /** The number of costs remembered per network by default */
+    private static final int DEFAULT_WEIGHTS = 8;
+    /** The number of costs remembered per network */
+    private int weightsCapacity;
+    /** Key to network, least recently used first */
+    private Map<Key, Network> networks;
+
+    /**
+     * Create a new cache that remembers 4 networks and 8 sets of costs for
+     * each.
+     */
+    public TransformCache() {
+        this(DEFAULT_NETWORKS, DEFAULT_WEIGHTS);
+    }
+
+    /**
+     * Create a new cache.
+     * @param networkCapacity The number of networks to remember.
+     * @param weightsCapacity The number of sets of costs to remember for each
+     *                        network.
+     */
+    public TransformCache(final int networkCapacity, int weightsCapacity) {
+        if (networkCapacity < 1 || weightsCapacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least 1.");
+        }
+        this.weightsCapacity = weightsCapacity;
+        networks = lruMap(networkCapacity);
+    }
+
+    /**
+     * Returns the network remembered for a key.
+     * @param key The data the network was built from.
+     * @return The network, or null if there is none.
+     */
+    synchronized Network get(Key key) {
+        return networks.get(key);
+    }
+
+    /**
+     * Remember a network.
+     * @param key The data the network was built from.
+     * @param traversables Every traversable of the network, with its
+     *                     neighbors set.
+     * @param tree Spatial index over the traversables.
+     * @return The network.
+     */
+    synchronized Network put(Key key, Set<Traversable> traversables, RTree<Traversable> tree) {
+        Network network = new Network(traversables, tree, weightsCapacity);
+        networks.put(key, network);
+        return network;
+    }
+
+    /**
+     * Forget every network.
+     */
+    public synchronized void clear() {
+        networks.clear();
+    }
+
+    /**
+     * Returns the number of networks remembered.
+     * @return The number of networks.
+     */
+    public synchronized int size() {
+        return networks.size();
+    }
+
+    /**
+     * Create a map that forgets its least recently used entry once it holds
+     * more than a number of entries.
+     * @param capacity The number of entries to keep.
+     * @return The map.
+     */
+    private static <K, V> Map<K, V> lruMap(final int capacity) {
+        return new LinkedHashMap<K, V>(capacity * 2, .75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * What a network or a set of costs was made from. Data sets are compared
+     * by identity and size, everything else with equals().
+     */
+    static class Key {
+
+        /** The data sets, each followed by its size */
+        private Object[] datasets;
+        /** The other values */
+        private Object[] values;
+
+        /**
+         * Create a new key.
+         * @param datasets The data sets, which may be null.
+         * @param values The other values, which may be null.
+         */
+        Key(Collection<?>[] datasets, Object... values) {
+            this.datasets = new Object[datasets.length * 2];
+            for (int i = 0; i < datasets.length; i++) {
+                this.datasets[2 * i] = datasets[i];
+                this.datasets[2 * i + 1] = datasets[i] == null ? -1 : datasets[i].size();
+            }
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            if (datasets.length != other.datasets.length) {
+                return false;
+            }
+            for (int i = 0; i < datasets.length; i += 2) {
+                if (datasets[i] != other.datasets[i] || !datasets[i + 1].equals(other.datasets[i + 1])) {
+                    return false;
+                }
+            }
+            return Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = Arrays.hashCode(values);
+            for (int i = 0; i < datasets.length; i += 2) {
+                hash = hash * 31 + System.identityHashCode(datasets[i]);
+                hash = hash * 31 + datasets[i + 1].hashCode();
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * The traversables built from a set of data, without the start and end
+     * of travel.
+     */
+    static class Network {
+
+        /** Every traversable */
+        Set<Traversable> traversables;
+        /** Spatial index over the traversables */
+        RTree<Traversable> tree;
+        /** The traversables in the order of the index */
+        List<Traversable> items;
+        /** The neighbors of each item */
+        List<Set<Traversable>> neighbors;
+        /** The reverse neighbors of each item */
+        List<Set<Traversable>> reverseNeighbors;
+        /** The events attached to the traversables */
+        Set<Event> events = new HashSet<Event>();
+        /** Vehicles and coefficients to the costs calculated with them */
+        private Map<Key, Weights> weights;
+        /** The profile of every vehicle that has traveled the network */
+        private Map<Vehicle, Profile> profiles = new HashMap<Vehicle, Profile>();
+
+        /**
+         * Create a new network.
+         * @param traversables Every traversable, with its neighbors set.
+         * @param tree Spatial index over the traversables.
+         * @param weightsCapacity The number of sets of costs to remember.
+         */
+        Network(Set<Traversable> traversables, RTree<Traversable> tree, int weightsCapacity) {
+            this.traversables = traversables;
+            this.tree = tree;
+            items = tree.getItems();
+            neighbors = new ArrayList<Set<Traversable>>(items.size());
+            reverseNeighbors = new ArrayList<Set<Traversable>>(items.size());
+            for (Traversable item : items) {
+                neighbors.add(item.getNeighbors());
+                reverseNeighbors.add(item.getReverseNeighbors());
+            }
+            weights = lruMap(weightsCapacity);
+        }
+
+        /**
+         * Put the neighbor sets of this network back on its traversables.
+         */
+        void restoreNeighbors() {
+            for (int i = 0; i < items.size(); i++) {
+                items.get(i).setNeighbors(neighbors.get(i));
+                items.get(i).setReverseNeighbors(reverseNeighbors.get(i));
+            }
+        }
+
+        /**
+         * Returns the costs remembered for a key.
+         * @param key The vehicles and coefficients.
+         * @return The costs, or null if there are none.
+         */
+        Weights getWeights(Key key) {
+            return weights.get(key);
+        }
+
+        /**
+         * Remember the current costs of the traversables.
+         * @param key The vehicles and coefficients they were calculated with.
+         * @param minMaxValues The values the costs were normalized with.
+         * @param minCostPerKm The lowest cost per kilometer.
+         * @return The costs that were remembered.
+         */
+        Weights putWeights(Key key, double[] minMaxValues, double minCostPerKm) {
+            double[] costs = new double[items.size()];
+            for (int i = 0; i < costs.length; i++) {
+                costs[i] = items.get(i).getCost();
+            }
+            Weights added = new Weights(costs, minMaxValues, minCostPerKm);
+            weights.put(key, added);
+            return added;
+        }
+
+        /**
+         * Forget every set of costs, for example after the events changed.
+         */
+        void clearWeights() {
+            weights.clear();
+        }
+
+        /**
+         * Returns the profile of a vehicle.
+         * @param vehicle The vehicle.
+         * @return The profile, or null if none was made for the vehicle.
+         */
+        Profile getProfile(Vehicle vehicle) {
+            return profiles.get(vehicle);
+        }
+
+        /**
+         * Remember the profile of a vehicle.
+         * @param profile The profile.
+         */
+        void putProfile(Profile profile) {
+            profiles.put(profile.vehicle, profile);
+        }
+    }
+
+    /**
+     * What the items of a network are worth to a single vehicle. Only what
+     * the vehicle and the items themselves decide is kept, so a profile stays
+     * valid when events change.
+     */
+    static class Profile {
+
+        /** The vehicle */
+        Vehicle vehicle;
+        /** Whether the vehicle can't traverse each item, whatever the events */
+        boolean[] blocked;
+        /** How much the vehicle limits travel on each item */
+        double[] limits;
+        /** The speed value of each item if the vehicle traveled it alone */
+        double[] speedValues;
+        /** The travel time of each item if the vehicle traveled it alone */
+        double[] travelTimes;
+
+        /**
+         * Create a new, empty profile.
+         * @param vehicle The vehicle.
+         * @param size The number of items of the network.
+         */
+        Profile(Vehicle vehicle, int size) {
+            this.vehicle = vehicle;
+            blocked = new boolean[size];
+            limits = new double[size];
+            speedValues = new double[size];
+            travelTimes = new double[size];
+        }
+
+        /**
+         * Fill in the values of an item. Its distance value must have been
+         * calculated. Its speed value and travel time are changed.
+         * @param i The position of the item in the network.
+         * @param t The item.
+         */
+        void calculate(int i, Traversable t) {
+            if (!t.canTraverse(vehicle)) {
+                blocked[i] = true;
+                return;
+            }
+            t.calculateSpeedValue(Collections.singleton(vehicle));
+            limits[i] = t.getLimitingFactor(vehicle);
+            speedValues[i] = t.getSpeedValue();
+            travelTimes[i] = t.getTravelTime();
+        }
+    }
+
+    /**
+     * The costs of the traversables of a network.
+     */
+    static class Weights {
+
+        /** The cost of each item of the network */
+        double[] costs;
+        /** The minimum and maximum values the costs were normalized with */
+        double[] minMaxValues;
+        /** The lowest cost per kilometer */
+        double minCostPerKm;
+        /** The landmarks computed for these costs, null until asked for */
+        Landmarks landmarks;
+
+        /**
+         * Create new costs.
+         * @param costs The cost of each item of the network.
+         * @param minMaxValues The values the costs were normalized with.
+         * @param minCostPerKm The lowest cost per kilometer.
+         */
+        Weights(double[] costs, double[] minMaxValues, double minCostPerKm) {
+            this.costs = costs;
+            this.minMaxValues = minMaxValues;
+            this.minCostPerKm = minCostPerKm;
+        }
+
+        /**
+         * Set the costs of the items of a network.
+         * @param network The network.
+         */
+        void apply(Network network) {
+            for (int i = 0; i < costs.length; i++) {
+                network.items.get(i).setCost(costs[i]);
+            }
+        }
+    }
+}
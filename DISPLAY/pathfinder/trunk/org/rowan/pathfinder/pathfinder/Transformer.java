@@ -1,14 +1,20 @@
 package org.rowan.pathfinder.pathfinder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.NavigableMap;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 import org.rowan.linalgtoolkit.BoundingBox2D;
 import org.rowan.linalgtoolkit.Vector2D;
 import org.rowan.linalgtoolkit.shapes2d.Segment2D;
@@ -26,6 +32,12 @@ import org.rowan.linalgtoolkit.shapes2d.Segment2D;
  *    contained within it. (if applicable).
  * 5) Adding a <code>SpeedLimit</code> to it's appropriate <code>RoadSegment</code>
  *
+ * Every public method holds the lock of this class, so calls from different
+ * threads run one at a time. Later calls such as getTraversables() and
+ * getLandmarks() read the results of the last transform, so a caller that
+ * must not see another thread's transform in between holds the lock of this
+ * class around all of them.
+ *
  * @author Shahid Akhter, Dan Urbano
  * @version 1.0
  * @since 1.0
@@ -39,8 +51,54 @@ public class Transformer {
     private static double MAX_PROXIMITY_DISTANCE_TERRAIN = .0002; //needs to be changed
     private static double MAX_PROXIMITY_DISTANCE_ROAD = .0001; //needs to be changed
     private static double MAX_PROXIMITY_DISTANCE_ENTERED_COORDS = .001; //needs to be changed
+    /** How far a road may pass from a snapped start or end and still be split there */
+    private static final double SNAP_TOLERANCE = 1e-9;
     /** The set of all traversables (will be created in transform() */
     private static Set<Traversable> traversables;
+    /** The lowest cost per kilometer of any traversable (set by calculateWeights()) */
+    private static double minCostPerKm = 0;
+    /** The number of landmarks chosen in a network */
+    private static final int LANDMARKS = 8;
+    /** The landmarks of the network with its current costs, null until asked for */
+    private static Landmarks landmarks;
+    /** The remembered costs the network has now, null once events have changed them */
+    private static TransformCache.Weights currentWeights;
+    /** Counts the changes to the costs of the network, see getCostGeneration() */
+    private static long costGeneration = 0;
+    /** Spatial index over the traversables (created in transform()) */
+    private static RTree<Traversable> traversableTree;
+    /** The vehicles of the last transform, used when costs are updated */
+    private static Set<Vehicle> lastVehicles;
+    /** The coefficients of the last transform: safety, speed, distance */
+    private static double[] lastCoefficients;
+    /** The minimum and maximum values the costs were last normalized with */
+    private static double[] lastMinMaxValues;
+    /** The number of threads the stages of transform() run on */
+    private static int parallelism = Runtime.getRuntime().availableProcessors();
+    /** The pool the stages run on, null until needed or when using one thread */
+    private static ForkJoinPool pool;
+    /** Spatial index over the roads and terrains last given to transform() */
+    private static SnapIndex snapIndex;
+    /** Whether the start and end may be snapped inside a road segment */
+    private static boolean snapToSegmentInterior = true;
+    /** Whether the last transform split roads to place its start or end */
+    private static boolean endsSplitRoads;
+    /** The networks built by transform(), reused while the data is unchanged */
+    private static TransformCache cache = new TransformCache();
+    /** The network of the last transform */
+    private static TransformCache.Network network;
+    /** The network whose values were last calculated, with lastVehicles */
+    private static TransformCache.Network valuesNetwork;
+    /** Every event attached to a network, used to detach events that were removed */
+    private static Set<Event> attachedEvents = new HashSet<Event>();
+    /** The start and end of the last transform and the road pieces made for them */
+    private static List<Traversable> endTraversables = new ArrayList<Traversable>();
+    /** The neighbor sets of the network the start and end were added to */
+    private static List<Set<Traversable>> endLinkSets = new ArrayList<Set<Traversable>>();
+    /** What was added to each of endLinkSets */
+    private static List<Traversable> endLinks = new ArrayList<Traversable>();
+    /** The vehicles profiled together whenever a network needs a new profile */
+    private static Set<Vehicle> registeredVehicles = new LinkedHashSet<Vehicle>();
 
         /** The mode that the transformer should operate in */
     public enum TransformMode {
@@ -50,7 +108,8 @@ public class Transformer {
     /** Transform will attach all events, speed limits, and underpasses to
      * all RoadSegments. It will also create a set of OffRoadSegments based on
      * the vehicles that need to travel from start to end and the set of given
-     * Terrains.
+     * Terrains. The network built is remembered (see setCacheSize()), and a
+     * later request for the same data only links its start and end into it.
      * @param roads A set of traversable roads. Could be null if only traveling
      *              off-road.
      * @param events A set of events that have occurred in the surrounding area.
@@ -75,7 +134,7 @@ public class Transformer {
      *             will be ignored.
      * @return An ArrayList containing the start and end traversables.
      */
-    public static ArrayList<Traversable> transform(Set<RoadSegment> roads, Set<Event> events,
+    public static synchronized ArrayList<Traversable> transform(Set<RoadSegment> roads, Set<Event> events,
             Set<SpeedLimit> speedLimits, Set<Terrain> terrains, Set<Underpass> underpasses,
             Set<Vehicle> vehicles, double safetyCoefficient, double speedCoefficient,
             double distanceCoefficient, Vector2D start, Vector2D end, TransformMode mode) 
@@ -86,16 +145,272 @@ public class Transformer {
             vehicles = new HashSet<Vehicle>();
             vehicles.add(Vehicle.createDefaultVehicle());
         }
+        if (snapIndex == null || !snapIndex.isFor(roads, terrains)) {
+            snapIndex = new SnapIndex(roads, terrains);
+        }
         Traversable s = new RoadSegment(new Segment2D(start, start), "");
         Traversable e = new RoadSegment(new Segment2D(end, end), "");
-        s = proximityCheck(s, roads, terrains, mode, vehicles);
-        e = proximityCheck(e, roads, terrains, mode, vehicles);
+        s = proximityCheck(s, snapIndex, mode, vehicles);
+        e = proximityCheck(e, snapIndex, mode, vehicles);
         if (s == null) {
             throw new IllegalArgumentException("The start location was invalid. Please try again.");
         } else if (e == null) {
             throw new IllegalArgumentException("The end location was invalid. Please try again.");
         }
 
+        TransformCache.Key key;
+        if (mode == TransformMode.ROAD_ONLY) {
+            key = new TransformCache.Key(new Collection<?>[]{roads, speedLimits, underpasses}, mode);
+        } else {
+            // off-road segments are laid out from the start and end, at the
+            // speeds of the vehicles, so they are part of the network
+            key = new TransformCache.Key(new Collection<?>[]{roads, speedLimits, terrains, underpasses},
+                    mode, new HashSet<Vehicle>(vehicles), Logic2D.getStart(s.getSegment()).toString(),
+                    Logic2D.getStart(e.getSegment()).toString());
+        }
+        prepareNetwork(key, roads, events, speedLimits, terrains, underpasses, vehicles,
+                safetyCoefficient, speedCoefficient, distanceCoefficient, mode, s, e);
+        placeEnds(e, s);
+        traversables = new HashSet<Traversable>(network.traversables);
+        traversables.addAll(endTraversables);
+
+        ArrayList startAndEnd = new ArrayList();
+        startAndEnd.add(s);
+        startAndEnd.add(e);
+        return startAndEnd;
+    }
+
+    /**
+     * Transform the roads the way transform() does in ROAD_ONLY mode, but
+     * for any number of points of travel instead of one start and end, so
+     * that routes between all of them can be searched in one network. Each
+     * point is snapped onto the closest road and linked into the network;
+     * points that snap to the same place share one traversable.
+     * @param roads A set of traversable roads.
+     * @param events A set of events that have occurred in the surrounding area.
+     *               Could be null if no events have taken place in the area.
+     * @param speedLimits A set of speed limits for the roads.
+     * @param underpasses A set of underpasses that will be converted to clearances.
+     * @param vehicles A set of all vehicles that need to travel.
+     * @param safetyCoefficient The user defined value which represents the
+     *                          importance of safety.
+     * @param speedCoefficient The user defined value which represents the
+     *                          importance of speed.
+     * @param distanceCoefficient The user defined value which represents the
+     *                          importance of distance.
+     * @param points The locations of travel.
+     * @return The traversable of each point, in the order of the points, or
+     *         null for a point that is not close enough to any road.
+     */
+    public static synchronized List<Traversable> transformPoints(Set<RoadSegment> roads, Set<Event> events,
+            Set<SpeedLimit> speedLimits, Set<Underpass> underpasses, Set<Vehicle> vehicles,
+            double safetyCoefficient, double speedCoefficient, double distanceCoefficient,
+            List<Vector2D> points) {
+        if (vehicles == null) {
+            vehicles = new HashSet<Vehicle>();
+            vehicles.add(Vehicle.createDefaultVehicle());
+        }
+        if (snapIndex == null || !snapIndex.isFor(roads, null)) {
+            snapIndex = new SnapIndex(roads, null);
+        }
+        List<Traversable> snapped = new ArrayList<Traversable>(points.size());
+        Map<String, Traversable> byLocation = new LinkedHashMap<String, Traversable>();
+        for (Vector2D point : points) {
+            Traversable t = proximityCheck(new RoadSegment(new Segment2D(point, point), ""),
+                    snapIndex, TransformMode.ROAD_ONLY, vehicles);
+            if (t != null) {
+                String location = Logic2D.getStart(t.getSegment()).toString();
+                if (byLocation.containsKey(location)) {
+                    t = byLocation.get(location);
+                } else {
+                    byLocation.put(location, t);
+                }
+            }
+            snapped.add(t);
+        }
+
+        TransformCache.Key key = new TransformCache.Key(
+                new Collection<?>[]{roads, speedLimits, underpasses}, TransformMode.ROAD_ONLY);
+        prepareNetwork(key, roads, events, speedLimits, null, underpasses, vehicles,
+                safetyCoefficient, speedCoefficient, distanceCoefficient, TransformMode.ROAD_ONLY, null, null);
+        placeEnds(byLocation.values().toArray(new Traversable[byLocation.size()]));
+        traversables = new HashSet<Traversable>(network.traversables);
+        traversables.addAll(endTraversables);
+        return snapped;
+    }
+
+    /**
+     * Returns every traversable created by the last call to transform(), the
+     * start and end points included, with their costs and neighbors set.
+     * @return The set of all traversables, or null if nothing was transformed.
+     */
+    public static synchronized Set<Traversable> getTraversables() {
+        return traversables;
+    }
+
+    /**
+     * Set the number of threads the stages of transform() run on. The stages
+     * give exactly the same traversables, costs and neighbors with any number
+     * of threads. By default there is one thread per processor.
+     * @param threads The number of threads, 1 to run every stage on the
+     *                calling thread.
+     */
+    public static synchronized void setParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("There must be at least one thread.");
+        }
+        if (threads != parallelism && pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        parallelism = threads;
+    }
+
+    /**
+     * Returns the number of threads the stages of transform() run on.
+     * @return The number of threads.
+     */
+    public static synchronized int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the pool the stages of transform() run on, creating it the
+     * first time it is needed.
+     * @return The pool, or null to run on the calling thread.
+     */
+    static synchronized ForkJoinPool getPool() {
+        if (pool == null && parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * Set how many networks transform() remembers, and how many sets of costs
+     * for each. A network is reused when the same roads, speed limits,
+     * terrains and underpasses are given again with nothing added or removed,
+     * in the same mode; in the off-road modes the vehicles, start and end
+     * must be the same too. Costs are reused for the same vehicles and
+     * coefficients while the events are unchanged. Any remembered networks
+     * are forgotten.
+     * @param networks The number of networks to remember.
+     * @param weights The number of sets of costs to remember per network.
+     */
+    public static synchronized void setCacheSize(int networks, int weights) {
+        cache = new TransformCache(networks, weights);
+    }
+
+    /**
+     * Forget every network remembered by transform(), for example to free
+     * memory after the data it was built from is no longer used.
+     */
+    public static synchronized void clearCache() {
+        cache.clear();
+        attachedEvents = new HashSet<Event>(network == null ? Collections.<Event>emptySet() : network.events);
+    }
+
+    /**
+     * Register the vehicles that may travel. A network keeps a profile of
+     * each vehicle that travels it, with the values of every traversable for
+     * that vehicle alone, and the values for a request are picked from the
+     * profiles of its vehicles. When a network needs a profile, one is made
+     * for every registered vehicle it lacks in the same pass, so choosing
+     * other registered vehicles later doesn't look at the traversables
+     * again. The vehicles replace any registered before.
+     * @param vehicles The vehicles, may be null to register none.
+     */
+    public static synchronized void registerVehicles(Collection<Vehicle> vehicles) {
+        registeredVehicles = new LinkedHashSet<Vehicle>();
+        if (vehicles != null) {
+            registeredVehicles.addAll(vehicles);
+        }
+    }
+
+    /**
+     * Set whether the start and end of travel may be snapped onto the inside
+     * of a road segment, rather than only onto the start of one. A road the
+     * start or end is snapped inside of is split at that point for the
+     * transform. By default they may.
+     * @param interior True to snap onto the closest point of any road, false
+     *                 to snap onto the closest start of a road.
+     */
+    public static synchronized void setSnapToSegmentInterior(boolean interior) {
+        snapToSegmentInterior = interior;
+    }
+
+    /**
+     * Returns whether the last call to transform() split any of the given
+     * roads to place the start or end inside them. If it did, the
+     * traversables are not exactly the roads that were given, so anything
+     * built over the roads alone, such as a contraction hierarchy, does not
+     * apply to them.
+     * @return True if roads were split for the start or end.
+     */
+    public static synchronized boolean endsSplitRoads() {
+        return endsSplitRoads;
+    }
+
+    /**
+     * Make the network for a request the network of the transform, building
+     * it if it isn't remembered, and bring its events and costs up to date.
+     * The ends of the last transform are taken out of it first.
+     * @param key What the network is built from.
+     * @param roads The roads.
+     * @param events The events, may be null.
+     * @param speedLimits The speed limits.
+     * @param terrains The terrains.
+     * @param underpasses The underpasses.
+     * @param vehicles The vehicles that will be traveling.
+     * @param safetyCoefficient The importance of safety.
+     * @param speedCoefficient The importance of speed.
+     * @param distanceCoefficient The importance of distance.
+     * @param mode The mode of the transformer.
+     * @param s The start traversable, only used in the off-road modes.
+     * @param e The end traversable, only used in the off-road modes.
+     */
+    private static void prepareNetwork(TransformCache.Key key, Set<RoadSegment> roads,
+            Set<Event> events, Set<SpeedLimit> speedLimits, Set<Terrain> terrains,
+            Set<Underpass> underpasses, Set<Vehicle> vehicles, double safetyCoefficient,
+            double speedCoefficient, double distanceCoefficient, TransformMode mode,
+            Traversable s, Traversable e) {
+        removeEnds();
+        TransformCache.Network net = cache.get(key);
+        if (net == null) {
+            net = buildNetwork(key, roads, speedLimits, terrains, underpasses, vehicles, mode, s, e);
+        } else if (net != network) {
+            net.restoreNeighbors();
+        }
+        network = net;
+        traversableTree = net.tree;
+
+        boolean eventsChanged = attachChangedEvents(events);
+      //  System.err.println("Attaching Events Finished...");
+        calculateWeights(vehicles, safetyCoefficient, speedCoefficient, distanceCoefficient, eventsChanged);
+      //  System.err.println("Calculating weights Finished!");
+    }
+
+    /**
+     * Build the network for a request: attach the speed limits, split the
+     * segments that cross, attach the underpasses and link every traversable
+     * to its neighbors. The start and end are not part of the network, but
+     * off-road segments are laid out from them. The network is remembered in
+     * the cache.
+     * @param key What the network is built from.
+     * @param roads The roads.
+     * @param speedLimits The speed limits.
+     * @param terrains The terrains.
+     * @param underpasses The underpasses.
+     * @param vehicles The vehicles that will be traveling.
+     * @param mode The mode of the transformer.
+     * @param s The start traversable.
+     * @param e The end traversable.
+     * @return The network.
+     */
+    @SuppressWarnings("unchecked")
+    private static TransformCache.Network buildNetwork(TransformCache.Key key, Set<RoadSegment> roads,
+            Set<SpeedLimit> speedLimits, Set<Terrain> terrains, Set<Underpass> underpasses,
+            Set<Vehicle> vehicles, TransformMode mode, Traversable s, Traversable e) {
         Set<OffRoadSegment> offroads = new HashSet<OffRoadSegment>();
         switch (mode) {
             case TERRAIN_ONLY:
@@ -108,36 +423,58 @@ public class Transformer {
 
         attachSpeedLimitsToRoads(speedLimits, roads);
       //  System.err.println("Attaching speed limits finished...");
-    //    System.err.println("Roads Size: " + ((roads == null ? 0 : roads.size())));
-    //    System.err.println("Offroads Size: " + (offroads == null ? 0 : offroads.size()));
-        traversables = splitIntersectingSegments(roads, offroads, mode);
+        Set<Traversable> split = splitIntersectingSegments(roads, offroads, mode);
      //   System.err.println("Split Intersecting Segments Finished...");
-        int rs = 0, os = 0;
-        for (Traversable t : traversables) {
-            if (t instanceof RoadSegment) {
-                rs++;
-            } else {
-                os++;
-            }
-        }
-    //    System.err.println("Roads Size: " + rs);
-     //   System.err.println("Offroads Size: " + os);
-        traversables.add(e);
-        traversables.add(s);
-
-        attachEventsToTraversables(events, traversables);
-      //  System.err.println("Attaching Events Finished...");
-        attachUnderpassesToRoads(underpasses, traversables);
+        RTree<Traversable> tree = RTree.ofTraversables(split);
+        attachUnderpassesToRoads(underpasses, split);
       //  System.err.println("Attaching Underpasses Finished...");
-        calculateWeights(vehicles, safetyCoefficient, speedCoefficient, distanceCoefficient);
-      //  System.err.println("Calculating weights Finished!");
-        setNeighbors(traversables);
+        setNeighbors(tree.getItems());
       //  System.err.println("Setting Neighbors Finished...");
+        return cache.put(key, split, tree);
+    }
 
-        ArrayList startAndEnd = new ArrayList();
-        startAndEnd.add(s);
-        startAndEnd.add(e);
-        return startAndEnd;
+    /**
+     * Bring the events attached to the network of the last transform up to
+     * date: attach the events it doesn't have yet and detach the ones that
+     * are no longer given. The costs remembered for the network are
+     * forgotten if anything changed.
+     * @param events The events of the request, may be null.
+     * @return True if any event was attached or detached.
+     */
+    private static boolean attachChangedEvents(Set<Event> events) {
+        if (events == null) {
+            events = Collections.emptySet();
+        }
+        Set<Event> removed = new HashSet<Event>();
+        for (Event event : attachedEvents) {
+            if (!events.contains(event)) {
+                removed.add(event);
+            }
+        }
+        Set<Event> added = new LinkedHashSet<Event>();
+        for (Event event : events) {
+            if (!network.events.contains(event)) {
+                added.add(event);
+            }
+        }
+        boolean changed = false;
+        for (Event event : removed) {
+            // other networks may share the traversables, so every event
+            // attached anywhere is looked for
+            for (Traversable traversable : traversableTree.query(event.getBoundary().boundingBox())) {
+                changed |= traversable.getEvents().remove(event);
+            }
+        }
+        changed |= network.events.removeAll(removed);
+        attachedEvents.removeAll(removed);
+        attachEventsToTraversables(added, network.traversables);
+        network.events.addAll(added);
+        attachedEvents.addAll(added);
+        changed |= !added.isEmpty();
+        if (changed) {
+            network.clearWeights();
+        }
+        return changed;
     }
 
     /**
@@ -150,15 +487,112 @@ public class Transformer {
         if (traversables == null || traversables.isEmpty() || events == null || events.isEmpty()) {
             return;
         }
-        // algorithm runs in O(n^2), where n = max(numEvents, numTraversables)
-        // this algorithm should be replaced with a faster one if possible
-        for (Traversable traversable : traversables) {
-            for (Event event : events) {
-                if (event.getBoundary().intersects(traversable.getSegment())) {
-                    traversable.getEvents().add(event);
+        // finding what an event intersects only reads the traversables, so
+        // that is done in parallel and the events are then attached in order
+        final Event[] eventArray = events.toArray(new Event[events.size()]);
+        List<List<Traversable>> empty = Collections.nCopies(eventArray.length, null);
+        final List<List<Traversable>> intersected = new ArrayList<List<Traversable>>(empty);
+        ParallelLoop.run(getPool(), eventArray.length, 1, new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    intersected.set(i, findIntersected(eventArray[i]));
                 }
             }
+        });
+        for (int i = 0; i < eventArray.length; i++) {
+            for (Traversable traversable : intersected.get(i)) {
+                traversable.getEvents().add(eventArray[i]);
+            }
+        }
+    }
+
+    /**
+     * Attach an event to every traversable it intersects.
+     * @param event The event to attach.
+     * @return The traversables the event was attached to.
+     */
+    private static Set<Traversable> attachEvent(Event event) {
+        Set<Traversable> attached = new HashSet<Traversable>();
+        for (Traversable traversable : findIntersected(event)) {
+            traversable.getEvents().add(event);
+            attached.add(traversable);
+        }
+        return attached;
+    }
+
+    /**
+     * Find every traversable an event intersects. Only the traversables whose
+     * bounding box touches the event's are tested.
+     * @param event The event.
+     * @return The traversables the event intersects.
+     */
+    private static List<Traversable> findIntersected(Event event) {
+        List<Traversable> intersected = new ArrayList<Traversable>();
+        for (Traversable traversable : findNear(event)) {
+            if (event.getBoundary().intersects(traversable.getSegment())) {
+                intersected.add(traversable);
+            }
+        }
+        return intersected;
+    }
+
+    /**
+     * Find the traversables of the last transform whose bounding box touches
+     * an event's, the start, end and road pieces made for them included.
+     * @param event The event.
+     * @return The traversables near the event.
+     */
+    private static List<Traversable> findNear(Event event) {
+        List<Traversable> near = traversableTree.query(event.getBoundary().boundingBox());
+        for (Traversable traversable : endTraversables) {
+            if (event.getBoundary().boundingBox().intersects(traversable.getSegment().boundingBox())) {
+                near.add(traversable);
+            }
+        }
+        return near;
+    }
+
+    /**
+     * Attach a new event to the traversables created by the last call to
+     * transform() and recalculate the costs of the traversables it touches,
+     * without transforming again.
+     * @param event The event that was added.
+     * @return The traversables whose cost changed, mapped to their cost
+     *         before the change. Empty if nothing has been transformed.
+     */
+    public static synchronized Map<Traversable, Double> addEvent(Event event) {
+        if (traversables == null) {
+            return new HashMap<Traversable, Double>();
+        }
+        network.events.add(event);
+        attachedEvents.add(event);
+        network.clearWeights();
+        currentWeights = null;
+        return recalculateWeights(attachEvent(event));
+    }
+
+    /**
+     * Recalculate the costs of the traversables an event is attached to,
+     * after its severity has decayed.
+     * @param event The event that changed.
+     * @return The traversables whose cost changed, mapped to their cost
+     *         before the change. Empty if nothing has been transformed.
+     */
+    public static synchronized Map<Traversable, Double> updateEvent(Event event) {
+        if (traversables == null) {
+            return new HashMap<Traversable, Double>();
+        }
+        network.clearWeights();
+        currentWeights = null;
+        Set<Traversable> touched = new HashSet<Traversable>();
+        for (Traversable traversable : findNear(event)) {
+            if (traversable.getEvents().contains(event)) {
+                touched.add(traversable);
+            }
         }
+        return recalculateWeights(touched);
     }
 
     /**
@@ -167,92 +601,119 @@ public class Transformer {
      * @param speedLimits The set of speed limits to add to roads..
      * @param roads The set of roads to attach event references to.
      */
-    private static void attachSpeedLimitsToRoads(Set<SpeedLimit> speedLimits, Set<RoadSegment> roads) {
+    private static void attachSpeedLimitsToRoads(Set<SpeedLimit> speedLimits, final Set<RoadSegment> roads) {
         if (roads.isEmpty() || speedLimits == null || speedLimits.isEmpty()) {
             return;
         }
-        for (SpeedLimit sl : speedLimits) {
-            if (sl.getStart() == null) {
-                for (RoadSegment road : roads) {
-                    if (road.getRoadName().trim().equalsIgnoreCase(sl.getRoadName().trim())) {
-                        road.setSpeedLimit(sl.getLimit());
-                    }
+        // finding the roads of a speed limit only reads the roads, so that is
+        // done in parallel and the limits are then set in their original order
+        final SpeedLimit[] limits = speedLimits.toArray(new SpeedLimit[speedLimits.size()]);
+        List<List<RoadSegment>> empty = Collections.nCopies(limits.length, null);
+        final List<List<RoadSegment>> limitedRoads = new ArrayList<List<RoadSegment>>(empty);
+        ParallelLoop.run(getPool(), limits.length, 1, new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    limitedRoads.set(i, findLimitedRoads(limits[i], roads));
                 }
-            } else {
-                double distance;
-                double sMinDistance = MAX_PROXIMITY_DISTANCE_ROAD;
-                double eMinDistance = MAX_PROXIMITY_DISTANCE_ROAD;
-                RoadSegment sClosestSegment = null, eClosestSegment = null;
-                boolean sCloserToSegmentStart = true, eCloserToSegmentStart = true;
-                for (RoadSegment road : roads) {
-                    if (road.getRoadName().trim().equalsIgnoreCase(sl.getRoadName().trim())) {
-                        // is the start of the segment near the start of the speed limit?
-                        distance = Logic2D.getStart(road.getSegment()).distance(sl.getStart());
-                        if (distance < sMinDistance) {
-                            sMinDistance = distance;
-                            sClosestSegment = road;
-                            sCloserToSegmentStart = true;
-                        }
-                        // is the end of the segment near the start of the speed limit?
-                        distance = Logic2D.getEnd(road.getSegment()).distance(sl.getStart());
-                        if (distance < sMinDistance) {
-                            sMinDistance = distance;
-                            sClosestSegment = road;
-                            sCloserToSegmentStart = false;
-                        }
-                        // is the start of the segment near the end of the speed limit?
-                        distance = Logic2D.getStart(road.getSegment()).distance(sl.getEnd());
-                        if (distance < eMinDistance) {
-                            eMinDistance = distance;
-                            eClosestSegment = road;
-                            eCloserToSegmentStart = true;
-                        }
-                        // is the end of the segment near the end of the speed limit?
-                        distance = Logic2D.getEnd(road.getSegment()).distance(sl.getEnd());
-                        if (distance < sMinDistance) {
-                            eMinDistance = distance;
-                            eClosestSegment = road;
-                            eCloserToSegmentStart = false;
-                        }
-                    }
+            }
+        });
+        for (int i = 0; i < limits.length; i++) {
+            setSpeedLimits(limitedRoads.get(i), limits[i].getLimit());
+        }
+    }
+
+    /**
+     * Given a speed limit and a set of roads, find the road segments the
+     * speed limit applies to.
+     * @param sl The speed limit.
+     * @param roads The set of roads.
+     * @return The road segments to set the speed limit of, empty if none could
+     *         be found.
+     */
+    private static List<RoadSegment> findLimitedRoads(SpeedLimit sl, Set<RoadSegment> roads) {
+        List<RoadSegment> list = new ArrayList<RoadSegment>();
+        if (sl.getStart() == null) {
+            for (RoadSegment road : roads) {
+                if (road.getRoadName().trim().equalsIgnoreCase(sl.getRoadName().trim())) {
+                    list.add(road);
                 }
-                if (sClosestSegment == null || eClosestSegment == null) {
-                    //TODO ERROR OUT, COULDN'T FIND A ROAD SEGMENT CLOSE
-                    //ENOUGH TO ONE OF THE SPEED LIMIT LOCATIONS,
-                    //CAN'T ATTACH SPEED LIMIT TO A ROAD
-                } else {
-                    // find the path between sClosestSegment and eClosestSegment
-                    // and set the speed limit of all segments in between
-                    List<RoadSegment> list = new ArrayList<RoadSegment>();
-                    Vector2D end = eCloserToSegmentStart
-                            ? Logic2D.getStart(eClosestSegment.getSegment())
-                            : Logic2D.getEnd(eClosestSegment.getSegment());
-                    if (findPath(sClosestSegment, end, list)) {
-                        if (!sCloserToSegmentStart) {
-                            list.remove(0);
-                        }
-                        setSpeedLimits(list, sl.getLimit());
-                    } else {
-                        Set<Traversable> travs = new HashSet<Traversable>();
-                        for (RoadSegment r : roads) {
-                            travs.add(r);
-                        }
-                        RoadSegment otherWay = findDuplicateSegment(sClosestSegment, travs);
-                        list.clear();
-                        if (otherWay == null) {
-                            //TODO ERROR OUT COULDN'T FIND PATH FROM START TO END
-                        } else if (findPath(otherWay, end, list)) {
-                            if (!sCloserToSegmentStart) {
-                                list.remove(0);
-                            }
-                            setSpeedLimits(list, sl.getLimit());
-                        } else {
-                            //TODO ERROR OUT WITH SAME ERROR AS OTHERWAY==NULL
-                        }
-                    }
+            }
+            return list;
+        }
+        double distance;
+        double sMinDistance = MAX_PROXIMITY_DISTANCE_ROAD;
+        double eMinDistance = MAX_PROXIMITY_DISTANCE_ROAD;
+        RoadSegment sClosestSegment = null, eClosestSegment = null;
+        boolean sCloserToSegmentStart = true, eCloserToSegmentStart = true;
+        for (RoadSegment road : roads) {
+            if (road.getRoadName().trim().equalsIgnoreCase(sl.getRoadName().trim())) {
+                // is the start of the segment near the start of the speed limit?
+                distance = Logic2D.getStart(road.getSegment()).distance(sl.getStart());
+                if (distance < sMinDistance) {
+                    sMinDistance = distance;
+                    sClosestSegment = road;
+                    sCloserToSegmentStart = true;
+                }
+                // is the end of the segment near the start of the speed limit?
+                distance = Logic2D.getEnd(road.getSegment()).distance(sl.getStart());
+                if (distance < sMinDistance) {
+                    sMinDistance = distance;
+                    sClosestSegment = road;
+                    sCloserToSegmentStart = false;
+                }
+                // is the start of the segment near the end of the speed limit?
+                distance = Logic2D.getStart(road.getSegment()).distance(sl.getEnd());
+                if (distance < eMinDistance) {
+                    eMinDistance = distance;
+                    eClosestSegment = road;
+                    eCloserToSegmentStart = true;
+                }
+                // is the end of the segment near the end of the speed limit?
+                distance = Logic2D.getEnd(road.getSegment()).distance(sl.getEnd());
+                if (distance < sMinDistance) {
+                    eMinDistance = distance;
+                    eClosestSegment = road;
+                    eCloserToSegmentStart = false;
                 }
             }
         }
+        if (sClosestSegment == null || eClosestSegment == null) {
+            //TODO ERROR OUT, COULDN'T FIND A ROAD SEGMENT CLOSE
+            //ENOUGH TO ONE OF THE SPEED LIMIT LOCATIONS,
+            //CAN'T ATTACH SPEED LIMIT TO A ROAD
+            return list;
+        }
+        // find the path between sClosestSegment and eClosestSegment
+        // and set the speed limit of all segments in between
+        Vector2D end = eCloserToSegmentStart
+                ? Logic2D.getStart(eClosestSegment.getSegment())
+                : Logic2D.getEnd(eClosestSegment.getSegment());
+        if (findPath(sClosestSegment, end, list)) {
+            if (!sCloserToSegmentStart) {
+                list.remove(0);
+            }
+            return list;
+        }
+        Set<Traversable> travs = new HashSet<Traversable>();
+        for (RoadSegment r : roads) {
+            travs.add(r);
+        }
+        RoadSegment otherWay = findDuplicateSegment(sClosestSegment, travs);
+        list.clear();
+        if (otherWay == null) {
+            //TODO ERROR OUT COULDN'T FIND PATH FROM START TO END
+        } else if (findPath(otherWay, end, list)) {
+            if (!sCloserToSegmentStart) {
+                list.remove(0);
+            }
+            return list;
+        } else {
+            //TODO ERROR OUT WITH SAME ERROR AS OTHERWAY==NULL
+            list.clear();
+        }
+        return list;
     }
 
     /**
@@ -336,92 +797,203 @@ public class Transformer {
      * @param underpasses The set of underpasses to add to roads. 
      * @param traversables The set of traversables to attach an underpass to. 
      */
-    private static void attachUnderpassesToRoads(Set<Underpass> underpasses, Set<Traversable> traversables) {
+    private static void attachUnderpassesToRoads(Set<Underpass> underpasses, final Set<Traversable> traversables) {
         if (traversables.isEmpty() || underpasses == null || underpasses.isEmpty()) {
             return;
         }
-        for (Underpass underpass : underpasses) {
-            double distance;
-            double minDistance = MAX_PROXIMITY_DISTANCE_ROAD;
-            RoadSegment closestSegment = null;
-            for (Traversable traversable : traversables) {
-                if (traversable instanceof RoadSegment) {
-                    RoadSegment road = (RoadSegment) traversable;
-                    if (road.getRoadName() != null) {
-                        if (road.getRoadName().trim().equalsIgnoreCase(underpass.getUnderRoad().trim())) {
-                            distance = road.getSegment().distance(underpass.getLocation());
-                            // is the road segment near the underpass?
-                            if (distance < minDistance) {
-                                minDistance = distance;
-                                closestSegment = road;
-                            }
-                        }
+        // finding the road under an underpass only reads the traversables, so
+        // that is done in parallel and the clearances are then added in order
+        final Underpass[] underpassArray = underpasses.toArray(new Underpass[underpasses.size()]);
+        final RoadSegment[] closestSegments = new RoadSegment[underpassArray.length];
+        final RoadSegment[] duplicateSegments = new RoadSegment[underpassArray.length];
+        ParallelLoop.run(getPool(), underpassArray.length, 1, new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    closestSegments[i] = findUnderpassRoad(underpassArray[i], traversables);
+                    if (closestSegments[i] != null) {
+                        duplicateSegments[i] = findDuplicateSegment(closestSegments[i], traversables);
                     }
                 }
             }
-            if (closestSegment == null) {
+        });
+        for (int i = 0; i < underpassArray.length; i++) {
+            if (closestSegments[i] == null) {
                 //TODO ERROR OUT, COULDN'T ATTACH UNDERPASS
             } else {
                 // attach underpass to the road
-                closestSegment.addClearanceHeight(underpass.getHeight());
-                findDuplicateSegment(closestSegment, traversables).addClearanceHeight(underpass.getHeight());
+                closestSegments[i].addClearanceHeight(underpassArray[i].getHeight());
+                duplicateSegments[i].addClearanceHeight(underpassArray[i].getHeight());
+            }
+        }
+    }
+
+    /**
+     * Given an underpass and a set of traversables, find the road segment
+     * that passes under it.
+     * @param underpass The underpass.
+     * @param traversables The set of traversables to search. Only
+     *                     RoadSegments will be considered.
+     * @return The closest road segment with the name of the road under the
+     *         underpass, or null if none is close enough.
+     */
+    private static RoadSegment findUnderpassRoad(Underpass underpass, Set<Traversable> traversables) {
+        double distance;
+        double minDistance = MAX_PROXIMITY_DISTANCE_ROAD;
+        RoadSegment closestSegment = null;
+        for (Traversable traversable : traversables) {
+            if (traversable instanceof RoadSegment) {
+                RoadSegment road = (RoadSegment) traversable;
+                if (road.getRoadName() != null) {
+                    if (road.getRoadName().trim().equalsIgnoreCase(underpass.getUnderRoad().trim())) {
+                        distance = road.getSegment().distance(underpass.getLocation());
+                        // is the road segment near the underpass?
+                        if (distance < minDistance) {
+                            minDistance = distance;
+                            closestSegment = road;
+                        }
+                    }
+                }
             }
         }
+        return closestSegment;
     }
 
     /**
-     * Set the neighbors of every traversable.
-     * @param traversables The set of roads to find neighbors for.
+     * Set the neighbors of every traversable. A traversable only ever changes
+     * its own neighbor sets here, so all of them are linked at once.
+     * @param traversables The list of roads to find neighbors for.
      */
-    private static void setNeighbors(Set<Traversable> traversables) {
-        HashMap<String, ArrayList<Traversable>> endMap = new HashMap<String, ArrayList<Traversable>>();
-        Vector2D start, end;
-        String str;
+    private static void setNeighbors(final List<Traversable> traversables) {
+        final int n = traversables.size();
+        final String[] starts = new String[n];
+        final String[] ends = new String[n];
+        ParallelLoop.run(getPool(), n, new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    Traversable t = traversables.get(i);
+                    starts[i] = Logic2D.getStart(t.getSegment()).toString();
+                    ends[i] = Logic2D.getEnd(t.getSegment()).toString();
+                }
+            }
+        });
 
-        for(Traversable t: traversables)
-        {
-            t.getNeighbors().clear();
+        final HashMap<String, ArrayList<Traversable>> startMap = new HashMap<String, ArrayList<Traversable>>();
+        final HashMap<String, ArrayList<Traversable>> endMap = new HashMap<String, ArrayList<Traversable>>();
+        for (int i = 0; i < n; i++) {
+            addToMapList(starts[i], startMap, traversables.get(i));
+            addToMapList(ends[i], endMap, traversables.get(i));
         }
 
-        for (Traversable t : traversables) {
-            end = Logic2D.getEnd(t.getSegment());
-            str = end.toString();
-            if (endMap.containsKey(str)) {
-                endMap.get(str).add(t);
-            } else {
-                ArrayList newEnd = new ArrayList<Traversable>();
-                newEnd.add(t);
-                endMap.put(str, newEnd);
-            }
-        }
-        for (Traversable t : traversables) {
-            start = Logic2D.getStart(t.getSegment());
-            str = start.toString();
-            ArrayList<Traversable> travsEndingAtMe = endMap.get(str);
-            if (travsEndingAtMe != null) {
-                for (Traversable trav : travsEndingAtMe) {
-                    if (!(trav.equals(t))) {
-                        trav.getNeighbors().add(t);
+        ParallelLoop.run(getPool(), n, new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    Traversable t = traversables.get(i);
+                    // fresh sets, since a cached network may own the old ones
+                    t.setNeighbors(new NeighborSet());
+                    t.setReverseNeighbors(new NeighborSet());
+                    ArrayList<Traversable> travsStartingAtMyEnd = startMap.get(ends[i]);
+                    if (travsStartingAtMyEnd != null) {
+                        for (Traversable trav : travsStartingAtMyEnd) {
+                            if (!(trav.equals(t))) {
+                                t.getNeighbors().add(trav);
+                            }
+                        }
+                    }
+                    ArrayList<Traversable> travsEndingAtMe = endMap.get(starts[i]);
+                    if (travsEndingAtMe != null) {
+                        for (Traversable trav : travsEndingAtMe) {
+                            if (!(trav.equals(t))) {
+                                t.getReverseNeighbors().add(trav);
+                            }
+                        }
                     }
                 }
             }
+        });
+    }
+
+    /**
+     * Add a traversable to the list of a key, creating the list if needed.
+     * @param key The key.
+     * @param map The map of lists.
+     * @param t The traversable.
+     */
+    private static void addToMapList(String key, HashMap<String, ArrayList<Traversable>> map, Traversable t) {
+        ArrayList<Traversable> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Traversable>();
+            map.put(key, list);
         }
+        list.add(t);
     }
 
     /**
-     * Sets the neighbors of every Terrain
+     * Sets the neighbors of every Terrain. Only terrains whose bounding boxes
+     * come within Logic2D.MAX_SHAPE_PROXIMITY_DISTANCE of each other are
+     * tested with Logic2D.isNeighbor(), and pairs whose neighbors were
+     * already found together (by an earlier call or from an adjacency file)
+     * are not tested again.
      * @param terrains The set of terrains to find neighbors for.
      */
-    public static void setTerrainNeighbors(Set<Terrain> terrains) {
-        for (Terrain terrainA : terrains) {
-            for (Terrain terrainB : terrains) {
-                if (Logic2D.isNeighbor(terrainA.getBoundary(), terrainB.getBoundary())
-                        && !(terrainA.equals(terrainB))) {
-                    terrainA.addNeighbor(terrainB);
+    public static synchronized void setTerrainNeighbors(Set<Terrain> terrains) {
+        if (terrains == null || terrains.isEmpty()) {
+            return;
+        }
+        final Terrain[] terrainArray = terrains.toArray(new Terrain[terrains.size()]);
+        boolean found = true;
+        for (Terrain terrain : terrainArray) {
+            found = found && terrain.getNeighborhood() != null
+                    && terrain.getNeighborhood() == terrainArray[0].getNeighborhood();
+        }
+        if (found) {
+            return;
+        }
+
+        final double d = Logic2D.MAX_SHAPE_PROXIMITY_DISTANCE;
+        final List<BoundingBox2D> boxes = new ArrayList<BoundingBox2D>();
+        for (Terrain terrain : terrainArray) {
+            BoundingBox2D box = terrain.getBoundary().boundingBox();
+            boxes.add(new BoundingBox2D(
+                    new Vector2D(box.getA().getX() - d, box.getA().getY() - d),
+                    new Vector2D(box.getB().getX() + d, box.getB().getY() + d)));
+        }
+        final RTree<Terrain> tree = new RTree<Terrain>(Arrays.asList(terrainArray), boxes);
+        // the tests only read the boundaries, so they are done in parallel
+        // and the neighbors are then added in order
+        List<List<Terrain>> empty = Collections.nCopies(terrainArray.length, null);
+        final List<List<Terrain>> neighbors = new ArrayList<List<Terrain>>(empty);
+        ParallelLoop.run(getPool(), terrainArray.length, 1, new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    Terrain terrainA = terrainArray[i];
+                    List<Terrain> adjacent = new ArrayList<Terrain>();
+                    for (Terrain terrainB : tree.query(boxes.get(i))) {
+                        boolean known = terrainA.getNeighborhood() != null
+                                && terrainA.getNeighborhood() == terrainB.getNeighborhood();
+                        if (!known && !terrainA.equals(terrainB)
+                                && Logic2D.isNeighbor(terrainA.getBoundary(), terrainB.getBoundary())) {
+                            adjacent.add(terrainB);
+                        }
+                    }
+                    neighbors.set(i, adjacent);
                 }
             }
+        });
+        Object neighborhood = new Object();
+        for (int i = 0; i < terrainArray.length; i++) {
+            for (Terrain terrainB : neighbors.get(i)) {
+                terrainArray[i].addNeighbor(terrainB);
+            }
+            terrainArray[i].setNeighborhood(neighborhood);
         }
-
     }
 
     /**
@@ -452,6 +1024,7 @@ public class Transformer {
         Set<OffRoadSegment> offroads = new HashSet<OffRoadSegment>();
         HashMap<Terrain, List> linkMap = new HashMap<Terrain, List>();
         Terrain startTerrain = null, endTerrain = null;
+        Map<TerrainType, Double> lowestSpeeds = findLowestSpeeds(vehicles);
         double lowestSpeed;
         for (Terrain t : terrains) {
             linkMap.put(t, new ArrayList());
@@ -489,10 +1062,10 @@ public class Transformer {
                     Segment2D nSegmentReversed = new Segment2D(midpoint, n.getMainPoint());
 
 
-                    lowestSpeed = findLowestSpeed(vehicles, t.getType());
+                    lowestSpeed = lowestSpeeds.get(t.getType());
                     OffRoadSegment tPath = new OffRoadSegment(tSegment, t.getType(), lowestSpeed);
                     OffRoadSegment tPathReverse = new OffRoadSegment(tSegmentReversed, t.getType(), lowestSpeed);
-                    lowestSpeed = findLowestSpeed(vehicles, n.getType());
+                    lowestSpeed = lowestSpeeds.get(n.getType());
                     OffRoadSegment nPath = new OffRoadSegment(nSegment, n.getType(), lowestSpeed);
                     OffRoadSegment nPathReverse = new OffRoadSegment(nSegmentReversed, n.getType(), lowestSpeed);
                     offroads.add(tPath);
@@ -512,13 +1085,13 @@ public class Transformer {
                         if ((i + 1) == cycleOrder.size()) {
                             Segment2D offRoad = new Segment2D(cycleOrder.get(i), cycleOrder.get(0));
                             Segment2D reverseOffRoad = new Segment2D(cycleOrder.get(0), cycleOrder.get(i));
-                            lowestSpeed = findLowestSpeed(vehicles, t.getType());
+                            lowestSpeed = lowestSpeeds.get(t.getType());
                             offroads.add(new OffRoadSegment(offRoad, t.getType(), lowestSpeed));
                             offroads.add(new OffRoadSegment(reverseOffRoad, t.getType(), lowestSpeed));
                         } else {
                             Segment2D offRoad = new Segment2D(cycleOrder.get(i), cycleOrder.get(i + 1));
                             Segment2D reverseOffRoad = new Segment2D(cycleOrder.get(i + 1), cycleOrder.get(i));
-                            lowestSpeed = findLowestSpeed(vehicles, t.getType());
+                            lowestSpeed = lowestSpeeds.get(t.getType());
                             offroads.add(new OffRoadSegment(offRoad, t.getType(), lowestSpeed));
                             offroads.add(new OffRoadSegment(reverseOffRoad, t.getType(), lowestSpeed));
                         }
@@ -528,7 +1101,7 @@ public class Transformer {
                 List<Vector2D> cycleOrder = new LinkedList(t.getUnityPoints());
                 Segment2D offRoad = new Segment2D(cycleOrder.get(0), cycleOrder.get(1));
                 Segment2D reverseOffRoad = new Segment2D(cycleOrder.get(1), cycleOrder.get(0));
-                lowestSpeed = findLowestSpeed(vehicles, t.getType());
+                lowestSpeed = lowestSpeeds.get(t.getType());
                 offroads.add(new OffRoadSegment(offRoad, t.getType(), lowestSpeed));
                 offroads.add(new OffRoadSegment(reverseOffRoad, t.getType(), lowestSpeed));
             }
@@ -537,115 +1110,226 @@ public class Transformer {
         return offroads;
     }
 
-    private static Traversable proximityCheck(Traversable t, Set<RoadSegment> roads,
-            Set<Terrain> terrains, TransformMode mode, Set<Vehicle> vehicles) {
-        double distance;
-        double minDistance = MAX_PROXIMITY_DISTANCE_ENTERED_COORDS;
+    /**
+     * Snap the start or end of travel onto the closest road, or onto the
+     * terrain it is in or closest to, using the index over the loaded roads
+     * and terrains.
+     * @param t A traversable with no length at the entered location.
+     * @param index The index over the roads and terrains.
+     * @param mode The mode of the transformer.
+     * @param vehicles The vehicles that will be traveling.
+     * @return A traversable with no length on the closest road, or an
+     *         off-road traversable in the terrain; null if the location is
+     *         not close enough to either.
+     */
+    private static Traversable proximityCheck(Traversable t, SnapIndex index,
+            TransformMode mode, Set<Vehicle> vehicles) {
         Vector2D fromPoint = Logic2D.getEnd(t.getSegment());
-        Vector2D toPoint = null;
-        boolean inUsableTerrain;
-        TerrainType type;
-        
-        switch (mode) {
-            case ROAD_ONLY:
-                // find the closest road to "t"
-                for (RoadSegment road : roads) {
-
-                    distance = Logic2D.getStart(road.getSegment()).distance(fromPoint);
-                    if (distance < minDistance) {
-                        minDistance = distance;
-                        toPoint = Logic2D.getStart(road.getSegment());
-                    }
+
+        if (mode != TransformMode.TERRAIN_ONLY) {
+            // find the closest road to "t"
+            Vector2D toPoint = null;
+            if (snapToSegmentInterior) {
+                RoadSegment road = index.nearestRoad(fromPoint, MAX_PROXIMITY_DISTANCE_ENTERED_COORDS);
+                if (road != null) {
+                    toPoint = Logic2D.closestPoint(fromPoint, road.getSegment());
                 }
-                if (toPoint == null) {
-                    return null;
-                } else {
-                  //  System.err.println(new RoadSegment(new Segment2D(toPoint, toPoint), ""));
-                    return new RoadSegment(new Segment2D(toPoint, toPoint), "");
+            } else {
+                RoadSegment road = index.nearestRoadStart(fromPoint, MAX_PROXIMITY_DISTANCE_ENTERED_COORDS);
+                if (road != null) {
+                    toPoint = Logic2D.getStart(road.getSegment());
                 }
-            case TERRAIN_ONLY:
-                // is "t" in usuable terrain?
-                inUsableTerrain = false;
-                type = null;
-                for (Terrain terrain : terrains) {
-                    if (!inUsableTerrain && terrain.getBoundary().intersects(t.getSegment())) {
-                        inUsableTerrain = true;
-                        type = terrain.getType();
-                    }
+            }
+            if (toPoint != null) {
+                return new RoadSegment(new Segment2D(toPoint, toPoint), "");
+            } else if (mode == TransformMode.ROAD_ONLY) {
+                return null;
+            }
+            // no closest road found, attempt to create offroad segments
+            // that will lead us from "t" to the nearest road
+        }
+
+        // is "t" in usuable terrain?
+        Terrain terrain = index.terrainAt(fromPoint);
+        if (terrain != null) {
+            double lowestSpeed = findLowestSpeeds(vehicles).get(terrain.getType());
+            return new OffRoadSegment(t.getSegment(), terrain.getType(), lowestSpeed);
+        }
+        terrain = index.nearestTerrain(fromPoint, MAX_PROXIMITY_DISTANCE_TERRAIN);
+        if (terrain == null) {
+            // couldn't create offroad segment from "t" because "t"
+            // is not inside a valid terrain boundary
+            return null;
+        }
+        Vector2D newPoint = Logic2D.closestPoint(Logic2D.getStart(t.getSegment()), terrain.getBoundary());
+        double lowestSpeed = findLowestSpeeds(vehicles).get(terrain.getType());
+        return new OffRoadSegment(new Segment2D(newPoint, newPoint), terrain.getType(), lowestSpeed);
+    }
+
+    /**
+     * Add the start and end of travel to the network of the last transform.
+     * Roads the start or end was snapped onto the inside of are split there,
+     * both ways, into pieces that are added next to the road itself, so a
+     * road begins and ends at the snapped point without the network being
+     * changed. The start, end and pieces are linked to the traversables that
+     * touch them, which is undone by removeEnds(). Their costs are weighted
+     * with the values the network was normalized with.
+     * @param ends The end and start traversables.
+     */
+    private static void placeEnds(Traversable... ends) {
+        endsSplitRoads = false;
+        Map<RoadSegment, List<TraversableAndPOI>> splitPoints = new LinkedHashMap<RoadSegment, List<TraversableAndPOI>>();
+        for (Traversable end : ends) {
+            endTraversables.add(end);
+            if (!snapToSegmentInterior || !(end instanceof RoadSegment)) {
+                continue;
+            }
+            Vector2D point = Logic2D.getStart(end.getSegment());
+            for (Traversable t : traversableTree.query(pointBox(point))) {
+                if (!(t instanceof RoadSegment)) {
+                    continue;
                 }
-                if (!inUsableTerrain) {
-                    Terrain terrain = null;
-                    for (Terrain ter : terrains) {
-                        if (!inUsableTerrain && ter.getBoundary().distance(t.getSegment()) < MAX_PROXIMITY_DISTANCE_TERRAIN) {
-                            inUsableTerrain = true;
-                            terrain = ter;
-                        }
-                    }
-                    if (inUsableTerrain) {
-                        Vector2D newPoint = Logic2D.closestPoint(Logic2D.getStart(t.getSegment()), terrain.getBoundary());
-                        double lowestSpeed = findLowestSpeed(vehicles, terrain.getType());
-                        return new OffRoadSegment(new Segment2D(newPoint, newPoint), terrain.getType(), lowestSpeed);
-                    } else {
-                        // couldn't create offroad segment from "t" because "t"
-                        // is not inside a valid terrain boundary
-                        return null;
+                Vector2D closest = Logic2D.closestPoint(point, t.getSegment());
+                if (closest.distance(point) <= SNAP_TOLERANCE
+                        && !closest.equals(Logic2D.getStart(t.getSegment()))
+                        && !closest.equals(Logic2D.getEnd(t.getSegment()))) {
+                    RoadSegment road = (RoadSegment) t;
+                    if (!splitPoints.containsKey(road)) {
+                        splitPoints.put(road, new ArrayList<TraversableAndPOI>());
                     }
+                    splitPoints.get(road).add(new TraversableAndPOI(end, point, Logic2D.getStart(road.getSegment())));
                 }
-                double lowestSpeed = findLowestSpeed(vehicles, type);
-                return new OffRoadSegment(t.getSegment(), type, lowestSpeed);
-            case ROAD_AND_TERRAIN:
-                // find the closest road to "t"
-                for (RoadSegment road : roads) {
-                    distance = Logic2D.getStart(road.getSegment()).distance(fromPoint);
-                    if (distance < minDistance) {
-                        minDistance = distance;
-                        toPoint = Logic2D.getStart(road.getSegment());
+            }
+        }
+        for (Map.Entry<RoadSegment, List<TraversableAndPOI>> entry : splitPoints.entrySet()) {
+            RoadSegment road = entry.getKey();
+            Collections.sort(entry.getValue());
+            for (Traversable piece : splitSegment(road, entry.getValue())) {
+                for (Event event : road.getEvents()) {
+                    if (event.getBoundary().intersects(piece.getSegment())) {
+                        piece.getEvents().add(event);
                     }
                 }
-                if (toPoint != null) {
-                    return new RoadSegment(new Segment2D(toPoint, toPoint), "");
-                }
-                // no closest road found, attempt to create offroad segments
-                // that will lead us from "t" to the nearest road
-                inUsableTerrain = false;
-                type = null;
-                for (Terrain terrain : terrains) {
-                    if (!inUsableTerrain && terrain.getBoundary().intersects(t.getSegment())) {
-                        inUsableTerrain = true;
-                        type = terrain.getType();
-                    }
+                if (road.getMinClearanceHeight() < Double.MAX_VALUE) {
+                    ((RoadSegment) piece).addClearanceHeight(road.getMinClearanceHeight());
                 }
-                if (!inUsableTerrain) {
-                    Terrain terrain = null;
-                    for (Terrain ter : terrains) {
-                        if (!inUsableTerrain && ter.getBoundary().distance(t.getSegment()) < MAX_PROXIMITY_DISTANCE_TERRAIN) {
-                            inUsableTerrain = true;
-                            terrain = ter;
-                        }
-                    }
-                    if (inUsableTerrain) {
-                        Vector2D newPoint = Logic2D.closestPoint(Logic2D.getStart(t.getSegment()), terrain.getBoundary());
-                        lowestSpeed = findLowestSpeed(vehicles, terrain.getType());
-                        return new OffRoadSegment(new Segment2D(newPoint, newPoint), terrain.getType(), lowestSpeed);
-                    } else {
-                        // couldn't create offroad segments from "t" to nearest road
-                        // because "t" is not inside a valid terrain boundary
-                        return null;
+                endTraversables.add(piece);
+            }
+            endsSplitRoads = true;
+        }
+        for (Traversable end : ends) {
+            for (Traversable t : traversableTree.query(pointBox(Logic2D.getStart(end.getSegment())))) {
+                for (Event event : t.getEvents()) {
+                    if (event.getBoundary().intersects(end.getSegment())) {
+                        end.getEvents().add(event);
                     }
-                } else {
-                    lowestSpeed = findLowestSpeed(vehicles, type);
-                    return new OffRoadSegment(t.getSegment(), type, lowestSpeed);
                 }
+            }
         }
 
-        return t;
+        for (Traversable t : endTraversables) {
+            linkEnd(t);
+        }
+        for (Traversable t : endTraversables) {
+            calculateValues(t);
+            applyWeight(t);
+            double length = Logic2D.greatCircleDistance(Logic2D.getStart(t.getSegment()),
+                    Logic2D.getEnd(t.getSegment()));
+            if (t.getCost() >= 0 && length > 0) {
+                minCostPerKm = Math.min(minCostPerKm, t.getCost() / length);
+            }
+        }
+    }
+
+    /**
+     * Link a traversable added by placeEnds() to the traversables of the
+     * network, and the other added traversables, that start where it ends or
+     * end where it starts. Points are matched the same way setNeighbors()
+     * matches them.
+     * @param t The added traversable.
+     */
+    private static void linkEnd(Traversable t) {
+        Vector2D start = Logic2D.getStart(t.getSegment());
+        Vector2D end = Logic2D.getEnd(t.getSegment());
+        String startKey = start.toString();
+        String endKey = end.toString();
+        Set<Traversable> candidates = new LinkedHashSet<Traversable>(traversableTree.query(pointBox(end)));
+        candidates.addAll(traversableTree.query(pointBox(start)));
+        for (Traversable other : candidates) {
+            if (other.equals(t)) {
+                continue;
+            }
+            if (Logic2D.getStart(other.getSegment()).toString().equals(endKey)) {
+                t.getNeighbors().add(other);
+                addEndLink(other.getReverseNeighbors(), t);
+            }
+            if (Logic2D.getEnd(other.getSegment()).toString().equals(startKey)) {
+                t.getReverseNeighbors().add(other);
+                addEndLink(other.getNeighbors(), t);
+            }
+        }
+        for (Traversable other : endTraversables) {
+            if (other.equals(t)) {
+                continue;
+            }
+            if (Logic2D.getStart(other.getSegment()).toString().equals(endKey)) {
+                t.getNeighbors().add(other);
+            }
+            if (Logic2D.getEnd(other.getSegment()).toString().equals(startKey)) {
+                t.getReverseNeighbors().add(other);
+            }
+        }
+    }
+
+    /**
+     * Add a traversable to a neighbor set of the network, remembering it so
+     * removeEnds() can take it out again.
+     * @param set The neighbor set.
+     * @param t The traversable to add.
+     */
+    private static void addEndLink(Set<Traversable> set, Traversable t) {
+        if (set.add(t)) {
+            endLinkSets.add(set);
+            endLinks.add(t);
+        }
+    }
+
+    /**
+     * Take the start and end of the last transform, and the pieces of roads
+     * made for them, out of the network.
+     */
+    private static void removeEnds() {
+        for (int i = 0; i < endLinks.size(); i++) {
+            endLinkSets.get(i).remove(endLinks.get(i));
+        }
+        endLinkSets.clear();
+        endLinks.clear();
+        endTraversables.clear();
+    }
+
+    /**
+     * Returns a box around a point, large enough to find the traversables
+     * whose ends are matched to the point by setNeighbors().
+     * @param point The point.
+     * @return The box.
+     */
+    private static BoundingBox2D pointBox(Vector2D point) {
+        return new BoundingBox2D(
+                new Vector2D(point.getX() - SNAP_TOLERANCE, point.getY() - SNAP_TOLERANCE),
+                new Vector2D(point.getX() + SNAP_TOLERANCE, point.getY() + SNAP_TOLERANCE));
     }
 
     /**
      * This method calculates the distance, safety, and speed value of each
-     * traversable. After the values are calculated, they would need to be
-     * normalized. After normalization, the coefficient will be applied to the
-     * values, added together, and the cost is set to this new summed value.
+     * traversable of the network. After the values are calculated, they would
+     * need to be normalized. After normalization, the coefficient will be
+     * applied to the values, added together, and the cost is set to this new
+     * summed value. The values are only calculated again if the vehicles,
+     * network or events changed since they were last calculated, and costs
+     * the network remembers for the vehicles and coefficients are reused.
+     * The speed values and whether a vehicle fits come from the profiles of
+     * the vehicles, so only the safety values are calculated from the
+     * traversables, and only when the network or events changed.
      * @param vehicles A set of vehicles that will be traveling.
      * @param safetyCoefficient The user defined value which represents the
      *                          importance of safety.
@@ -653,73 +1337,414 @@ public class Transformer {
      *                          importance of speed.
      * @param distanceCoefficient The user defined value which represents the
      *                          importance of distance.
+     * @param eventsChanged True if events were attached or detached since
+     *                      the last transform.
      */
     private static void calculateWeights(Set<Vehicle> vehicles, double safetyCoefficient,
-            double speedCoefficient, double distanceCoefficient) {
+            double speedCoefficient, double distanceCoefficient, boolean eventsChanged) {
 
         //TODO Handle null vehicles possibly
+        boolean valuesCurrent = valuesNetwork == network && !eventsChanged && vehicles.equals(lastVehicles);
+        lastVehicles = vehicles;
+        lastCoefficients = new double[]{safetyCoefficient, speedCoefficient, distanceCoefficient};
 
-        for (Traversable t : traversables) {
-            if (t.isValid(vehicles)) {
-                t.calculateDistanceValue();
-                t.calculateSafetyValue();
-                t.calculateSpeedValue(vehicles);
+        // the values and cost of a traversable only depend on itself and the
+        // minimums and maximums, so every stage runs on all of them at once
+        final List<Traversable> ordered = network.items;
+        if (!valuesCurrent) {
+            // the safety values only change with the events, the others are
+            // taken from the profiles of the vehicles
+            final boolean safetyCurrent = valuesNetwork == network && !eventsChanged;
+            final TransformCache.Profile[] profiles = getProfiles(vehicles);
+            boolean resistant = true;
+            for (Vehicle vehicle : vehicles) {
+                resistant &= vehicle.isMineResistant();
             }
+            final boolean mineResistant = resistant;
+            ParallelLoop.run(getPool(), ordered.size(), new ParallelLoop.Body() {
+
+                @Override
+                public void run(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        Traversable t = ordered.get(i);
+                        if (!safetyCurrent) {
+                            t.calculateSafetyValue();
+                        }
+                        applyProfiles(t, i, profiles, mineResistant);
+                    }
+                }
+            });
+            valuesNetwork = network;
+        }
+
+        TransformCache.Key key = new TransformCache.Key(new Collection<?>[0],
+                new HashSet<Vehicle>(vehicles), safetyCoefficient, speedCoefficient, distanceCoefficient);
+        TransformCache.Weights weights = network.getWeights(key);
+        if (weights != null) {
+            weights.apply(network);
+            lastMinMaxValues = weights.minMaxValues;
+            minCostPerKm = weights.minCostPerKm;
+            landmarks = weights.landmarks;
+            if (weights != currentWeights) {
+                costGeneration++;
+            }
+            currentWeights = weights;
+            return;
+        }
+        lastMinMaxValues = getMaxMinValues();
+        ParallelLoop.run(getPool(), ordered.size(), new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    applyWeight(ordered.get(i));
+                }
+            }
+        });
+        minCostPerKm = calculateMinCostPerKm();
+        landmarks = null;
+        currentWeights = network.putWeights(key, lastMinMaxValues, minCostPerKm);
+        costGeneration++;
+    }
+
+    /**
+     * Recalculate the distance, safety, and speed value of a set of
+     * traversables, for example after an event changed, and update their
+     * costs. The costs of the other traversables are only recalculated if
+     * the new values move the minimum or maximum that all costs are
+     * normalized by, so the costs always equal what calculateWeights() would
+     * produce.
+     * @param changed The traversables whose values may have changed.
+     * @return The traversables whose cost changed, mapped to their cost
+     *         before the change.
+     */
+    private static Map<Traversable, Double> recalculateWeights(Set<Traversable> changed) {
+        Map<Traversable, Double> previousCosts = new HashMap<Traversable, Double>();
+        if (changed.isEmpty()) {
+            return previousCosts;
+        }
+        for (Traversable t : changed) {
+            previousCosts.put(t, t.getCost());
+            calculateValues(t);
         }
 
         double[] minMaxValues = getMaxMinValues();
-        double minDis = minMaxValues[0];
-        double minSpd = minMaxValues[1];
-        double minSaf = minMaxValues[2];
-        double maxDis = minMaxValues[3];
-        double maxSpd = minMaxValues[4];
-        double maxSaf = minMaxValues[5];
+        Set<Traversable> reweigh = changed;
+        if (!Arrays.equals(minMaxValues, lastMinMaxValues)) {
+            lastMinMaxValues = minMaxValues;
+            reweigh = traversables;
+        }
+        for (Traversable t : reweigh) {
+            if (!previousCosts.containsKey(t)) {
+                previousCosts.put(t, t.getCost());
+            }
+            applyWeight(t);
+        }
 
-        for (Traversable t : traversables) {
-            if (t.getCost() != INFINITY) {
-                double totalCost = 0;
-                totalCost += distanceCoefficient * ((t.getDistanceValue() - minDis) / (maxDis - minDis));
-                totalCost += speedCoefficient * ((t.getSpeedValue() - minSpd) / (maxSpd - minSpd));
-                totalCost += safetyCoefficient * ((t.getSafetyValue() - minSaf) / (maxSaf - minSaf));
-                t.setCost(totalCost);
+        Iterator<Map.Entry<Traversable, Double>> it = previousCosts.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Traversable, Double> entry = it.next();
+            Traversable t = entry.getKey();
+            if (t.getCost() == entry.getValue()) {
+                it.remove();
+                continue;
             }
+            if (entry.getValue() < 0 || t.getCost() < entry.getValue()) {
+                // the landmark distances are only bounds while costs rise
+                landmarks = null;
+            }
+            if (t.getCost() >= 0) {
+                // a lower bound is still a valid heuristic scale, so the
+                // minimum is only ever lowered between transforms
+                double length = Logic2D.greatCircleDistance(Logic2D.getStart(t.getSegment()),
+                        Logic2D.getEnd(t.getSegment()));
+                if (length > 0) {
+                    minCostPerKm = Math.min(minCostPerKm, t.getCost() / length);
+                }
+            }
+        }
+        if (!previousCosts.isEmpty()) {
+            costGeneration++;
         }
+        return previousCosts;
     }
 
     /**
-     * Return the maximum values for all possible weights.
-     * @return The maximum and minimum distance, speed, and safety weights
-     *         for all traversables.
+     * Returns the profiles of a set of vehicles on the network of the last
+     * transform. The profiles the network lacks, of these vehicles and of
+     * the registered vehicles, are made first in one pass over the network.
+     * @param vehicles The vehicles.
+     * @return The profile of each vehicle, in the order of the set.
      */
-    private static double[] getMaxMinValues() {
-        double minDis = Double.MAX_VALUE;
-        double minSpd = Double.MAX_VALUE;
-        double minSaf = Double.MAX_VALUE;
-        double maxDis = Double.MIN_VALUE;
-        double maxSpd = Double.MIN_VALUE;
-        double maxSaf = Double.MIN_VALUE;
-
-        for (Traversable t : traversables) {
-            if (t.getDistanceValue() < minDis) {
-                minDis = t.getDistanceValue();
+    private static TransformCache.Profile[] getProfiles(Set<Vehicle> vehicles) {
+        final List<TransformCache.Profile> missing = new ArrayList<TransformCache.Profile>();
+        final List<Traversable> ordered = network.items;
+        Set<Vehicle> wanted = new LinkedHashSet<Vehicle>(vehicles);
+        synchronized (Transformer.class) {
+            wanted.addAll(registeredVehicles);
+        }
+        for (Vehicle vehicle : wanted) {
+            if (network.getProfile(vehicle) == null) {
+                missing.add(new TransformCache.Profile(vehicle, ordered.size()));
             }
-            if (t.getSpeedValue() < minSpd) {
-                minSpd = t.getSpeedValue();
+        }
+        if (!missing.isEmpty()) {
+            ParallelLoop.run(getPool(), ordered.size(), new ParallelLoop.Body() {
+
+                @Override
+                public void run(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        Traversable t = ordered.get(i);
+                        t.calculateDistanceValue();
+                        for (TransformCache.Profile profile : missing) {
+                            profile.calculate(i, t);
+                        }
+                    }
+                }
+            });
+            for (TransformCache.Profile profile : missing) {
+                network.putProfile(profile);
             }
-            if (t.getSafetyValue() < minSaf) {
-                minSaf = t.getSafetyValue();
+        }
+
+        TransformCache.Profile[] profiles = new TransformCache.Profile[vehicles.size()];
+        int k = 0;
+        for (Vehicle vehicle : vehicles) {
+            profiles[k++] = network.getProfile(vehicle);
+        }
+        return profiles;
+    }
+
+    /**
+     * Set the speed value and travel time of an item of the network from the
+     * profiles of the vehicles, the same as calculateValues() would, or set
+     * its cost to INFINITY if one of the vehicles can't traverse it.
+     * @param t The item.
+     * @param i The position of the item in the network.
+     * @param profiles The profiles of the vehicles.
+     * @param mineResistant True if every vehicle is mine resistant.
+     */
+    private static void applyProfiles(Traversable t, int i, TransformCache.Profile[] profiles,
+            boolean mineResistant) {
+        t.setCost(0);
+        TransformCache.Profile limiting = null;
+        for (TransformCache.Profile profile : profiles) {
+            if (profile.blocked[i]) {
+                t.setCost(INFINITY);
+                return;
             }
-            if (t.getDistanceValue() > maxDis) {
-                maxDis = t.getDistanceValue();
+            if (limiting == null || profile.limits[i] < limiting.limits[i]) {
+                limiting = profile;
             }
-            if (t.getSpeedValue() > maxSpd) {
-                maxSpd = t.getSpeedValue();
+        }
+        if (!mineResistant) {
+            for (Event event : t.getEvents()) {
+                if (event.containsMines()) {
+                    t.setCost(INFINITY);
+                    return;
+                }
             }
-            if (t.getSafetyValue() > maxSaf) {
-                maxSaf = t.getSafetyValue();
+        }
+        if (limiting != null) {
+            t.setSpeedValue(limiting.speedValues[i], limiting.travelTimes[i]);
+        } else {
+            t.calculateSpeedValue(lastVehicles);
+        }
+    }
+
+    /**
+     * Calculate the distance, safety, and speed value of a traversable, or
+     * set its cost to INFINITY if one of the vehicles can't traverse it.
+     * The distance and safety value are calculated either way, so they are
+     * current if other vehicles can traverse it later.
+     * @param t The traversable.
+     */
+    private static void calculateValues(Traversable t) {
+        // forget any INFINITY left by isValid() in a previous transform
+        t.setCost(0);
+        t.calculateDistanceValue();
+        t.calculateSafetyValue();
+        if (t.isValid(lastVehicles)) {
+            t.calculateSpeedValue(lastVehicles);
+        }
+    }
+
+    /**
+     * Set the cost of a traversable from its normalized values and the
+     * coefficients of the last transform. Traversables that can't be
+     * traversed keep the cost INFINITY. The values are normalized by the
+     * network without the start and end, so the values of the start, end and
+     * road pieces made for them are kept within the network's range.
+     * @param t The traversable.
+     */
+    private static void applyWeight(Traversable t) {
+        if (t.getCost() == INFINITY) {
+            return;
+        }
+        double minDis = lastMinMaxValues[0];
+        double minSpd = lastMinMaxValues[1];
+        double minSaf = lastMinMaxValues[2];
+        double maxDis = lastMinMaxValues[3];
+        double maxSpd = lastMinMaxValues[4];
+        double maxSaf = lastMinMaxValues[5];
+        double totalCost = 0;
+        totalCost += lastCoefficients[2] * normalize(t.getDistanceValue(), minDis, maxDis);
+        totalCost += lastCoefficients[1] * normalize(t.getSpeedValue(), minSpd, maxSpd);
+        totalCost += lastCoefficients[0] * normalize(t.getSafetyValue(), minSaf, maxSaf);
+        t.setCost(totalCost);
+    }
+
+    /**
+     * Normalize a value to the range between a minimum and maximum.
+     * @param value The value.
+     * @param min The minimum.
+     * @param max The maximum.
+     * @return The value scaled to be between 0 and 1, where values outside
+     *         the range are moved to its nearest end, or 0 if every value
+     *         was the same.
+     */
+    private static double normalize(double value, double min, double max) {
+        if (!(max > min)) {
+            // a value no traversable differs in can't make one costlier
+            return 0;
+        }
+        double normalized = (value - min) / (max - min);
+        return normalized < 0 ? 0 : normalized > 1 ? 1 : normalized;
+    }
+
+    /**
+     * Returns the lowest cost per kilometer of any traversable created by the
+     * last call to transform(). No route can cost less than this value times
+     * the great circle distance between its ends, which makes it the scale of
+     * the A* heuristic used by the Pathfinder.
+     * @return The lowest cost per kilometer, or 0 if nothing was transformed.
+     */
+    public static synchronized double getMinCostPerKm() {
+        return minCostPerKm;
+    }
+
+    /**
+     * Returns a number that changes whenever the costs of the traversables of
+     * the network change: when transform() weighs them for other vehicles,
+     * coefficients or events, or an event updates them. What is derived from
+     * the costs, such as the weights of a contraction hierarchy, only needs
+     * to be recomputed when it changes. The start, end and road pieces of a
+     * transform are not counted.
+     * @return The generation of the costs.
+     */
+    public static synchronized long getCostGeneration() {
+        return costGeneration;
+    }
+
+    /**
+     * Returns landmarks for the network of the last call to transform() with
+     * its current costs, computing them the first time they are asked for.
+     * They are remembered with the costs, so a network transformed again for
+     * the same vehicles and coefficients reuses them, and they are kept while
+     * events only raise costs. The start, end and road pieces of the
+     * transform are not part of them.
+     * @return The landmarks, or null if nothing was transformed.
+     */
+    public static synchronized Landmarks getLandmarks() {
+        if (landmarks == null && network != null) {
+            landmarks = Landmarks.compute(CompactGraph.compile(network.items), LANDMARKS, getPool());
+            if (currentWeights != null) {
+                currentWeights.landmarks = landmarks;
             }
         }
-        return new double[]{minDis, minSpd, minSaf, maxDis, maxSpd, maxSaf};
+        return landmarks;
+    }
+
+    /**
+     * Find the lowest cost per kilometer of all traversables that may be
+     * traversed. Traversables with no length (the start and end points) are
+     * ignored.
+     * @return The lowest cost per kilometer.
+     */
+    private static double calculateMinCostPerKm() {
+        final List<Traversable> ordered = traversableTree.getItems();
+        final double[] min = {Double.MAX_VALUE};
+        ParallelLoop.run(getPool(), ordered.size(), new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                double rangeMin = Double.MAX_VALUE;
+                for (int i = from; i < to; i++) {
+                    Traversable t = ordered.get(i);
+                    double length = Logic2D.greatCircleDistance(Logic2D.getStart(t.getSegment()),
+                            Logic2D.getEnd(t.getSegment()));
+                    if (t.getCost() >= 0 && length > 0) {
+                        rangeMin = Math.min(rangeMin, t.getCost() / length);
+                    }
+                }
+                synchronized (min) {
+                    min[0] = Math.min(min[0], rangeMin);
+                }
+            }
+        });
+        return min[0] == Double.MAX_VALUE ? 0 : min[0];
+    }
+
+    /**
+     * Return the maximum values for all possible weights.
+     * @return The maximum and minimum distance, speed, and safety weights
+     *         for all traversables that can be traversed.
+     */
+    private static double[] getMaxMinValues() {
+        final List<Traversable> ordered = traversableTree.getItems();
+        final double[] values = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+            Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE};
+        ParallelLoop.run(getPool(), ordered.size(), new ParallelLoop.Body() {
+
+            @Override
+            public void run(int from, int to) {
+                double minDis = Double.MAX_VALUE;
+                double minSpd = Double.MAX_VALUE;
+                double minSaf = Double.MAX_VALUE;
+                double maxDis = Double.MIN_VALUE;
+                double maxSpd = Double.MIN_VALUE;
+                double maxSaf = Double.MIN_VALUE;
+
+                for (int i = from; i < to; i++) {
+                    Traversable t = ordered.get(i);
+                    if (t.getCost() == INFINITY) {
+                        // its values were not calculated
+                        continue;
+                    }
+                    if (t.getDistanceValue() < minDis) {
+                        minDis = t.getDistanceValue();
+                    }
+                    if (t.getSpeedValue() < minSpd) {
+                        minSpd = t.getSpeedValue();
+                    }
+                    if (t.getSafetyValue() < minSaf) {
+                        minSaf = t.getSafetyValue();
+                    }
+                    if (t.getDistanceValue() > maxDis) {
+                        maxDis = t.getDistanceValue();
+                    }
+                    if (t.getSpeedValue() > maxSpd) {
+                        maxSpd = t.getSpeedValue();
+                    }
+                    if (t.getSafetyValue() > maxSaf) {
+                        maxSaf = t.getSafetyValue();
+                    }
+                }
+                // minimums and maximums come out the same in any order
+                synchronized (values) {
+                    double[] range = {minDis, minSpd, minSaf, maxDis, maxSpd, maxSaf};
+                    for (int k = 0; k < 3; k++) {
+                        if (range[k] < values[k]) {
+                            values[k] = range[k];
+                        }
+                        if (range[k + 3] > values[k + 3]) {
+                            values[k + 3] = range[k + 3];
+                        }
+                    }
+                }
+            }
+        });
+        return values;
     }
 
     /**
@@ -742,211 +1767,112 @@ public class Transformer {
             // run algorithm with both offroads and roads
             allSegments = combine(roads, offRoads);
         }
-        Set<Traversable> newSegments = new HashSet<Traversable>();
-        TreeMap<Double, List<Traversable>> mapx = new TreeMap<Double, List<Traversable>>();
-        TreeMap<Double, List<Traversable>> mapy = new TreeMap<Double, List<Traversable>>();
-        HashMap<Traversable, Set<Traversable>> possibleIntersectorsMap = new HashMap<Traversable, Set<Traversable>>();
-        BoundingBox2D boundingBox;
-        
-        
-        // pre-processing. traversables will only split if they intersect
-        // an offroad. find the bouding box for every offroad. place the X
-        // value of it's left side and the X value of it's right side
-        // into the mapX. (Every entry between the two values corresponds to
-        // a bounding box whose left or right side is within this bounding box).
-        // Do the same for mapY.
-        for (Traversable trav : allSegments) {
-            boundingBox = trav.getSegment().boundingBox();
-            double x1 = boundingBox.getA().getX();
-            double x2 = boundingBox.getB().getX();
-            double y1 = boundingBox.getA().getY();
-            double y2 = boundingBox.getB().getY();
-            putBoundingBoxInMap(x1, x2, y1, y2, mapx, mapy, trav);
-            Set<Traversable> set = new HashSet<Traversable>();
-            possibleIntersectorsMap.put(trav, set);
-        }
-
-        // Loop through all traversables and split as necessary.
-        for (Traversable t1 : allSegments) {
-            // the possibleX and possibleY maps coorespond to every offroad segment
-            // which has a bounding box whose left OR right side is within the left
-            // and right sides of t1's bounding box and whose y top OR bottom
-            // side is within the top and bottom sides of t1's bounding box, thus
-            // limiting the amount of possible intersecting offroad segments greatly
-            boundingBox = t1.getSegment().boundingBox();
-            double x1 = boundingBox.getA().getX();
-            double x2 = boundingBox.getB().getX();
-            double y1 = boundingBox.getA().getY();
-            double y2 = boundingBox.getB().getY();
-            NavigableMap<Double, List<Traversable>> possibleX = mapx.subMap(x1, true, x2, true);
-            NavigableMap<Double, List<Traversable>> possibleY = mapy.subMap(y1, true, y2, true);
-
-            // find the number of sides of each bounding box that intersects
-            // t1's bounding box. stores these values into the found map
-            Set<Traversable> possibleIntersectors = possibleIntersectorsMap.get(t1);
-            HashMap<Traversable, XYNum> found = new HashMap<Traversable, XYNum>();
-            for (Double x : possibleX.keySet()) {
-                for (Traversable tX : possibleX.get(x)) {
-                    if (!tX.getSegment().equals(t1.getSegment())) {
-                        if (!found.containsKey(tX)) {
-                            found.put(tX, new XYNum());
-                        } else {
-                            found.get(tX).x++;
-                        }
-                     }
-                }
-            }
-            for (Double y : possibleY.keySet()) {
-                for (Traversable tY : possibleY.get(y)) {
-                    if (!tY.getSegment().equals(t1.getSegment())) {
-                        if (!found.containsKey(tY)) {
-                            found.put(tY, new XYNum());
-                        } else {
-                            found.get(tY).y++;
-                        }
-                    }
-                }
-            }
-            
-            for (Traversable t2 : found.keySet()) {
-                int numX = found.get(t2).x;
-                int numY = found.get(t2).y;
-                if (numX == 1 && numY == 1) {
-                    possibleIntersectors.add(t2);
-                } else if (numX == 2 && numY == 0) {
-                    boundingBox = t2.getSegment().boundingBox();
-                    double t2y1 = boundingBox.getA().getY();
-                    double t2y2 = boundingBox.getB().getY();
-                    if (t2y1 < y1 && t2y2 > y2) {
-                        possibleIntersectors.add(t2);
-                    }
-                } else if (numX == 0 && numY == 2) {
-                    boundingBox = t2.getSegment().boundingBox();
-                    double t2x1 = boundingBox.getA().getX();
-                    double t2x2 = boundingBox.getB().getX();
-                    if (t2x1 < x1 && t2x2 > x2) {
-                        possibleIntersectors.add(t2);
-                    }
-                } else if ((numX == 2 && numY == 1) || (numX == 1 && numY == 2)) {
-                    possibleIntersectors.add(t2);
-                    possibleIntersectorsMap.get(t2).add(t1);
-                } else if (numX == 2 && numY == 2) {
-                    possibleIntersectors.add(t2);
-                    possibleIntersectorsMap.get(t2).add(t1);
-                }
-            }
-        }
-        
-        for (Traversable t1 : allSegments) {
-            Set<Traversable> possibleIntersectors = possibleIntersectorsMap.get(t1);
-            List<TraversableAndPOI> intersectors = new ArrayList<TraversableAndPOI>();
-            for (Traversable t2 : possibleIntersectors) {
-                if (t1 instanceof RoadSegment && t2 instanceof RoadSegment) {
-                    continue;
-                }
+        final List<Traversable> segments = new ArrayList<Traversable>(allSegments);
+        final List<List<TraversableAndPOI>> splitPoints = IntersectionSweep.findSplitPoints(segments, getPool());
+        List<List<Traversable>> empty = Collections.nCopies(segments.size(), null);
+        final List<List<Traversable>> pieces = new ArrayList<List<Traversable>>(empty);
+        ParallelLoop.run(getPool(), segments.size(), new ParallelLoop.Body() {
 
-                // split segments if at least one is not a road
-                if (t1.getSegment().intersects(t2.getSegment())) {
-                    Vector2D t1s = Logic2D.getStart(t1.getSegment());
-                    Vector2D t1e = Logic2D.getEnd(t1.getSegment());
-                    Vector2D t2s = Logic2D.getStart(t2.getSegment());
-                    Vector2D t2e = Logic2D.getEnd(t2.getSegment());
-                    if (!t1s.equals(t2s) && !t1s.equals(t2e) && !t1e.equals(t2s) && !t1e.equals(t2e)) {
-                        // get the point of intersection
-                        Vector2D poi = t1.getSegment().intersection(t2.getSegment()).getWorldVertices().get(0);
-                        intersectors.add(new TraversableAndPOI(t2, poi, Logic2D.getStart(t1.getSegment())));
-                    }
+            @Override
+            public void run(int from, int to) {
+                for (int i = from; i < to; i++) {
+                    pieces.set(i, splitSegment(segments.get(i), splitPoints.get(i)));
                 }
             }
+        });
+        Set<Traversable> newSegments = new HashSet<Traversable>();
+        for (List<Traversable> split : pieces) {
+            newSegments.addAll(split);
+        }
+        return newSegments;
+    }
 
-            // if there are no intersecting segments with this one, move on
-            if (intersectors.isEmpty()) {
-                newSegments.add(t1);
-                continue;
-            }
+    /**
+     * Split a segment at the points where other segments intersect it.
+     * @param t1 The segment to split.
+     * @param intersectors The points to split it at, sorted by the distance
+     *                     to its start.
+     * @return The pieces of the segment, or just the segment if there are
+     *         no points to split it at.
+     */
+    private static List<Traversable> splitSegment(Traversable t1, List<TraversableAndPOI> intersectors) {
+        List<Traversable> split = new ArrayList<Traversable>();
+        // if there are no intersecting segments with this one, move on
+        if (intersectors.isEmpty()) {
+            split.add(t1);
+            return split;
+        }
 
-            // sort all intersecting segments based on the distance to t1's start
-            // and for each intersecting segment, split up t1
-            Collections.sort(intersectors);
-            Vector2D prev = Logic2D.getStart(t1.getSegment());
-            if (t1 instanceof RoadSegment) {
-                RoadSegment r = (RoadSegment) t1;
-                RoadSegment newSegment;
-                for (TraversableAndPOI travPOI : intersectors) {
-                    Vector2D poi = travPOI.POI;
-                    if (!(poi.equals(prev))) {
-                        // create new segments out of t1 from the start point
-                        // to the point of intersection with the next segment
-                        // after each iteration, change the "start point" to
-                        // the point we ended at last time
-                        newSegment = new RoadSegment(new Segment2D(prev, poi), r.getRoadName());
-                        newSegment.setSpeedLimit(r.getSpeedLimit());
-                        newSegments.add(newSegment);
-                        prev = poi;
-                    }
+        // the intersecting segments are sorted by the distance to t1's
+        // start, so split up t1 at each of them in turn
+        Vector2D prev = Logic2D.getStart(t1.getSegment());
+        if (t1 instanceof RoadSegment) {
+            RoadSegment r = (RoadSegment) t1;
+            RoadSegment newSegment;
+            for (TraversableAndPOI travPOI : intersectors) {
+                Vector2D poi = travPOI.POI;
+                if (!(poi.equals(prev))) {
+                    // create new segments out of t1 from the start point
+                    // to the point of intersection with the next segment
+                    // after each iteration, change the "start point" to
+                    // the point we ended at last time
+                    newSegment = new RoadSegment(new Segment2D(prev, poi), r.getRoadName());
+                    newSegment.setSpeedLimit(r.getSpeedLimit());
+                    split.add(newSegment);
+                    prev = poi;
                 }
-                // add the very last segment from the last "start point" to the end of t1
-                newSegment = new RoadSegment(new Segment2D(prev, Logic2D.getEnd(r.getSegment())), r.getRoadName());
-                newSegment.setSpeedLimit(r.getSpeedLimit());
-                newSegments.add(newSegment);
-            } else if (t1 instanceof OffRoadSegment) {
-                OffRoadSegment o = (OffRoadSegment) t1;
-                OffRoadSegment newSegment;
-                for (TraversableAndPOI travPOI : intersectors) {
-                    Vector2D poi = travPOI.POI;
-                    if (!(poi.equals(prev))) {
-                        // create new segments out of t1 from the start point
-                        // to the point of intersection with the next segment
-                        // after each iteration, change the "start point" to
-                        // the point we ended at last time
-                        newSegment = new OffRoadSegment(new Segment2D(prev, poi), o.getTerrainType(), o.getSpeedLimit());
-                        newSegments.add(newSegment);
-                        prev = poi;
-                    }
+            }
+            // add the very last segment from the last "start point" to the end of t1
+            newSegment = new RoadSegment(new Segment2D(prev, Logic2D.getEnd(r.getSegment())), r.getRoadName());
+            newSegment.setSpeedLimit(r.getSpeedLimit());
+            split.add(newSegment);
+        } else if (t1 instanceof OffRoadSegment) {
+            OffRoadSegment o = (OffRoadSegment) t1;
+            OffRoadSegment newSegment;
+            for (TraversableAndPOI travPOI : intersectors) {
+                Vector2D poi = travPOI.POI;
+                if (!(poi.equals(prev))) {
+                    // create new segments out of t1 from the start point
+                    // to the point of intersection with the next segment
+                    // after each iteration, change the "start point" to
+                    // the point we ended at last time
+                    newSegment = new OffRoadSegment(new Segment2D(prev, poi), o.getTerrainType(), o.getSpeedLimit());
+                    split.add(newSegment);
+                    prev = poi;
                 }
-                // add the very last segment from the last "start point" to the end of t1
-                newSegment = new OffRoadSegment(new Segment2D(prev, Logic2D.getEnd(o.getSegment())), o.getTerrainType(), o.getSpeedLimit());
-                newSegments.add(newSegment);
             }
+            // add the very last segment from the last "start point" to the end of t1
+            newSegment = new OffRoadSegment(new Segment2D(prev, Logic2D.getEnd(o.getSegment())), o.getTerrainType(), o.getSpeedLimit());
+            split.add(newSegment);
         }
-        return newSegments;
-    }
-    
-    private static void putBoundingBoxInMap(double x1, double x2, double y1, double y2,
-            TreeMap<Double, List<Traversable>> mapx, TreeMap<Double, List<Traversable>> mapy,
-            Traversable trav) {
-        addBoundingBoxToMapList(x1, mapx, trav);
-        addBoundingBoxToMapList(x2, mapx, trav);
-        addBoundingBoxToMapList(y1, mapy, trav);
-        addBoundingBoxToMapList(y2, mapy, trav);
+        return split;
     }
     
-    private static void addBoundingBoxToMapList(double coord,
-            TreeMap<Double, List<Traversable>> map, Traversable trav) {
-        if (map.get(coord) == null) {
-            ArrayList<Traversable> list = new ArrayList<Traversable>();
-            list.add(trav);
-            map.put(coord, list);
-        } else {
-            map.get(coord).add(trav);
-        }
-    }
-
     /**
-     * Finds the lowest speed of a set of vehicles based on the terrain type
+     * Finds the lowest speed of a set of vehicles on each terrain type, in
+     * one pass over the vehicles.
      * @param vehicles A set of Vehicles
-     * @param TerrainType The type of terrain
-     * @return The lowest speed
+     * @return The lowest speed on each terrain type that every vehicle has a
+     *         traversability value for
      */
-    private static double findLowestSpeed(Set<Vehicle> vehicles, TerrainType type) {
-        double lowestSpeed = Double.MAX_VALUE;
+    private static Map<TerrainType, Double> findLowestSpeeds(Set<Vehicle> vehicles) {
+        Map<TerrainType, Double> lowestSpeeds = new EnumMap<TerrainType, Double>(TerrainType.class);
+        for (TerrainType type : TerrainType.values()) {
+            lowestSpeeds.put(type, Double.MAX_VALUE);
+        }
         for (Vehicle vehicle : vehicles) {
-            if (vehicle.getMaxSpeed() * vehicle.getTraversabilityMap().get(type) < lowestSpeed) {
-                lowestSpeed = vehicle.getMaxSpeed() * vehicle.getTraversabilityMap().get(type);
+            for (TerrainType type : TerrainType.values()) {
+                Double traversability = vehicle.getTraversabilityMap().get(type);
+                if (traversability == null) {
+                    lowestSpeeds.remove(type);
+                } else if (lowestSpeeds.containsKey(type)
+                        && vehicle.getMaxSpeed() * traversability < lowestSpeeds.get(type)) {
+                    lowestSpeeds.put(type, vehicle.getMaxSpeed() * traversability);
+                }
             }
         }
 
-        return lowestSpeed;
+        return lowestSpeeds;
     }
 }
 
@@ -62,6 +62,12 @@ public interface Traversable {
      */
     public Set<Traversable> getNeighbors();
 
+    /**
+     * Returns all traversables that have this traversable as a neighbor.
+     * @return A set containing every traversable ending where this one starts.
+     */
+    public Set<Traversable> getReverseNeighbors();
+
     /**
      * Returns the distance of this Traversable
      * @return double distance in kilometers.
@@ -87,6 +93,22 @@ public interface Traversable {
      */
     public void calculateSpeedValue(Set<Vehicle> vehicles);
 
+    /**
+     * Sets the speed value and travel time of this Traversable, for example
+     * to values calculated earlier by calculateSpeedValue().
+     * @param speedValue The speed value.
+     * @param travelTime The travel time in hours.
+     */
+    public void setSpeedValue(double speedValue, double travelTime);
+
+    /**
+     * Returns how much a vehicle limits travel on this Traversable. Of a set
+     * of vehicles, the one with the lowest value sets the speed value.
+     * @param vehicle A vehicle that can traverse this Traversable.
+     * @return The limiting factor of the vehicle.
+     */
+    public double getLimitingFactor(Vehicle vehicle);
+
     /**
      * Calculates the distance value of this road in Kilometers.
      */
@@ -98,6 +120,12 @@ public interface Traversable {
      */
     public void setNeighbors(Set<Traversable> neighbors);
 
+    /**
+     * Sets the traversables that have this traversable as a neighbor.
+     * @param reverseNeighbors The reverse neighbors of this traversable
+     */
+    public void setReverseNeighbors(Set<Traversable> reverseNeighbors);
+
     /**
      * Returns whether or not a set of vehicle can travese this Traversable.
      * @param A set of vehicles which will be checked to see if they can traverse this Traversable.
@@ -105,6 +133,14 @@ public interface Traversable {
      */
     public boolean isValid(Set<Vehicle> vehicles);
 
+    /**
+     * Returns whether a vehicle fits on this Traversable, not counting the
+     * events that intersect it.
+     * @param vehicle The vehicle.
+     * @return True if the vehicle can traverse this, whatever the events.
+     */
+    public boolean canTraverse(Vehicle vehicle);
+
     public double getTravelTime();
 
     @Override
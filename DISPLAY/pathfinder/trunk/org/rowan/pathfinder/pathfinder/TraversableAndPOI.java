@@ -46,6 +46,6 @@ public class TraversableAndPOI implements Comparable<TraversableAndPOI> {
         double dif1 = this.POI.distance(comparePoint);
         double dif2 = other.POI.distance(other.comparePoint);
         
-        return ((int)(dif1 - dif2));
+        return Double.compare(dif1, dif2);
     }
 }
\ No newline at end of file
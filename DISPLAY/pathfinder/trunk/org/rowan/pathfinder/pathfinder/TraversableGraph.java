@@ -0,0 +1,189 @@
+package org.rowan.pathfinder.pathfinder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class <code>TraversableGraph</code> is a <code>SearchGraph</code> that is
+ * discovered lazily from <code>Traversable.getNeighbors()</code> and
+ * <code>Traversable.getReverseNeighbors()</code>. A node is given an id the
+ * first time it is seen, and its outgoing (or incoming) edges are copied into
+ * a flat array the first time they are asked for, so only the part of the
+ * network that a search actually reaches is ever indexed. Costs are always
+ * read straight from the Traversables.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class TraversableGraph implements SearchGraph {
+
+    /** Traversable to id */
+    private Map<Traversable, Integer> ids = new HashMap<Traversable, Integer>();
+    /** Id to Traversable */
+    private List<Traversable> nodes = new ArrayList<Traversable>();
+    /** Id to index of its first edge, or -1 if the node hasn't been expanded */
+    private int[] first = new int[64];
+    /** Id to index one past its last edge */
+    private int[] end = new int[64];
+    /** Edge index to target id */
+    private int[] targets = new int[256];
+    /** The number of edges copied so far */
+    private int numEdges = 0;
+    /** Id to index of its first reverse edge, or -1 if not expanded */
+    private int[] reverseFirst = new int[64];
+    /** Id to index one past its last reverse edge */
+    private int[] reverseEnd = new int[64];
+    /** Reverse edge index to source id */
+    private int[] sources = new int[256];
+    /** The number of reverse edges copied so far */
+    private int numReverseEdges = 0;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the id of a Traversable, giving it a new id if it has not been
+     * seen yet.
+     * @param t A Traversable.
+     * @return The id of the Traversable.
+     */
+    @Override
+    public int getId(Traversable t) {
+        Integer id = ids.get(t);
+        if (id == null) {
+            id = nodes.size();
+            ids.put(t, id);
+            nodes.add(t);
+            if (id >= first.length) {
+                first = Arrays.copyOf(first, first.length * 2);
+                end = Arrays.copyOf(end, end.length * 2);
+                reverseFirst = Arrays.copyOf(reverseFirst, reverseFirst.length * 2);
+                reverseEnd = Arrays.copyOf(reverseEnd, reverseEnd.length * 2);
+            }
+            first[id] = -1;
+            reverseFirst[id] = -1;
+        }
+        return id;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Traversable getTraversable(int id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getCost(int id) {
+        return nodes.get(id).getCost();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int firstEdge(int id) {
+        expand(id);
+        return first[id];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int endEdge(int id) {
+        expand(id);
+        return end[id];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getTarget(int edge) {
+        return targets[edge];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int firstReverseEdge(int id) {
+        expandReverse(id);
+        return reverseFirst[id];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int endReverseEdge(int id) {
+        expandReverse(id);
+        return reverseEnd[id];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSource(int reverseEdge) {
+        return sources[reverseEdge];
+    }
+
+    /**
+     * Copy the neighbors of a node into the edge array if that hasn't been
+     * done already. Any neighbor without an id is given one.
+     * @param id The id of the node to expand.
+     */
+    private void expand(int id) {
+        if (first[id] >= 0) {
+            return;
+        }
+        Traversable t = nodes.get(id);
+        int start = numEdges;
+        for (Traversable neighbor : t.getNeighbors()) {
+            int target = getId(neighbor);
+            if (numEdges == targets.length) {
+                targets = Arrays.copyOf(targets, targets.length * 2);
+            }
+            targets[numEdges++] = target;
+        }
+        first[id] = start;
+        end[id] = numEdges;
+    }
+
+    /**
+     * Copy the reverse neighbors of a node into the reverse edge array if
+     * that hasn't been done already. Any reverse neighbor without an id is
+     * given one.
+     * @param id The id of the node to expand.
+     */
+    private void expandReverse(int id) {
+        if (reverseFirst[id] >= 0) {
+            return;
+        }
+        Traversable t = nodes.get(id);
+        int start = numReverseEdges;
+        for (Traversable neighbor : t.getReverseNeighbors()) {
+            int source = getId(neighbor);
+            if (numReverseEdges == sources.length) {
+                sources = Arrays.copyOf(sources, sources.length * 2);
+            }
+            sources[numReverseEdges++] = source;
+        }
+        reverseFirst[id] = start;
+        reverseEnd[id] = numReverseEdges;
+    }
+}
@@ -1,14 +0,0 @@
-package org.rowan.pathfinder.pathfinder;
-
-/**
- * Class XYNum is used to store occurrences of x locations and y locations.
- * It is for convenience.
- * 
- * @author Dan Urbano 
- * @version 1.0
- * @since 1.0
- */
-public class XYNum {
-    public int x = 0;
-    public int y = 0;
-}
\ No newline at end of file